@@ -0,0 +1,70 @@
+/*
+ * Copyright 2018 Expedia, Inc.
+ *
+ *       Licensed under the Apache License, Version 2.0 (the "License");
+ *       you may not use this file except in compliance with the License.
+ *       You may obtain a copy of the License at
+ *
+ *           http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *       Unless required by applicable law or agreed to in writing, software
+ *       distributed under the License is distributed on an "AS IS" BASIS,
+ *       WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *       See the License for the specific language governing permissions and
+ *       limitations under the License.
+ *
+ */
+package com.expedia.www.haystack.commons.config;
+
+import com.expedia.www.haystack.commons.secretDetector.FinderEngineConfig;
+import org.cfg4j.provider.ConfigurationProvider;
+
+@SuppressWarnings("WeakerAccess")
+public class FinderEngineConfigurationProvider implements FinderEngineConfig {
+    private static final String HAYSTACK_FINDER_ENGINE_CONFIG_PREFIX = "haystack.secretsnotifications.finderengine";
+
+    private final FinderEngineConfig finderEngineConfig;
+
+    public FinderEngineConfigurationProvider(ConfigurationProvider configurationProvider) {
+        this(configurationProvider.bind(HAYSTACK_FINDER_ENGINE_CONFIG_PREFIX, FinderEngineConfig.class));
+    }
+
+    FinderEngineConfigurationProvider(FinderEngineConfig finderEngineConfig) {
+        this.finderEngineConfig = finderEngineConfig;
+    }
+
+    @Override
+    public boolean combineRegexFinders() {
+        return finderEngineConfig.combineRegexFinders();
+    }
+
+    @Override
+    public boolean orderFindersAdaptively() {
+        return finderEngineConfig.orderFindersAdaptively();
+    }
+
+    @Override
+    public int adaptiveOrderingInterval() {
+        return finderEngineConfig.adaptiveOrderingInterval();
+    }
+
+    @Override
+    public String mandatoryFinders() {
+        return finderEngineConfig.mandatoryFinders();
+    }
+
+    @Override
+    public int resultCacheBytes() {
+        return finderEngineConfig.resultCacheBytes();
+    }
+
+    @Override
+    public String excludedIpV4Ranges() {
+        return finderEngineConfig.excludedIpV4Ranges();
+    }
+
+    @Override
+    public String excludedIpV6Ranges() {
+        return finderEngineConfig.excludedIpV6Ranges();
+    }
+}
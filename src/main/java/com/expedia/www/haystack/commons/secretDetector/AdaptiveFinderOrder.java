@@ -0,0 +1,141 @@
+/*
+ * Copyright 2018 Expedia, Inc.
+ *
+ *       Licensed under the Apache License, Version 2.0 (the "License");
+ *       you may not use this file except in compliance with the License.
+ *       You may obtain a copy of the License at
+ *
+ *           http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *       Unless required by applicable law or agreed to in writing, software
+ *       distributed under the License is distributed on an "AS IS" BASIS,
+ *       WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *       See the License for the specific language governing permissions and
+ *       limitations under the License.
+ *
+ */
+package com.expedia.www.haystack.commons.secretDetector;
+
+import com.netflix.servo.util.VisibleForTesting;
+import io.dataapps.chlorine.finder.Finder;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps the finders of a {@link HaystackFinderEngine} in the order that minimizes the expected cost of checking a
+ * value. Because the engine stops at the first finder that finds something, and because most values contain no
+ * secrets, the best order runs first the finders with the lowest cost per detection, i.e. the total time spent in a
+ * finder divided by the number of secrets it has found. The order is recomputed every reorderInterval values from the
+ * statistics recorded by the engine. Mandatory finders never move, and the other finders never move past them, so that
+ * a value containing (for example) a credit card number is always reported as a credit card. The class is thread safe;
+ * values checked while the order is being recomputed use the previous order.
+ */
+@SuppressWarnings("WeakerAccess")
+public class AdaptiveFinderOrder {
+    private final Map<Finder, FinderStatistics> finderStatisticsMap = new IdentityHashMap<>();
+    private final Set<Finder> mandatoryFinders = Collections.newSetFromMap(new IdentityHashMap<>());
+    private final List<List<Finder>> reorderableRuns = new ArrayList<>();
+    private final List<Finder> originalOrder;
+    private final long reorderInterval;
+    private final AtomicLong valueCount = new AtomicLong(0);
+    private volatile List<Finder> currentOrder;
+
+    /**
+     * Creates an AdaptiveFinderOrder
+     *
+     * @param finders               the finders in their configured order, which is also their initial order
+     * @param mandatoryFinderNames  the names of the finders that must keep their configured positions
+     * @param reorderInterval       the number of values to check between recomputations of the order
+     */
+    public AdaptiveFinderOrder(List<Finder> finders, Set<String> mandatoryFinderNames, int reorderInterval) {
+        this.originalOrder = Collections.unmodifiableList(new ArrayList<>(finders));
+        this.reorderInterval = Math.max(1, reorderInterval);
+        List<Finder> run = new ArrayList<>();
+        for (final Finder finder : finders) {
+            finderStatisticsMap.put(finder, new FinderStatistics());
+            if (mandatoryFinderNames.contains(finder.getName())) {
+                mandatoryFinders.add(finder);
+                reorderableRuns.add(run);
+                run = new ArrayList<>();
+            } else {
+                run.add(finder);
+            }
+        }
+        reorderableRuns.add(run);
+        this.currentOrder = originalOrder;
+    }
+
+    /**
+     * @return the finders in the order in which they should be run; the list is not modified after it is returned
+     */
+    public List<Finder> getFinders() {
+        return currentOrder;
+    }
+
+    /**
+     * Records one run of a finder
+     *
+     * @param finder  the finder that was run
+     * @param nanos   the time the finder took, in nanoseconds
+     * @param found   true if the finder found something
+     */
+    public void record(Finder finder, long nanos, boolean found) {
+        final FinderStatistics finderStatistics = finderStatisticsMap.get(finder);
+        finderStatistics.nanos.addAndGet(nanos);
+        if (found) {
+            finderStatistics.hits.incrementAndGet();
+        }
+    }
+
+    /**
+     * Counts a checked value, recomputing the order of the finders when it is time to do so
+     */
+    public void valueChecked() {
+        if (valueCount.incrementAndGet() % reorderInterval == 0) {
+            reorder();
+        }
+    }
+
+    @VisibleForTesting
+    synchronized void reorder() {
+        final Map<Finder, Double> costs = new IdentityHashMap<>();
+        for (final Map.Entry<Finder, FinderStatistics> entry : finderStatisticsMap.entrySet()) {
+            costs.put(entry.getKey(), entry.getValue().getCostPerDetection());
+        }
+        final Iterator<List<Finder>> runs = reorderableRuns.iterator();
+        final List<Finder> newOrder = new ArrayList<>(originalOrder.size());
+        addSorted(newOrder, runs.next(), costs);
+        for (final Finder finder : originalOrder) {
+            if (mandatoryFinders.contains(finder)) {
+                newOrder.add(finder);
+                addSorted(newOrder, runs.next(), costs);
+            }
+        }
+        currentOrder = Collections.unmodifiableList(newOrder);
+    }
+
+    private static void addSorted(List<Finder> newOrder, List<Finder> run, Map<Finder, Double> costs) {
+        final List<Finder> sortedRun = new ArrayList<>(run);
+        sortedRun.sort((finder1, finder2) -> Double.compare(costs.get(finder1), costs.get(finder2)));
+        newOrder.addAll(sortedRun);
+    }
+
+    private static class FinderStatistics {
+        private final AtomicLong nanos = new AtomicLong(0);
+        private final AtomicLong hits = new AtomicLong(0);
+
+        /**
+         * Smooths the hit count so that finders that have never found anything are still ordered by their cost
+         */
+        private double getCostPerDetection() {
+            return nanos.get() / (hits.get() + 1.0);
+        }
+    }
+}
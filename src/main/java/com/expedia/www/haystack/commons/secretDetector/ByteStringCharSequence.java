@@ -0,0 +1,60 @@
+/*
+ * Copyright 2018 Expedia, Inc.
+ *
+ *       Licensed under the Apache License, Version 2.0 (the "License");
+ *       you may not use this file except in compliance with the License.
+ *       You may obtain a copy of the License at
+ *
+ *           http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *       Unless required by applicable law or agreed to in writing, software
+ *       distributed under the License is distributed on an "AS IS" BASIS,
+ *       WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *       See the License for the specific language governing permissions and
+ *       limitations under the License.
+ *
+ */
+package com.expedia.www.haystack.commons.secretDetector;
+
+import com.google.protobuf.ByteString;
+
+/**
+ * A view of the bytes in a protobuf ByteString as chars, one char per byte, so that regular expressions can scan UTF-8
+ * content without copying or decoding it. The view is only faithful to the UTF-8 content when every byte is ASCII
+ * (see {@link ValueProfile#isAscii()}). The String is decoded, once, only when toString() is called, which
+ * {@link HaystackFinderEngine} does only when a finder has to report what it found.
+ */
+@SuppressWarnings("WeakerAccess")
+public class ByteStringCharSequence implements CharSequence {
+    private static final int BYTE_MASK = 0xFF;
+
+    private final ByteString byteString;
+    private String string;
+
+    public ByteStringCharSequence(ByteString byteString) {
+        this.byteString = byteString;
+    }
+
+    @Override
+    public int length() {
+        return byteString.size();
+    }
+
+    @Override
+    public char charAt(int index) {
+        return (char) (byteString.byteAt(index) & BYTE_MASK);
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return new ByteStringCharSequence(byteString.substring(start, end));
+    }
+
+    @Override
+    public String toString() {
+        if (string == null) {
+            string = byteString.toStringUtf8();
+        }
+        return string;
+    }
+}
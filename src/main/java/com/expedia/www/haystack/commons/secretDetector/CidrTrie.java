@@ -0,0 +1,176 @@
+/*
+ * Copyright 2018 Expedia, Inc.
+ *
+ *       Licensed under the Apache License, Version 2.0 (the "License");
+ *       you may not use this file except in compliance with the License.
+ *       You may obtain a copy of the License at
+ *
+ *           http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *       Unless required by applicable law or agreed to in writing, software
+ *       distributed under the License is distributed on an "AS IS" BASIS,
+ *       WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *       See the License for the specific language governing permissions and
+ *       limitations under the License.
+ *
+ */
+package com.expedia.www.haystack.commons.secretDetector;
+
+import java.util.List;
+
+/**
+ * A binary trie of CIDR ranges of IP V4 addresses (such as 10.0.0.0/8) or of IP V6 addresses (such as fc00::/7): each
+ * node stands for a prefix of an address, its children for that prefix followed by a 0 bit or a 1 bit, and the nodes
+ * at the end of the prefix of a range are marked. Addresses are keys of 128 bits, IP V4 addresses being stored in the
+ * top 32 bits, so deciding whether an address is in one of the ranges walks at most 32 nodes for an IP V4 address or
+ * 128 nodes for an IP V6 address, one for each bit of the address, and allocates nothing.
+ */
+class CidrTrie {
+    static final String INVALID_IP_V4_RANGE_MSG = "[%s] is not a CIDR range of IP V4 addresses, such as 10.0.0.0/8";
+    static final String INVALID_IP_V6_RANGE_MSG = "[%s] is not a CIDR range of IP V6 addresses, such as fc00::/7";
+    private static final int BITS_PER_IP_V4_ADDRESS = 32;
+    private static final int BITS_PER_IP_V6_ADDRESS = 128;
+    private static final long IP_V4_ADDRESS_MASK = 0xFFFFFFFFL;
+    private static final int NO_CHILD = 0; // the root, which is node 0, is nobody's child
+    private static final int ROOT = 0;
+
+    private final int[] zeroChildren;
+    private final int[] oneChildren;
+    private final boolean[] isRangeEnd;
+    private int nodeCount;
+
+    private CidrTrie(long[] highs, long[] lows, int[] prefixLengths) {
+        int maximumNodeCount = 1;
+        for (final int prefixLength : prefixLengths) {
+            maximumNodeCount += prefixLength;
+        }
+        zeroChildren = new int[maximumNodeCount];
+        oneChildren = new int[maximumNodeCount];
+        isRangeEnd = new boolean[maximumNodeCount];
+        nodeCount = 1;
+        for (int index = 0; index < prefixLengths.length; index++) {
+            add(highs[index], lows[index], prefixLengths[index]);
+        }
+    }
+
+    /**
+     * Creates a CidrTrie of IP V4 addresses
+     *
+     * @param cidrRanges the ranges, such as 10.0.0.0/8; an address without a prefix length, such as 10.1.2.3, is a
+     *                   range of one address; the bits of the address beyond the prefix length are ignored
+     * @return the trie, whose {@link #contains(int)} method decides whether an address is in one of the ranges
+     * @throws IllegalArgumentException if a range is not a CIDR range of IP V4 addresses
+     */
+    static CidrTrie createIpV4Trie(List<String> cidrRanges) {
+        final long[] highs = new long[cidrRanges.size()];
+        final int[] prefixLengths = new int[cidrRanges.size()];
+        for (int index = 0; index < cidrRanges.size(); index++) {
+            final String cidrRange = cidrRanges.get(index);
+            final int slash = cidrRange.indexOf('/');
+            final long address = IpV4AddressParser.parse(cidrRange, 0, getAddressEnd(cidrRange, slash));
+            final int prefixLength = getPrefixLength(cidrRange, slash, BITS_PER_IP_V4_ADDRESS);
+            if (address == IpV4AddressParser.NOT_AN_ADDRESS || prefixLength < 0) {
+                throw new IllegalArgumentException(String.format(INVALID_IP_V4_RANGE_MSG, cidrRange));
+            }
+            highs[index] = toHigh((int) address);
+            prefixLengths[index] = prefixLength;
+        }
+        return new CidrTrie(highs, new long[cidrRanges.size()], prefixLengths);
+    }
+
+    /**
+     * Creates a CidrTrie of IP V6 addresses
+     *
+     * @param cidrRanges the ranges, such as fc00::/7; an address without a prefix length, such as ::1, is a range of
+     *                   one address; the bits of the address beyond the prefix length are ignored
+     * @return the trie, whose {@link #contains(long, long)} method decides whether an address is in one of the ranges
+     * @throws IllegalArgumentException if a range is not a CIDR range of IP V6 addresses
+     */
+    static CidrTrie createIpV6Trie(List<String> cidrRanges) {
+        final long[] highs = new long[cidrRanges.size()];
+        final long[] lows = new long[cidrRanges.size()];
+        final int[] prefixLengths = new int[cidrRanges.size()];
+        final long[] address = new long[IpV6AddressParser.LONGS_PER_ADDRESS];
+        for (int index = 0; index < cidrRanges.size(); index++) {
+            final String cidrRange = cidrRanges.get(index);
+            final int slash = cidrRange.indexOf('/');
+            final int prefixLength = getPrefixLength(cidrRange, slash, BITS_PER_IP_V6_ADDRESS);
+            if (!IpV6AddressParser.parse(cidrRange, 0, getAddressEnd(cidrRange, slash), address) || prefixLength < 0) {
+                throw new IllegalArgumentException(String.format(INVALID_IP_V6_RANGE_MSG, cidrRange));
+            }
+            highs[index] = address[IpV6AddressParser.HIGH];
+            lows[index] = address[IpV6AddressParser.LOW];
+            prefixLengths[index] = prefixLength;
+        }
+        return new CidrTrie(highs, lows, prefixLengths);
+    }
+
+    private static int getAddressEnd(String cidrRange, int slash) {
+        return (slash < 0) ? cidrRange.length() : slash;
+    }
+
+    /**
+     * @return the prefix length of the range, bitsPerAddress when it has none, or -1 when it is not a valid one
+     */
+    private static int getPrefixLength(String cidrRange, int slash, int bitsPerAddress) {
+        if (slash < 0) {
+            return bitsPerAddress;
+        }
+        try {
+            final int prefixLength = Integer.parseInt(cidrRange.substring(slash + 1));
+            return (prefixLength > bitsPerAddress) ? -1 : prefixLength;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static long toHigh(int ipV4Address) {
+        return (ipV4Address & IP_V4_ADDRESS_MASK) << BITS_PER_IP_V4_ADDRESS;
+    }
+
+    private void add(long high, long low, int prefixLength) {
+        int node = ROOT;
+        for (int bit = 0; bit < prefixLength; bit++) {
+            final int[] children = isBitSet(high, low, bit) ? oneChildren : zeroChildren;
+            if (children[node] == NO_CHILD) {
+                children[node] = nodeCount++;
+            }
+            node = children[node];
+        }
+        isRangeEnd[node] = true;
+    }
+
+    /**
+     * Decides whether an IP V4 address is in one of the ranges of a trie created by {@link #createIpV4Trie(List)}
+     *
+     * @param address the address, 10.0.0.1 being 0x0A000001
+     * @return true if the address is in at least one of the ranges
+     */
+    boolean contains(int address) {
+        return contains(toHigh(address), 0);
+    }
+
+    /**
+     * Decides whether an IP V6 address is in one of the ranges of a trie created by {@link #createIpV6Trie(List)}
+     *
+     * @param high the high 64 bits of the address
+     * @param low  the low 64 bits of the address
+     * @return true if the address is in at least one of the ranges
+     */
+    boolean contains(long high, long low) {
+        int node = ROOT;
+        // The deepest nodes, 32 or 128 bits deep, are those of ranges of one address, which are range ends
+        for (int bit = 0; !isRangeEnd[node]; bit++) {
+            node = isBitSet(high, low, bit) ? oneChildren[node] : zeroChildren[node];
+            if (node == NO_CHILD) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isBitSet(long high, long low, int bit) {
+        final long bits = (bit < Long.SIZE) ? (high << bit) : (low << (bit - Long.SIZE));
+        return (bits & Long.MIN_VALUE) != 0;
+    }
+}
@@ -16,27 +16,103 @@
  */
 package com.expedia.www.haystack.commons.secretDetector;
 
+import java.io.Closeable;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 
 @SuppressWarnings("AbstractClassWithoutAbstractMethods")
-public abstract class DetectorBase {
+public abstract class DetectorBase implements Closeable {
     protected final HaystackFinderEngine haystackFinderEngine;
     protected final S3ConfigFetcherBase s3ConfigFetcher;
+    private final FinderEngineRegistry finderEngineRegistry;
+    private boolean isClosed;
 
+    /**
+     * Creates a detector that uses an engine and a fetcher owned by the caller, who may share them with other
+     * detectors; close() neither closes the fetcher nor releases the engine
+     *
+     * @param haystackFinderEngine the engine that finds the secrets
+     * @param s3ConfigFetcher      fetches the white list
+     */
     protected DetectorBase(HaystackFinderEngine haystackFinderEngine, S3ConfigFetcherBase s3ConfigFetcher) {
+        this(haystackFinderEngine, s3ConfigFetcher, null);
+    }
+
+    /**
+     * Creates a detector that owns its fetcher and the engine it acquired from a registry (unless the registry is
+     * null); close() closes the fetcher and releases the engine to the registry
+     *
+     * @param haystackFinderEngine the engine that finds the secrets
+     * @param s3ConfigFetcher      fetches the white list; created for this detector alone
+     * @param finderEngineRegistry the registry from which the engine was acquired; null when the caller owns the
+     *                             engine and the fetcher
+     */
+    protected DetectorBase(HaystackFinderEngine haystackFinderEngine,
+                           S3ConfigFetcherBase s3ConfigFetcher,
+                           FinderEngineRegistry finderEngineRegistry) {
         this.haystackFinderEngine = haystackFinderEngine;
         this.s3ConfigFetcher = s3ConfigFetcher;
+        this.finderEngineRegistry = finderEngineRegistry;
+    }
+
+    /**
+     * Releases what the detector owns: when it created its S3ConfigFetcherBase and acquired its HaystackFinderEngine
+     * from a FinderEngineRegistry, closes the fetcher, so that its white list is no longer refreshed and the shared
+     * refresh thread lets go of it, and releases the engine. A fetcher or engine passed in by the caller is left
+     * alone, since other detectors may share it. Call it when the detector is no longer needed; only the first call
+     * has any effect.
+     */
+    @Override
+    public synchronized void close() {
+        if (isClosed) {
+            return;
+        }
+        isClosed = true;
+        if (finderEngineRegistry != null) {
+            s3ConfigFetcher.close();
+            finderEngineRegistry.release(haystackFinderEngine);
+        }
     }
 
+    /**
+     * Puts a key into the lists of keys of secrets of the finders that found secrets in its value
+     *
+     * @param mapOfTypeToKeysOfSecrets          the map of finder name to keys of secrets to add the key to
+     * @param key                               the key of the value that was checked
+     * @param mapOfTypeToKeysOfSecretsJustFound the secrets found in the value, by finder name
+     * @deprecated use a {@link KeysOfSecretsSink} with {@link HaystackFinderEngine#findSecrets(String, SecretSink)},
+     * which does not build a map of the secrets found in each value
+     */
+    @Deprecated
     protected static void putKeysOfSecretsIntoMap(Map<String, List<String>> mapOfTypeToKeysOfSecrets,
                                                   String key,
                                                   Map<String, List<String>> mapOfTypeToKeysOfSecretsJustFound) {
         for (final String finderName : mapOfTypeToKeysOfSecretsJustFound.keySet()) {
-            mapOfTypeToKeysOfSecrets.computeIfAbsent(finderName, (list -> new ArrayList<>())).add(key);
+            addKeyOfSecret(mapOfTypeToKeysOfSecrets, finderName, key);
         }
     }
 
+    private static void addKeyOfSecret(Map<String, List<String>> mapOfTypeToKeysOfSecrets,
+                                       String finderName,
+                                       String key) {
+        mapOfTypeToKeysOfSecrets.computeIfAbsent(finderName, (list -> new ArrayList<>())).add(key);
+    }
+
+    /**
+     * A SecretSink that puts the key (tag key, JSON path, XML path, etc.) of each value in which secrets are found into
+     * a map of finder name to keys of secrets. Create one per object being checked, and reuse it for all the values in
+     * the object.
+     */
+    public abstract static class KeysOfSecretsSink implements SecretSink {
+        protected final Map<String, List<String>> mapOfTypeToKeysOfSecrets;
+
+        protected KeysOfSecretsSink(Map<String, List<String>> mapOfTypeToKeysOfSecrets) {
+            this.mapOfTypeToKeysOfSecrets = mapOfTypeToKeysOfSecrets;
+        }
 
+        protected void putKeyOfSecretIntoMap(String finderName, String key) {
+            addKeyOfSecret(mapOfTypeToKeysOfSecrets, finderName, key);
+        }
+    }
 }
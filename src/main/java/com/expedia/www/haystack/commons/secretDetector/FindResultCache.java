@@ -0,0 +1,193 @@
+/*
+ * Copyright 2018 Expedia, Inc.
+ *
+ *       Licensed under the Apache License, Version 2.0 (the "License");
+ *       you may not use this file except in compliance with the License.
+ *       You may obtain a copy of the License at
+ *
+ *           http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *       Unless required by applicable law or agreed to in writing, software
+ *       distributed under the License is distributed on an "AS IS" BASIS,
+ *       WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *       See the License for the specific language governing permissions and
+ *       limitations under the License.
+ *
+ */
+package com.expedia.www.haystack.commons.secretDetector;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.protobuf.ByteString;
+import com.netflix.servo.monitor.Counter;
+import com.netflix.servo.util.VisibleForTesting;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded cache of the values in which {@link HaystackFinderEngine} found no secrets. Tag values repeat constantly
+ * (user agents, URLs, status strings, host names), and almost none of them contain secrets, so remembering that a value
+ * is clean saves running every finder on it again. To never keep secrets in memory, the cache stores only the SHA-256
+ * fingerprints of clean values; values in which a secret was found are not cached at all, and are checked by the
+ * finders every time they are seen.
+ * <p>
+ * Values are admitted to the cache only once a small frequency sketch has seen them at least
+ * {@link #ADMISSION_FREQUENCY} times, so that values that are seen only once (IDs, timestamps, etc.) do not evict the
+ * values that repeat; the sketch halves its counts periodically so that it follows changes in the traffic.
+ */
+@SuppressWarnings("WeakerAccess")
+public class FindResultCache {
+    @VisibleForTesting
+    static final int ESTIMATED_BYTES_PER_ENTRY = 128; // SHA-256 HashCode plus the cache's own entry
+    @VisibleForTesting
+    static final int ADMISSION_FREQUENCY = 2;
+    @VisibleForTesting
+    static final String HITS_COUNTER_NAME = "CACHE_HITS";
+    @VisibleForTesting
+    static final String MISSES_COUNTER_NAME = "CACHE_MISSES";
+    @VisibleForTesting
+    static final int SCRATCH_BUFFER_BYTES = 4096;
+    private static final HashFunction HASH_FUNCTION = Hashing.sha256();
+    private static final ThreadLocal<byte[]> SCRATCH_BUFFERS =
+            ThreadLocal.withInitial(() -> new byte[SCRATCH_BUFFER_BYTES]);
+
+    private final Cache<HashCode, Boolean> cache;
+    private final FrequencySketch frequencySketch;
+    private final Counter hitsCounter;
+    private final Counter missesCounter;
+
+    /**
+     * Creates a FindResultCache
+     *
+     * @param budgetBytes   the approximate number of bytes the cache may use; must be at least
+     *                      {@link #ESTIMATED_BYTES_PER_ENTRY}
+     * @param hitsCounter   counts the values found in the cache
+     * @param missesCounter counts the values not found in the cache
+     */
+    public FindResultCache(int budgetBytes, Counter hitsCounter, Counter missesCounter) {
+        final int maximumSize = Math.max(1, budgetBytes / ESTIMATED_BYTES_PER_ENTRY);
+        this.cache = CacheBuilder.newBuilder().maximumSize(maximumSize).build();
+        this.frequencySketch = new FrequencySketch(maximumSize);
+        this.hitsCounter = hitsCounter;
+        this.missesCounter = missesCounter;
+    }
+
+    /**
+     * Computes the fingerprint under which a value is cached
+     *
+     * @param input the value
+     * @return the SHA-256 hash of the value
+     */
+    public HashCode fingerprint(String input) {
+        return HASH_FUNCTION.hashString(input, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Computes the fingerprint under which UTF-8 content is cached, copying it through a reused buffer rather than
+     * materializing it as a byte array or String; the fingerprint equals that of the decoded String.
+     *
+     * @param input the UTF-8 content of the value
+     * @return the SHA-256 hash of the value
+     */
+    public HashCode fingerprint(ByteString input) {
+        final Hasher hasher = HASH_FUNCTION.newHasher();
+        final byte[] scratchBuffer = SCRATCH_BUFFERS.get();
+        for (int offset = 0; offset < input.size(); offset += scratchBuffer.length) {
+            final int length = Math.min(scratchBuffer.length, input.size() - offset);
+            input.copyTo(scratchBuffer, offset, 0, length);
+            hasher.putBytes(scratchBuffer, 0, length);
+        }
+        return hasher.hash();
+    }
+
+    /**
+     * Checks the cache for a value, counting a hit or a miss
+     *
+     * @param fingerprint the fingerprint of the value
+     * @return true if the value is known to contain no secrets
+     */
+    public boolean isKnownToHaveNoSecrets(HashCode fingerprint) {
+        if (cache.getIfPresent(fingerprint) != null) {
+            hitsCounter.increment();
+            return true;
+        }
+        missesCounter.increment();
+        return false;
+    }
+
+    /**
+     * Records that the finders found no secrets in a value, caching the value if it has been seen often enough
+     *
+     * @param fingerprint the fingerprint of the value
+     */
+    public void recordNoSecrets(HashCode fingerprint) {
+        if (frequencySketch.increment(fingerprint) >= ADMISSION_FREQUENCY) {
+            cache.put(fingerprint, Boolean.TRUE);
+        }
+    }
+
+    @VisibleForTesting
+    long size() {
+        return cache.size();
+    }
+
+    /**
+     * Estimates how often fingerprints have been seen with a count-min sketch whose counts stop at 15; every
+     * {@link #SAMPLE_SIZE_MULTIPLIER} * width increments, all the counts are halved.
+     */
+    @VisibleForTesting
+    static class FrequencySketch {
+        @VisibleForTesting
+        static final int SAMPLE_SIZE_MULTIPLIER = 10;
+        private static final int MAXIMUM_COUNT = 15;
+        private static final int DEPTH = 4;
+
+        private final AtomicIntegerArray counts;
+        private final int mask;
+        private final long sampleSize;
+        private final AtomicLong incrementCount = new AtomicLong(0);
+
+        FrequencySketch(int maximumSize) {
+            final int width = Integer.highestOneBit(Math.max(2, maximumSize - 1)) << 1;
+            this.counts = new AtomicIntegerArray(width);
+            this.mask = width - 1;
+            this.sampleSize = (long) SAMPLE_SIZE_MULTIPLIER * width;
+        }
+
+        /**
+         * Counts one more occurrence of a fingerprint
+         *
+         * @param fingerprint the fingerprint seen
+         * @return the estimated number of times the fingerprint has been seen, including this time
+         */
+        int increment(HashCode fingerprint) {
+            // The row indexes are derived from the first 64 bits of the fingerprint by double hashing, without copying
+            // its bytes; the step is odd so that, the width being a power of 2, the rows never share a count
+            final long bits = fingerprint.padToLong();
+            final int start = (int) bits;
+            final int step = (int) (bits >>> Integer.SIZE) | 1;
+            int estimate = MAXIMUM_COUNT;
+            for (int row = 0; row < DEPTH; row++) {
+                final int index = (start + row * step) & mask;
+                final int count = counts.updateAndGet(index, c -> Math.min(MAXIMUM_COUNT, c + 1));
+                estimate = Math.min(estimate, count);
+            }
+            if (incrementCount.incrementAndGet() % sampleSize == 0) {
+                halve();
+            }
+            return estimate;
+        }
+
+        private void halve() {
+            for (int index = 0; index < counts.length(); index++) {
+                counts.updateAndGet(index, c -> c >>> 1);
+            }
+        }
+    }
+}
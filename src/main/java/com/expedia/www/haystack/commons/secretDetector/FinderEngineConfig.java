@@ -0,0 +1,62 @@
+/*
+ * Copyright 2018 Expedia, Inc.
+ *
+ *       Licensed under the Apache License, Version 2.0 (the "License");
+ *       you may not use this file except in compliance with the License.
+ *       You may obtain a copy of the License at
+ *
+ *           http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *       Unless required by applicable law or agreed to in writing, software
+ *       distributed under the License is distributed on an "AS IS" BASIS,
+ *       WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *       See the License for the specific language governing permissions and
+ *       limitations under the License.
+ *
+ */
+package com.expedia.www.haystack.commons.secretDetector;
+
+/**
+ * Optional behaviors of {@link HaystackFinderEngine}; all of them are off when the engine is created without a config.
+ */
+public interface FinderEngineConfig {
+    /**
+     * @return true to check the patterns of all the RegexFinder objects in a single walk of the value before running
+     * them individually; see {@link RegexFinderUnion}
+     */
+    boolean combineRegexFinders();
+
+    /**
+     * @return true to periodically reorder the finders by their cost per detection; see {@link AdaptiveFinderOrder}
+     */
+    boolean orderFindersAdaptively();
+
+    /**
+     * @return the number of values to check between reorderings of the finders, when ordering them adaptively
+     */
+    int adaptiveOrderingInterval();
+
+    /**
+     * @return a comma separated list of the names of the finders that keep their positions when ordering the finders
+     * adaptively
+     */
+    String mandatoryFinders();
+
+    /**
+     * @return the approximate number of bytes to use for caching the values known to contain no secrets; 0 turns the
+     * cache off; see {@link FindResultCache}
+     */
+    int resultCacheBytes();
+
+    /**
+     * @return a comma separated list of the CIDR ranges (such as 10.0.0.0/8) of the IP V4 addresses that
+     * {@link NonLocalIpV4AddressFinder} ignores; empty for {@link NonLocalIpV4AddressFinder#DEFAULT_EXCLUDED_RANGES}
+     */
+    String excludedIpV4Ranges();
+
+    /**
+     * @return a comma separated list of the CIDR ranges (such as fc00::/7) of the IP V6 addresses that
+     * {@link NonLocalIpV6AddressFinder} ignores; empty for {@link NonLocalIpV6AddressFinder#DEFAULT_EXCLUDED_RANGES}
+     */
+    String excludedIpV6Ranges();
+}
@@ -0,0 +1,191 @@
+/*
+ * Copyright 2018 Expedia, Inc.
+ *
+ *       Licensed under the Apache License, Version 2.0 (the "License");
+ *       you may not use this file except in compliance with the License.
+ *       You may obtain a copy of the License at
+ *
+ *           http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *       Unless required by applicable law or agreed to in writing, software
+ *       distributed under the License is distributed on an "AS IS" BASIS,
+ *       WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *       See the License for the specific language governing permissions and
+ *       limitations under the License.
+ *
+ */
+package com.expedia.www.haystack.commons.secretDetector;
+
+import com.expedia.www.haystack.metrics.MetricObjects;
+import com.netflix.servo.monitor.Counter;
+import com.netflix.servo.monitor.Timer;
+import com.netflix.servo.util.VisibleForTesting;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Shares HaystackFinderEngine objects among the detectors and maskers of a process, one engine per subsystem,
+ * application and FinderEngineConfig, so that an application that uses several of them holds one set of finders and
+ * one set of finder timers instead of one per detector. An engine is thread safe, so it can be shared by any number
+ * of threads. Engines are reference counted: each call to acquire() must be matched by a call to release() when the
+ * engine is no longer needed, and the registry forgets an engine when its last reference is released, so that the next
+ * call to acquire() creates a new one. The engines of a registry create their timers and counters through one
+ * {@link CachingMetricObjects}, so an engine created after the last reference to an earlier one was released reuses
+ * the timers of the earlier engine instead of registering them again. The convenience constructors of the detectors
+ * and maskers acquire their engines from {@link #getInstance()} and release them when the detectors and maskers are
+ * closed.
+ */
+@SuppressWarnings("WeakerAccess")
+public class FinderEngineRegistry {
+    static final String NOT_ACQUIRED_MSG = "The HaystackFinderEngine was not acquired from this FinderEngineRegistry";
+    private static final FinderEngineRegistry INSTANCE = new FinderEngineRegistry(new Factory());
+
+    private final Factory factory;
+    private final MetricObjects metricObjects;
+    private final Map<List<Object>, Registration> registrationsByKey = new HashMap<>();
+    private final Map<HaystackFinderEngine, Registration> registrationsByEngine = new IdentityHashMap<>();
+
+    @VisibleForTesting
+    FinderEngineRegistry(Factory factory) {
+        this.factory = factory;
+        this.metricObjects = factory.createMetricObjects();
+    }
+
+    /**
+     * @return the registry shared by the whole process
+     */
+    public static FinderEngineRegistry getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Gets the engine of a subsystem and application that has no optional behaviors, creating it if no other reference
+     * to it is held
+     *
+     * @param subsystem   the subsystem to use in metric names
+     * @param application the application to use in metric names
+     * @return the engine, which must be passed to {@link #release(HaystackFinderEngine)} when it is no longer needed
+     */
+    public HaystackFinderEngine acquire(String subsystem, String application) {
+        return acquire(subsystem, application, null);
+    }
+
+    /**
+     * Gets the engine of a subsystem, application and FinderEngineConfig, creating it if no other reference to it is
+     * held. Configs are compared with equals(), so unless the FinderEngineConfig implementation overrides it, only
+     * callers that pass the same FinderEngineConfig object share an engine.
+     *
+     * @param subsystem          the subsystem to use in metric names
+     * @param application        the application to use in metric names
+     * @param finderEngineConfig the optional behaviors of the engine; null for none
+     * @return the engine, which must be passed to {@link #release(HaystackFinderEngine)} when it is no longer needed
+     */
+    public synchronized HaystackFinderEngine acquire(String subsystem,
+                                                     String application,
+                                                     FinderEngineConfig finderEngineConfig) {
+        final List<Object> key = Arrays.asList(subsystem, application, finderEngineConfig);
+        Registration registration = registrationsByKey.get(key);
+        if (registration == null) {
+            registration = new Registration(key,
+                    factory.createHaystackFinderEngine(metricObjects, subsystem, application, finderEngineConfig));
+            registrationsByKey.put(key, registration);
+            registrationsByEngine.put(registration.haystackFinderEngine, registration);
+        }
+        registration.referenceCount++;
+        return registration.haystackFinderEngine;
+    }
+
+    /**
+     * Releases a reference to an engine
+     *
+     * @param haystackFinderEngine an engine returned by {@link #acquire(String, String, FinderEngineConfig)}
+     * @throws IllegalArgumentException if the engine was not acquired from this registry, or all of its references
+     *                                  have already been released
+     */
+    public synchronized void release(HaystackFinderEngine haystackFinderEngine) {
+        final Registration registration = registrationsByEngine.get(haystackFinderEngine);
+        if (registration == null) {
+            throw new IllegalArgumentException(NOT_ACQUIRED_MSG);
+        }
+        if (--registration.referenceCount == 0) {
+            registrationsByKey.remove(registration.key);
+            registrationsByEngine.remove(haystackFinderEngine);
+        }
+    }
+
+    /**
+     * @return the number of references held to the engine of a subsystem, application and FinderEngineConfig; 0 if it
+     * has none
+     */
+    @VisibleForTesting
+    synchronized int getReferenceCount(String subsystem, String application, FinderEngineConfig finderEngineConfig) {
+        final Registration registration =
+                registrationsByKey.get(Arrays.asList(subsystem, application, finderEngineConfig));
+        return (registration == null) ? 0 : registration.referenceCount;
+    }
+
+    private static class Registration {
+        private final List<Object> key;
+        private final HaystackFinderEngine haystackFinderEngine;
+        private int referenceCount;
+
+        private Registration(List<Object> key, HaystackFinderEngine haystackFinderEngine) {
+            this.key = key;
+            this.haystackFinderEngine = haystackFinderEngine;
+        }
+    }
+
+    /**
+     * A MetricObjects that creates and registers each basic timer and resetting counter once, and returns the same
+     * object whenever it is asked for it again, so that the engines that use it over the life of a registry share
+     * their timers and counters. Other kinds of metrics are created by the MetricObjects it wraps every time.
+     */
+    static class CachingMetricObjects extends MetricObjects {
+        private final MetricObjects metricObjects;
+        private final ConcurrentMap<List<Object>, Timer> timers = new ConcurrentHashMap<>();
+        private final ConcurrentMap<List<Object>, Counter> counters = new ConcurrentHashMap<>();
+
+        CachingMetricObjects(MetricObjects metricObjects) {
+            this.metricObjects = metricObjects;
+        }
+
+        @Override
+        public Timer createAndRegisterBasicTimer(String subsystem,
+                                                 String application,
+                                                 String klass,
+                                                 String timerName,
+                                                 TimeUnit timeUnit) {
+            return timers.computeIfAbsent(Arrays.asList(subsystem, application, klass, timerName, timeUnit),
+                    k -> metricObjects.createAndRegisterBasicTimer(subsystem, application, klass, timerName, timeUnit));
+        }
+
+        @Override
+        public Counter createAndRegisterResettingCounter(String subsystem,
+                                                         String application,
+                                                         String klass,
+                                                         String counterName) {
+            return counters.computeIfAbsent(Arrays.asList(subsystem, application, klass, counterName),
+                    k -> metricObjects.createAndRegisterResettingCounter(subsystem, application, klass, counterName));
+        }
+    }
+
+    static class Factory {
+        MetricObjects createMetricObjects() {
+            return new CachingMetricObjects(new MetricObjects());
+        }
+
+        HaystackFinderEngine createHaystackFinderEngine(MetricObjects metricObjects,
+                                                        String subsystem,
+                                                        String application,
+                                                        FinderEngineConfig finderEngineConfig) {
+            return new HaystackFinderEngine(metricObjects, subsystem, application, finderEngineConfig);
+        }
+    }
+}
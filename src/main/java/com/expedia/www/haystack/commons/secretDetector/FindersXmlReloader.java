@@ -0,0 +1,257 @@
+/*
+ * Copyright 2018 Expedia, Inc.
+ *
+ *       Licensed under the Apache License, Version 2.0 (the "License");
+ *       you may not use this file except in compliance with the License.
+ *       You may obtain a copy of the License at
+ *
+ *           http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *       Unless required by applicable law or agreed to in writing, software
+ *       distributed under the License is distributed on an "AS IS" BASIS,
+ *       WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *       See the License for the specific language governing permissions and
+ *       limitations under the License.
+ *
+ */
+package com.expedia.www.haystack.commons.secretDetector;
+
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.S3Object;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteStreams;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.netflix.servo.util.VisibleForTesting;
+import io.dataapps.chlorine.finder.Finder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xml.sax.SAXException;
+
+import javax.xml.parsers.ParserConfigurationException;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+/**
+ * Polls a file in the format of finders_default.xml, in S3 or on the local file system, and replaces the finders of a
+ * HaystackFinderEngine whenever the content of the file changes, so that patterns can be added and regions enabled
+ * without redeploying the applications that use the engine. The file is read, parsed and compiled on a background
+ * thread, and the engine swaps the new finders in atomically (see
+ * {@link HaystackFinderEngine#replaceFinders(List)}), so the threads looking for secrets never wait for a reload.
+ * A file that cannot be read or parsed, or that has no enabled finders, is logged and the current finders are kept.
+ */
+@SuppressWarnings("WeakerAccess")
+public class FindersXmlReloader implements Closeable {
+    @VisibleForTesting
+    static final String RELOADED_MSG = "Reloaded %d finders from %s";
+    @VisibleForTesting
+    static final String NO_FINDERS_MSG = "No enabled finders in %s; keeping the current finders";
+    @VisibleForTesting
+    static final String RELOAD_PROBLEM_MSG = "Problem reloading the finders from %s; keeping the current finders";
+    private static final String THREAD_NAME_FORMAT = "finders-xml-reloader-%d";
+
+    private final HaystackFinderEngine haystackFinderEngine;
+    private final Source source;
+    private final long periodMillis;
+    private final Logger logger;
+    private final Factory factory;
+    private HashCode lastContentHash;
+    private ScheduledExecutorService scheduledExecutorService;
+
+    /**
+     * Creates a FindersXmlReloader; nothing is read until {@link #start()} is called
+     *
+     * @param haystackFinderEngine the engine whose finders are replaced
+     * @param source               where to read the file from, e.g. {@link #s3(AmazonS3, String, String)}
+     * @param periodMillis         the delay between the end of one poll and the start of the next
+     */
+    public FindersXmlReloader(HaystackFinderEngine haystackFinderEngine, Source source, long periodMillis) {
+        this(haystackFinderEngine, source, periodMillis, LoggerFactory.getLogger(FindersXmlReloader.class),
+                new Factory());
+    }
+
+    @VisibleForTesting
+    FindersXmlReloader(HaystackFinderEngine haystackFinderEngine,
+                       Source source,
+                       long periodMillis,
+                       Logger logger,
+                       Factory factory) {
+        this.haystackFinderEngine = haystackFinderEngine;
+        this.source = source;
+        this.periodMillis = periodMillis;
+        this.logger = logger;
+        this.factory = factory;
+    }
+
+    /**
+     * Starts polling on a daemon thread, reading the file immediately; does nothing if polling has already started
+     */
+    public synchronized void start() {
+        if (scheduledExecutorService == null) {
+            scheduledExecutorService = factory.createScheduledExecutorService();
+            scheduledExecutorService.scheduleWithFixedDelay(this::reload, 0L, periodMillis, MILLISECONDS);
+        }
+    }
+
+    /**
+     * Stops polling; the engine keeps the finders that it has
+     */
+    @Override
+    public synchronized void close() {
+        if (scheduledExecutorService != null) {
+            scheduledExecutorService.shutdownNow();
+            scheduledExecutorService = null;
+        }
+    }
+
+    /**
+     * Reads the file and replaces the engine's finders if the content has changed since the last successful reload
+     *
+     * @return true if the finders were replaced
+     */
+    @VisibleForTesting
+    synchronized boolean reload() {
+        try {
+            final byte[] content;
+            try (final InputStream in = source.openStream()) {
+                if (in == null) {
+                    return false;
+                }
+                content = ByteStreams.toByteArray(in);
+            }
+            final HashCode contentHash = Hashing.sha256().hashBytes(content);
+            if (contentHash.equals(lastContentHash)) {
+                return false;
+            }
+            final List<Finder> finders = HaystackFinderProvider.parseFinders(
+                    new ByteArrayInputStream(content), logger, factory.createHaystackFinderProviderFactory());
+            if (finders.isEmpty()) {
+                logger.error(String.format(NO_FINDERS_MSG, source));
+                return false;
+            }
+            haystackFinderEngine.replaceFinders(finders);
+            lastContentHash = contentHash;
+            logger.info(String.format(RELOADED_MSG, finders.size(), source));
+            return true;
+        } catch (IOException | SAXException | ParserConfigurationException | RuntimeException e) {
+            // Any exception escaping to the ScheduledExecutorService would cancel all further polls
+            logger.error(String.format(RELOAD_PROBLEM_MSG, source), e);
+            return false;
+        }
+    }
+
+    /**
+     * Creates a Source that reads an S3 object; after the first read, the object is only downloaded again when its
+     * ETag has changed
+     *
+     * @param amazonS3 the S3 client
+     * @param bucket   the bucket of the object
+     * @param key      the key of the object
+     * @return the Source
+     */
+    public static Source s3(AmazonS3 amazonS3, String bucket, String key) {
+        return new S3Source(amazonS3, bucket, key);
+    }
+
+    /**
+     * Creates a Source that reads a local file
+     *
+     * @param path the path of the file
+     * @return the Source
+     */
+    public static Source file(Path path) {
+        return new FileSource(path);
+    }
+
+    /**
+     * Where a FindersXmlReloader reads the file from; toString() should identify the file in log messages
+     */
+    @FunctionalInterface
+    public interface Source {
+        /**
+         * @return the content of the file, or null if the source knows that it has not changed since the last stream
+         * that it returned
+         * @throws IOException if the file cannot be read
+         */
+        InputStream openStream() throws IOException;
+    }
+
+    private static class S3Source implements Source {
+        private final AmazonS3 amazonS3;
+        private final String bucket;
+        private final String key;
+        private String eTag;
+
+        private S3Source(AmazonS3 amazonS3, String bucket, String key) {
+            this.amazonS3 = amazonS3;
+            this.bucket = bucket;
+            this.key = key;
+        }
+
+        /**
+         * Downloads the object with a conditional GET (If-None-Match with the ETag of the last download), as
+         * S3ConfigFetcherBase does, and closes it before returning its content
+         */
+        @Override
+        public synchronized InputStream openStream() throws IOException {
+            final GetObjectRequest getObjectRequest = new GetObjectRequest(bucket, key);
+            if (eTag != null) {
+                getObjectRequest.withNonmatchingETagConstraint(eTag);
+            }
+            try (final S3Object s3Object = amazonS3.getObject(getObjectRequest)) {
+                if (s3Object == null) {
+                    // S3 answered 304 Not Modified to the If-None-Match constraint
+                    return null;
+                }
+                final byte[] content = ByteStreams.toByteArray(s3Object.getObjectContent());
+                eTag = s3Object.getObjectMetadata().getETag();
+                return new ByteArrayInputStream(content);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "s3://" + bucket + '/' + key;
+        }
+    }
+
+    private static class FileSource implements Source {
+        private final Path path;
+
+        private FileSource(Path path) {
+            this.path = path;
+        }
+
+        @Override
+        public InputStream openStream() throws IOException {
+            return Files.newInputStream(path);
+        }
+
+        @Override
+        public String toString() {
+            return path.toString();
+        }
+    }
+
+    @SuppressWarnings("MethodMayBeStatic")
+    static class Factory {
+        ScheduledExecutorService createScheduledExecutorService() {
+            return Executors.newSingleThreadScheduledExecutor(
+                    new ThreadFactoryBuilder().setNameFormat(THREAD_NAME_FORMAT).setDaemon(true).build());
+        }
+
+        HaystackFinderProvider.Factory createHaystackFinderProviderFactory() {
+            return new HaystackFinderProvider.Factory();
+        }
+    }
+}
@@ -16,14 +16,22 @@
  */
 package com.expedia.www.haystack.commons.secretDetector;
 
-import io.dataapps.chlorine.finder.CompositeFinder;
-import io.dataapps.chlorine.finder.Finder;
-
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 
+/**
+ * Finds credit card numbers that are the entire value (or an entire line of it), with digit groups separated by single
+ * spaces or dashes, as the CompositeCreditCardFinder provided by chlorine-finder does but without regular expressions:
+ * each line of the value is walked once to count its digits and to note where its separators are, the layout and the
+ * first four digits are looked up in a table of issuer ranges, and only then is the Luhn check run. Nothing is
+ * allocated for a value that does not contain a credit card number. The regular expressions below describe the layouts
+ * that the table accepts; they were run by HaystackCreditCardFinder objects before the table replaced them.
+ */
 @SuppressWarnings("SameParameterValue")
-public class HaystackCompositeCreditCardFinder implements Finder {
+public class HaystackCompositeCreditCardFinder implements ProfiledFinder {
+    private static final String NAME = "Credit_Card";
     private static final String PERCENT_S = "%s";
     private static final String GROUP_SEPARATOR = "(\\ |\\-|)"; // space or dash or nothing
     private static final String THREE_GROUP_PATTERN = String.format("^%s%s%s%s%s$",
@@ -33,6 +41,7 @@ public class HaystackCompositeCreditCardFinder implements Finder {
     private static final String FOUR_DIGITS = "[0-9]{4}";
     private static final String FIVE_DIGITS = "[0-9]{5}";
     private static final String SIX_DIGITS = "[0-9]{6}";
+    static final int MINIMUM_DIGIT_COUNT = 14; // Diners Club; the other patterns need 15 or 16 digits
     private static final String MASTERCARD_PREFIX = "(?:5[1-5][0-9]{2}|222[1-9]|22[3-9][0-9]|2[3-6][0-9]{2}|27[01][0-9]|2720)";
 
     static final String MASTERCARD_PATTERN = build4(MASTERCARD_PREFIX, FOUR_DIGITS, FOUR_DIGITS, FOUR_DIGITS);
@@ -52,42 +61,167 @@ public class HaystackCompositeCreditCardFinder implements Finder {
         return String.format(FOUR_GROUP_PATTERN, s1, s2, s3, s4);
     }
 
-    private final CompositeFinder compositeFinder;
+    // The separators of a line are recorded as a bit mask, bit n being set when a separator follows the n-th digit
+    private static final int FOUR_FOUR_FOUR_FOUR_SEPARATORS = (1 << 4) | (1 << 8) | (1 << 12);
+    private static final int FOUR_SIX_N_SEPARATORS = (1 << 4) | (1 << 10);
+    private static final int NO_SEPARATORS = 0;
+    static final int PREFIX_DIGIT_COUNT = 4; // every layout starts with a group of at least four digits
+    private static final int MAXIMUM_SEPARATOR_COUNT = 3;
+    static final int MAXIMUM_CREDIT_CARD_NUMBER_LENGTH = 16 + MAXIMUM_SEPARATOR_COUNT;
 
-    HaystackCompositeCreditCardFinder(CompositeFinder compositeFinder) {
-        this.compositeFinder = compositeFinder;
-    }
+    // Digit count, lowest prefix, highest prefix and the separators allowed, sorted by descending digit count
+    private static final int[][] ISSUER_RANGES = {
+            {16, 2221, 2720, FOUR_FOUR_FOUR_FOUR_SEPARATORS}, // Mastercard
+            {16, 3000, 3999, FOUR_FOUR_FOUR_FOUR_SEPARATORS}, // JCB 1
+            {16, 4000, 4999, FOUR_FOUR_FOUR_FOUR_SEPARATORS}, // Visa
+            {16, 5100, 5599, FOUR_FOUR_FOUR_FOUR_SEPARATORS}, // Mastercard
+            {16, 6011, 6011, FOUR_FOUR_FOUR_FOUR_SEPARATORS}, // Discover
+            {15, 1800, 1800, NO_SEPARATORS}, // JCB 2
+            {15, 2131, 2131, NO_SEPARATORS}, // JCB 2
+            {15, 3400, 3499, FOUR_SIX_N_SEPARATORS}, // AMEX
+            {15, 3700, 3799, FOUR_SIX_N_SEPARATORS}, // AMEX
+            {14, 3000, 3059, FOUR_SIX_N_SEPARATORS}, // Diners Club 1
+            {14, 3600, 3699, FOUR_SIX_N_SEPARATORS}, // Diners Club 2
+            {14, 3800, 3899, FOUR_SIX_N_SEPARATORS}, // Diners Club 2
+    };
+    private static final int DIGIT_COUNT_COLUMN = 0;
+    private static final int LOWEST_PREFIX_COLUMN = 1;
+    private static final int HIGHEST_PREFIX_COLUMN = 2;
+    private static final int SEPARATORS_COLUMN = 3;
 
     /**
-     * Like the CompositeCreditCardFinder provided by chlorine-finder, but with a regular expression that insists
-     * that the value only matches if it is the entire tag value.
+     * Like the CompositeCreditCardFinder provided by chlorine-finder, but only finding a credit card number that is the
+     * entire tag value.
      */
     @SuppressWarnings("WeakerAccess")
     public HaystackCompositeCreditCardFinder() {
-        this(new CompositeFinder("Credit_Card"));
-        compositeFinder.add(new HaystackCreditCardFinder("Mastercard", MASTERCARD_PATTERN));
-        compositeFinder.add(new HaystackCreditCardFinder("Visa", VISA_PATTERN));
-        compositeFinder.add(new HaystackCreditCardFinder("AMEX", AMEX_PATTERN));
-        compositeFinder.add(new HaystackCreditCardFinder("Diners Club 1", DINERS_CLUB_1_PATTERN));
-        compositeFinder.add(new HaystackCreditCardFinder("Diners Club 2", DINERS_CLUB_2_PATTERN));
-        compositeFinder.add(new HaystackCreditCardFinder("Discover", DISCOVER_PATTERN));
-        compositeFinder.add(new HaystackCreditCardFinder("JCB 1", JCB_1_PATTERN));
-        compositeFinder.add(new HaystackCreditCardFinder("JCB 2", JCB_2_PATTERN));
+    }
+
+    @Override
+    public boolean canMatch(ValueProfile valueProfile) {
+        return valueProfile.getAsciiDigitCount() >= MINIMUM_DIGIT_COUNT;
     }
 
     @Override
     public List<String> find(Collection<String> inputs) {
-        return compositeFinder.find(inputs);
+        final List<String> matches = new ArrayList<>();
+        for (final String input : inputs) {
+            matches.addAll(find(input));
+        }
+        return matches;
     }
 
     @Override
     public List<String> find(String input) {
-        return compositeFinder.find(input);
+        return find((CharSequence) input);
+    }
+
+    /**
+     * Does what {@link #find(String)} does for any CharSequence, such as a {@link ByteStringCharSequence}; the input is
+     * only converted to a String when a credit card number is found in it.
+     *
+     * @param input the value to check
+     * @return the value, once for each of its lines that is a credit card number, if the value passes the Luhn check;
+     * otherwise an empty list
+     */
+    public List<String> find(CharSequence input) {
+        final int matchingLineCount = countCreditCardLines(input);
+        if (matchingLineCount == 0 || !passesLuhnCheck(input)) {
+            return Collections.emptyList();
+        }
+        final String match = input.toString();
+        final List<String> matches = new ArrayList<>(matchingLineCount);
+        for (int count = 0; count < matchingLineCount; count++) {
+            matches.add(match);
+        }
+        return matches;
     }
 
     @Override
     public String getName() {
-        return compositeFinder.getName();
+        return NAME;
     }
 
+    /**
+     * Counts the lines of the input that are credit card numbers; see {@link Lines}
+     */
+    private static int countCreditCardLines(CharSequence input) {
+        int count = 0;
+        int lineStart = 0;
+        while (lineStart <= input.length()) {
+            final int lineEnd = Lines.findEnd(input, lineStart);
+            if (isCreditCardLine(input, lineStart, lineEnd)) {
+                count++;
+            }
+            lineStart = Lines.findNextStart(input, lineEnd);
+        }
+        return count;
+    }
+
+    private static boolean isCreditCardLine(CharSequence input, int start, int end) {
+        if (end - start < MINIMUM_DIGIT_COUNT || end - start > MAXIMUM_CREDIT_CARD_NUMBER_LENGTH) {
+            return false;
+        }
+        int digitCount = 0;
+        int separators = 0;
+        int prefix = 0;
+        boolean isPreviousCharADigit = false;
+        for (int index = start; index < end; index++) {
+            final char c = input.charAt(index);
+            if (c >= '0' && c <= '9') {
+                if (digitCount < PREFIX_DIGIT_COUNT) {
+                    prefix = prefix * 10 + (c - '0');
+                }
+                digitCount++;
+                isPreviousCharADigit = true;
+            } else if ((c == ' ' || c == '-') && isPreviousCharADigit) {
+                separators |= 1 << digitCount;
+                isPreviousCharADigit = false;
+            } else {
+                return false;
+            }
+        }
+        return isPreviousCharADigit && isIssuerRange(digitCount, prefix, separators);
+    }
+
+    /**
+     * Decides whether the credit card numbers of some issuer have the given digit count, first digits and separators
+     *
+     * @param digitCount the number of digits
+     * @param prefix     the first four digits
+     * @param separators the positions of the separators, bit n being set when a separator follows the n-th digit
+     * @return true if the table of issuer ranges has a row for the digit count, prefix and separators
+     */
+    static boolean isIssuerRange(int digitCount, int prefix, int separators) {
+        for (final int[] issuerRange : ISSUER_RANGES) {
+            if (issuerRange[DIGIT_COUNT_COLUMN] == digitCount
+                    && prefix >= issuerRange[LOWEST_PREFIX_COLUMN]
+                    && prefix <= issuerRange[HIGHEST_PREFIX_COLUMN]
+                    && (separators & ~issuerRange[SEPARATORS_COLUMN]) == 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Runs the Luhn check over the whole input, as chlorine-finder's CreditCardFinder.postMatchCheck() does: the
+     * digits and periods are kept (a period counting as '.' - '0') and everything else is skipped.
+     */
+    private static boolean passesLuhnCheck(CharSequence input) {
+        int sum = 0;
+        int position = 0;
+        for (int index = input.length() - 1; index >= 0; index--) {
+            final char c = input.charAt(index);
+            if ((c >= '0' && c <= '9') || c == '.') {
+                int value = c - '0';
+                if (position % 2 == 1) {
+                    value *= 2;
+                }
+                sum += (value > 9) ? (value - 9) : value;
+                position++;
+            }
+        }
+        return sum % 10 == 0;
+    }
 }
@@ -16,44 +16,37 @@
  */
 package com.expedia.www.haystack.commons.secretDetector;
 
-import com.google.i18n.phonenumbers.NumberParseException;
 import com.google.i18n.phonenumbers.PhoneNumberUtil;
-import com.google.i18n.phonenumbers.Phonenumber.PhoneNumber;
 import com.netflix.servo.util.VisibleForTesting;
-import io.dataapps.chlorine.finder.Finder;
 
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
-import java.util.Collections;
 import java.util.List;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
+/**
+ * Finds phone numbers that are valid in any of the G7 countries, with one HaystackPhoneNumberFinder for all of them
+ */
 @SuppressWarnings("WeakerAccess")
-public class HaystackCompositePhoneNumberFinder implements Finder {
+public class HaystackCompositePhoneNumberFinder implements ProfiledFinder {
     @VisibleForTesting
     static final String FINDER_NAME = "Phone_Number";
-    private static final Pattern ALPHAS_PATTERN = Pattern.compile("[A-Za-z]+");
-    private static final Pattern ALL_NUMBERS_PATTERN = Pattern.compile("^\\d+$");
-    private final PhoneNumberUtil phoneNumberUtil;
-    private final List<String> regions = new ArrayList<>();
+    private final HaystackPhoneNumberFinder haystackPhoneNumberFinder;
 
     public HaystackCompositePhoneNumberFinder() {
         this(PhoneNumberUtil.getInstance());
     }
 
     public HaystackCompositePhoneNumberFinder(PhoneNumberUtil phoneNumberUtil) {
-        this.phoneNumberUtil = phoneNumberUtil;
-        regions.addAll(Arrays.asList(
+        haystackPhoneNumberFinder = new HaystackPhoneNumberFinder(phoneNumberUtil, Arrays.asList(
                 // G7 countries to start, we'll see how well this size of list performs
-                CldrRegion.CANADA.getRegionCode(),
-                CldrRegion.FRANCE.getRegionCode(),
-                CldrRegion.GERMANY.getRegionCode(),
-                CldrRegion.ITALY.getRegionCode(),
-                CldrRegion.JAPAN.getRegionCode(),
-                CldrRegion.UNITED_KINGDOM.getRegionCode(),
-                CldrRegion.UNITED_STATES.getRegionCode()
+                CldrRegion.CANADA,
+                CldrRegion.FRANCE,
+                CldrRegion.GERMANY,
+                CldrRegion.ITALY,
+                CldrRegion.JAPAN,
+                CldrRegion.UNITED_KINGDOM,
+                CldrRegion.UNITED_STATES
         ));
     }
 
@@ -63,6 +56,18 @@ public class HaystackCompositePhoneNumberFinder implements Finder {
         return FINDER_NAME;
     }
 
+    /**
+     * Values with letters and values that are nothing but digits are never checked (see find()), and without digits
+     * there is nothing for libphonenumber to parse.
+     *
+     * @param valueProfile the profile of the value
+     * @return false if the value cannot be a phone number
+     */
+    @Override
+    public boolean canMatch(ValueProfile valueProfile) {
+        return valueProfile.getDigitCount() > 0 && !valueProfile.hasAsciiLetters() && !valueProfile.isAllAsciiDigits();
+    }
+
     @Override
     public List<String> find(Collection<String> inputs) {
         final List<String> list = new ArrayList<>();
@@ -72,38 +77,8 @@ public class HaystackCompositePhoneNumberFinder implements Finder {
         return list;
     }
 
-    @SuppressWarnings("OverlyNestedMethod") // the nesting makes debugging easier
     @Override
     public List<String> find(String input) {
-        try {
-            if (!containsAnyAlphabeticCharacters(input)) {
-                if(isNotIpV4Address(input)) {
-                    if(!containsOnlyNumbers(input)) {
-                        for (final String region : regions) {
-                            final PhoneNumber phoneNumber = phoneNumberUtil.parseAndKeepRawInput(input, region);
-                            if (phoneNumberUtil.isValidNumberForRegion(phoneNumber, region)) {
-                                return Collections.singletonList(phoneNumber.getRawInput());
-                            }
-                        }
-                    }
-                }
-            }
-        } catch (NumberParseException e) {
-            // Just ignore, it's not a phone number
-        }
-        return Collections.emptyList();
-    }
-
-    private static boolean containsAnyAlphabeticCharacters(String input) {
-        final Matcher matcher = ALPHAS_PATTERN.matcher(input);
-        return matcher.find();
-    }
-
-    private static boolean isNotIpV4Address(String input) {
-        return NonLocalIpV4AddressFinder.IPV4_FINDER.find(input).isEmpty();
-    }
-
-    private static boolean containsOnlyNumbers(String input) {
-        return ALL_NUMBERS_PATTERN.matcher(input).find();
+        return haystackPhoneNumberFinder.find(input);
     }
-}
\ No newline at end of file
+}
@@ -17,61 +17,402 @@
 package com.expedia.www.haystack.commons.secretDetector;
 
 import com.expedia.www.haystack.metrics.MetricObjects;
-import com.netflix.servo.monitor.Stopwatch;
+import com.google.common.base.Splitter;
+import com.google.common.base.Strings;
+import com.google.common.hash.HashCode;
+import com.google.protobuf.ByteString;
+import com.netflix.servo.monitor.Counter;
 import com.netflix.servo.monitor.Timer;
+import com.netflix.servo.util.VisibleForTesting;
 import io.dataapps.chlorine.finder.Finder;
 import io.dataapps.chlorine.finder.FinderEngine;
+import io.dataapps.chlorine.pattern.RegexFinder;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
-import java.util.Iterator;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 
 import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
 
 public class HaystackFinderEngine extends FinderEngine {
+    @VisibleForTesting
+    static final String REGEX_UNION_TIMER_NAME = "REGEX_UNION";
     private final MetricObjects metricObjects;
     private final String subsystem;
     private final String application;
     private final Map<String, Timer> timerMap;
+    private final Timer regexFinderUnionTimer;
+    private final ThreadLocal<ValueProfile> valueProfiles = ThreadLocal.withInitial(ValueProfile::new);
+    // Grown as needed, so that replacing the finders does not leave a ThreadLocal per reload on every thread
+    private final ThreadLocal<Boolean[]> unionResultsHolder = ThreadLocal.withInitial(() -> new Boolean[0]);
+    private final Set<String> mandatoryFinderNames;
+    private final int adaptiveOrderingInterval;
+    private final int resultCacheBytes;
+    private final Counter resultCacheHitsCounter;
+    private final Counter resultCacheMissesCounter;
+    private final String excludedIpV4Ranges;
+    private final String excludedIpV6Ranges;
+    private volatile FinderSet finderSet;
 
     public HaystackFinderEngine(MetricObjects metricObjects, String subsystem, String application) {
-        super((new HaystackFinderProvider()).getFinders(), false);
+        this(metricObjects, subsystem, application, null);
+    }
+
+    /**
+     * Creates a HaystackFinderEngine with optional behaviors
+     *
+     * @param metricObjects      creates the timers that measure each finder
+     * @param subsystem          the subsystem to use in metric names
+     * @param application        the application to use in metric names
+     * @param finderEngineConfig specifies the optional behaviors to turn on; null turns all of them off
+     */
+    public HaystackFinderEngine(MetricObjects metricObjects,
+                                String subsystem,
+                                String application,
+                                FinderEngineConfig finderEngineConfig) {
+        super(new HaystackFinderProvider().getFinders(), false);
         this.metricObjects = metricObjects;
         this.subsystem = subsystem;
         this.application = application;
         timerMap = new ConcurrentHashMap<>();
+        if (finderEngineConfig != null && finderEngineConfig.combineRegexFinders()) {
+            regexFinderUnionTimer = metricObjects.createAndRegisterBasicTimer(subsystem, application,
+                    RegexFinderUnion.class.getName(), REGEX_UNION_TIMER_NAME, MILLISECONDS);
+        } else {
+            regexFinderUnionTimer = null;
+        }
+        if (finderEngineConfig != null && finderEngineConfig.orderFindersAdaptively()) {
+            mandatoryFinderNames = splitFinderNames(finderEngineConfig.mandatoryFinders());
+            adaptiveOrderingInterval = finderEngineConfig.adaptiveOrderingInterval();
+        } else {
+            mandatoryFinderNames = null;
+            adaptiveOrderingInterval = 0;
+        }
+        resultCacheBytes = (finderEngineConfig == null) ? 0 : finderEngineConfig.resultCacheBytes();
+        if (resultCacheBytes > 0) {
+            final String klass = FindResultCache.class.getName();
+            resultCacheHitsCounter = metricObjects.createAndRegisterResettingCounter(
+                    subsystem, application, klass, FindResultCache.HITS_COUNTER_NAME);
+            resultCacheMissesCounter = metricObjects.createAndRegisterResettingCounter(
+                    subsystem, application, klass, FindResultCache.MISSES_COUNTER_NAME);
+        } else {
+            resultCacheHitsCounter = null;
+            resultCacheMissesCounter = null;
+        }
+        excludedIpV4Ranges = (finderEngineConfig == null) ? null : finderEngineConfig.excludedIpV4Ranges();
+        excludedIpV6Ranges = (finderEngineConfig == null) ? null : finderEngineConfig.excludedIpV6Ranges();
+        final FinderSet initialFinderSet = createFinderSet(getFinders());
+        super.setFinders(initialFinderSet.finders);
+        finderSet = initialFinderSet;
+    }
+
+    /**
+     * Replaces the finders with new ones, such as those of a finders_default.xml file that has just been changed. All
+     * that depends on the finders (the regex finder union, the adaptive order and the result cache) is built for the
+     * new finders before they are swapped in with a single write, so each value is checked either entirely by the old
+     * finders or entirely by the new ones. Timers are kept for finders whose names do not change. Concurrent calls
+     * are serialized, so the finders of the FinderEngine and those that findSecrets() runs are always the same.
+     *
+     * @param finders the new finders; the NonLocalIpV4AddressFinder and NonLocalIpV6AddressFinder among them are
+     *                replaced when the engine's config specifies the ranges that they should ignore
+     */
+    public synchronized void replaceFinders(List<Finder> finders) {
+        final FinderSet newFinderSet = createFinderSet(finders);
+        super.setFinders(newFinderSet.finders);
+        finderSet = newFinderSet;
+    }
+
+    /**
+     * Builds what the engine needs to run a list of finders, replacing the NonLocalIpV4AddressFinder and the
+     * NonLocalIpV6AddressFinder when the config specifies the ranges that they should ignore.
+     */
+    private FinderSet createFinderSet(List<Finder> finders) {
+        final List<Finder> configuredFinders = new ArrayList<>(finders.size());
+        for (final Finder finder : finders) {
+            configuredFinders.add(configureIpAddressFinder(finder, excludedIpV4Ranges, excludedIpV6Ranges));
+        }
+        final RegexFinderUnion regexFinderUnion =
+                (regexFinderUnionTimer == null) ? null : new RegexFinderUnion(configuredFinders);
+        final AdaptiveFinderOrder adaptiveFinderOrder = (mandatoryFinderNames == null) ? null
+                : new AdaptiveFinderOrder(configuredFinders, mandatoryFinderNames, adaptiveOrderingInterval);
+        final FindResultCache findResultCache = (resultCacheBytes <= 0) ? null
+                : new FindResultCache(resultCacheBytes, resultCacheHitsCounter, resultCacheMissesCounter);
+        return new FinderSet(configuredFinders, regexFinderUnion, adaptiveFinderOrder, findResultCache);
+    }
+
+    private static Finder configureIpAddressFinder(
+            Finder finder, String excludedIpV4Ranges, String excludedIpV6Ranges) {
+        if (finder instanceof NonLocalIpV4AddressFinder && !Strings.isNullOrEmpty(excludedIpV4Ranges)) {
+            return new NonLocalIpV4AddressFinder(excludedIpV4Ranges);
+        }
+        if (finder instanceof NonLocalIpV6AddressFinder && !Strings.isNullOrEmpty(excludedIpV6Ranges)) {
+            return new NonLocalIpV6AddressFinder(excludedIpV6Ranges);
+        }
+        return finder;
+    }
+
+    private static Set<String> splitFinderNames(String finderNames) {
+        return new HashSet<>(Splitter.on(',').trimResults().omitEmptyStrings().splitToList(
+                Strings.nullToEmpty(finderNames)));
     }
 
     // Override the method from CompositeFinder to quit checking once a secret is found.
-    // Also measure the time that each timer takes to run.
     @Override
     public Map<String, List<String>> findWithType(String input) {
         final Map<String, List<String>> map = new HashMap<>();
-        final Iterator<Finder> iterator = getFinders().iterator();
-        while(iterator.hasNext() && map.isEmpty()) {
-            final Finder finder = iterator.next();
-            final String name = finder.getName();
-            final Timer timer = timerMap.computeIfAbsent(name, k -> {
-                final String klass = finder.getClass().getName();
-                final String upperCase = name.toUpperCase();
-                return metricObjects.createAndRegisterBasicTimer(
-                        subsystem, application, klass, upperCase, MILLISECONDS);
-            });
-            final Stopwatch stopwatch = timer.start();
-            final List<String> matches = finder.find(input);
-            stopwatch.stop();
-            addToMap(map, finder, matches);
-        }
+        findSecrets(input, (finderName, secrets) -> map.computeIfAbsent(finderName, k -> new ArrayList<>())
+                .addAll(secrets));
         return map;
     }
 
-    private void addToMap(Map<String, List<String>> map, Finder finder, List<String> matches) {
-        if (!matches.isEmpty()) {
-            map.computeIfAbsent(finder.getName(), k -> new ArrayList<>()).addAll(matches);
+    /**
+     * Runs the finders over a value until one of them finds secrets, measuring the time that each finder takes and
+     * skipping the finders that the value's profile rules out. When ordering the finders adaptively, they run in the
+     * order computed by AdaptiveFinderOrder, and when caching results, they do not run at all for values that
+     * FindResultCache knows to contain no secrets. Unlike findWithType(), this method builds no maps or lists of
+     * results when no secrets are found; what it still allocates is what the finders themselves allocate, what the
+     * timers allocate to record the durations and, when caching results, the value's fingerprint and its cache entry.
+     *
+     * @param input      the value to check
+     * @param secretSink receives the secrets, if any are found
+     * @return true if secrets were found
+     */
+    public boolean findSecrets(String input, SecretSink secretSink) {
+        return findSecrets(input, Collections.emptySet(), secretSink);
+    }
+
+    /**
+     * Does what {@link #findSecrets(String, SecretSink)} does without running some of the finders, such as those whose
+     * secrets are whitelisted for the tag that holds the value; when all the finders are to be skipped, nothing runs.
+     * A value is only recorded in the FindResultCache when no finder is skipped, since a skipped finder could have
+     * found a secret in it.
+     *
+     * @param input             the value to check
+     * @param finderNamesToSkip the names of the finders not to run
+     * @param secretSink        receives the secrets, if any are found
+     * @return true if secrets were found
+     */
+    public boolean findSecrets(String input, Set<String> finderNamesToSkip, SecretSink secretSink) {
+        final FinderSet finderSet = this.finderSet;
+        if (finderSet.isEveryFinderIn(finderNamesToSkip)) {
+            return false;
+        }
+        final FindResultCache findResultCache = finderSet.findResultCache;
+        if (findResultCache == null) {
+            return runFinders(finderSet, input, valueProfiles.get().profile(input), finderNamesToSkip, secretSink);
+        }
+        final HashCode fingerprint = findResultCache.fingerprint(input);
+        if (findResultCache.isKnownToHaveNoSecrets(fingerprint)) {
+            return false;
+        }
+        final boolean isSecretFound =
+                runFinders(finderSet, input, valueProfiles.get().profile(input), finderNamesToSkip, secretSink);
+        if (!isSecretFound && finderNamesToSkip.isEmpty()) {
+            findResultCache.recordNoSecrets(fingerprint);
+        }
+        return isSecretFound;
+    }
+
+    /**
+     * Does what {@link #findSecrets(String, SecretSink)} does for UTF-8 content, such as the value of a span tag,
+     * without decoding it when it is all ASCII: the value is profiled and fingerprinted from its bytes, and the
+     * RegexFinder objects scan the bytes through a {@link ByteStringCharSequence}. The value is decoded into a String
+     * only for the finders that need one (those not ruled out by the value's profile that are not plain RegexFinder
+     * objects) and for reporting what a RegexFinder found. Content that is not all ASCII is decoded up front.
+     *
+     * @param input      the UTF-8 content of the value to check
+     * @param secretSink receives the secrets, if any are found
+     * @return true if secrets were found
+     */
+    public boolean findSecrets(ByteString input, SecretSink secretSink) {
+        return findSecrets(input, Collections.emptySet(), secretSink);
+    }
+
+    /**
+     * Does what {@link #findSecrets(ByteString, SecretSink)} does without running some of the finders, as
+     * {@link #findSecrets(String, Set, SecretSink)} does; when all the finders are to be skipped, the value is not even
+     * profiled.
+     *
+     * @param input             the UTF-8 content of the value to check
+     * @param finderNamesToSkip the names of the finders not to run
+     * @param secretSink        receives the secrets, if any are found
+     * @return true if secrets were found
+     */
+    public boolean findSecrets(ByteString input, Set<String> finderNamesToSkip, SecretSink secretSink) {
+        final FinderSet finderSet = this.finderSet;
+        if (finderSet.isEveryFinderIn(finderNamesToSkip)) {
+            return false;
+        }
+        final ByteStringCharSequence byteStringCharSequence = new ByteStringCharSequence(input);
+        final ValueProfile valueProfile = valueProfiles.get().profile(byteStringCharSequence);
+        if (!valueProfile.isAscii()) {
+            return findSecrets(input.toStringUtf8(), finderNamesToSkip, secretSink);
+        }
+        final FindResultCache findResultCache = finderSet.findResultCache;
+        if (findResultCache == null) {
+            return runFinders(finderSet, byteStringCharSequence, valueProfile, finderNamesToSkip, secretSink);
+        }
+        final HashCode fingerprint = findResultCache.fingerprint(input);
+        if (findResultCache.isKnownToHaveNoSecrets(fingerprint)) {
+            return false;
+        }
+        final boolean isSecretFound =
+                runFinders(finderSet, byteStringCharSequence, valueProfile, finderNamesToSkip, secretSink);
+        if (!isSecretFound && finderNamesToSkip.isEmpty()) {
+            findResultCache.recordNoSecrets(fingerprint);
+        }
+        return isSecretFound;
+    }
+
+    private boolean runFinders(FinderSet finderSet,
+                               CharSequence input,
+                               ValueProfile valueProfile,
+                               Set<String> finderNamesToSkip,
+                               SecretSink secretSink) {
+        final AdaptiveFinderOrder adaptiveFinderOrder = finderSet.adaptiveFinderOrder;
+        final List<Finder> finders =
+                (adaptiveFinderOrder == null) ? finderSet.finders : adaptiveFinderOrder.getFinders();
+        final Boolean[] unionResults = getUnionResults(finderSet.regexFinderUnion);
+        boolean isSecretFound = false;
+        for (int index = 0; index < finders.size() && !isSecretFound; index++) {
+            final Finder finder = finders.get(index);
+            if (!finderNamesToSkip.contains(finder.getName())
+                    && !isRuledOutByValueProfile(finder, valueProfile)
+                    && !isRuledOutByRegexFinderUnion(finderSet.regexFinderUnion, finder, input, unionResults)) {
+                final long startNanos = System.nanoTime();
+                final List<String> matches = find(finder, input);
+                final long nanos = System.nanoTime() - startNanos;
+                getTimer(finder).record(nanos, NANOSECONDS);
+                isSecretFound = !matches.isEmpty();
+                if (adaptiveFinderOrder != null) {
+                    adaptiveFinderOrder.record(finder, nanos, isSecretFound);
+                }
+                if (isSecretFound) {
+                    secretSink.accept(finder.getName(), matches);
+                }
+            }
+        }
+        if (adaptiveFinderOrder != null) {
+            adaptiveFinderOrder.valueChecked();
         }
+        return isSecretFound;
+    }
+
+    /**
+     * Runs a finder over a value; a String is passed straight to the finder, while a ByteStringCharSequence is first
+     * scanned by the pattern of a plain RegexFinder, or by a HaystackCompositeCreditCardFinder, so that it is only
+     * decoded when something is found.
+     */
+    private static List<String> find(Finder finder, CharSequence input) {
+        if (input instanceof String) {
+            return finder.find((String) input);
+        }
+        if (finder instanceof HaystackCompositeCreditCardFinder) {
+            return ((HaystackCompositeCreditCardFinder) finder).find(input);
+        }
+        if (finder.getClass() == RegexFinder.class && !((RegexFinder) finder).getPattern().matcher(input).find()) {
+            return Collections.emptyList();
+        }
+        return finder.find(input.toString());
+    }
+
+    private Timer getTimer(Finder finder) {
+        final String name = finder.getName();
+        final Timer timer = timerMap.get(name); // avoids allocating the lambda below once the timer exists
+        return (timer != null) ? timer : timerMap.computeIfAbsent(name, k -> {
+            final String klass = finder.getClass().getName();
+            final String upperCase = name.toUpperCase();
+            return metricObjects.createAndRegisterBasicTimer(subsystem, application, klass, upperCase, MILLISECONDS);
+        });
+    }
+
+    private static boolean isRuledOutByValueProfile(Finder finder, ValueProfile valueProfile) {
+        return (finder instanceof ProfiledFinder) && !((ProfiledFinder) finder).canMatch(valueProfile);
     }
 
+    /**
+     * @return this thread's array for the results of the alternations of regexFinderUnion, cleared; null when not
+     * combining
+     */
+    private Boolean[] getUnionResults(RegexFinderUnion regexFinderUnion) {
+        if (regexFinderUnion == null) {
+            return null;
+        }
+        final int unionCount = regexFinderUnion.getUnionCount();
+        final Boolean[] unionResults = unionResultsHolder.get();
+        if (unionResults.length < unionCount) {
+            final Boolean[] largerUnionResults = new Boolean[unionCount];
+            unionResultsHolder.set(largerUnionResults);
+            return largerUnionResults;
+        }
+        Arrays.fill(unionResults, 0, unionCount, null);
+        return unionResults;
+    }
+
+    /**
+     * Walks the input with the alternation that contains the finder's pattern, the first time that alternation is
+     * needed for the input; the result is remembered in unionResults for the other finders in the same alternation.
+     *
+     * @param regexFinderUnion the alternations of the finders' patterns; null when not combining
+     * @param finder           the finder about to be run
+     * @param input            the value to be checked by the finder
+     * @param unionResults     results of the alternations already walked for this input; null when not combining
+     * @return true if the finder cannot possibly match the input and therefore does not need to be run
+     */
+    private boolean isRuledOutByRegexFinderUnion(
+            RegexFinderUnion regexFinderUnion, Finder finder, CharSequence input, Boolean[] unionResults) {
+        if (unionResults == null) {
+            return false;
+        }
+        final int unionIndex = regexFinderUnion.getUnionIndex(finder);
+        if (unionIndex < 0) {
+            return false;
+        }
+        if (unionResults[unionIndex] == null) {
+            final long startNanos = System.nanoTime();
+            unionResults[unionIndex] = regexFinderUnion.find(unionIndex, input);
+            regexFinderUnionTimer.record(System.nanoTime() - startNanos, NANOSECONDS);
+        }
+        return !unionResults[unionIndex];
+    }
+
+    /**
+     * The finders that the engine runs and everything built for them; a new FinderSet replaces the old one when the
+     * finders are replaced, so that findSecrets() sees a consistent set by reading the finderSet field once.
+     */
+    private static final class FinderSet {
+        private final List<Finder> finders;
+        private final Set<String> finderNames;
+        private final RegexFinderUnion regexFinderUnion;
+        private final AdaptiveFinderOrder adaptiveFinderOrder;
+        private final FindResultCache findResultCache;
+
+        private FinderSet(List<Finder> finders,
+                          RegexFinderUnion regexFinderUnion,
+                          AdaptiveFinderOrder adaptiveFinderOrder,
+                          FindResultCache findResultCache) {
+            this.finders = finders;
+            finderNames = new HashSet<>();
+            for (final Finder finder : finders) {
+                finderNames.add(finder.getName());
+            }
+            this.regexFinderUnion = regexFinderUnion;
+            this.adaptiveFinderOrder = adaptiveFinderOrder;
+            this.findResultCache = findResultCache;
+        }
+
+        /**
+         * @return true if every finder is named in the set, so that skipping them leaves nothing to run
+         */
+        private boolean isEveryFinderIn(Set<String> finderNamesToSkip) {
+            return !finderNamesToSkip.isEmpty() && finderNamesToSkip.containsAll(finderNames);
+        }
+    }
 }
@@ -18,6 +18,7 @@ import javax.xml.parsers.SAXParserFactory;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 import static io.dataapps.chlorine.finder.DefaultFinderProvider.FINDERS_DEFAULT_XML;
@@ -36,144 +37,163 @@ public class HaystackFinderProvider implements FinderProvider {
     static final String FLAGS_ELEMENT_NAME = "FLAGS";
     static final String OBJECT_CREATION_PROBLEM = "Problem creating Finder object";
     private final List<Finder> finders;
-    private final Logger logger;
-    private final Factory factory;
 
+    /**
+     * Creates a HaystackFinderProvider with the finders of finders_default.xml; the file is only read the first time,
+     * and the finders (which, like all chlorine finders, are thread safe) are shared by all the providers created this
+     * way, so that creating a HaystackFinderEngine neither parses XML nor compiles patterns nor loads classes.
+     */
     public HaystackFinderProvider() {
-        this(LoggerFactory.getLogger(HaystackFinderProvider.class), new Factory());
+        finders = new ArrayList<>(DefaultFinders.FINDERS);
     }
 
     @VisibleForTesting
     HaystackFinderProvider(Logger logger,
                            Factory factory) {
-        finders = new ArrayList<>();
-        this.logger = logger;
-        this.factory = factory;
-        finders.addAll(readFinders());
+        finders = readFinders(logger, factory);
     }
 
-    private List<Finder> readFinders() {
-        final List<Finder> finderList = new ArrayList<>();
+    private static List<Finder> readFinders(Logger logger, Factory factory) {
         try (final InputStream in = factory.getFindersDotDefaultInputStream()) {
-            final SAXParserFactory saxParserFactory = factory.createSaxParserFactory();
-            final SAXParser saxParser = factory.createSaxParser(saxParserFactory);
-            final DefaultHandler handler = new DefaultHandler() {
-                boolean isInNameElement = false;
-                boolean isInPatternElement = false;
-                boolean isInFlagsElement = false;
-                final StringBuilder name = new StringBuilder();
-                final StringBuilder pattern = new StringBuilder();
-                final StringBuilder strFlags = new StringBuilder();
-                int flags = RegexFinder.DEFAULT_FLAGS;
-                boolean isInRegionElement = false;
-                boolean isInClassElement = false;
-                boolean isInEnabledElement = false;
-                final StringBuilder region = new StringBuilder();
-                final StringBuilder className = new StringBuilder();
-                final StringBuilder strEnabled = new StringBuilder();
-                boolean enabled = true;
-
-                @Override
-                public void startElement(String uri, String localName, String qName, Attributes attributes) {
-                    if (qName.equalsIgnoreCase(NAME_ELEMENT_NAME)) {
-                        isInNameElement = true;
-                    } else if (qName.equalsIgnoreCase(PATTERN_ELEMENT_NAME)) {
-                        isInPatternElement = true;
-                    } else if (qName.equalsIgnoreCase(FLAGS_ELEMENT_NAME)) {
-                        isInFlagsElement = true;
-                    } else if (qName.equalsIgnoreCase(REGION_ELEMENT_NAME)) {
-                        isInRegionElement = true;
-                    } else if (qName.equalsIgnoreCase(CLASS_ELEMENT_NAME)) {
-                        isInClassElement = true;
-                    } else if (qName.equalsIgnoreCase(ENABLED_ELEMENT_NAME)) {
-                        isInEnabledElement = true;
-                    }
-                }
+            return parseFinders(in, logger, factory);
+        } catch (IOException e) {
+            logger.error(IO_EXCEPTION_PROBLEM, e);
+        } catch (SAXException e) {
+            logger.error(SAX_EXCEPTION_PROBLEM, e);
+        } catch (ParserConfigurationException e) {
+            logger.error(PARSER_CONFIGURATION_PROBLEM, e);
+        }
+        return new ArrayList<>();
+    }
 
-                @Override
-                public void endElement(String uri, String localName, String qName) {
-                    if (qName.equalsIgnoreCase(NAME_ELEMENT_NAME)) {
-                        isInNameElement = false;
-                    } else if (qName.equalsIgnoreCase(PATTERN_ELEMENT_NAME)) {
-                        isInPatternElement = false;
-                    } else if (qName.equalsIgnoreCase(FLAGS_ELEMENT_NAME)) {
-                        isInFlagsElement = false;
-                        flags = Integer.parseInt(strFlags.toString().trim());
-                    } else if (qName.equalsIgnoreCase(REGION_ELEMENT_NAME)) {
-                        isInRegionElement = false;
-                    } else if (qName.equalsIgnoreCase(CLASS_ELEMENT_NAME)) {
-                        isInClassElement = false;
-                    } else if (qName.equalsIgnoreCase(ENABLED_ELEMENT_NAME)) {
-                        enabled = Boolean.valueOf(strEnabled.toString().trim());
-                        isInEnabledElement = false;
-                    } else {
-                        if (enabled) {
-                            final String trimmedClassName = className.toString().trim();
-                            if (trimmedClassName.equals(HaystackPhoneNumberFinder.class.getName())) {
-                                final String trimmedRegion = region.toString().trim();
+    /**
+     * Reads and creates the finders of a file in the format of finders_default.xml; finders that cannot be created are
+     * logged and skipped, as are regions that do not exist.
+     *
+     * @param in      the content of the file, which the caller closes
+     * @param logger  logs the finders and regions that are skipped
+     * @param factory creates the SAX parser
+     * @return the enabled finders, in the order of the file, followed by the phone number finder of all the regions
+     * @throws IOException                  if the content cannot be read
+     * @throws SAXException                 if the content is not well formed XML
+     * @throws ParserConfigurationException if no SAX parser can be created
+     */
+    static List<Finder> parseFinders(InputStream in, Logger logger, Factory factory)
+            throws IOException, SAXException, ParserConfigurationException {
+        final List<Finder> finderList = new ArrayList<>();
+        final List<CldrRegion> phoneNumberRegions = new ArrayList<>();
+        final SAXParserFactory saxParserFactory = factory.createSaxParserFactory();
+        final SAXParser saxParser = factory.createSaxParser(saxParserFactory);
+        final DefaultHandler handler = new DefaultHandler() {
+            boolean isInNameElement = false;
+            boolean isInPatternElement = false;
+            boolean isInFlagsElement = false;
+            final StringBuilder name = new StringBuilder();
+            final StringBuilder pattern = new StringBuilder();
+            final StringBuilder strFlags = new StringBuilder();
+            int flags = RegexFinder.DEFAULT_FLAGS;
+            boolean isInRegionElement = false;
+            boolean isInClassElement = false;
+            boolean isInEnabledElement = false;
+            final StringBuilder region = new StringBuilder();
+            final StringBuilder className = new StringBuilder();
+            final StringBuilder strEnabled = new StringBuilder();
+            boolean enabled = true;
+
+            @Override
+            public void startElement(String uri, String localName, String qName, Attributes attributes) {
+                if (qName.equalsIgnoreCase(NAME_ELEMENT_NAME)) {
+                    isInNameElement = true;
+                } else if (qName.equalsIgnoreCase(PATTERN_ELEMENT_NAME)) {
+                    isInPatternElement = true;
+                } else if (qName.equalsIgnoreCase(FLAGS_ELEMENT_NAME)) {
+                    isInFlagsElement = true;
+                } else if (qName.equalsIgnoreCase(REGION_ELEMENT_NAME)) {
+                    isInRegionElement = true;
+                } else if (qName.equalsIgnoreCase(CLASS_ELEMENT_NAME)) {
+                    isInClassElement = true;
+                } else if (qName.equalsIgnoreCase(ENABLED_ELEMENT_NAME)) {
+                    isInEnabledElement = true;
+                }
+            }
+
+            @Override
+            public void endElement(String uri, String localName, String qName) {
+                if (qName.equalsIgnoreCase(NAME_ELEMENT_NAME)) {
+                    isInNameElement = false;
+                } else if (qName.equalsIgnoreCase(PATTERN_ELEMENT_NAME)) {
+                    isInPatternElement = false;
+                } else if (qName.equalsIgnoreCase(FLAGS_ELEMENT_NAME)) {
+                    isInFlagsElement = false;
+                    flags = Integer.parseInt(strFlags.toString().trim());
+                } else if (qName.equalsIgnoreCase(REGION_ELEMENT_NAME)) {
+                    isInRegionElement = false;
+                } else if (qName.equalsIgnoreCase(CLASS_ELEMENT_NAME)) {
+                    isInClassElement = false;
+                } else if (qName.equalsIgnoreCase(ENABLED_ELEMENT_NAME)) {
+                    enabled = Boolean.valueOf(strEnabled.toString().trim());
+                    isInEnabledElement = false;
+                } else {
+                    if (enabled) {
+                        final String trimmedClassName = className.toString().trim();
+                        if (trimmedClassName.equals(HaystackPhoneNumberFinder.class.getName())) {
+                            final String trimmedRegion = region.toString().trim();
+                            try {
+                                phoneNumberRegions.add(CldrRegion.valueOf(trimmedRegion));
+                            } catch (IllegalArgumentException e) {
+                                logger.error(String.format(PROBLEM_WITH_REGION_MSG, trimmedRegion));
+                            }
+                        } else {
+                            if (!trimmedClassName.isEmpty()) {
                                 try {
-                                    final HaystackPhoneNumberFinder haystackPhoneNumberFinder =
-                                            new HaystackPhoneNumberFinder(PhoneNumberUtil.getInstance(),
-                                                    CldrRegion.valueOf(trimmedRegion));
-                                    finderList.add(haystackPhoneNumberFinder);
-                                } catch (IllegalArgumentException e) {
-                                    logger.error(String.format(PROBLEM_WITH_REGION_MSG, trimmedRegion));
+                                    Class<?> klass = Thread.currentThread().getContextClassLoader()
+                                            .loadClass(trimmedClassName);
+                                    finderList.add((Finder) klass.newInstance());
+                                } catch (ClassNotFoundException
+                                        | InstantiationException
+                                        | IllegalAccessException e) {
+                                    logger.error(OBJECT_CREATION_PROBLEM, e);
                                 }
-                            } else {
-                                if (!trimmedClassName.isEmpty()) {
-                                    try {
-                                        Class<?> klass = Thread.currentThread().getContextClassLoader()
-                                                .loadClass(trimmedClassName);
-                                        finders.add((Finder) klass.newInstance());
-                                    } catch (ClassNotFoundException
-                                            | InstantiationException
-                                            | IllegalAccessException e) {
-                                        logger.error(OBJECT_CREATION_PROBLEM, e);
-                                    }
-                                } else if(!pattern.toString().trim().isEmpty()){
-                                    finders.add(new RegexFinder(name.toString().trim(), pattern.toString().trim()));
-                                }
-
+                            } else if(!pattern.toString().trim().isEmpty()){
+                                finderList.add(new RegexFinder(name.toString().trim(), pattern.toString().trim()));
                             }
+
                         }
-                        name.setLength(0);
-                        pattern.setLength(0);
-                        flags = RegexFinder.DEFAULT_FLAGS;
-                        strFlags.setLength(0);
-                        enabled = true;
-                        region.setLength(0);
-                        className.setLength(0);
-                        enabled = true;
-                        strEnabled.setLength(0);
                     }
+                    name.setLength(0);
+                    pattern.setLength(0);
+                    flags = RegexFinder.DEFAULT_FLAGS;
+                    strFlags.setLength(0);
+                    enabled = true;
+                    region.setLength(0);
+                    className.setLength(0);
+                    enabled = true;
+                    strEnabled.setLength(0);
                 }
-
-                @Override
-                public void characters(char ch[], int start, int length) {
-                    if (isInNameElement) {
-                        name.append(new String(ch, start, length));
-                    } else if (isInPatternElement) {
-                        pattern.append(new String(ch, start, length));
-                    } else if (isInFlagsElement) {
-                        strFlags.append(new String(ch, start, length));
-                    } else if (isInRegionElement) {
-                        region.append(ch, start, length);
-                    } else if (isInClassElement) {
-                        className.append(ch, start, length);
-                    } else if (isInEnabledElement) {
-                        strEnabled.append(ch, start, length);
-                    }
+            }
+
+            @Override
+            public void characters(char ch[], int start, int length) {
+                if (isInNameElement) {
+                    name.append(new String(ch, start, length));
+                } else if (isInPatternElement) {
+                    pattern.append(new String(ch, start, length));
+                } else if (isInFlagsElement) {
+                    strFlags.append(new String(ch, start, length));
+                } else if (isInRegionElement) {
+                    region.append(ch, start, length);
+                } else if (isInClassElement) {
+                    className.append(ch, start, length);
+                } else if (isInEnabledElement) {
+                    strEnabled.append(ch, start, length);
                 }
-            };
-            saxParser.parse(in, handler);
-        } catch (IOException e) {
-            logger.error(IO_EXCEPTION_PROBLEM, e);
-        } catch (SAXException e) {
-            logger.error(SAX_EXCEPTION_PROBLEM, e);
-        } catch (ParserConfigurationException e) {
-            logger.error(PARSER_CONFIGURATION_PROBLEM, e);
+            }
+        };
+        saxParser.parse(in, handler);
+        if (!phoneNumberRegions.isEmpty()) {
+            // One finder for all the regions, so that each value is parsed as few times as possible
+            finderList.add(new HaystackPhoneNumberFinder(PhoneNumberUtil.getInstance(), phoneNumberRegions));
         }
-
         return finderList;
     }
 
@@ -182,6 +202,15 @@ public class HaystackFinderProvider implements FinderProvider {
         return finders;
     }
 
+    /**
+     * Holds the finders of finders_default.xml, which are read when the holder class is initialized, i.e. once, the
+     * first time that the no-argument constructor runs
+     */
+    private static final class DefaultFinders {
+        static final List<Finder> FINDERS = Collections.unmodifiableList(
+                readFinders(LoggerFactory.getLogger(HaystackFinderProvider.class), new Factory()));
+    }
+
     static class Factory {
         SAXParserFactory createSaxParserFactory() {
             return SAXParserFactory.newInstance();
@@ -0,0 +1,119 @@
+/*
+ * Copyright 2018 Expedia, Inc.
+ *
+ *       Licensed under the Apache License, Version 2.0 (the "License");
+ *       you may not use this file except in compliance with the License.
+ *       You may obtain a copy of the License at
+ *
+ *           http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *       Unless required by applicable law or agreed to in writing, software
+ *       distributed under the License is distributed on an "AS IS" BASIS,
+ *       WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *       See the License for the specific language governing permissions and
+ *       limitations under the License.
+ *
+ */
+package com.expedia.www.haystack.commons.secretDetector;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Like HaystackCompositeCreditCardFinder, but finds credit card numbers anywhere in a value (in a URL, a query string,
+ * a log message, JSON text, etc.) rather than only when they are the entire value; it is enabled by naming this class
+ * instead of HaystackCompositeCreditCardFinder in finders_default.xml. The value is walked once: at the start of each
+ * group of digits, the following characters (at most as many as the longest credit card number with separators) are
+ * checked against the table of issuer ranges, and the longest credit card number that starts there and passes the
+ * Luhn check is reported, so the time taken is linear in the length of the value. A credit card number is never found
+ * inside a longer run of digits, and nothing is allocated for a value without credit card numbers.
+ */
+@SuppressWarnings("WeakerAccess")
+public class HaystackFreeTextCreditCardFinder extends HaystackCompositeCreditCardFinder {
+    /**
+     * Finds the credit card numbers in a value
+     *
+     * @param input the value to check
+     * @return each credit card number found in the value, in the order in which they appear; an empty list if none
+     */
+    @Override
+    public List<String> find(CharSequence input) {
+        List<String> matches = null;
+        final int length = input.length();
+        int index = 0;
+        while (index < length) {
+            final int end = isGroupStart(input, index) ? findCreditCardNumberEnd(input, index) : -1;
+            if (end < 0) {
+                index++;
+            } else {
+                if (matches == null) {
+                    matches = new ArrayList<>();
+                }
+                matches.add(input.subSequence(index, end).toString());
+                index = end;
+            }
+        }
+        return (matches == null) ? Collections.emptyList() : matches;
+    }
+
+    private static boolean isGroupStart(CharSequence input, int index) {
+        return isDigit(input.charAt(index)) && (index == 0 || !isDigit(input.charAt(index - 1)));
+    }
+
+    /**
+     * Finds the end of the longest credit card number that starts at a group of digits
+     *
+     * @param input the value to check
+     * @param start the index of the first digit of the group
+     * @return the index after the last digit of the credit card number, or -1 if no credit card number starts there
+     */
+    private static int findCreditCardNumberEnd(CharSequence input, int start) {
+        final int limit = Math.min(input.length(), start + MAXIMUM_CREDIT_CARD_NUMBER_LENGTH);
+        int end = -1;
+        int digitCount = 0;
+        int separators = 0;
+        int prefix = 0;
+        for (int index = start; index < limit; index++) {
+            final char c = input.charAt(index);
+            if (isDigit(c)) {
+                if (digitCount < PREFIX_DIGIT_COUNT) {
+                    prefix = prefix * 10 + (c - '0');
+                }
+                digitCount++;
+                if (digitCount >= MINIMUM_DIGIT_COUNT
+                        && (index + 1 == input.length() || !isDigit(input.charAt(index + 1)))
+                        && isIssuerRange(digitCount, prefix, separators)
+                        && passesLuhnCheck(input, start, index + 1)) {
+                    end = index + 1;
+                }
+            } else if ((c == ' ' || c == '-') && isDigit(input.charAt(index - 1))) {
+                separators |= 1 << digitCount;
+            } else {
+                break;
+            }
+        }
+        return end;
+    }
+
+    private static boolean passesLuhnCheck(CharSequence input, int start, int end) {
+        int sum = 0;
+        int position = 0;
+        for (int index = end - 1; index >= start; index--) {
+            final char c = input.charAt(index);
+            if (isDigit(c)) {
+                int value = c - '0';
+                if (position % 2 == 1) {
+                    value *= 2;
+                }
+                sum += (value > 9) ? (value - 9) : value;
+                position++;
+            }
+        }
+        return sum % 10 == 0;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+}
@@ -20,7 +20,6 @@ import com.google.i18n.phonenumbers.NumberParseException;
 import com.google.i18n.phonenumbers.PhoneNumberUtil;
 import com.google.i18n.phonenumbers.Phonenumber.PhoneNumber;
 import com.netflix.servo.util.VisibleForTesting;
-import io.dataapps.chlorine.finder.Finder;
 
 import java.util.ArrayList;
 import java.util.Collection;
@@ -29,18 +28,49 @@ import java.util.List;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+import static com.google.i18n.phonenumbers.NumberParseException.ErrorType.INVALID_COUNTRY_CODE;
+import static com.google.i18n.phonenumbers.NumberParseException.ErrorType.NOT_A_NUMBER;
+
+/**
+ * Finds phone numbers that are valid in one or more regions. The input is checked and parsed as few times as
+ * possible: a number with a country code (one that starts with a plus sign) is parsed once, without a region, and
+ * that parse is then validated against every region; a number without a country code has to be parsed once per
+ * region, because how the digits are read depends on the national and international dialing prefixes of the region,
+ * but an input that libphonenumber cannot read as a number in any region is only parsed once. The result is the same
+ * as checking each region with its own finder. Before any parse, a PhoneNumberRegionIndex built from the libphonenumber
+ * metadata of the regions narrows the regions to those in which a number with as many digits as the input could be
+ * valid.
+ */
 @SuppressWarnings("WeakerAccess")
-public class HaystackPhoneNumberFinder implements Finder {
+public class HaystackPhoneNumberFinder implements ProfiledFinder {
     @VisibleForTesting
     public static final String FINDER_NAME = "Phone_Number";
+    @VisibleForTesting
+    static final String UNKNOWN_REGION = "ZZ"; // libphonenumber's region code for "no region"
     private static final Pattern ALPHAS_PATTERN = Pattern.compile("[A-Za-z]+");
     private static final Pattern ALL_NUMBERS_PATTERN = Pattern.compile("^\\d+$");
+    private static final char PLUS_SIGN = '+';
+    private static final char FULL_WIDTH_PLUS_SIGN = '\uFF0B';
     private final PhoneNumberUtil phoneNumberUtil;
-    private final String regionCode;
+    private final PhoneNumberRegionIndex phoneNumberRegionIndex;
 
     public HaystackPhoneNumberFinder(PhoneNumberUtil phoneNumberUtil, CldrRegion cldrRegion) {
+        this(phoneNumberUtil, Collections.singletonList(cldrRegion));
+    }
+
+    /**
+     * Creates a finder that finds phone numbers that are valid in any of the regions
+     *
+     * @param phoneNumberUtil the libphonenumber object that parses and validates phone numbers
+     * @param cldrRegions     the regions to check, in the order in which they should be checked
+     */
+    public HaystackPhoneNumberFinder(PhoneNumberUtil phoneNumberUtil, List<CldrRegion> cldrRegions) {
         this.phoneNumberUtil = phoneNumberUtil;
-        this.regionCode = cldrRegion.getRegionCode();
+        final List<String> regionCodes = new ArrayList<>(cldrRegions.size());
+        for (final CldrRegion cldrRegion : cldrRegions) {
+            regionCodes.add(cldrRegion.getRegionCode());
+        }
+        this.phoneNumberRegionIndex = new PhoneNumberRegionIndex(regionCodes);
     }
 
     /**
@@ -55,6 +85,18 @@ public class HaystackPhoneNumberFinder implements Finder {
         return FINDER_NAME;
     }
 
+    /**
+     * Values with letters and values that are nothing but digits are never checked (see find()), and without digits
+     * there is nothing for libphonenumber to parse.
+     *
+     * @param valueProfile the profile of the value
+     * @return false if the value cannot be a phone number
+     */
+    @Override
+    public boolean canMatch(ValueProfile valueProfile) {
+        return valueProfile.getDigitCount() > 0 && !valueProfile.hasAsciiLetters() && !valueProfile.isAllAsciiDigits();
+    }
+
     @Override
     public List<String> find(Collection<String> inputs) {
         final List<String> list = new ArrayList<>();
@@ -67,19 +109,55 @@ public class HaystackPhoneNumberFinder implements Finder {
     @SuppressWarnings("OverlyNestedMethod") // the nesting makes debugging easier
     @Override
     public List<String> find(String input) {
-        try {
-            if (!containsAnyAlphabeticCharacters(input)) { // Strings that contain any letters will not be checked
-                if(!isIpV4Address(input)) {                // Strings that look like IP addresses will not be checked
-                    if(!containsOnlyNumbers(input)) {      // Straight numbers, like database IDs, will not be checked
-                        final PhoneNumber phoneNumber = phoneNumberUtil.parseAndKeepRawInput(input, this.regionCode);
-                        if (phoneNumberUtil.isValidNumberForRegion(phoneNumber, regionCode)) {
-                            return Collections.singletonList(phoneNumber.getRawInput());
-                        }
+        if (!containsAnyAlphabeticCharacters(input)) { // Strings that contain any letters will not be checked
+            if(!isIpV4Address(input)) {                // Strings that look like IP addresses will not be checked
+                if(!containsOnlyNumbers(input)) {      // Straight numbers, like database IDs, will not be checked
+                    final List<String> regionCodes = phoneNumberRegionIndex.getCandidateRegionCodes(input);
+                    if (!regionCodes.isEmpty()) {          // Nor will numbers too short or long for every region
+                        return containsPlusSign(input)
+                                ? findInternationalNumber(input, regionCodes) : findNationalNumber(input, regionCodes);
                     }
                 }
             }
+        }
+        return Collections.emptyList();
+    }
+
+    /**
+     * Parses an input that may start with a country code without a region; if it does, the parse does not depend on
+     * the region, so one parse is validated against all the regions. If it does not, libphonenumber reports an
+     * invalid country code and the input is checked as a national number.
+     */
+    private List<String> findInternationalNumber(String input, List<String> regionCodes) {
+        final PhoneNumber phoneNumber;
+        try {
+            phoneNumber = phoneNumberUtil.parseAndKeepRawInput(input, UNKNOWN_REGION);
         } catch (NumberParseException e) {
-            // Just ignore, it's not a phone number
+            // Any other error is the same for every region, so the input is not a phone number anywhere
+            return (e.getErrorType() == INVALID_COUNTRY_CODE)
+                    ? findNationalNumber(input, regionCodes) : Collections.emptyList();
+        }
+        for (final String regionCode : regionCodes) {
+            if (phoneNumberUtil.isValidNumberForRegion(phoneNumber, regionCode)) {
+                return Collections.singletonList(phoneNumber.getRawInput());
+            }
+        }
+        return Collections.emptyList();
+    }
+
+    private List<String> findNationalNumber(String input, List<String> regionCodes) {
+        for (final String regionCode : regionCodes) {
+            try {
+                final PhoneNumber phoneNumber = phoneNumberUtil.parseAndKeepRawInput(input, regionCode);
+                if (phoneNumberUtil.isValidNumberForRegion(phoneNumber, regionCode)) {
+                    return Collections.singletonList(phoneNumber.getRawInput());
+                }
+            } catch (NumberParseException e) {
+                if (e.getErrorType() == NOT_A_NUMBER) { // the input is not viable as a phone number in any region
+                    return Collections.emptyList();
+                }
+                // Otherwise just ignore, it's not a phone number in this region
+            }
         }
         return Collections.emptyList();
     }
@@ -90,10 +168,14 @@ public class HaystackPhoneNumberFinder implements Finder {
     }
 
     private static boolean isIpV4Address(String input) {
-        return !NonLocalIpV4AddressFinder.IPV4_FINDER.find(input).isEmpty();
+        return IpV4AddressParser.isAnyLineAnAddress(input);
     }
 
     private static boolean containsOnlyNumbers(String input) {
         return ALL_NUMBERS_PATTERN.matcher(input).find();
     }
+
+    private static boolean containsPlusSign(String input) {
+        return input.indexOf(PLUS_SIGN) >= 0 || input.indexOf(FULL_WIDTH_PLUS_SIGN) >= 0;
+    }
 }
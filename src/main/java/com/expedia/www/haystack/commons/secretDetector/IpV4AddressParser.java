@@ -0,0 +1,87 @@
+/*
+ * Copyright 2018 Expedia, Inc.
+ *
+ *       Licensed under the Apache License, Version 2.0 (the "License");
+ *       you may not use this file except in compliance with the License.
+ *       You may obtain a copy of the License at
+ *
+ *           http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *       Unless required by applicable law or agreed to in writing, software
+ *       distributed under the License is distributed on an "AS IS" BASIS,
+ *       WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *       See the License for the specific language governing permissions and
+ *       limitations under the License.
+ *
+ */
+package com.expedia.www.haystack.commons.secretDetector;
+
+/**
+ * Parses IP V4 addresses in dotted decimal notation (four numbers from 0 to 255, each of one to three digits,
+ * separated by periods) into ints, without regular expressions and without allocating anything.
+ */
+class IpV4AddressParser {
+    static final long NOT_AN_ADDRESS = -1;
+    private static final int OCTET_COUNT = 4;
+    private static final int MAXIMUM_OCTET_DIGIT_COUNT = 3;
+    private static final int MAXIMUM_OCTET = 255;
+    private static final int BITS_PER_OCTET = 8;
+
+    private IpV4AddressParser() {
+        // the methods are static
+    }
+
+    /**
+     * Parses part of a value as an IP V4 address
+     *
+     * @param input the value
+     * @param start the index of the first character of the address
+     * @param end   the index after the last character of the address
+     * @return the address, as the low 32 bits of the long (10.0.0.1 is 0x0A000001), or NOT_AN_ADDRESS
+     */
+    static long parse(CharSequence input, int start, int end) {
+        long address = 0;
+        int octet = 0;
+        int digitCount = 0;
+        int periodCount = 0;
+        for (int index = start; index < end; index++) {
+            final char c = input.charAt(index);
+            if (c >= '0' && c <= '9') {
+                octet = octet * 10 + (c - '0');
+                digitCount++;
+                if (digitCount > MAXIMUM_OCTET_DIGIT_COUNT || octet > MAXIMUM_OCTET) {
+                    return NOT_AN_ADDRESS;
+                }
+            } else if (c == '.' && digitCount > 0 && periodCount < OCTET_COUNT - 1) {
+                address = (address << BITS_PER_OCTET) | octet;
+                octet = 0;
+                digitCount = 0;
+                periodCount++;
+            } else {
+                return NOT_AN_ADDRESS;
+            }
+        }
+        if (digitCount == 0 || periodCount < OCTET_COUNT - 1) {
+            return NOT_AN_ADDRESS;
+        }
+        return (address << BITS_PER_OCTET) | octet;
+    }
+
+    /**
+     * Decides whether a line of a value (see {@link Lines}) is an IP V4 address
+     *
+     * @param input the value
+     * @return true if at least one line of the value is an IP V4 address
+     */
+    static boolean isAnyLineAnAddress(CharSequence input) {
+        int lineStart = 0;
+        while (lineStart <= input.length()) {
+            final int lineEnd = Lines.findEnd(input, lineStart);
+            if (parse(input, lineStart, lineEnd) != NOT_AN_ADDRESS) {
+                return true;
+            }
+            lineStart = Lines.findNextStart(input, lineEnd);
+        }
+        return false;
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright 2018 Expedia, Inc.
+ *
+ *       Licensed under the Apache License, Version 2.0 (the "License");
+ *       you may not use this file except in compliance with the License.
+ *       You may obtain a copy of the License at
+ *
+ *           http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *       Unless required by applicable law or agreed to in writing, software
+ *       distributed under the License is distributed on an "AS IS" BASIS,
+ *       WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *       See the License for the specific language governing permissions and
+ *       limitations under the License.
+ *
+ */
+package com.expedia.www.haystack.commons.secretDetector;
+
+/**
+ * Parses IP V6 addresses into two longs in a single pass, without regular expressions and without allocating
+ * anything. The full form (2001:db8:0:0:0:0:0:1), the compressed form (2001:db8::1) and the forms that end with an
+ * IP V4 address (::ffff:192.0.2.1) are accepted; zone indexes (fe80::1%eth0) and brackets ([::1]) are not.
+ */
+class IpV6AddressParser {
+    static final int HIGH = 0;
+    static final int LOW = 1;
+    static final int LONGS_PER_ADDRESS = 2;
+    private static final int GROUP_COUNT = 8;
+    private static final int IP_V4_GROUP_COUNT = 2;
+    private static final int MAXIMUM_GROUP_DIGIT_COUNT = 4;
+    private static final int BITS_PER_DIGIT = 4;
+    private static final int BITS_PER_GROUP = 16;
+    private static final int GROUP_MASK = 0xFFFF;
+    private static final int NOT_COMPRESSED = -1;
+    private static final int NOT_A_HEX_DIGIT = -1;
+    private static final int FIRST_LETTER_DIGIT = 10;
+
+    private IpV6AddressParser() {
+        // the methods are static
+    }
+
+    /**
+     * Parses part of a value as an IP V6 address
+     *
+     * @param input   the value
+     * @param start   the index of the first character of the address
+     * @param end     the index after the last character of the address
+     * @param address receives the address when the method returns true: its high 64 bits in address[HIGH] and its low
+     *                64 bits in address[LOW] (::1 is {0, 1}); its contents are undefined when the method returns false
+     * @return true if the part of the value is an IP V6 address
+     */
+    static boolean parse(CharSequence input, int start, int end, long[] address) {
+        address[HIGH] = 0;
+        address[LOW] = 0;
+        // The groups before "::" are shifted into address, then moved to headHigh and headLow when "::" is found
+        long headHigh = 0;
+        long headLow = 0;
+        int headCount = NOT_COMPRESSED;
+        int groupCount = 0;
+        int group = 0;
+        int digitCount = 0;
+        int groupStart = start;
+        for (int index = start; index < end; index++) {
+            final char c = input.charAt(index);
+            final int digit = getHexDigit(c);
+            if (digit != NOT_A_HEX_DIGIT) {
+                if (++digitCount > MAXIMUM_GROUP_DIGIT_COUNT) {
+                    return false;
+                }
+                group = (group << BITS_PER_DIGIT) | digit;
+            } else if (c == ':') {
+                if (digitCount > 0) {
+                    if (groupCount == GROUP_COUNT || index == end - 1) {
+                        return false;
+                    }
+                    shiftIn(address, group);
+                    groupCount++;
+                    group = 0;
+                    digitCount = 0;
+                } else if (index > start) {
+                    // Without digits since the previous char, that char was a colon: this one is the second of "::"
+                    if (headCount != NOT_COMPRESSED) {
+                        return false;
+                    }
+                    headCount = groupCount;
+                    headHigh = address[HIGH];
+                    headLow = address[LOW];
+                    address[HIGH] = 0;
+                    address[LOW] = 0;
+                } else if (index == end - 1 || input.charAt(index + 1) != ':') {
+                    return false;
+                }
+                groupStart = index + 1;
+            } else if (c == '.' && groupCount <= GROUP_COUNT - IP_V4_GROUP_COUNT) {
+                final long ipV4Address = IpV4AddressParser.parse(input, groupStart, end);
+                if (ipV4Address == IpV4AddressParser.NOT_AN_ADDRESS) {
+                    return false;
+                }
+                shiftIn(address, (int) (ipV4Address >>> BITS_PER_GROUP));
+                shiftIn(address, (int) ipV4Address & GROUP_MASK);
+                return complete(address, groupCount + IP_V4_GROUP_COUNT, headCount, headHigh, headLow);
+            } else {
+                return false;
+            }
+        }
+        if (digitCount > 0) {
+            if (groupCount == GROUP_COUNT) {
+                return false;
+            }
+            shiftIn(address, group);
+            groupCount++;
+        }
+        return complete(address, groupCount, headCount, headHigh, headLow);
+    }
+
+    private static int getHexDigit(char c) {
+        if (c >= '0' && c <= '9') {
+            return c - '0';
+        }
+        if (c >= 'a' && c <= 'f') {
+            return c - 'a' + FIRST_LETTER_DIGIT;
+        }
+        if (c >= 'A' && c <= 'F') {
+            return c - 'A' + FIRST_LETTER_DIGIT;
+        }
+        return NOT_A_HEX_DIGIT;
+    }
+
+    private static void shiftIn(long[] address, int group) {
+        address[HIGH] = (address[HIGH] << BITS_PER_GROUP) | (address[LOW] >>> (Long.SIZE - BITS_PER_GROUP));
+        address[LOW] = (address[LOW] << BITS_PER_GROUP) | group;
+    }
+
+    /**
+     * Checks the number of groups and, for the compressed form, moves the groups before "::" to the top of the address
+     */
+    private static boolean complete(long[] address, int groupCount, int headCount, long headHigh, long headLow) {
+        if (headCount == NOT_COMPRESSED) {
+            return groupCount == GROUP_COUNT;
+        }
+        // "::" stands for at least one group of zeros
+        if (groupCount == GROUP_COUNT) {
+            return false;
+        }
+        // The head has at most 7 groups, and it fits in headLow when it is shifted by 64 bits or more
+        final int shift = BITS_PER_GROUP * (GROUP_COUNT - headCount);
+        if (shift >= Long.SIZE) {
+            address[HIGH] |= headLow << (shift - Long.SIZE);
+        } else {
+            address[HIGH] |= (headHigh << shift) | (headLow >>> (Long.SIZE - shift));
+            address[LOW] |= headLow << shift;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright 2018 Expedia, Inc.
+ *
+ *       Licensed under the Apache License, Version 2.0 (the "License");
+ *       you may not use this file except in compliance with the License.
+ *       You may obtain a copy of the License at
+ *
+ *           http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *       Unless required by applicable law or agreed to in writing, software
+ *       distributed under the License is distributed on an "AS IS" BASIS,
+ *       WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *       See the License for the specific language governing permissions and
+ *       limitations under the License.
+ *
+ */
+package com.expedia.www.haystack.commons.secretDetector;
+
+/**
+ * Splits values into lines where the ^ and $ of a Pattern compiled with the MULTILINE flag (as the patterns of
+ * chlorine-finder are) match, so that finders that do not use regular expressions can check what an anchored pattern
+ * would: the line terminators are \n, \r\n, \r, \u0085, \u2028 and \u2029. A value is walked one line at a time with
+ * <pre>
+ * int lineStart = 0;
+ * while (lineStart &lt;= input.length()) {
+ *     final int lineEnd = Lines.findEnd(input, lineStart);
+ *     // check input.subSequence(lineStart, lineEnd)
+ *     lineStart = Lines.findNextStart(input, lineEnd);
+ * }
+ * </pre>
+ */
+class Lines {
+    private Lines() {
+        // the methods are static
+    }
+
+    /**
+     * Finds the end of a line
+     *
+     * @param input the value
+     * @param start the index of the first character of the line
+     * @return the index of the line terminator that ends the line, or the length of the value for the last line
+     */
+    static int findEnd(CharSequence input, int start) {
+        final int length = input.length();
+        for (int index = start; index < length; index++) {
+            if (isLineTerminator(input.charAt(index))) {
+                return index;
+            }
+        }
+        return length;
+    }
+
+    /**
+     * Finds the start of the line after a line
+     *
+     * @param input the value
+     * @param end   the end of the line, as returned by {@link #findEnd(CharSequence, int)}
+     * @return the index of the first character of the next line; greater than the length of the value after the last
+     * line
+     */
+    static int findNextStart(CharSequence input, int end) {
+        if (end + 1 < input.length() && input.charAt(end) == '\r' && input.charAt(end + 1) == '\n') {
+            return end + 2;
+        }
+        return end + 1;
+    }
+
+    private static boolean isLineTerminator(char c) {
+        return (c <= '\r') ? (c == '\n' || c == '\r') : (c == '\u0085' || c == '\u2028' || c == '\u2029');
+    }
+}
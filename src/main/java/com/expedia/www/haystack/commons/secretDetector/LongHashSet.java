@@ -0,0 +1,124 @@
+/*
+ * Copyright 2018 Expedia, Inc.
+ *
+ *       Licensed under the Apache License, Version 2.0 (the "License");
+ *       you may not use this file except in compliance with the License.
+ *       You may obtain a copy of the License at
+ *
+ *           http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *       Unless required by applicable law or agreed to in writing, software
+ *       distributed under the License is distributed on an "AS IS" BASIS,
+ *       WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *       See the License for the specific language governing permissions and
+ *       limitations under the License.
+ *
+ */
+package com.expedia.www.haystack.commons.secretDetector;
+
+/**
+ * An immutable open addressed hash set of longs, stored in a single long[] without boxing; the white lists pack the
+ * numbers that a {@link NameDictionary} gives to the names of an entry into one long (see {@link #pack(int, int)}) and
+ * store their entries here. Each key stays in the slot returned by {@link #slotOf(long)}, so the owner of a LongHashSet
+ * can keep a value for each key in an array of {@link #capacity()} elements. The key 0 marks an empty slot, and so
+ * cannot be stored. A LongHashSet never changes once built, so any number of threads can read it without locking.
+ */
+@SuppressWarnings("WeakerAccess")
+public final class LongHashSet {
+    public static final int NOT_FOUND = -1;
+    static final String ZERO_KEY_MSG = "0 cannot be stored in a LongHashSet";
+    private static final long EMPTY = 0L;
+    private static final long LOW_INT_MASK = 0xFFFFFFFFL;
+
+    private final int mask;
+    private final long[] keys;
+    private final int size;
+
+    /**
+     * @param keys  the keys to store; duplicate keys are allowed and are stored once
+     * @param count the number of keys, which are the first elements of the array
+     * @throws IllegalArgumentException if one of the keys is 0
+     */
+    public LongHashSet(long[] keys, int count) {
+        // At most half full, so that probe sequences stay short; there is always at least one empty slot
+        final int capacity = Integer.highestOneBit(Math.max(count, 1)) << 2;
+        mask = capacity - 1;
+        this.keys = new long[capacity];
+        int distinctCount = 0;
+        for (int index = 0; index < count; index++) {
+            if (insert(keys[index])) {
+                distinctCount++;
+            }
+        }
+        size = distinctCount;
+    }
+
+    private boolean insert(long key) {
+        if (key == EMPTY) {
+            throw new IllegalArgumentException(ZERO_KEY_MSG);
+        }
+        int slot = hash(key) & mask;
+        while (keys[slot] != EMPTY) {
+            if (keys[slot] == key) {
+                return false;
+            }
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        return true;
+    }
+
+    /**
+     * Packs two ints (such as the numbers of two names) into a long
+     *
+     * @param high the int to store in the high 32 bits
+     * @param low  the int to store in the low 32 bits
+     * @return the packed long, which is not 0 if either int is not 0
+     */
+    public static long pack(int high, int low) {
+        return ((long) high << Integer.SIZE) | (low & LOW_INT_MASK);
+    }
+
+    /**
+     * @param key the key to look up
+     * @return the slot of the key, between 0 and capacity() - 1, or {@link #NOT_FOUND} if the key is not in the set
+     */
+    public int slotOf(long key) {
+        for (int slot = hash(key) & mask; keys[slot] != EMPTY; slot = (slot + 1) & mask) {
+            if (keys[slot] == key) {
+                return slot;
+            }
+        }
+        return NOT_FOUND;
+    }
+
+    public boolean contains(long key) {
+        return slotOf(key) != NOT_FOUND;
+    }
+
+    /**
+     * @return the number of distinct keys
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return the number of slots, which is between two and four times the number of keys given to the constructor
+     */
+    public int capacity() {
+        return keys.length;
+    }
+
+    /**
+     * The 64 bit finalization step of MurmurHash3, which mixes the bits of both halves of the key into the low bits
+     */
+    private static int hash(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+        return (int) key;
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright 2018 Expedia, Inc.
+ *
+ *       Licensed under the Apache License, Version 2.0 (the "License");
+ *       you may not use this file except in compliance with the License.
+ *       You may obtain a copy of the License at
+ *
+ *           http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *       Unless required by applicable law or agreed to in writing, software
+ *       distributed under the License is distributed on an "AS IS" BASIS,
+ *       WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *       See the License for the specific language governing permissions and
+ *       limitations under the License.
+ *
+ */
+package com.expedia.www.haystack.commons.secretDetector;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An immutable dictionary that numbers distinct names 1, 2, 3..., so that the white lists can store each name once and
+ * refer to it by its number, packing their entries into arrays of primitives instead of holding a String (or a map
+ * of Strings) for each name of each entry. The numbers are found with an open addressed hash table of ints, probed
+ * with a hash of the hash code that String caches; build a NameDictionary with a {@link Builder}.
+ */
+@SuppressWarnings("WeakerAccess")
+public final class NameDictionary {
+    /**
+     * The number of a name that is not in the dictionary; no name is numbered 0
+     */
+    public static final int NOT_FOUND = 0;
+
+    private final String[] names;
+    private final int mask;
+    private final int[] ids;
+
+    private NameDictionary(List<String> distinctNames) {
+        names = new String[distinctNames.size() + 1];
+        // At most half full, so that probe sequences stay short; there is always at least one empty slot
+        final int capacity = Integer.highestOneBit(Math.max(distinctNames.size(), 1)) << 2;
+        mask = capacity - 1;
+        ids = new int[capacity];
+        for (int id = 1; id < names.length; id++) {
+            names[id] = distinctNames.get(id - 1);
+            int slot = hash(names[id]) & mask;
+            while (ids[slot] != NOT_FOUND) {
+                slot = (slot + 1) & mask;
+            }
+            ids[slot] = id;
+        }
+    }
+
+    /**
+     * @param name the name to look up
+     * @return the number of the name, or {@link #NOT_FOUND} if it is not in the dictionary
+     */
+    public int getId(String name) {
+        for (int slot = hash(name) & mask; ids[slot] != NOT_FOUND; slot = (slot + 1) & mask) {
+            if (names[ids[slot]].equals(name)) {
+                return ids[slot];
+            }
+        }
+        return NOT_FOUND;
+    }
+
+    /**
+     * @return the number of distinct names, which is also the highest number
+     */
+    public int size() {
+        return names.length - 1;
+    }
+
+    /**
+     * The finalization step of MurmurHash3, applied to the hash code of the name so that names that differ in their
+     * last character do not crowd into neighboring slots
+     */
+    private static int hash(String name) {
+        int hash = name.hashCode();
+        hash ^= hash >>> 16;
+        hash *= 0x85ebca6b;
+        hash ^= hash >>> 13;
+        hash *= 0xc2b2ae35;
+        hash ^= hash >>> 16;
+        return hash;
+    }
+
+    /**
+     * Numbers names in the order in which they are first added
+     */
+    public static class Builder {
+        private final Map<String, Integer> idsByName = new HashMap<>();
+        private final List<String> distinctNames = new ArrayList<>();
+
+        /**
+         * @param name the name to add
+         * @return the number of the name, the same number each time the same name is added
+         */
+        public int add(String name) {
+            return idsByName.computeIfAbsent(name, key -> {
+                distinctNames.add(key);
+                return distinctNames.size();
+            });
+        }
+
+        public NameDictionary build() {
+            return new NameDictionary(distinctNames);
+        }
+    }
+}
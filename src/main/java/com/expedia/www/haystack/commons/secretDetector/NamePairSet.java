@@ -0,0 +1,80 @@
+/*
+ * Copyright 2018 Expedia, Inc.
+ *
+ *       Licensed under the Apache License, Version 2.0 (the "License");
+ *       you may not use this file except in compliance with the License.
+ *       You may obtain a copy of the License at
+ *
+ *           http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *       Unless required by applicable law or agreed to in writing, software
+ *       distributed under the License is distributed on an "AS IS" BASIS,
+ *       WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *       See the License for the specific language governing permissions and
+ *       limitations under the License.
+ *
+ */
+package com.expedia.www.haystack.commons.secretDetector;
+
+import java.util.Arrays;
+
+/**
+ * An immutable set of pairs of names, such as the (finder name, path) items of the XML and JSON white lists: the names
+ * are numbered by a {@link NameDictionary}, so each distinct name is stored once, and each pair is stored as the long
+ * made of the numbers of its names in a {@link LongHashSet}. Build a NamePairSet with a {@link Builder}; a NamePairSet
+ * never changes once built, so any number of threads can read it without locking.
+ */
+@SuppressWarnings("WeakerAccess")
+public final class NamePairSet {
+    public static final NamePairSet EMPTY = new Builder().build();
+
+    private final NameDictionary names;
+    private final LongHashSet pairs;
+
+    private NamePairSet(NameDictionary names, LongHashSet pairs) {
+        this.names = names;
+        this.pairs = pairs;
+    }
+
+    /**
+     * @param first  the first name of the pair, e.g. a finder name
+     * @param second the second name of the pair, e.g. the path of an XML element
+     * @return true if the pair is in the set
+     */
+    public boolean contains(String first, String second) {
+        final int firstId = names.getId(first);
+        final int secondId = names.getId(second);
+        return firstId != NameDictionary.NOT_FOUND && secondId != NameDictionary.NOT_FOUND
+                && pairs.contains(LongHashSet.pack(firstId, secondId));
+    }
+
+    /**
+     * @return the number of distinct pairs
+     */
+    public int size() {
+        return pairs.size();
+    }
+
+    /**
+     * Collects the pairs of a NamePairSet; duplicate pairs are allowed and are stored once
+     */
+    public static class Builder {
+        private static final int INITIAL_CAPACITY = 16;
+
+        private final NameDictionary.Builder namesBuilder = new NameDictionary.Builder();
+        private long[] keys = new long[INITIAL_CAPACITY];
+        private int count;
+
+        public Builder add(String first, String second) {
+            if (count == keys.length) {
+                keys = Arrays.copyOf(keys, 2 * count);
+            }
+            keys[count++] = LongHashSet.pack(namesBuilder.add(first), namesBuilder.add(second));
+            return this;
+        }
+
+        public NamePairSet build() {
+            return new NamePairSet(namesBuilder.build(), new LongHashSet(keys, count));
+        }
+    }
+}
@@ -16,35 +16,59 @@
  */
 package com.expedia.www.haystack.commons.secretDetector;
 
+import com.google.common.base.Splitter;
 import com.netflix.servo.util.VisibleForTesting;
-import io.dataapps.chlorine.finder.Finder;
-import io.dataapps.chlorine.pattern.RegexFinder;
 
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Iterator;
+import java.util.Collections;
 import java.util.List;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 /*
- * Finds IP V4 addresses, but ignores those in the 10.0.0.0/8, 192.168.0.0/16, and 127.0.0.0/8 ranges.
+ * Finds IP V4 addresses that are the entire value (or an entire line of it), but ignores those in the excluded CIDR
+ * ranges: by default the private 10.0.0.0/8, 172.16.0.0/12 and 192.168.0.0/16 ranges, the 127.0.0.0/8 loopback range
+ * and the 169.254.0.0/16 link-local range. Each line is parsed into an int by IpV4AddressParser and looked up in a
+ * CidrTrie of the excluded ranges, so nothing is allocated for a value without a non-local address.
  */
-public class NonLocalIpV4AddressFinder implements Finder {
-    static final Finder IPV4_FINDER = new RegexFinder("IPV4",
-            "^(?:(?:25[0-5]|2[0-4][0-9]|[01]?[0-9][0-9]?)\\.){3}(?:25[0-5]|2[0-4][0-9]|[01]?[0-9][0-9]?)$");
+public class NonLocalIpV4AddressFinder implements ProfiledFinder {
     @VisibleForTesting
     public static final String FINDER_NAME = "Non_Local_IpV4_Address";
+    @SuppressWarnings("WeakerAccess")
+    public static final String DEFAULT_EXCLUDED_RANGES =
+            "10.0.0.0/8, 172.16.0.0/12, 192.168.0.0/16, 127.0.0.0/8, 169.254.0.0/16";
 
-    private final Pattern pattern10Dot = Pattern.compile("(^10\\.)");
-    private final Pattern pattern192Dot168 = Pattern.compile("(^192\\.168\\.)");
-    private final Pattern pattern127Dot0Dot0 = Pattern.compile("(^127\\.0\\.0\\.)");
+    private static final int MINIMUM_PERIOD_COUNT = 3;
+    private static final int MINIMUM_DIGIT_COUNT = 4;
+
+    private final CidrTrie excludedRanges;
+
+    public NonLocalIpV4AddressFinder() {
+        this(DEFAULT_EXCLUDED_RANGES);
+    }
+
+    /**
+     * Creates a NonLocalIpV4AddressFinder that ignores the addresses in some CIDR ranges
+     *
+     * @param excludedRanges a comma separated list of CIDR ranges, such as 10.0.0.0/8, 192.168.0.0/16
+     * @throws IllegalArgumentException if one of the ranges is not a CIDR range of IP V4 addresses
+     */
+    @SuppressWarnings("WeakerAccess")
+    public NonLocalIpV4AddressFinder(String excludedRanges) {
+        this.excludedRanges = CidrTrie.createIpV4Trie(
+                Splitter.on(',').trimResults().omitEmptyStrings().splitToList(excludedRanges));
+    }
 
     @Override
     public String getName() {
         return FINDER_NAME;
     }
 
+    @Override
+    public boolean canMatch(ValueProfile valueProfile) {
+        return valueProfile.getPeriodCount() >= MINIMUM_PERIOD_COUNT
+                && valueProfile.getAsciiDigitCount() >= MINIMUM_DIGIT_COUNT;
+    }
+
     @Override
     public List<String> find(Collection<String> inputs) {
         final List<String> strings = new ArrayList<>();
@@ -56,25 +80,19 @@ public class NonLocalIpV4AddressFinder implements Finder {
 
     @Override
     public List<String> find(String input) {
-        final List<String> strings = IPV4_FINDER.find(input);
-        final Iterator<String> iterator = strings.iterator();
-        while (iterator.hasNext()) {
-            final String ipAddressFromIpv4Finder = iterator.next();
-            final Matcher matcher10Dot = pattern10Dot.matcher(ipAddressFromIpv4Finder);
-            if (matcher10Dot.find()) {
-                iterator.remove();
-            } else {
-                final Matcher matcher192Dot168 = pattern192Dot168.matcher(ipAddressFromIpv4Finder);
-                if (matcher192Dot168.find()) {
-                    iterator.remove();
-                } else {
-                    final Matcher matcher127Dot0Dot0 = pattern127Dot0Dot0.matcher(ipAddressFromIpv4Finder);
-                    if (matcher127Dot0Dot0.find()) {
-                        iterator.remove();
-                    }
+        List<String> strings = null;
+        int lineStart = 0;
+        while (lineStart <= input.length()) {
+            final int lineEnd = Lines.findEnd(input, lineStart);
+            final long address = IpV4AddressParser.parse(input, lineStart, lineEnd);
+            if (address != IpV4AddressParser.NOT_AN_ADDRESS && !excludedRanges.contains((int) address)) {
+                if (strings == null) {
+                    strings = new ArrayList<>();
                 }
+                strings.add(input.substring(lineStart, lineEnd));
             }
+            lineStart = Lines.findNextStart(input, lineEnd);
         }
-        return strings;
+        return (strings == null) ? Collections.emptyList() : strings;
     }
 }
@@ -0,0 +1,99 @@
+/*
+ * Copyright 2018 Expedia, Inc.
+ *
+ *       Licensed under the Apache License, Version 2.0 (the "License");
+ *       you may not use this file except in compliance with the License.
+ *       You may obtain a copy of the License at
+ *
+ *           http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *       Unless required by applicable law or agreed to in writing, software
+ *       distributed under the License is distributed on an "AS IS" BASIS,
+ *       WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *       See the License for the specific language governing permissions and
+ *       limitations under the License.
+ *
+ */
+package com.expedia.www.haystack.commons.secretDetector;
+
+import com.google.common.base.Splitter;
+import com.netflix.servo.util.VisibleForTesting;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/*
+ * Finds IP V6 addresses that are the entire value (or an entire line of it), but ignores those in the excluded CIDR
+ * ranges: by default the ::1 loopback address, the :: unspecified address, the fe80::/10 link-local range and the
+ * fc00::/7 unique local range. Each line is parsed into two longs by IpV6AddressParser and looked up in a CidrTrie of
+ * the excluded ranges, so nothing is allocated for a value without a non-local address. Name it in a <class> element
+ * of finders_default.xml to use it.
+ */
+public class NonLocalIpV6AddressFinder implements ProfiledFinder {
+    @VisibleForTesting
+    public static final String FINDER_NAME = "Non_Local_IpV6_Address";
+    @SuppressWarnings("WeakerAccess")
+    public static final String DEFAULT_EXCLUDED_RANGES = "::1/128, ::/128, fe80::/10, fc00::/7";
+
+    private static final int MINIMUM_COLON_COUNT = 2;
+    private static final ThreadLocal<long[]> ADDRESSES =
+            ThreadLocal.withInitial(() -> new long[IpV6AddressParser.LONGS_PER_ADDRESS]);
+
+    private final CidrTrie excludedRanges;
+
+    public NonLocalIpV6AddressFinder() {
+        this(DEFAULT_EXCLUDED_RANGES);
+    }
+
+    /**
+     * Creates a NonLocalIpV6AddressFinder that ignores the addresses in some CIDR ranges
+     *
+     * @param excludedRanges a comma separated list of CIDR ranges, such as fe80::/10, fc00::/7
+     * @throws IllegalArgumentException if one of the ranges is not a CIDR range of IP V6 addresses
+     */
+    @SuppressWarnings("WeakerAccess")
+    public NonLocalIpV6AddressFinder(String excludedRanges) {
+        this.excludedRanges = CidrTrie.createIpV6Trie(
+                Splitter.on(',').trimResults().omitEmptyStrings().splitToList(excludedRanges));
+    }
+
+    @Override
+    public String getName() {
+        return FINDER_NAME;
+    }
+
+    @Override
+    public boolean canMatch(ValueProfile valueProfile) {
+        return valueProfile.getColonCount() >= MINIMUM_COLON_COUNT;
+    }
+
+    @Override
+    public List<String> find(Collection<String> inputs) {
+        final List<String> strings = new ArrayList<>();
+        for (String input : inputs) {
+            strings.addAll(find(input));
+        }
+        return strings;
+    }
+
+    @Override
+    public List<String> find(String input) {
+        final long[] address = ADDRESSES.get();
+        List<String> strings = null;
+        int lineStart = 0;
+        while (lineStart <= input.length()) {
+            final int lineEnd = Lines.findEnd(input, lineStart);
+            if (IpV6AddressParser.parse(input, lineStart, lineEnd, address)
+                    && !excludedRanges.contains(address[IpV6AddressParser.HIGH], address[IpV6AddressParser.LOW])) {
+                if (strings == null) {
+                    strings = new ArrayList<>();
+                }
+                strings.add(input.substring(lineStart, lineEnd));
+            }
+            lineStart = Lines.findNextStart(input, lineEnd);
+        }
+        return (strings == null) ? Collections.emptyList() : strings;
+    }
+}
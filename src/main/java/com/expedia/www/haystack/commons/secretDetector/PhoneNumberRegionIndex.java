@@ -0,0 +1,386 @@
+/*
+ * Copyright 2018 Expedia, Inc.
+ *
+ *       Licensed under the Apache License, Version 2.0 (the "License");
+ *       you may not use this file except in compliance with the License.
+ *       You may obtain a copy of the License at
+ *
+ *           http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *       Unless required by applicable law or agreed to in writing, software
+ *       distributed under the License is distributed on an "AS IS" BASIS,
+ *       WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *       See the License for the specific language governing permissions and
+ *       limitations under the License.
+ *
+ */
+package com.expedia.www.haystack.commons.secretDetector;
+
+import com.google.i18n.phonenumbers.PhoneNumberUtil;
+import com.google.i18n.phonenumbers.Phonemetadata.PhoneMetadata;
+import com.google.i18n.phonenumbers.Phonemetadata.PhoneMetadataCollection;
+import com.netflix.servo.util.VisibleForTesting;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * An index, built from the libphonenumber metadata of the enabled regions, of the regions in which a value with a given
+ * number of digits could be a valid phone number, so that HaystackPhoneNumberFinder only parses a value for the regions
+ * in which it could be valid. A valid number's national significant number has one of the possible lengths of its
+ * region, and it is made of the digits of the value less the dialing prefixes and country code that parsing strips
+ * (plus the digits, if any, that the region's national prefix transform rule inserts). The bounds are conservative,
+ * so the index never rules out a region in which libphonenumber would find the value valid:
+ * <ul>
+ * <li>the lower bound on the number of digits always applies;</li>
+ * <li>the upper bound does not apply to values that contain one of the {@link #EXTENSION_CHARS}, which can start an
+ * extension (without letters, which the finder has already ruled out), whose digits are not part of the number;</li>
+ * <li>values with non-ASCII characters, which may contain non-ASCII digits, are not indexed at all.</li>
+ * </ul>
+ * The index does not use the leading digits of the regions: they apply to the national significant number, whose
+ * first digit is only known once the prefixes have been stripped, i.e. after parsing. The metadata is read from the
+ * resources in which libphonenumber keeps it; a supported region whose metadata cannot be read is not bounded, so a
+ * change in how libphonenumber packages its metadata only costs the speed up, and is logged as a warning.
+ */
+@SuppressWarnings("WeakerAccess")
+class PhoneNumberRegionIndex {
+    @VisibleForTesting
+    static final int UNBOUNDED = Integer.MAX_VALUE;
+    @VisibleForTesting
+    static final String EXTENSION_CHARS = ";,#~";
+    @VisibleForTesting
+    static final String MISSING_METADATA_MSG =
+            "The phone number metadata of region %s could not be found; its numbers are checked whatever their length";
+    @VisibleForTesting
+    static final String UNREADABLE_METADATA_MSG =
+            "The phone number metadata of region %s could not be read; its numbers are checked whatever their length";
+    private static final String METADATA_FILE_PREFIX = "/com/google/i18n/phonenumbers/data/PhoneNumberMetadataProto_";
+    private static final int MAXIMUM_COUNTRY_CODE_LENGTH = 3;
+    private static final char MAXIMUM_ASCII_CHAR = 0x7F;
+    private static final DigitCountBounds UNKNOWN_BOUNDS = new DigitCountBounds(0, UNBOUNDED);
+
+    private final List<String> allRegionCodes;
+    private final List<List<String>> regionCodesByDigitCount;
+    private final List<List<String>> regionCodesByMinimumDigitCount;
+
+    /**
+     * The bounds on the number of digits in a value that is a valid phone number in one region
+     */
+    @VisibleForTesting
+    static class DigitCountBounds {
+        final int minimum;
+        final int maximum;
+
+        DigitCountBounds(int minimum, int maximum) {
+            this.minimum = minimum;
+            this.maximum = maximum;
+        }
+    }
+
+    PhoneNumberRegionIndex(List<String> regionCodes) {
+        this(regionCodes, new Factory(), LoggerFactory.getLogger(PhoneNumberRegionIndex.class));
+    }
+
+    @VisibleForTesting
+    PhoneNumberRegionIndex(List<String> regionCodes, Factory factory, Logger logger) {
+        allRegionCodes = Collections.unmodifiableList(new ArrayList<>(regionCodes));
+        final List<DigitCountBounds> boundsList = new ArrayList<>(regionCodes.size());
+        int indexSize = 1;
+        for (final String regionCode : regionCodes) {
+            final DigitCountBounds bounds = getDigitCountBounds(regionCode, factory, logger);
+            boundsList.add(bounds);
+            if (bounds.minimum != UNBOUNDED) {
+                indexSize = Math.max(indexSize, bounds.minimum + 1);
+            }
+            if (bounds.maximum != UNBOUNDED) {
+                indexSize = Math.max(indexSize, bounds.maximum + 2); // the last entry is for all larger digit counts
+            }
+        }
+        regionCodesByDigitCount = new ArrayList<>(indexSize);
+        regionCodesByMinimumDigitCount = new ArrayList<>(indexSize);
+        for (int digitCount = 0; digitCount < indexSize; digitCount++) {
+            final List<String> withinBounds = new ArrayList<>();
+            final List<String> aboveMinimum = new ArrayList<>();
+            for (int index = 0; index < regionCodes.size(); index++) {
+                final DigitCountBounds bounds = boundsList.get(index);
+                if (digitCount >= bounds.minimum) {
+                    aboveMinimum.add(regionCodes.get(index));
+                    if (digitCount <= bounds.maximum) {
+                        withinBounds.add(regionCodes.get(index));
+                    }
+                }
+            }
+            regionCodesByDigitCount.add(withinBounds);
+            regionCodesByMinimumDigitCount.add(aboveMinimum);
+        }
+    }
+
+    /**
+     * Gets the regions in which the input could be a valid phone number
+     *
+     * @param input the value to check
+     * @return the candidate regions, in the order in which they were given to the constructor
+     */
+    List<String> getCandidateRegionCodes(String input) {
+        int digitCount = 0;
+        boolean mayHaveExtension = false;
+        for (int index = 0; index < input.length(); index++) {
+            final char c = input.charAt(index);
+            if (c > MAXIMUM_ASCII_CHAR) {
+                return allRegionCodes;
+            }
+            if (c >= '0' && c <= '9') {
+                digitCount++;
+            } else if (EXTENSION_CHARS.indexOf(c) >= 0) {
+                mayHaveExtension = true;
+            }
+        }
+        final List<List<String>> index = mayHaveExtension
+                ? regionCodesByMinimumDigitCount : regionCodesByDigitCount;
+        return index.get(Math.min(digitCount, index.size() - 1));
+    }
+
+    /**
+     * Computes the bounds on the number of digits of a value that is a valid number in a region; a region that
+     * libphonenumber does not support never has valid numbers, and a region whose metadata cannot be read or has no
+     * possible lengths is not bounded.
+     */
+    @VisibleForTesting
+    static DigitCountBounds getDigitCountBounds(String regionCode, Factory factory, Logger logger) {
+        if (!factory.isSupportedRegion(regionCode)) {
+            return new DigitCountBounds(UNBOUNDED, UNBOUNDED);
+        }
+        final PhoneMetadata metadata = readMetadata(regionCode, factory, logger);
+        if (metadata == null) {
+            return UNKNOWN_BOUNDS;
+        }
+        final List<Integer> possibleLengths = metadata.getGeneralDesc().getPossibleLengthList();
+        return possibleLengths.isEmpty()
+                ? UNKNOWN_BOUNDS : getDigitCountBounds(regionCode, metadata, possibleLengths, factory, logger);
+    }
+
+    private static PhoneMetadata readMetadata(String regionCode, Factory factory, Logger logger) {
+        try {
+            final PhoneMetadata metadata = factory.getMetadata(regionCode);
+            if (metadata == null) {
+                logger.warn(String.format(MISSING_METADATA_MSG, regionCode));
+            }
+            return metadata;
+        } catch (IOException e) {
+            logger.warn(String.format(UNREADABLE_METADATA_MSG, regionCode), e);
+            return null;
+        }
+    }
+
+    private static DigitCountBounds getDigitCountBounds(String regionCode,
+                                                        PhoneMetadata metadata,
+                                                        List<Integer> possibleLengths,
+                                                        Factory factory,
+                                                        Logger logger) {
+        // Numbers dialed with a country code use the national prefix of the main region of that country code
+        final String mainRegionCode = factory.getMainRegionCode(metadata.getCountryCode());
+        final PhoneMetadata mainMetadata = mainRegionCode.equals(regionCode)
+                ? metadata : readMetadata(mainRegionCode, factory, logger);
+        if (mainMetadata == null) {
+            return UNKNOWN_BOUNDS;
+        }
+        final int insertedDigits = Math.max(countInsertedDigits(metadata), countInsertedDigits(mainMetadata));
+        final int minimum = Math.max(0, Collections.min(possibleLengths) - insertedDigits);
+        // The international prefix and country code, or the country code alone, then the national prefix, which
+        // parsing may strip twice when the number starts with the country code but no plus sign
+        final int nationalPrefixLength = Math.max(
+                getMaximumNationalPrefixLength(metadata), getMaximumNationalPrefixLength(mainMetadata));
+        final long maximum = (long) Collections.max(possibleLengths)
+                + getMaximumMatchLength(metadata.getInternationalPrefix())
+                + MAXIMUM_COUNTRY_CODE_LENGTH
+                + 2L * nationalPrefixLength;
+        return new DigitCountBounds(minimum, (int) Math.min(maximum, UNBOUNDED));
+    }
+
+    private static int getMaximumNationalPrefixLength(PhoneMetadata metadata) {
+        return getMaximumMatchLength(metadata.getNationalPrefixForParsing());
+    }
+
+    private static int countInsertedDigits(PhoneMetadata metadata) {
+        // A digit that follows a $ is a group reference; any other character is inserted into the national number
+        final String transformRule = metadata.getNationalPrefixTransformRule();
+        int count = 0;
+        for (int index = 0; index < transformRule.length(); index++) {
+            if (transformRule.charAt(index) == '$') {
+                index++;
+            } else {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Computes the maximum length of the text that a regular expression of the kind found in libphonenumber metadata
+     * can match: literals, escapes, character classes, groups, alternations and the ?, {n} and {n,m} quantifiers.
+     * Any other construct (*, +, {n,}, look-arounds, back references) is treated as unbounded.
+     *
+     * @param regex the regular expression
+     * @return the maximum match length, or UNBOUNDED
+     */
+    @VisibleForTesting
+    static int getMaximumMatchLength(String regex) {
+        final RegexLengthParser regexLengthParser = new RegexLengthParser(regex);
+        final long length = regexLengthParser.parseAlternation();
+        return (regexLengthParser.isAtEnd() && length < UNBOUNDED) ? (int) length : UNBOUNDED;
+    }
+
+    private static class RegexLengthParser {
+        private final String regex;
+        private int position;
+
+        private RegexLengthParser(String regex) {
+            this.regex = regex;
+        }
+
+        private boolean isAtEnd() {
+            return position >= regex.length();
+        }
+
+        private long parseAlternation() {
+            long maximum = parseSequence();
+            while (!isAtEnd() && regex.charAt(position) == '|') {
+                position++;
+                maximum = Math.max(maximum, parseSequence());
+            }
+            return maximum;
+        }
+
+        private long parseSequence() {
+            long total = 0;
+            while (!isAtEnd() && regex.charAt(position) != '|' && regex.charAt(position) != ')') {
+                total = Math.min(total + parseQuantifier(parseAtom()), UNBOUNDED);
+            }
+            return total;
+        }
+
+        private long parseAtom() {
+            final char c = regex.charAt(position++);
+            switch (c) {
+                case '(':
+                    if (regex.startsWith("?:", position)) {
+                        position += 2;
+                    } else if (!isAtEnd() && regex.charAt(position) == '?') {
+                        return unbounded(); // a look-around or a flag group
+                    }
+                    final long length = parseAlternation();
+                    if (isAtEnd()) {
+                        return unbounded();
+                    }
+                    position++; // the )
+                    return length;
+                case '[':
+                    return parseCharacterClass();
+                case '\\':
+                    if (isAtEnd() || Character.isDigit(regex.charAt(position))) {
+                        return unbounded(); // a back reference
+                    }
+                    position++;
+                    return 1;
+                case '^':
+                case '$':
+                    return 0;
+                default:
+                    return 1;
+            }
+        }
+
+        private long parseCharacterClass() {
+            int depth = 1;
+            if (!isAtEnd() && regex.charAt(position) == '^') {
+                position++;
+            }
+            if (!isAtEnd() && regex.charAt(position) == ']') {
+                position++; // a ] at the start of a class is a literal
+            }
+            while (!isAtEnd() && depth > 0) {
+                final char c = regex.charAt(position++);
+                if (c == '\\') {
+                    position++;
+                } else if (c == '[') {
+                    depth++;
+                } else if (c == ']') {
+                    depth--;
+                }
+            }
+            return (depth == 0) ? 1 : unbounded();
+        }
+
+        private long parseQuantifier(long atomLength) {
+            if (isAtEnd()) {
+                return atomLength;
+            }
+            final char c = regex.charAt(position);
+            if (c == '?') {
+                position++;
+                return atomLength;
+            }
+            if (c == '*' || c == '+') {
+                return unbounded();
+            }
+            if (c == '{') {
+                final int end = regex.indexOf('}', position);
+                if (end < 0) {
+                    return unbounded();
+                }
+                final String bounds = regex.substring(position + 1, end);
+                position = end + 1;
+                final int comma = bounds.indexOf(',');
+                final String maximum = (comma < 0) ? bounds : bounds.substring(comma + 1);
+                if (maximum.isEmpty() || !maximum.chars().allMatch(Character::isDigit)) {
+                    return unbounded();
+                }
+                return Math.min(atomLength * Long.parseLong(maximum), UNBOUNDED);
+            }
+            return atomLength;
+        }
+
+        private long unbounded() {
+            position = regex.length();
+            return UNBOUNDED;
+        }
+    }
+
+    @VisibleForTesting
+    static class Factory {
+        /**
+         * Reads the libphonenumber metadata of a region from the resource in which libphonenumber keeps it
+         *
+         * @param regionCode the region code
+         * @return the metadata, or null if there is no such resource
+         */
+        PhoneMetadata getMetadata(String regionCode) throws IOException {
+            try (final InputStream inputStream = getMetadataInputStream(regionCode)) {
+                if (inputStream == null) {
+                    return null;
+                }
+                final PhoneMetadataCollection phoneMetadataCollection = new PhoneMetadataCollection();
+                phoneMetadataCollection.readExternal(new ObjectInputStream(inputStream));
+                return phoneMetadataCollection.getMetadataList().get(0);
+            }
+        }
+
+        InputStream getMetadataInputStream(String regionCode) {
+            return PhoneNumberUtil.class.getResourceAsStream(METADATA_FILE_PREFIX + regionCode);
+        }
+
+        boolean isSupportedRegion(String regionCode) {
+            return PhoneNumberUtil.getInstance().getSupportedRegions().contains(regionCode);
+        }
+
+        String getMainRegionCode(int countryCode) {
+            return PhoneNumberUtil.getInstance().getRegionCodeForCountryCode(countryCode);
+        }
+    }
+}
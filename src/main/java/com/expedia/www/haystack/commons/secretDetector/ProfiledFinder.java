@@ -0,0 +1,34 @@
+/*
+ * Copyright 2018 Expedia, Inc.
+ *
+ *       Licensed under the Apache License, Version 2.0 (the "License");
+ *       you may not use this file except in compliance with the License.
+ *       You may obtain a copy of the License at
+ *
+ *           http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *       Unless required by applicable law or agreed to in writing, software
+ *       distributed under the License is distributed on an "AS IS" BASIS,
+ *       WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *       See the License for the specific language governing permissions and
+ *       limitations under the License.
+ *
+ */
+package com.expedia.www.haystack.commons.secretDetector;
+
+import io.dataapps.chlorine.finder.Finder;
+
+/**
+ * A Finder that can declare, from the {@link ValueProfile} of a value, that it will not find anything in the value.
+ * {@link HaystackFinderEngine} does not call find() on a ProfiledFinder whose canMatch() returns false.
+ */
+public interface ProfiledFinder extends Finder {
+    /**
+     * Decides whether the finder might find something in a value; implementations must never return false for a value
+     * in which find() would find something, but they may return true for values in which find() finds nothing.
+     *
+     * @param valueProfile the profile of the value
+     * @return false if find() cannot find anything in the value
+     */
+    boolean canMatch(ValueProfile valueProfile);
+}
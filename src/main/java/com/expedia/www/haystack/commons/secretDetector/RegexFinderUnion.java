@@ -0,0 +1,117 @@
+/*
+ * Copyright 2018 Expedia, Inc.
+ *
+ *       Licensed under the Apache License, Version 2.0 (the "License");
+ *       you may not use this file except in compliance with the License.
+ *       You may obtain a copy of the License at
+ *
+ *           http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *       Unless required by applicable law or agreed to in writing, software
+ *       distributed under the License is distributed on an "AS IS" BASIS,
+ *       WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *       See the License for the specific language governing permissions and
+ *       limitations under the License.
+ *
+ */
+package com.expedia.www.haystack.commons.secretDetector;
+
+import io.dataapps.chlorine.finder.Finder;
+import io.dataapps.chlorine.pattern.RegexFinder;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Combines the patterns of the RegexFinder objects (the finders created from the &lt;pattern&gt; elements in
+ * finders_default.xml) into a single alternation, so that one walk of a value determines whether any of those patterns
+ * can match it. java.util.regex has no multi-pattern automaton, but an alternation of the patterns is the closest
+ * equivalent: if the alternation finds nothing, none of the individual patterns can find anything either, and since
+ * most values contain no secrets, that one walk is usually the only regex work done for them. When the alternation does
+ * find something, the individual RegexFinder objects are run as usual, so the results are identical to those of the
+ * individual finders.
+ * <p>
+ * Patterns are only combined with other patterns that were compiled with the same flags, and patterns that use back
+ * references are never combined, because wrapping them in an alternation would change the group numbers they refer to.
+ */
+@SuppressWarnings("WeakerAccess")
+public class RegexFinderUnion {
+    private static final Pattern BACK_REFERENCE_PATTERN = Pattern.compile("\\\\(\\d|k<)");
+    private static final String ALTERNATION_FORMAT = "(?:%s)";
+    private static final String ALTERNATION_DELIMITER = "|";
+
+    private final Map<Finder, Integer> unionIndexes = new IdentityHashMap<>();
+    private final List<Pattern> unions = new ArrayList<>();
+
+    public RegexFinderUnion(List<Finder> finders) {
+        final Map<Integer, List<RegexFinder>> regexFindersByFlags = new LinkedHashMap<>();
+        for (final Finder finder : finders) {
+            if (isCombinable(finder)) {
+                final RegexFinder regexFinder = (RegexFinder) finder;
+                regexFindersByFlags.computeIfAbsent(regexFinder.getPattern().flags(), k -> new ArrayList<>())
+                        .add(regexFinder);
+            }
+        }
+        for (final Map.Entry<Integer, List<RegexFinder>> entry : regexFindersByFlags.entrySet()) {
+            addUnion(entry.getKey(), entry.getValue());
+        }
+    }
+
+    private static boolean isCombinable(Finder finder) {
+        // Subclasses of RegexFinder (like CreditCardFinder) can do anything in find(), so only RegexFinder itself
+        return finder.getClass() == RegexFinder.class
+                && !BACK_REFERENCE_PATTERN.matcher(((RegexFinder) finder).getPattern().pattern()).find();
+    }
+
+    private void addUnion(int flags, List<RegexFinder> regexFinders) {
+        if (regexFinders.size() > 1) { // a union of one pattern would just walk the value a second time
+            final List<String> alternatives = new ArrayList<>(regexFinders.size());
+            for (final RegexFinder regexFinder : regexFinders) {
+                alternatives.add(String.format(ALTERNATION_FORMAT, regexFinder.getPattern().pattern()));
+            }
+            try {
+                final Pattern union = Pattern.compile(String.join(ALTERNATION_DELIMITER, alternatives), flags);
+                for (final RegexFinder regexFinder : regexFinders) {
+                    unionIndexes.put(regexFinder, unions.size());
+                }
+                unions.add(union);
+            } catch (PatternSyntaxException e) {
+                // For example the same named group in two patterns; these finders will simply be run one at a time
+            }
+        }
+    }
+
+    /**
+     * @return the number of alternations created; usually one, as finders_default.xml patterns share the same flags
+     */
+    public int getUnionCount() {
+        return unions.size();
+    }
+
+    /**
+     * Finds the alternation that includes the pattern of a finder
+     *
+     * @param finder the finder to look for
+     * @return the index of the alternation that contains the finder's pattern, or -1 if the finder is not combined
+     */
+    public int getUnionIndex(Finder finder) {
+        final Integer unionIndex = unionIndexes.get(finder);
+        return unionIndex == null ? -1 : unionIndex;
+    }
+
+    /**
+     * Walks the value once with an alternation
+     *
+     * @param unionIndex the index of the alternation, as returned by {@link #getUnionIndex(Finder)}
+     * @param input      the value to check
+     * @return false if none of the patterns in the alternation can match the input, true if at least one of them can
+     */
+    public boolean find(int unionIndex, CharSequence input) {
+        return unions.get(unionIndex).matcher(input).find();
+    }
+}
@@ -22,10 +22,6 @@ import com.amazonaws.services.s3.AmazonS3ClientBuilder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.Map;
-import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
-
 @SuppressWarnings("WeakerAccess")
 public class S3ConfigFetcher extends S3ConfigFetcherBase {
     private static final int ITEM_COUNT = 2;
@@ -44,24 +40,25 @@ public class S3ConfigFetcher extends S3ConfigFetcherBase {
                 s3ConfigFetcherFactory, ITEM_COUNT);
     }
 
+    /**
+     * Tells whether a finder's secrets in an XML element or JSON field are white listed
+     *
+     * @param strings the finder name and the path of the element or field
+     * @return true if the secrets are white listed
+     */
     public boolean isInWhiteList(String... strings) {
-        @SuppressWarnings("unchecked") final Map<String, Set<String>> finderNameMap =
-                (Map<String, Set<String>>) getWhiteListItems();
-        final Set<String> xmlSet = finderNameMap.get(strings[0]);
-        if (xmlSet != null) {
-            return xmlSet.contains(strings[1]);
-        }
-        return false;
+        return ((NamePairSet) getWhiteListItems()).contains(strings[0], strings[1]);
     }
 
-    @SuppressWarnings("unchecked")
     @Override
     protected void putItemInWhiteList(Object whiteList, WhiteListItemBase whiteListItem) {
         final WhiteListItem xmlWhiteListItem = (WhiteListItem) whiteListItem;
-        final Map<String, Set<String>> whiteListCastAsMap = (Map<String, Set<String>>) whiteList;
-        final Set<String> xmlPaths = whiteListCastAsMap.computeIfAbsent(
-                xmlWhiteListItem.getFinderName(), v -> ConcurrentHashMap.newKeySet());
-        xmlPaths.add(xmlWhiteListItem.getPath());
+        ((NamePairSet.Builder) whiteList).add(xmlWhiteListItem.getFinderName(), xmlWhiteListItem.getPath());
+    }
+
+    @Override
+    protected NamePairSet toWhiteListSnapshot(Object whiteList) {
+        return ((NamePairSet.Builder) whiteList).build();
     }
 
     public static class SpanFactory extends Factory<WhiteListItem> {
@@ -71,8 +68,8 @@ public class S3ConfigFetcher extends S3ConfigFetcherBase {
         }
 
         @Override
-        public Map<String, Set<String>> createWhiteList() {
-            return new ConcurrentHashMap<>();
+        public NamePairSet.Builder createWhiteList() {
+            return new NamePairSet.Builder();
         }
     }
 }
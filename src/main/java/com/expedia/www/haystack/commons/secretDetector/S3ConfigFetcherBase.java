@@ -17,25 +17,39 @@
 package com.expedia.www.haystack.commons.secretDetector;
 
 import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.GetObjectRequest;
 import com.amazonaws.services.s3.model.S3Object;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.netflix.servo.util.VisibleForTesting;
 import org.slf4j.Logger;
 
 import java.io.BufferedReader;
+import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.util.Arrays;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.concurrent.atomic.AtomicLong;
-import java.util.concurrent.atomic.AtomicReference;
 
-public abstract class S3ConfigFetcherBase {
-    private static final long ONE_HOUR = TimeUnit.HOURS.toMillis(1L);
+/**
+ * Fetches a white list from S3. The white list is fetched when the fetcher is started, on the thread that calls
+ * {@link #start()} or that first looks up the white list, so that no lookup is ever made in a white list that has not
+ * been fetched yet; it is then fetched again once an hour on a background thread with a conditional GET (If-None-Match
+ * with the ETag of the last fetch), so that an unchanged file is neither downloaded nor parsed again. Once the fetcher
+ * has started, looking up the white list is a volatile read of the last white list fetched; it never waits for S3.
+ * Close a fetcher that is no longer needed, so that the shared refresh thread lets go of it.
+ */
+public abstract class S3ConfigFetcherBase implements Closeable {
+    @VisibleForTesting
+    static final long ONE_HOUR = TimeUnit.HOURS.toMillis(1L);
     @VisibleForTesting
     public static final String SUCCESSFUL_WHITELIST_UPDATE_MSG = "Successfully updated the whitelist from S3";
     @VisibleForTesting
+    public static final String UNCHANGED_WHITELIST_MSG = "The whitelist in S3 has not changed";
+    @VisibleForTesting
     public static final String ERROR_MESSAGE = "Exception getting white list items";
     public static final String INVALID_DATA_MSG = "The line [%s] does not contain at least %d semicolons to "
             + "separate the expected fields";
@@ -47,11 +61,13 @@ public abstract class S3ConfigFetcherBase {
     protected final String key;
     private final AmazonS3 amazonS3;
     private final Factory factory;
-    @VisibleForTesting
-    private final AtomicReference<Object> whiteList = new AtomicReference<>();
     private final int itemCount;
-    private final AtomicLong lastUpdateTime = new AtomicLong(0L);
-    private final AtomicBoolean isUpdateInProgress = new AtomicBoolean(false);
+    private volatile boolean isStarted;
+    private volatile Object whiteList;
+    // Guarded by this
+    private ScheduledFuture<?> scheduledFuture;
+    private boolean isClosed;
+    private String eTag;
 
     /**
      * This <code>Prefix</code> enum allows different types of lines to exist in the same S3 item. The most common use
@@ -99,20 +115,68 @@ public abstract class S3ConfigFetcherBase {
         this.key = key;
         this.amazonS3 = amazonS3;
         this.factory = factory;
-        this.whiteList.set(factory.createWhiteList());
         this.itemCount = itemCount;
     }
 
+    /**
+     * Does nothing; refresh() used to do nothing while an update was flagged as in progress
+     *
+     * @param isUpdateInProgress ignored
+     * @deprecated refreshes are serialized by the fetcher itself; this remains only so that existing callers compile
+     */
+    @Deprecated
     public void setUpdateInProgressForTest(boolean isUpdateInProgress) {
-        this.isUpdateInProgress.set(isUpdateInProgress);
     }
 
+    /**
+     * @return false; refreshes are serialized by the fetcher itself, and no longer flag themselves as in progress
+     * @deprecated this remains only so that existing callers compile
+     */
+    @Deprecated
     public boolean isUpdateInProgressForTest() {
-        return isUpdateInProgress.get();
+        return false;
     }
 
+    /**
+     * @return 0; the fetcher no longer records when it last refreshed the white list
+     * @deprecated the white list is refreshed on a schedule; this remains only so that existing callers compile
+     */
+    @Deprecated
     public long getLastUpdateTimeForTest() {
-        return lastUpdateTime.get();
+        return 0L;
+    }
+
+    /**
+     * Fetches the white list from S3 on the calling thread, and then schedules a refresh once an hour; does nothing
+     * if the fetcher has already started. Calling start() is optional, as the first lookup of the white list starts
+     * the fetcher, but it moves the wait for S3 out of that lookup. If the first fetch fails, the white list is empty
+     * until a refresh succeeds.
+     */
+    public synchronized void start() {
+        if (isStarted) {
+            return;
+        }
+        refresh();
+        if (whiteList == null) {
+            whiteList = toWhiteListSnapshot(factory.createWhiteList());
+        }
+        if (!isClosed) {
+            scheduledFuture = factory.createScheduledExecutorService().scheduleWithFixedDelay(
+                    this::refresh, ONE_HOUR, ONE_HOUR, TimeUnit.MILLISECONDS);
+        }
+        isStarted = true;
+    }
+
+    /**
+     * Stops refreshing the white list; the last white list fetched remains in use. A fetcher closed before it has
+     * started still fetches the white list once, when it is first looked up.
+     */
+    @Override
+    public synchronized void close() {
+        isClosed = true;
+        if (scheduledFuture != null) {
+            scheduledFuture.cancel(false);
+        }
     }
 
     private BufferedReader getBufferedReader(S3Object s3Object) {
@@ -161,51 +225,89 @@ public abstract class S3ConfigFetcherBase {
     }
 
     public Object getWhiteListItems() {
-        final long now = factory.createCurrentTimeMillis();
-        if ((now - lastUpdateTime.get()) > ONE_HOUR) {
-            if (isUpdateInProgress.compareAndSet(false, true)) {
-                try {
-                    whiteList.set(readAllWhiteListItemsFromS3());
-                    logger.info(SUCCESSFUL_WHITELIST_UPDATE_MSG);
-                } catch (InvalidWhitelistItemInputException e) {
-                    logger.error(e.getMessage(), e);
-                } catch (Exception e) {
-                    logger.error(ERROR_MESSAGE, e);
-                } finally {
-                    isUpdateInProgress.set(false);
-                    // Set last update time for successes and failures, to avoid log spamming for a persistent error
-                    lastUpdateTime.set(now);
+        if (!isStarted) {
+            start();
+        }
+        return whiteList;
+    }
+
+    /**
+     * Fetches the white list from S3 unless it has not changed since the last successful fetch; called once an hour
+     * on a background thread once the fetcher has started, and callable at any time to pick up a change sooner.
+     * Errors are logged, and the last white list fetched remains in use.
+     */
+    public synchronized void refresh() {
+        final GetObjectRequest getObjectRequest = new GetObjectRequest(bucket, key);
+        if (eTag != null) {
+            getObjectRequest.withNonmatchingETagConstraint(eTag);
+        }
+        try {
+            try (final S3Object s3Object = amazonS3.getObject(getObjectRequest)) {
+                if (s3Object == null) {
+                    // S3 answered 304 Not Modified to the If-None-Match constraint
+                    logger.debug(UNCHANGED_WHITELIST_MSG);
+                    return;
                 }
+                whiteList = readAllWhiteListItemsFromS3(s3Object);
+                eTag = s3Object.getObjectMetadata().getETag();
             }
+            logger.info(SUCCESSFUL_WHITELIST_UPDATE_MSG);
+        } catch (InvalidWhitelistItemInputException e) {
+            logger.error(e.getMessage(), e);
+        } catch (Exception e) {
+            // Any exception escaping to the ScheduledExecutorService would cancel all further refreshes
+            logger.error(ERROR_MESSAGE, e);
         }
-        return whiteList.get();
     }
 
     protected abstract void putItemInWhiteList(Object whiteList, WhiteListItemBase whiteListItem);
 
+    /**
+     * Converts a white list filled by putItemInWhiteList() into the object that getWhiteListItems() returns, an
+     * immutable snapshot indexed for lookups, so that lookups need no locking. This implementation returns the white
+     * list itself, as subclasses written before snapshots existed expect; such subclasses must not change the white
+     * list after putItemInWhiteList() has filled it.
+     *
+     * @param whiteList the white list created by the factory and filled by putItemInWhiteList()
+     * @return the white list to look items up in
+     */
+    protected Object toWhiteListSnapshot(Object whiteList) {
+        return whiteList;
+    }
+
     public abstract boolean isInWhiteList(String... strings);
 
-    private Object readAllWhiteListItemsFromS3()
+    private Object readAllWhiteListItemsFromS3(S3Object s3Object)
             throws IOException, InvalidWhitelistItemInputException {
-        try (final S3Object s3Object = amazonS3.getObject(bucket, key)) {
-            final BufferedReader bufferedReader = getBufferedReader(s3Object);
-            @SuppressWarnings("unchecked") final Object newWhiteListItems = factory.createWhiteList();
-            WhiteListItemBase whiteListItem = readSingleWhiteListItemFromS3(bufferedReader);
-            while (whiteListItem != null) {
-                putItemInWhiteList(newWhiteListItems, whiteListItem);
-                whiteListItem = readSingleWhiteListItemFromS3(bufferedReader);
-            }
-            return newWhiteListItems;
+        final BufferedReader bufferedReader = getBufferedReader(s3Object);
+        @SuppressWarnings("unchecked") final Object newWhiteListItems = factory.createWhiteList();
+        WhiteListItemBase whiteListItem = readSingleWhiteListItemFromS3(bufferedReader);
+        while (whiteListItem != null) {
+            putItemInWhiteList(newWhiteListItems, whiteListItem);
+            whiteListItem = readSingleWhiteListItemFromS3(bufferedReader);
         }
+        return toWhiteListSnapshot(newWhiteListItems);
     }
 
 
     @SuppressWarnings("MethodMayBeStatic")
     public abstract static class Factory<T extends WhiteListItemBase> {
+        /**
+         * @return System.currentTimeMillis()
+         * @deprecated the fetcher no longer records when it last refreshed the white list, so it never calls this
+         */
+        @Deprecated
         public long createCurrentTimeMillis() {
             return System.currentTimeMillis();
         }
 
+        /**
+         * @return the executor that refreshes white lists; one daemon thread is shared by all the fetchers
+         */
+        public ScheduledExecutorService createScheduledExecutorService() {
+            return RefreshExecutor.INSTANCE;
+        }
+
         public InputStreamReader createInputStreamReader(InputStream inputStream) {
             //noinspection ImplicitDefaultCharsetUsage
             return new InputStreamReader(inputStream);
@@ -220,6 +322,11 @@ public abstract class S3ConfigFetcherBase {
         public abstract Object createWhiteList();
     }
 
+    private static final class RefreshExecutor {
+        static final ScheduledExecutorService INSTANCE = Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactoryBuilder().setNameFormat("whitelist-refresher-%d").setDaemon(true).build());
+    }
+
     @SuppressWarnings("CheckedExceptionClass")
     public static class InvalidWhitelistItemInputException extends Exception {
         InvalidWhitelistItemInputException(Prefix prefix, String[] strings, int itemCount) {
@@ -0,0 +1,35 @@
+/*
+ * Copyright 2018 Expedia, Inc.
+ *
+ *       Licensed under the Apache License, Version 2.0 (the "License");
+ *       you may not use this file except in compliance with the License.
+ *       You may obtain a copy of the License at
+ *
+ *           http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *       Unless required by applicable law or agreed to in writing, software
+ *       distributed under the License is distributed on an "AS IS" BASIS,
+ *       WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *       See the License for the specific language governing permissions and
+ *       limitations under the License.
+ *
+ */
+package com.expedia.www.haystack.commons.secretDetector;
+
+import java.util.List;
+
+/**
+ * Receives the secrets found by {@link HaystackFinderEngine#findSecrets(String, SecretSink)}; callers typically create
+ * one SecretSink per object (span, document, etc.) and reuse it for all the values in the object, so that checking a
+ * value in which no secrets are found allocates nothing.
+ */
+@FunctionalInterface
+public interface SecretSink {
+    /**
+     * Called once for a value in which secrets were found
+     *
+     * @param finderName the name of the finder that found the secrets
+     * @param secrets    the secrets found, never empty; the list belongs to the finder and should not be modified
+     */
+    void accept(String finderName, List<String> secrets);
+}
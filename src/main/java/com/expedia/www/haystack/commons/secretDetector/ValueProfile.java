@@ -0,0 +1,152 @@
+/*
+ * Copyright 2018 Expedia, Inc.
+ *
+ *       Licensed under the Apache License, Version 2.0 (the "License");
+ *       you may not use this file except in compliance with the License.
+ *       You may obtain a copy of the License at
+ *
+ *           http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *       Unless required by applicable law or agreed to in writing, software
+ *       distributed under the License is distributed on an "AS IS" BASIS,
+ *       WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *       See the License for the specific language governing permissions and
+ *       limitations under the License.
+ *
+ */
+package com.expedia.www.haystack.commons.secretDetector;
+
+/**
+ * The "shape" of a value, computed in a single pass over its characters, that lets {@link ProfiledFinder} objects
+ * reject the value without doing any real work; for example, a value without 14 digits cannot be a credit card number.
+ * {@link HaystackFinderEngine} creates one ValueProfile per value and shares it with all of its finders.
+ */
+@SuppressWarnings("WeakerAccess")
+public class ValueProfile {
+    private static final char MAXIMUM_ASCII_CHAR = 0x7F;
+
+    private int length;
+    private int digitCount;
+    private int asciiDigitCount;
+    private int asciiLetterCount;
+    private int atSignCount;
+    private int periodCount;
+    private int colonCount;
+    private int separatorCount;
+    private int nonAsciiCount;
+
+    /**
+     * Computes the profile of a value, replacing the profile previously computed by this object (if any)
+     *
+     * @param value the value to profile
+     * @return this object, for chaining
+     */
+    public ValueProfile profile(CharSequence value) {
+        length = value.length();
+        digitCount = 0;
+        asciiDigitCount = 0;
+        asciiLetterCount = 0;
+        atSignCount = 0;
+        periodCount = 0;
+        colonCount = 0;
+        separatorCount = 0;
+        nonAsciiCount = 0;
+        for (int index = 0; index < length; index++) {
+            count(value.charAt(index));
+        }
+        return this;
+    }
+
+    private void count(char character) {
+        if (character >= '0' && character <= '9') {
+            asciiDigitCount++;
+            digitCount++;
+        } else if ((character >= 'A' && character <= 'Z') || (character >= 'a' && character <= 'z')) {
+            asciiLetterCount++;
+        } else if (character == '@') {
+            atSignCount++;
+        } else if (character == '.') {
+            periodCount++;
+        } else if (character == ':') {
+            colonCount++;
+        } else if (character == ' ' || character == '-') {
+            separatorCount++;
+        } else if (character > MAXIMUM_ASCII_CHAR) {
+            nonAsciiCount++;
+            if (Character.isDigit(character)) {
+                digitCount++;
+            }
+        }
+    }
+
+    /**
+     * @return the number of chars in the value
+     */
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * @return the number of digits in the value, in any script (libphonenumber, for example, accepts all of them)
+     */
+    public int getDigitCount() {
+        return digitCount;
+    }
+
+    /**
+     * @return the number of 0 through 9 digits in the value, which are the only digits that \d and "[0-9]" match
+     */
+    public int getAsciiDigitCount() {
+        return asciiDigitCount;
+    }
+
+    /**
+     * @return true if the value contains any A through Z or a through z letters
+     */
+    public boolean hasAsciiLetters() {
+        return asciiLetterCount > 0;
+    }
+
+    /**
+     * @return true if the value is not empty and contains nothing but 0 through 9 digits
+     */
+    public boolean isAllAsciiDigits() {
+        return length > 0 && asciiDigitCount == length;
+    }
+
+    /**
+     * @return the number of '@' characters in the value
+     */
+    public int getAtSignCount() {
+        return atSignCount;
+    }
+
+    /**
+     * @return the number of '.' characters in the value
+     */
+    public int getPeriodCount() {
+        return periodCount;
+    }
+
+    /**
+     * @return the number of ':' characters in the value, which separate the groups of an IP V6 address
+     */
+    public int getColonCount() {
+        return colonCount;
+    }
+
+    /**
+     * @return the number of ' ' and '-' characters in the value, the separators used in card and phone numbers
+     */
+    public int getSeparatorCount() {
+        return separatorCount;
+    }
+
+    /**
+     * @return true if every char in the value is ASCII; when the value is a {@link ByteStringCharSequence}, this means
+     * that its bytes can be scanned as chars without decoding them
+     */
+    public boolean isAscii() {
+        return nonAsciiCount == 0;
+    }
+}
@@ -17,10 +17,10 @@
 package com.expedia.www.haystack.commons.secretDetector.json;
 
 import com.expedia.www.haystack.commons.secretDetector.DetectorBase;
+import com.expedia.www.haystack.commons.secretDetector.FinderEngineRegistry;
 import com.expedia.www.haystack.commons.secretDetector.HaystackFinderEngine;
 import com.expedia.www.haystack.commons.secretDetector.S3ConfigFetcher;
 import com.expedia.www.haystack.commons.secretDetector.S3ConfigFetcherBase;
-import com.expedia.www.haystack.metrics.MetricObjects;
 import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
@@ -38,9 +38,19 @@ import static com.expedia.www.haystack.commons.config.Configuration.WHITELIST_S3
 
 @SuppressWarnings("WeakerAccess")
 public class JsonDetector extends DetectorBase {
+    /**
+     * Creates a JsonDetector with a fetcher of its own and an engine acquired from
+     * {@link FinderEngineRegistry#getInstance()}; closing the detector closes the fetcher and releases the engine
+     */
     public JsonDetector(String bucket, String subsystem, String application) {
-        this(new HaystackFinderEngine(new MetricObjects(), subsystem, application),
-                new S3ConfigFetcher(S3ConfigFetcherBase.Prefix.JSON, bucket, WHITELIST_S3_ITEM_NAME));
+        this(FinderEngineRegistry.getInstance(), bucket, subsystem, application);
+    }
+
+    @VisibleForTesting
+    JsonDetector(FinderEngineRegistry finderEngineRegistry, String bucket, String subsystem, String application) {
+        super(finderEngineRegistry.acquire(subsystem, application),
+                new S3ConfigFetcher(S3ConfigFetcherBase.Prefix.JSON, bucket, WHITELIST_S3_ITEM_NAME),
+                finderEngineRegistry);
     }
 
     public JsonDetector(HaystackFinderEngine haystackFinderEngine, S3ConfigFetcher s3ConfigFetcher) {
@@ -61,61 +71,70 @@ public class JsonDetector extends DetectorBase {
     Map<String, List<String>> findSecrets(JsonElement rootJsonElement,
                                           Map<String, List<String>> mapOfTypeToKeysOfSecrets,
                                           LinkedList<Object> ids) {
-        if(rootJsonElement != null) {
-            if (rootJsonElement.isJsonObject()) {
-                handleJsonObject(mapOfTypeToKeysOfSecrets, ids, rootJsonElement.getAsJsonObject());
-            } else if (rootJsonElement.isJsonArray()) {
-                handleJsonArray(mapOfTypeToKeysOfSecrets, ids, rootJsonElement.getAsJsonArray());
-            } else if (rootJsonElement.isJsonPrimitive()) {
-                handleJsonPrimitive(mapOfTypeToKeysOfSecrets, ids, rootJsonElement.getAsJsonPrimitive());
+        findSecrets(rootJsonElement, new JsonKeysOfSecretsSink(mapOfTypeToKeysOfSecrets, ids));
+        return mapOfTypeToKeysOfSecrets;
+    }
+
+    private void findSecrets(JsonElement jsonElement, JsonKeysOfSecretsSink jsonKeysOfSecretsSink) {
+        if(jsonElement != null) {
+            if (jsonElement.isJsonObject()) {
+                handleJsonObject(jsonKeysOfSecretsSink, jsonElement.getAsJsonObject());
+            } else if (jsonElement.isJsonArray()) {
+                handleJsonArray(jsonKeysOfSecretsSink, jsonElement.getAsJsonArray());
+            } else if (jsonElement.isJsonPrimitive()) {
+                handleJsonPrimitive(jsonKeysOfSecretsSink, jsonElement.getAsJsonPrimitive());
             }
         }
-        return mapOfTypeToKeysOfSecrets;
     }
 
-    private void handleJsonObject(Map<String, List<String>> mapOfTypeToKeysOfSecrets,
-                                  LinkedList<Object> ids,
-                                  JsonObject childJsonObject) {
+    private void handleJsonObject(JsonKeysOfSecretsSink jsonKeysOfSecretsSink, JsonObject childJsonObject) {
         for (Map.Entry<String, JsonElement> entry : childJsonObject.entrySet()) {
-            ids.push(entry.getKey());
-            findSecrets(entry.getValue(), mapOfTypeToKeysOfSecrets, ids);
-            ids.pop();
+            jsonKeysOfSecretsSink.ids.push(entry.getKey());
+            findSecrets(entry.getValue(), jsonKeysOfSecretsSink);
+            jsonKeysOfSecretsSink.ids.pop();
         }
     }
 
-    private void handleJsonArray(Map<String, List<String>> mapOfTypeToKeysOfSecrets,
-                                 LinkedList<Object> ids,
-                                 JsonArray jsonArray) {
+    private void handleJsonArray(JsonKeysOfSecretsSink jsonKeysOfSecretsSink, JsonArray jsonArray) {
         int childJsonElementIndex = 0;
         for (final JsonElement childJsonElement : jsonArray) {
             //noinspection ValueOfIncrementOrDecrementUsed
-            ids.push(childJsonElementIndex++);
-            findSecrets(childJsonElement, mapOfTypeToKeysOfSecrets, ids);
-            ids.pop();
+            jsonKeysOfSecretsSink.ids.push(childJsonElementIndex++);
+            findSecrets(childJsonElement, jsonKeysOfSecretsSink);
+            jsonKeysOfSecretsSink.ids.pop();
         }
     }
 
-    private void handleJsonPrimitive(Map<String, List<String>> mapOfTypeToKeysOfSecrets,
-                                     Deque<Object> ids,
-                                     JsonPrimitive value) {
+    private void handleJsonPrimitive(JsonKeysOfSecretsSink jsonKeysOfSecretsSink, JsonPrimitive value) {
         if (value.isString()) {
-            final Map<String, List<String>> secrets = haystackFinderEngine.findWithType(value.getAsString());
-            if (!secrets.isEmpty()) {
-                putKeysOfSecretsIntoMap(mapOfTypeToKeysOfSecrets, getCompleteHierarchy(ids), secrets);
-            }
+            haystackFinderEngine.findSecrets(value.getAsString(), jsonKeysOfSecretsSink);
             /* // Secrets are not yet being looked for in Numbers, as phone number false positives would be very common.
                // When positives are aggregated into a daily email that shows keys that can be whitelisted, we will
                // turn on number detection and whitelist the false positives that result. We will do this for both JSON
                // and XML BLOBs, and perhaps for fastinfoset BLOBs too.
         } else if (value.isNumber()) {
-            final Map<String, List<String>> secrets = haystackFinderEngine.findWithType(value.getAsNumber().toString());
-            if (!secrets.isEmpty()) {
-                putKeysOfSecretsIntoMap(mapOfTypeToKeysOfSecrets, getCompleteHierarchy(ids), secrets);
-            }
+            haystackFinderEngine.findSecrets(value.getAsNumber().toString(), jsonKeysOfSecretsSink);
             */
         }
     }
 
+    /**
+     * Puts the path of the JSON value in which secrets were found (computed only when secrets are found) into the map
+     */
+    private static class JsonKeysOfSecretsSink extends KeysOfSecretsSink {
+        private final LinkedList<Object> ids;
+
+        private JsonKeysOfSecretsSink(Map<String, List<String>> mapOfTypeToKeysOfSecrets, LinkedList<Object> ids) {
+            super(mapOfTypeToKeysOfSecrets);
+            this.ids = ids;
+        }
+
+        @Override
+        public void accept(String finderName, List<String> secrets) {
+            putKeyOfSecretIntoMap(finderName, getCompleteHierarchy(ids));
+        }
+    }
+
     private static String getCompleteHierarchy(Deque<Object> ids) {
         @SuppressWarnings("StringBufferWithoutInitialCapacity") final StringBuilder stringBuilder = new StringBuilder();
         final Iterator<Object> iterator = ids.descendingIterator();
@@ -0,0 +1,115 @@
+/*
+ * Copyright 2018 Expedia, Inc.
+ *
+ *       Licensed under the Apache License, Version 2.0 (the "License");
+ *       you may not use this file except in compliance with the License.
+ *       You may obtain a copy of the License at
+ *
+ *           http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *       Unless required by applicable law or agreed to in writing, software
+ *       distributed under the License is distributed on an "AS IS" BASIS,
+ *       WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *       See the License for the specific language governing permissions and
+ *       limitations under the License.
+ *
+ */
+package com.expedia.www.haystack.commons.secretDetector.span;
+
+import com.netflix.servo.util.VisibleForTesting;
+import org.apache.kafka.streams.kstream.ValueMapper;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Applies a ValueMapper (SpanSecretMasker, SpanDetector, SpanDetectorAndMasker, SpanBytesSecretMasker, etc.) to a
+ * batch of values, such as the spans of one Kafka poll, spreading the batch over the threads of an Executor so that a
+ * single stream thread can use more than one core. The results are returned in the order of the values. The state
+ * that the mappers of this package keep across values (the FindResultCache of their HaystackFinderEngine, their
+ * counters and the caches of their counter names, their SpanNameAndCountRecorder) is safe to use from several
+ * threads, so it is shared by all the threads working on a batch. Each value looks up the white list of the S3 config
+ * fetcher when it is mapped, as it would outside a batch, so a white list refreshed in the middle of a batch applies
+ * to the values mapped after the refresh.
+ *
+ * @param <V>  the type of the values, for example Span
+ * @param <VR> the type of the results, for example Span or Iterable&lt;String&gt;
+ */
+@SuppressWarnings("WeakerAccess")
+public class BatchValueMapper<V, VR> implements ValueMapper<List<V>, List<VR>> {
+    @VisibleForTesting
+    static final int CHUNKS_PER_THREAD = 4; // more chunks than threads so that slow chunks do not leave threads idle
+
+    private final ValueMapper<V, VR> valueMapper;
+    private final Executor executor;
+    private final int parallelism;
+
+    /**
+     * Creates a BatchValueMapper that uses a ForkJoinPool, with as many threads as the pool's parallelism
+     *
+     * @param valueMapper  the mapper to apply to each value; it must be safe to call from several threads at once
+     * @param forkJoinPool the pool whose threads map the values
+     */
+    public BatchValueMapper(ValueMapper<V, VR> valueMapper, ForkJoinPool forkJoinPool) {
+        this(valueMapper, forkJoinPool, forkJoinPool.getParallelism());
+    }
+
+    /**
+     * Creates a BatchValueMapper that uses an Executor
+     *
+     * @param valueMapper the mapper to apply to each value; it must be safe to call from several threads at once
+     * @param executor    the executor whose threads map the values
+     * @param parallelism the number of threads of the executor that a batch should use; 1 maps batches on the
+     *                    calling thread, without using the executor
+     */
+    public BatchValueMapper(ValueMapper<V, VR> valueMapper, Executor executor, int parallelism) {
+        this.valueMapper = valueMapper;
+        this.executor = executor;
+        this.parallelism = parallelism;
+    }
+
+    @Override
+    public List<VR> apply(@SuppressWarnings("ParameterNameDiffersFromOverriddenParameter") List<V> values) {
+        final int chunkCount = (parallelism <= 1) ? 1 : Math.min(values.size(), parallelism * CHUNKS_PER_THREAD);
+        if (chunkCount <= 1) {
+            final List<VR> results = new ArrayList<>(values.size());
+            for (final V value : values) {
+                results.add(valueMapper.apply(value));
+            }
+            return results;
+        }
+        @SuppressWarnings("unchecked") final VR[] results = (VR[]) new Object[values.size()];
+        final CompletableFuture<?>[] futures = new CompletableFuture<?>[chunkCount];
+        for (int chunk = 0; chunk < chunkCount; chunk++) {
+            final int from = (int) ((long) values.size() * chunk / chunkCount);
+            final int to = (int) ((long) values.size() * (chunk + 1) / chunkCount);
+            futures[chunk] = CompletableFuture.runAsync(() -> apply(values, results, from, to), executor);
+        }
+        try {
+            CompletableFuture.allOf(futures).join();
+        } catch (CompletionException e) {
+            // Unchecked exceptions are rethrown as if the batch had been mapped on the calling thread; a checked
+            // exception thrown sneakily by a ValueMapper stays wrapped in a CompletionException
+            final Throwable cause = e.getCause();
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new CompletionException(cause);
+        }
+        return Arrays.asList(results);
+    }
+
+    private void apply(List<V> values, VR[] results, int from, int to) {
+        for (int index = from; index < to; index++) {
+            results[index] = valueMapper.apply(values.get(index));
+        }
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright 2018 Expedia, Inc.
+ *
+ *       Licensed under the Apache License, Version 2.0 (the "License");
+ *       you may not use this file except in compliance with the License.
+ *       You may obtain a copy of the License at
+ *
+ *           http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *       Unless required by applicable law or agreed to in writing, software
+ *       distributed under the License is distributed on an "AS IS" BASIS,
+ *       WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *       See the License for the specific language governing permissions and
+ *       limitations under the License.
+ *
+ */
+package com.expedia.www.haystack.commons.secretDetector.span;
+
+import com.expedia.open.tracing.Span;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The result of {@link SpanDetectorAndMasker}: the masked span and a report of the secrets, not whitelisted, that
+ * were masked in it.
+ */
+@SuppressWarnings("WeakerAccess")
+public class DetectedAndMaskedSpan {
+    private final Span maskedSpan;
+    private final Map<String, List<String>> mapOfTypeToKeysOfSecrets;
+    private final String emailText;
+
+    public DetectedAndMaskedSpan(Span maskedSpan,
+                                 Map<String, List<String>> mapOfTypeToKeysOfSecrets,
+                                 String emailText) {
+        this.maskedSpan = maskedSpan;
+        this.mapOfTypeToKeysOfSecrets = Collections.unmodifiableMap(mapOfTypeToKeysOfSecrets);
+        this.emailText = emailText;
+    }
+
+    /**
+     * @return the span, which is the original span object if no secrets were masked
+     */
+    public Span getMaskedSpan() {
+        return maskedSpan;
+    }
+
+    public String getServiceName() {
+        return maskedSpan.getServiceName();
+    }
+
+    public String getOperationName() {
+        return maskedSpan.getOperationName();
+    }
+
+    /**
+     * @return the keys of the tags and log fields whose values were masked, by finder name; empty if none were
+     */
+    public Map<String, List<String>> getMapOfTypeToKeysOfSecrets() {
+        return mapOfTypeToKeysOfSecrets;
+    }
+
+    /**
+     * @return the notification text that {@link SpanDetector#apply(Span)} would return for the span
+     */
+    public Iterable<String> getEmailTexts() {
+        return (emailText == null) ? Collections.emptyList() : Collections.singleton(emailText);
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright 2018 Expedia, Inc.
+ *
+ *       Licensed under the Apache License, Version 2.0 (the "License");
+ *       you may not use this file except in compliance with the License.
+ *       You may obtain a copy of the License at
+ *
+ *           http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *       Unless required by applicable law or agreed to in writing, software
+ *       distributed under the License is distributed on an "AS IS" BASIS,
+ *       WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *       See the License for the specific language governing permissions and
+ *       limitations under the License.
+ *
+ */
+package com.expedia.www.haystack.commons.secretDetector.span;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A trie of glob patterns, in which {@value #WILDCARD} matches any sequence of characters (including none) and every
+ * other character matches itself: each node stands for a prefix, and holds the values of the patterns without a
+ * wildcard that are that prefix, and the patterns whose text before their first wildcard is that prefix. Finding the
+ * patterns that match a name walks the nodes of the prefixes of the name, one character at a time, and only checks the
+ * rest of the patterns stored in those nodes, so its cost depends on the length of the name and on the number of
+ * patterns sharing its prefixes, not on the total number of patterns. A GlobTrie never changes once built.
+ *
+ * @param <V> the type of the values of the patterns
+ */
+class GlobTrie<V> {
+    static final char WILDCARD = '*';
+    private static final String WILDCARD_REGEX = "\\*";
+
+    private final Node<V> root = new Node<>();
+    private final boolean isEmpty;
+
+    /**
+     * @param valuesByPattern the patterns, and the value to report for a name that each pattern matches
+     */
+    GlobTrie(Map<String, V> valuesByPattern) {
+        valuesByPattern.forEach(this::add);
+        isEmpty = valuesByPattern.isEmpty();
+    }
+
+    /**
+     * @param name a name in the white list
+     * @return true if the name contains a wildcard, and so is a pattern that may match other names
+     */
+    static boolean isPattern(String name) {
+        return name.indexOf(WILDCARD) >= 0;
+    }
+
+    private void add(String pattern, V value) {
+        final int wildcard = pattern.indexOf(WILDCARD);
+        final int prefixLength = (wildcard < 0) ? pattern.length() : wildcard;
+        Node<V> node = root;
+        for (int index = 0; index < prefixLength; index++) {
+            node = node.children.computeIfAbsent(pattern.charAt(index), c -> new Node<>());
+        }
+        if (wildcard < 0) {
+            node.value = value;
+        } else {
+            node.globs.add(new Glob<>(pattern.substring(wildcard + 1).split(WILDCARD_REGEX, -1), value));
+        }
+    }
+
+    boolean isEmpty() {
+        return isEmpty;
+    }
+
+    /**
+     * Adds the values of the patterns that match a name to a list, in no particular order
+     *
+     * @param name    the name to match
+     * @param matches the list to add the values to
+     */
+    void collectMatches(String name, List<V> matches) {
+        Node<V> node = root;
+        for (int index = 0; node != null; index++) {
+            for (int glob = 0; glob < node.globs.size(); glob++) {
+                if (node.globs.get(glob).matchesRest(name, index)) {
+                    matches.add(node.globs.get(glob).value);
+                }
+            }
+            if (index == name.length()) {
+                if (node.value != null) {
+                    matches.add(node.value);
+                }
+                return;
+            }
+            node = node.children.get(name.charAt(index));
+        }
+    }
+
+    private static class Node<V> {
+        private final Map<Character, Node<V>> children = new HashMap<>();
+        private final List<Glob<V>> globs = new ArrayList<>(0);
+        private V value;
+    }
+
+    /**
+     * A pattern with at least one wildcard, stored in the node of its text before the first wildcard
+     */
+    private static class Glob<V> {
+        // The text between the wildcards and after the last one, which is empty when the pattern ends with a wildcard
+        private final String[] rest;
+        private final V value;
+
+        private Glob(String[] rest, V value) {
+            this.rest = rest;
+            this.value = value;
+        }
+
+        /**
+         * Matches the rest of the pattern, which starts with a wildcard, to the end of a name; the text between two
+         * wildcards is matched at its first occurrence, which leaves the most room for the text after it
+         */
+        private boolean matchesRest(String name, int start) {
+            int position = start;
+            final int last = rest.length - 1;
+            for (int index = 0; index < last; index++) {
+                final int found = name.indexOf(rest[index], position);
+                if (found < 0) {
+                    return false;
+                }
+                position = found + rest[index].length();
+            }
+            return name.length() - position >= rest[last].length() && name.endsWith(rest[last]);
+        }
+    }
+}
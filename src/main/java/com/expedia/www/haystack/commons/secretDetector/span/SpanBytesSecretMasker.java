@@ -0,0 +1,355 @@
+/*
+ * Copyright 2018 Expedia, Inc.
+ *
+ *       Licensed under the Apache License, Version 2.0 (the "License");
+ *       you may not use this file except in compliance with the License.
+ *       You may obtain a copy of the License at
+ *
+ *           http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *       Unless required by applicable law or agreed to in writing, software
+ *       distributed under the License is distributed on an "AS IS" BASIS,
+ *       WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *       See the License for the specific language governing permissions and
+ *       limitations under the License.
+ *
+ */
+package com.expedia.www.haystack.commons.secretDetector.span;
+
+import com.expedia.open.tracing.Log;
+import com.expedia.open.tracing.Span;
+import com.expedia.open.tracing.Tag;
+import com.expedia.www.haystack.commons.secretDetector.SecretSink;
+import com.google.protobuf.ByteString;
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.UnsafeByteOperations;
+import com.google.protobuf.WireFormat;
+import com.netflix.servo.util.VisibleForTesting;
+import org.apache.kafka.streams.kstream.ValueMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Masks secrets in serialized spans, for streams that read spans with a byte array Serde instead of deserializing
+ * them. The span is walked with a CodedInputStream and only the vStr and vBytes values of its tags and log fields are
+ * scanned, as ByteString objects that alias the serialized span. A span without secrets to mask is returned as the
+ * same byte array; a span with secrets to mask is rewritten, re-encoding only the masked tags and the logs that
+ * contain masked fields and copying every other field as it is. The service and operation names are read first, so
+ * that the finders whose secrets are whitelisted for a tag (or log field) are skipped when scanning its value. Secrets
+ * are recorded and counted by the SpanSecretMasker given to the constructor, exactly as
+ * {@link SpanSecretMasker#apply(Span)} does.
+ */
+@SuppressWarnings("WeakerAccess")
+public class SpanBytesSecretMasker implements ValueMapper<byte[], byte[]>, Closeable {
+    @VisibleForTesting
+    static final String MALFORMED_SPAN_MESSAGE = "Unable to mask secrets in a span that could not be parsed";
+    private static final int NOT_IN_A_LOG = -1;
+
+    private final SpanSecretMasker spanSecretMasker;
+    private final Logger logger;
+
+    public SpanBytesSecretMasker(String bucket, String subsystem, String application) {
+        this(new SpanSecretMasker(bucket, subsystem, application),
+                LoggerFactory.getLogger(SpanBytesSecretMasker.class));
+    }
+
+    public SpanBytesSecretMasker(SpanSecretMasker spanSecretMasker, Logger spanBytesSecretMaskerLogger) {
+        this.spanSecretMasker = spanSecretMasker;
+        this.logger = spanBytesSecretMaskerLogger;
+    }
+
+    /**
+     * Closes the SpanSecretMasker, which closes the fetcher and releases the engine only if it created the fetcher and
+     * acquired the engine itself; call it when the SpanBytesSecretMasker is no longer needed
+     */
+    @Override
+    public void close() {
+        spanSecretMasker.close();
+    }
+
+    /**
+     * A tag (or log field) whose value contains a secret
+     */
+    private static class Secret {
+        private final String finderName;
+        private final ByteString tagKey;
+        private final int logIndex;
+        private final int tagIndex;
+
+        private Secret(String finderName, ByteString tagKey, int logIndex, int tagIndex) {
+            this.finderName = finderName;
+            this.tagKey = tagKey;
+            this.logIndex = logIndex;
+            this.tagIndex = tagIndex;
+        }
+    }
+
+    /**
+     * The state of the scan of one span; it is also the SecretSink for the values of the span, remembering the name
+     * of the finder that found a secret in the value being scanned.
+     */
+    private static class SpanScan implements SecretSink {
+        private ByteString serviceNameBytes = ByteString.EMPTY;
+        private ByteString operationNameBytes = ByteString.EMPTY;
+        private String serviceName;
+        private String operationName;
+        private SpanWhiteList.View whiteListView = SpanWhiteList.View.EMPTY;
+        private List<Secret> secrets;
+        private String finderName;
+
+        @Override
+        public void accept(String finderName, List<String> secrets) {
+            this.finderName = finderName;
+        }
+
+        /**
+         * Decodes the service name of the span the first time it is needed; most spans need neither name
+         */
+        private String getServiceName() {
+            if (serviceName == null) {
+                serviceName = serviceNameBytes.toStringUtf8();
+            }
+            return serviceName;
+        }
+
+        private String getOperationName() {
+            if (operationName == null) {
+                operationName = operationNameBytes.toStringUtf8();
+            }
+            return operationName;
+        }
+
+        private void add(Secret secret) {
+            if (secrets == null) {
+                secrets = new ArrayList<>();
+            }
+            secrets.add(secret);
+        }
+
+        private boolean isTagToBeMasked(int tagIndex) {
+            for (final Secret secret : secrets) {
+                if (secret.logIndex == NOT_IN_A_LOG && secret.tagIndex == tagIndex) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private boolean isLogToBeMasked(int logIndex) {
+            for (final Secret secret : secrets) {
+                if (secret.logIndex == logIndex) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    @Override
+    public byte[] apply(@SuppressWarnings("ParameterNameDiffersFromOverriddenParameter") byte[] spanBytes) {
+        if (spanBytes == null) {
+            return null; // a tombstone, which has no span to mask
+        }
+        try {
+            final SpanScan spanScan = scan(spanBytes);
+            return isAnySecretFound(spanScan) ? rewrite(spanBytes, spanScan) : spanBytes;
+        } catch (IOException e) {
+            logger.error(MALFORMED_SPAN_MESSAGE, e);
+            return spanBytes;
+        }
+    }
+
+    private SpanScan scan(byte[] spanBytes) throws IOException {
+        final SpanScan spanScan = new SpanScan();
+        if (!spanSecretMasker.isWhiteListEmpty()) {
+            readNames(spanBytes, spanScan);
+            spanScan.whiteListView =
+                    spanSecretMasker.getWhiteListView(spanScan.getServiceName(), spanScan.getOperationName());
+        }
+        final CodedInputStream input = newCodedInputStream(UnsafeByteOperations.unsafeWrap(spanBytes));
+        int logIndex = 0;
+        int tagIndex = 0;
+        for (int wireTag = input.readTag(); wireTag != 0; wireTag = input.readTag()) {
+            switch (getLengthDelimitedFieldNumber(wireTag)) {
+                case Span.SERVICENAME_FIELD_NUMBER:
+                    spanScan.serviceNameBytes = input.readBytes();
+                    break;
+                case Span.OPERATIONNAME_FIELD_NUMBER:
+                    spanScan.operationNameBytes = input.readBytes();
+                    break;
+                case Span.LOGS_FIELD_NUMBER:
+                    scanLog(input.readBytes(), logIndex++, spanScan);
+                    break;
+                case Span.TAGS_FIELD_NUMBER:
+                    scanTag(input.readBytes(), NOT_IN_A_LOG, tagIndex++, spanScan);
+                    break;
+                default:
+                    input.skipField(wireTag);
+            }
+        }
+        return spanScan;
+    }
+
+    /**
+     * Reads the service and operation names of the span, skipping over its other fields; the names are read in a pass
+     * of their own because serializers are free to write them after the logs and tags, and the whitelist view that
+     * the tags are scanned with depends on them. When the whitelist is empty, this pass is skipped and the names are
+     * picked up by the scan of the tags.
+     */
+    private static void readNames(byte[] spanBytes, SpanScan spanScan) throws IOException {
+        final CodedInputStream input = newCodedInputStream(UnsafeByteOperations.unsafeWrap(spanBytes));
+        for (int wireTag = input.readTag(); wireTag != 0; wireTag = input.readTag()) {
+            switch (getLengthDelimitedFieldNumber(wireTag)) {
+                case Span.SERVICENAME_FIELD_NUMBER:
+                    spanScan.serviceNameBytes = input.readBytes();
+                    break;
+                case Span.OPERATIONNAME_FIELD_NUMBER:
+                    spanScan.operationNameBytes = input.readBytes();
+                    break;
+                default:
+                    input.skipField(wireTag);
+            }
+        }
+    }
+
+    private void scanLog(ByteString logBytes, int logIndex, SpanScan spanScan) throws IOException {
+        final CodedInputStream input = newCodedInputStream(logBytes);
+        int tagIndex = 0;
+        for (int wireTag = input.readTag(); wireTag != 0; wireTag = input.readTag()) {
+            if (getLengthDelimitedFieldNumber(wireTag) == Log.FIELDS_FIELD_NUMBER) {
+                scanTag(input.readBytes(), logIndex, tagIndex++, spanScan);
+            } else {
+                input.skipField(wireTag);
+            }
+        }
+    }
+
+    private void scanTag(ByteString tagBytes, int logIndex, int tagIndex, SpanScan spanScan) throws IOException {
+        final CodedInputStream input = newCodedInputStream(tagBytes);
+        ByteString tagKey = ByteString.EMPTY;
+        ByteString value = ByteString.EMPTY;
+        for (int wireTag = input.readTag(); wireTag != 0; wireTag = input.readTag()) {
+            switch (getLengthDelimitedFieldNumber(wireTag)) {
+                case Tag.KEY_FIELD_NUMBER:
+                    tagKey = input.readBytes();
+                    break;
+                case Tag.VSTR_FIELD_NUMBER:
+                case Tag.VBYTES_FIELD_NUMBER:
+                    value = input.readBytes(); // the value fields are in a oneof, so the last one wins
+                    break;
+                default:
+                    if (isNonStringValueField(wireTag)) {
+                        value = ByteString.EMPTY; // a later vLong, vDouble or vBool replaces a vStr or vBytes
+                    }
+                    input.skipField(wireTag);
+            }
+        }
+        if (!value.isEmpty() && spanSecretMasker.findSecrets(value, getFinderNamesToSkip(tagKey, spanScan), spanScan)) {
+            spanScan.add(new Secret(spanScan.finderName, tagKey, logIndex, tagIndex));
+        }
+    }
+
+    /**
+     * Gets the finders whose secrets are whitelisted in a tag (or log field), decoding its key only when something is
+     * whitelisted for the span
+     */
+    private static Set<String> getFinderNamesToSkip(ByteString tagKey, SpanScan spanScan) {
+        final SpanWhiteList.View whiteListView = spanScan.whiteListView;
+        return whiteListView.isEmpty() ? Collections.emptySet() : whiteListView.getFinderNames(tagKey.toStringUtf8());
+    }
+
+    /**
+     * Records and counts the secrets found in a span, none of which are whitelisted since the finders whose secrets
+     * are whitelisted were skipped
+     *
+     * @return true if there are secrets to mask
+     */
+    private boolean isAnySecretFound(SpanScan spanScan) {
+        if (spanScan.secrets == null) {
+            return false;
+        }
+        for (final Secret secret : spanScan.secrets) {
+            spanSecretMasker.recordSecret(secret.finderName, spanScan.getServiceName(), spanScan.getOperationName(),
+                    secret.tagKey.toStringUtf8());
+        }
+        return true;
+    }
+
+    /**
+     * Copies the serialized span, replacing the tags and logs that contain values to be masked with re-encoded ones
+     */
+    private static byte[] rewrite(byte[] spanBytes, SpanScan spanScan) throws IOException {
+        final CodedInputStream input = newCodedInputStream(UnsafeByteOperations.unsafeWrap(spanBytes));
+        final ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream(spanBytes.length);
+        final CodedOutputStream output = CodedOutputStream.newInstance(byteArrayOutputStream);
+        int logIndex = 0;
+        int tagIndex = 0;
+        int fieldStart = input.getTotalBytesRead();
+        for (int wireTag = input.readTag(); wireTag != 0; wireTag = input.readTag()) {
+            final int fieldNumber = getLengthDelimitedFieldNumber(wireTag);
+            if (fieldNumber == Span.LOGS_FIELD_NUMBER && spanScan.isLogToBeMasked(logIndex)) {
+                output.writeMessage(fieldNumber, maskLog(Log.parseFrom(input.readBytes()), logIndex, spanScan));
+            } else if (fieldNumber == Span.TAGS_FIELD_NUMBER && spanScan.isTagToBeMasked(tagIndex)) {
+                final Tag.Builder tagBuilder = Tag.parseFrom(input.readBytes()).toBuilder();
+                SpanSecretMasker.mask(tagBuilder);
+                output.writeMessage(fieldNumber, tagBuilder.build());
+            } else {
+                input.skipField(wireTag);
+                output.writeRawBytes(spanBytes, fieldStart, input.getTotalBytesRead() - fieldStart);
+            }
+            logIndex += (fieldNumber == Span.LOGS_FIELD_NUMBER) ? 1 : 0;
+            tagIndex += (fieldNumber == Span.TAGS_FIELD_NUMBER) ? 1 : 0;
+            fieldStart = input.getTotalBytesRead();
+        }
+        output.flush();
+        return byteArrayOutputStream.toByteArray();
+    }
+
+    private static Log maskLog(Log log, int logIndex, SpanScan spanScan) {
+        final Log.Builder logBuilder = log.toBuilder();
+        for (final Secret secret : spanScan.secrets) {
+            if (secret.logIndex == logIndex) {
+                SpanSecretMasker.mask(logBuilder.getFieldsBuilder(secret.tagIndex));
+            }
+        }
+        return logBuilder.build();
+    }
+
+    /**
+     * Gets the number of a length-delimited field, the only wire type that readBytes() can read; a field of another
+     * wire type, even one whose number is that of a string or message field, is skipped like an unknown field, just as
+     * the generated parsers do
+     *
+     * @return the field number, or 0 (which is not a field number) if the field is not length-delimited
+     */
+    private static int getLengthDelimitedFieldNumber(int wireTag) {
+        return (WireFormat.getTagWireType(wireTag) == WireFormat.WIRETYPE_LENGTH_DELIMITED)
+                ? WireFormat.getTagFieldNumber(wireTag) : 0;
+    }
+
+    private static boolean isNonStringValueField(int wireTag) {
+        switch (WireFormat.getTagFieldNumber(wireTag)) {
+            case Tag.VLONG_FIELD_NUMBER:
+            case Tag.VDOUBLE_FIELD_NUMBER:
+            case Tag.VBOOL_FIELD_NUMBER:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private static CodedInputStream newCodedInputStream(ByteString byteString) {
+        final CodedInputStream codedInputStream = byteString.newCodedInput();
+        codedInputStream.enableAliasing(true); // so that readBytes() returns views of the span rather than copies
+        return codedInputStream;
+    }
+}
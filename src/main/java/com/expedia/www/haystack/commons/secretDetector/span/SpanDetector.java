@@ -20,10 +20,11 @@ import com.expedia.open.tracing.Log;
 import com.expedia.open.tracing.Span;
 import com.expedia.open.tracing.Tag;
 import com.expedia.www.haystack.commons.secretDetector.DetectorBase;
+import com.expedia.www.haystack.commons.secretDetector.FinderEngineRegistry;
 import com.expedia.www.haystack.commons.secretDetector.FinderNameAndServiceName;
 import com.expedia.www.haystack.commons.secretDetector.HaystackFinderEngine;
 import com.expedia.www.haystack.metrics.MetricObjects;
-import com.google.common.base.Strings;
+import com.google.protobuf.ByteString;
 import com.netflix.servo.monitor.Counter;
 import com.netflix.servo.util.VisibleForTesting;
 import org.apache.kafka.streams.kstream.ValueMapper;
@@ -32,7 +33,6 @@ import org.slf4j.LoggerFactory;
 
 import java.util.Collections;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -59,11 +59,22 @@ public class SpanDetector extends DetectorBase implements ValueMapper<Span, Iter
             new ConcurrentHashMap<>();
     private final Logger logger;
     private final Factory factory;
+    private final SpanS3ConfigFetcher spanS3ConfigFetcher;
     private final String application;
 
+    /**
+     * Creates a SpanDetector with a fetcher of its own and an engine acquired from
+     * {@link FinderEngineRegistry#getInstance()}; closing the detector closes the fetcher and releases the engine
+     */
     public SpanDetector(String bucket, String subsystem, String application) {
+        this(FinderEngineRegistry.getInstance(), bucket, subsystem, application);
+    }
+
+    @VisibleForTesting
+    SpanDetector(FinderEngineRegistry finderEngineRegistry, String bucket, String subsystem, String application) {
         this(LoggerFactory.getLogger(SpanDetector.class),
-                new HaystackFinderEngine(new MetricObjects(), subsystem, application),
+                finderEngineRegistry.acquire(subsystem, application),
+                finderEngineRegistry,
                 new Factory(),
                 new SpanS3ConfigFetcher(bucket, WHITELIST_S3_ITEM_NAME), application);
     }
@@ -73,67 +84,94 @@ public class SpanDetector extends DetectorBase implements ValueMapper<Span, Iter
                         Factory detectorFactory,
                         SpanS3ConfigFetcher spanS3ConfigFetcher,
                         String application) {
-        super(haystackFinderEngine, spanS3ConfigFetcher);
+        this(detectorLogger, haystackFinderEngine, null, detectorFactory, spanS3ConfigFetcher, application);
+    }
+
+    @SuppressWarnings("ConstructorWithTooManyParameters")
+    private SpanDetector(Logger detectorLogger,
+                         HaystackFinderEngine haystackFinderEngine,
+                         FinderEngineRegistry finderEngineRegistry,
+                         Factory detectorFactory,
+                         SpanS3ConfigFetcher spanS3ConfigFetcher,
+                         String application) {
+        super(haystackFinderEngine, spanS3ConfigFetcher, finderEngineRegistry);
+        this.spanS3ConfigFetcher = spanS3ConfigFetcher;
         this.logger = detectorLogger;
         this.factory = detectorFactory;
         this.application = application;
     }
 
+    /**
+     * Finds the secrets in the tags and log fields of a span; the finders whose secrets are whitelisted for a tag (or
+     * log field) are not run on its value, so the secrets returned are those that are not whitelisted.
+     *
+     * @param span the span to check
+     * @return a map of finder name to the keys of the tags and log fields in which the finder found secrets
+     */
     public Map<String, List<String>> findSecrets(Span span) {
         final Map<String, List<String>> mapOfTypeToKeysOfSecrets = new HashMap<>();
-        findSecretsInTags(mapOfTypeToKeysOfSecrets, span);
-        findSecretsInLogFields(mapOfTypeToKeysOfSecrets, span);
+        final TagKeysOfSecretsSink tagKeysOfSecretsSink = new TagKeysOfSecretsSink(mapOfTypeToKeysOfSecrets,
+                spanS3ConfigFetcher.getWhiteListView(span.getServiceName(), span.getOperationName()));
+        findSecretsInTags(tagKeysOfSecretsSink, span);
+        findSecretsInLogFields(tagKeysOfSecretsSink, span);
         return mapOfTypeToKeysOfSecrets;
     }
 
-    private void findSecretsInTags(Map<String, List<String>> mapOfTypeToKeysOfSecrets, Span span) {
-        findSecrets(mapOfTypeToKeysOfSecrets, span.getTagsList());
+    private void findSecretsInTags(TagKeysOfSecretsSink tagKeysOfSecretsSink, Span span) {
+        findSecrets(tagKeysOfSecretsSink, span.getTagsList());
     }
 
-    private void findSecretsInLogFields(Map<String, List<String>> mapOfTypeToKeysOfSecrets, Span span) {
+    private void findSecretsInLogFields(TagKeysOfSecretsSink tagKeysOfSecretsSink, Span span) {
         for (final Log log : span.getLogsList()) {
-            findSecrets(mapOfTypeToKeysOfSecrets, log.getFieldsList());
+            findSecrets(tagKeysOfSecretsSink, log.getFieldsList());
         }
     }
 
-    private void findSecrets(Map<String, List<String>> mapOfTypeToKeysOfSecrets, List<Tag> tags) {
+    private void findSecrets(TagKeysOfSecretsSink tagKeysOfSecretsSink, List<Tag> tags) {
         for (final Tag tag : tags) {
-            if (!Strings.isNullOrEmpty(tag.getVStr())) {
-                final String input = tag.getVStr();
-                putKeysOfSecretsIntoMap(mapOfTypeToKeysOfSecrets, tag.getKey(), haystackFinderEngine.findWithType(input));
+            // getVStrBytes() rather than getVStr() so that the UTF-8 bytes of the tag are scanned without decoding them
+            if (!tag.getVStrBytes().isEmpty()) {
+                findSecretsInValue(tagKeysOfSecretsSink.withTagKey(tag.getKey()), tag.getVStrBytes());
             } else if (!tag.getVBytes().isEmpty()) {
-                @SuppressWarnings("ObjectAllocationInLoop")
-                final String input = new String(tag.getVBytes().toByteArray());
-                putKeysOfSecretsIntoMap(mapOfTypeToKeysOfSecrets, tag.getKey(), haystackFinderEngine.findWithType(input));
+                findSecretsInValue(tagKeysOfSecretsSink.withTagKey(tag.getKey()), tag.getVBytes());
             }
         }
     }
 
+    /**
+     * Scans a value, skipping the finders whose secrets are whitelisted in its tag; the finder engine does not run at
+     * all when every finder is whitelisted there.
+     */
+    private void findSecretsInValue(TagKeysOfSecretsSink tagKeysOfSecretsSink, ByteString value) {
+        haystackFinderEngine.findSecrets(value, tagKeysOfSecretsSink.getWhitelistedFinderNames(), tagKeysOfSecretsSink);
+    }
+
     @Override
     public Iterable<String> apply(@SuppressWarnings("ParameterNameDiffersFromOverriddenParameter") Span span) {
         final Map<String, List<String>> mapOfTypeToKeysOfSecrets = findSecrets(span);
-        final String serviceName = span.getServiceName();
-        final String operationName = span.getOperationName();
         if (mapOfTypeToKeysOfSecrets.isEmpty()) {
             return Collections.emptyList();
         }
         final String emailText = getEmailText(span, mapOfTypeToKeysOfSecrets);
-        final Iterator<Map.Entry<String, List<String>>> firstLevelIterator = mapOfTypeToKeysOfSecrets.entrySet().iterator();
-        while (firstLevelIterator.hasNext()) {
-            final Map.Entry<String, List<String>> finderNameToKeysOfSecrets = firstLevelIterator.next();
-            final String finderName = finderNameToKeysOfSecrets.getKey();
-            finderNameToKeysOfSecrets.getValue().removeIf(
-                    tagName -> s3ConfigFetcher.isInWhiteList(finderName, serviceName, operationName, tagName));
-            if (finderNameToKeysOfSecrets.getValue().isEmpty()) {
-                firstLevelIterator.remove();
-            } else {
-                if (FINDERS_TO_LOG.contains(finderName)) {
-                    logger.info(emailText);
-                }
-                incrementCounter(serviceName, finderName, application);
-            }
+        for (final String finderName : mapOfTypeToKeysOfSecrets.keySet()) {
+            recordNonWhitelistedSecrets(span.getServiceName(), finderName, emailText);
+        }
+        return Collections.singleton(emailText);
+    }
+
+    /**
+     * Logs and counts the secrets, not whitelisted, that a finder found in a span; used by apply() and by
+     * {@link SpanDetectorAndMasker}
+     *
+     * @param serviceName the service name of the span
+     * @param finderName  the name of the finder that found the secrets
+     * @param emailText   the notification text for the span
+     */
+    void recordNonWhitelistedSecrets(String serviceName, String finderName, String emailText) {
+        if (FINDERS_TO_LOG.contains(finderName)) {
+            logger.info(emailText);
         }
-        return mapOfTypeToKeysOfSecrets.isEmpty() ? Collections.emptyList() : Collections.singleton(emailText);
+        incrementCounter(serviceName, finderName, application);
     }
 
     @SuppressWarnings("WeakerAccess")
@@ -144,7 +182,7 @@ public class SpanDetector extends DetectorBase implements ValueMapper<Span, Iter
 
     private void incrementCounter(String serviceName, String finderName, String application) {
         final FinderNameAndServiceName finderNameAndServiceName = CACHED_FINDER_NAME_AND_SECRET_NAME_OBJECTS
-                .computeIfAbsent(finderName, (v -> new HashMap<>()))
+                .computeIfAbsent(finderName, (v -> new ConcurrentHashMap<>()))
                 .computeIfAbsent(serviceName, (v -> new FinderNameAndServiceName(finderName, serviceName)));
         COUNTERS.computeIfAbsent(
                 finderNameAndServiceName, (counter -> factory.createCounter(finderNameAndServiceName, application)))
@@ -0,0 +1,136 @@
+/*
+ * Copyright 2018 Expedia, Inc.
+ *
+ *       Licensed under the Apache License, Version 2.0 (the "License");
+ *       you may not use this file except in compliance with the License.
+ *       You may obtain a copy of the License at
+ *
+ *           http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *       Unless required by applicable law or agreed to in writing, software
+ *       distributed under the License is distributed on an "AS IS" BASIS,
+ *       WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *       See the License for the specific language governing permissions and
+ *       limitations under the License.
+ *
+ */
+package com.expedia.www.haystack.commons.secretDetector.span;
+
+import com.expedia.open.tracing.Span;
+import com.expedia.www.haystack.commons.secretDetector.FinderEngineRegistry;
+import com.expedia.www.haystack.commons.secretDetector.HaystackFinderEngine;
+import com.netflix.servo.util.VisibleForTesting;
+import org.apache.kafka.streams.kstream.ValueMapper;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.time.Clock;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.expedia.www.haystack.commons.config.Configuration.WHITELIST_S3_ITEM_NAME;
+
+/**
+ * Does the work of both {@link SpanDetector} and {@link SpanSecretMasker} with a single scan of each span and a single
+ * whitelist lookup for each span: the span is masked as SpanSecretMasker masks it, and the secrets masked are
+ * logged and counted as SpanDetector logs and counts them, so that both sets of counters, and the
+ * SpanNameAndCountRecorder, are updated exactly as if both ValueMapper objects had been run.
+ */
+@SuppressWarnings("WeakerAccess")
+public class SpanDetectorAndMasker implements ValueMapper<Span, DetectedAndMaskedSpan>, Closeable {
+    private final SpanDetector spanDetector;
+    private final SpanSecretMasker spanSecretMasker;
+    private final FinderEngineRegistry finderEngineRegistry;
+    private final HaystackFinderEngine haystackFinderEngine;
+    private final SpanS3ConfigFetcher spanS3ConfigFetcher;
+    private boolean isClosed;
+
+    /**
+     * Creates a SpanDetectorAndMasker whose SpanDetector and SpanSecretMasker share a fetcher of its own and an engine
+     * acquired from {@link FinderEngineRegistry#getInstance()}; closing it closes the fetcher and releases the engine
+     */
+    public SpanDetectorAndMasker(String bucket, String subsystem, String application) {
+        this(FinderEngineRegistry.getInstance(), bucket, subsystem, application);
+    }
+
+    @VisibleForTesting
+    SpanDetectorAndMasker(FinderEngineRegistry finderEngineRegistry,
+                          String bucket,
+                          String subsystem,
+                          String application) {
+        this(finderEngineRegistry, finderEngineRegistry.acquire(subsystem, application),
+                new SpanS3ConfigFetcher(bucket, WHITELIST_S3_ITEM_NAME), application);
+    }
+
+    private SpanDetectorAndMasker(FinderEngineRegistry finderEngineRegistry,
+                                  HaystackFinderEngine haystackFinderEngine,
+                                  SpanS3ConfigFetcher spanS3ConfigFetcher,
+                                  String application) {
+        //noinspection LoggerInitializedWithForeignClass
+        this(new SpanDetector(LoggerFactory.getLogger(SpanDetector.class), haystackFinderEngine,
+                        new SpanDetector.Factory(), spanS3ConfigFetcher, application),
+                new SpanSecretMasker(haystackFinderEngine, new SpanSecretMasker.Factory(), spanS3ConfigFetcher,
+                        new SpanNameAndCountRecorder(
+                                LoggerFactory.getLogger(SpanNameAndCountRecorder.class), Clock.systemUTC()),
+                        application),
+                finderEngineRegistry, haystackFinderEngine, spanS3ConfigFetcher);
+    }
+
+    /**
+     * Creates a SpanDetectorAndMasker; the SpanDetector is only used to log and count secrets, so it (and the
+     * SpanSecretMasker) should share the same HaystackFinderEngine and SpanS3ConfigFetcher. Since they are shared,
+     * closing the SpanDetectorAndMasker leaves the fetcher running and the engine acquired; the caller owns them.
+     *
+     * @param spanDetector     logs and counts the secrets found
+     * @param spanSecretMasker finds and masks the secrets, recording them in its SpanNameAndCountRecorder
+     */
+    public SpanDetectorAndMasker(SpanDetector spanDetector, SpanSecretMasker spanSecretMasker) {
+        this(spanDetector, spanSecretMasker, null, null, null);
+    }
+
+    private SpanDetectorAndMasker(SpanDetector spanDetector,
+                                  SpanSecretMasker spanSecretMasker,
+                                  FinderEngineRegistry finderEngineRegistry,
+                                  HaystackFinderEngine haystackFinderEngine,
+                                  SpanS3ConfigFetcher spanS3ConfigFetcher) {
+        this.spanDetector = spanDetector;
+        this.spanSecretMasker = spanSecretMasker;
+        this.finderEngineRegistry = finderEngineRegistry;
+        this.haystackFinderEngine = haystackFinderEngine;
+        this.spanS3ConfigFetcher = spanS3ConfigFetcher;
+    }
+
+    /**
+     * Closes the SpanDetector and the SpanSecretMasker and, when this SpanDetectorAndMasker created the fetcher and
+     * acquired the engine that they share, closes the fetcher and releases the engine; call it when the
+     * SpanDetectorAndMasker is no longer needed. Only the first call has any effect.
+     */
+    @Override
+    public synchronized void close() {
+        if (isClosed) {
+            return;
+        }
+        isClosed = true;
+        spanDetector.close();
+        spanSecretMasker.close();
+        if (finderEngineRegistry != null) {
+            spanS3ConfigFetcher.close();
+            finderEngineRegistry.release(haystackFinderEngine);
+        }
+    }
+
+    @Override
+    public DetectedAndMaskedSpan apply(@SuppressWarnings("ParameterNameDiffersFromOverriddenParameter") Span span) {
+        final Map<String, List<String>> mapOfTypeToKeysOfSecrets = new HashMap<>();
+        final Span maskedSpan = spanSecretMasker.maskSecrets(span, mapOfTypeToKeysOfSecrets);
+        if (mapOfTypeToKeysOfSecrets.isEmpty()) {
+            return new DetectedAndMaskedSpan(maskedSpan, mapOfTypeToKeysOfSecrets, null);
+        }
+        final String emailText = SpanDetector.getEmailText(span, mapOfTypeToKeysOfSecrets);
+        for (final String finderName : mapOfTypeToKeysOfSecrets.keySet()) {
+            spanDetector.recordNonWhitelistedSecrets(span.getServiceName(), finderName, emailText);
+        }
+        return new DetectedAndMaskedSpan(maskedSpan, mapOfTypeToKeysOfSecrets, emailText);
+    }
+}
@@ -25,10 +25,6 @@ import com.expedia.www.haystack.commons.secretDetector.WhiteListItemBase;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.Map;
-import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
-
 @SuppressWarnings("WeakerAccess")
 public class SpanS3ConfigFetcher extends S3ConfigFetcherBase {
     private static final int ITEM_COUNT = 4;
@@ -46,35 +42,59 @@ public class SpanS3ConfigFetcher extends S3ConfigFetcherBase {
                 s3ConfigFetcherFactory, ITEM_COUNT);
     }
 
+    /**
+     * Tells whether a finder's secrets in a tag are white listed; prefer
+     * {@link #isInWhiteList(String, String, String, String)}, which does not allocate an array for its arguments
+     *
+     * @param strings the finder name, service name, operation name and tag name
+     * @return true if the secrets are white listed
+     */
+    @Override
     public boolean isInWhiteList(String... strings) {
-        @SuppressWarnings("unchecked") final Map<String, Map<String, Map<String, Set<String>>>> finderNameMap =
-                (Map<String, Map<String, Map<String, Set<String>>>>) getWhiteListItems();
-        final Map<String, Map<String, Set<String>>> serviceNameMap = finderNameMap.get(strings[0]);
-        if (serviceNameMap != null) {
-            final Map<String, Set<String>> operationNameMap = serviceNameMap.get(strings[1]);
-            if (operationNameMap != null) {
-                final Set<String> tagNameSet = operationNameMap.get(strings[2]);
-                if (tagNameSet != null) {
-                    return tagNameSet.contains(strings[3]);
-                }
-            }
-        }
-        return false;
+        return isInWhiteList(strings[0], strings[1], strings[2], strings[3]);
+    }
+
+    /**
+     * Tells whether a finder's secrets in a tag of the spans of a service and operation are white listed
+     *
+     * @param finderName    the name of the finder that found the secrets
+     * @param serviceName   the service name of the span
+     * @param operationName the operation name of the span
+     * @param tagName       the key of the tag (or log field) in which the secrets were found
+     * @return true if the secrets are white listed
+     */
+    public boolean isInWhiteList(String finderName, String serviceName, String operationName, String tagName) {
+        return ((SpanWhiteList) getWhiteListItems()).contains(finderName, serviceName, operationName, tagName);
+    }
+
+    /**
+     * @return true if the white list has no entries, so that no span needs its names resolved in it
+     */
+    public boolean isWhiteListEmpty() {
+        return ((SpanWhiteList) getWhiteListItems()).size() == 0;
+    }
+
+    /**
+     * Resolves the service and operation names of a span in the white list once, for all the tags of the span
+     *
+     * @param serviceName   the service name of the span
+     * @param operationName the operation name of the span
+     * @return a view that tells whether a finder's secrets in a tag of the span are white listed
+     */
+    public SpanWhiteList.View getWhiteListView(String serviceName, String operationName) {
+        return ((SpanWhiteList) getWhiteListItems()).getView(serviceName, operationName);
     }
 
-    @SuppressWarnings("unchecked")
     @Override
     protected void putItemInWhiteList(Object whiteList, WhiteListItemBase whiteListItem) {
         final SpanWhiteListItem spanWhiteListItem = (SpanWhiteListItem) whiteListItem;
-        final Map<String, Map<String, Map<String, Set<String>>>> whiteListCastAsMap =
-                (Map<String, Map<String, Map<String, Set<String>>>>) whiteList;
-        final Map<String, Map<String, Set<String>>> finderNameMap =
-                whiteListCastAsMap.computeIfAbsent(spanWhiteListItem.getFinderName(), v -> new ConcurrentHashMap<>());
-        final Map<String, Set<String>> serviceNameMap =
-                finderNameMap.computeIfAbsent(spanWhiteListItem.getServiceName(), v -> new ConcurrentHashMap<>());
-        final Set<String> tags =
-                serviceNameMap.computeIfAbsent(spanWhiteListItem.getOperationName(), v -> ConcurrentHashMap.newKeySet());
-        tags.add(spanWhiteListItem.getTagName());
+        ((SpanWhiteList.Builder) whiteList).add(spanWhiteListItem.getFinderName(), spanWhiteListItem.getServiceName(),
+                spanWhiteListItem.getOperationName(), spanWhiteListItem.getTagName());
+    }
+
+    @Override
+    protected SpanWhiteList toWhiteListSnapshot(Object whiteList) {
+        return ((SpanWhiteList.Builder) whiteList).build();
     }
 
     public static class SpanFactory extends S3ConfigFetcherBase.Factory<SpanWhiteListItem> {
@@ -84,8 +104,8 @@ public class SpanS3ConfigFetcher extends S3ConfigFetcherBase {
         }
 
         @Override
-        public Object createWhiteList() {
-            return new ConcurrentHashMap<String, Map<String, Map<String, Map<String, Set<String>>>>>();
+        public SpanWhiteList.Builder createWhiteList() {
+            return new SpanWhiteList.Builder();
         }
     }
 }
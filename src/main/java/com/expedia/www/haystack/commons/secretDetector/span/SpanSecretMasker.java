@@ -20,10 +20,11 @@ import com.expedia.open.tracing.Log;
 import com.expedia.open.tracing.Span;
 import com.expedia.open.tracing.Tag;
 import com.expedia.www.haystack.commons.secretDetector.DetectorBase;
+import com.expedia.www.haystack.commons.secretDetector.FinderEngineRegistry;
 import com.expedia.www.haystack.commons.secretDetector.FinderNameAndServiceName;
 import com.expedia.www.haystack.commons.secretDetector.HaystackFinderEngine;
+import com.expedia.www.haystack.commons.secretDetector.SecretSink;
 import com.expedia.www.haystack.metrics.MetricObjects;
-import com.google.common.base.Strings;
 import com.google.protobuf.ByteString;
 import com.netflix.servo.monitor.Counter;
 import com.netflix.servo.util.VisibleForTesting;
@@ -31,11 +32,12 @@ import org.apache.kafka.streams.kstream.ValueMapper;
 import org.slf4j.LoggerFactory;
 
 import java.time.Clock;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 
 import static com.expedia.www.haystack.commons.config.Configuration.WHITELIST_S3_ITEM_NAME;
@@ -58,15 +60,27 @@ public class SpanSecretMasker extends DetectorBase implements ValueMapper<Span,
             new ConcurrentHashMap<>();
     private static final ByteString MASKED_BY_HAYSTACK_BYTE_STRING = ByteString.copyFrom(MASKED_BY_HAYSTACK_BYTES);
     private final Factory factory;
+    private final SpanS3ConfigFetcher spanS3ConfigFetcher;
     private final String application;
     private final SpanNameAndCountRecorder spanNameAndCountRecorder;
 
+    /**
+     * Creates a SpanSecretMasker with a fetcher of its own and an engine acquired from
+     * {@link FinderEngineRegistry#getInstance()}; closing the masker closes the fetcher and releases the engine
+     */
     public SpanSecretMasker(String bucket, String subsystem, String application) {
+        this(FinderEngineRegistry.getInstance(), bucket, subsystem, application);
+    }
+
+    @VisibleForTesting
+    SpanSecretMasker(FinderEngineRegistry finderEngineRegistry, String bucket, String subsystem, String application) {
         //noinspection LoggerInitializedWithForeignClass
-        this(new HaystackFinderEngine(new MetricObjects(), subsystem, application),
+        this(finderEngineRegistry.acquire(subsystem, application),
+                finderEngineRegistry,
                 new Factory(),
                 new SpanS3ConfigFetcher(bucket, WHITELIST_S3_ITEM_NAME),
-                new SpanNameAndCountRecorder(LoggerFactory.getLogger(SpanNameAndCountRecorder.class), Clock.systemUTC()),
+                new SpanNameAndCountRecorder(
+                        LoggerFactory.getLogger(SpanNameAndCountRecorder.class), Clock.systemUTC()),
                 application);
     }
 
@@ -75,186 +89,195 @@ public class SpanSecretMasker extends DetectorBase implements ValueMapper<Span,
                             SpanS3ConfigFetcher spanS3ConfigFetcher,
                             SpanNameAndCountRecorder spanNameAndCountRecorder,
                             String application) {
-        super(haystackFinderEngine, spanS3ConfigFetcher);
+        this(haystackFinderEngine, null, spanSecretMaskerFactory, spanS3ConfigFetcher, spanNameAndCountRecorder,
+                application);
+    }
+
+    @SuppressWarnings("ConstructorWithTooManyParameters")
+    private SpanSecretMasker(HaystackFinderEngine haystackFinderEngine,
+                             FinderEngineRegistry finderEngineRegistry,
+                             SpanSecretMasker.Factory spanSecretMaskerFactory,
+                             SpanS3ConfigFetcher spanS3ConfigFetcher,
+                             SpanNameAndCountRecorder spanNameAndCountRecorder,
+                             String application) {
+        super(haystackFinderEngine, spanS3ConfigFetcher, finderEngineRegistry);
+        this.spanS3ConfigFetcher = spanS3ConfigFetcher;
         this.factory = spanSecretMaskerFactory;
         this.spanNameAndCountRecorder = spanNameAndCountRecorder;
         this.application = application;
     }
 
-    private static class BuildersForTags {
-        Span.Builder spanBuilder;
-        Tag.Builder tagBuilder;
-    }
-
-    private Span maskSecretsInTags(Span span) {
+    /**
+     * Decides which tags and log fields of a span must be masked, creating a Span.Builder the first time a secret is
+     * found; the values are masked through the builder's nested builders, so only the modified tags and log fields
+     * (and the logs that contain them) are copied, and the span is built at most once.
+     */
+    private Span.Builder maskSecretsInTags(Span span,
+                                           TagKeysOfSecretsSink tagKeysOfSecretsSink,
+                                           Map<String, List<String>> reportedKeysOfSecrets) {
+        Span.Builder spanBuilder = null;
         final List<Tag> tags = span.getTagsList();
-        BuildersForTags buildersForTags = null;
         for (int tagIndex = 0; tagIndex < tags.size(); tagIndex++) {
             final Tag tag = tags.get(tagIndex);
-            if (!Strings.isNullOrEmpty(tag.getVStr())) {
-                final Map<String, List<String>> mapOfTypeToKeysOfSecrets = findSecrets(tag, tag.getVStr());
-                if (isNonWhitelistedSecretFound(span, mapOfTypeToKeysOfSecrets)) {
-                    buildersForTags = prepareForBuild(span, tag, buildersForTags);
-                    buildersForTags.tagBuilder.setVStr(MASKED_BY_HAYSTACK);
-                    buildIntoTags(buildersForTags, tagIndex);
-                }
-            } else if (!tag.getVBytes().isEmpty()) {
-                @SuppressWarnings("ObjectAllocationInLoop")
-                final String input = new String(tag.getVBytes().toByteArray());
-                final Map<String, List<String>> mapOfTypeToKeysOfSecrets = findSecrets(tag, input);
-                if (isNonWhitelistedSecretFound(span, mapOfTypeToKeysOfSecrets)) {
-                    buildersForTags = prepareForBuild(span, tag, buildersForTags);
-                    buildersForTags.tagBuilder.setVBytes(MASKED_BY_HAYSTACK_BYTE_STRING);
-                    buildIntoTags(buildersForTags, tagIndex);
-                }
+            if (isSecretToMask(span, tagKeysOfSecretsSink, tag, reportedKeysOfSecrets)) {
+                spanBuilder = (spanBuilder == null) ? span.toBuilder() : spanBuilder;
+                mask(spanBuilder.getTagsBuilder(tagIndex));
             }
         }
-        return (buildersForTags == null) ? span : buildersForTags.spanBuilder.build();
-    }
-
-    private static void buildIntoTags(BuildersForTags buildersForTags, int tagIndex) {
-        buildersForTags.spanBuilder.setTags(tagIndex, buildersForTags.tagBuilder.build());
-    }
-
-    private static BuildersForTags prepareForBuild(Span span,
-                                                   Tag tag,
-                                                   BuildersForTags buildersForTags) {
-        final BuildersForTags buildersForTagsToUseForBuildCalls;
-        if(buildersForTags == null) {
-            buildersForTagsToUseForBuildCalls = new BuildersForTags();
-        } else {
-            buildersForTagsToUseForBuildCalls = buildersForTags;
-        }
-        if (buildersForTagsToUseForBuildCalls.spanBuilder == null) {
-            buildersForTagsToUseForBuildCalls.spanBuilder = Span.newBuilder();
-            buildersForTagsToUseForBuildCalls.spanBuilder.mergeFrom(span);
-        }
-        buildersForTagsToUseForBuildCalls.tagBuilder = mergeTagIntoNewTagBuilder(tag);
-        return buildersForTagsToUseForBuildCalls;
-    }
-
-    private static class BuildersForLogFields extends BuildersForTags {
-        Log.Builder logBuilder;
+        return spanBuilder;
     }
 
     @SuppressWarnings("MethodWithMultipleLoops")
-    private Span maskSecretsInLogFields(Span span) {
-        BuildersForLogFields buildersForLogFields = null;
-        for (int logIndex = 0; logIndex < span.getLogsList().size(); logIndex++) {
-            final Log log = span.getLogs(logIndex);
-            final List<Tag> tags = log.getFieldsList();
+    private Span.Builder maskSecretsInLogFields(Span span,
+                                                TagKeysOfSecretsSink tagKeysOfSecretsSink,
+                                                Map<String, List<String>> reportedKeysOfSecrets,
+                                                Span.Builder spanBuilderForTags) {
+        Span.Builder spanBuilder = spanBuilderForTags;
+        final List<Log> logs = span.getLogsList();
+        for (int logIndex = 0; logIndex < logs.size(); logIndex++) {
+            final List<Tag> tags = logs.get(logIndex).getFieldsList();
             for (int tagIndex = 0; tagIndex < tags.size(); tagIndex++) {
                 final Tag tag = tags.get(tagIndex);
-                if (!Strings.isNullOrEmpty(tag.getVStr())) {
-                    final Map<String, List<String>> mapOfTypeToKeysOfSecrets = findSecrets(tag, tag.getVStr());
-                    if (isNonWhitelistedSecretFound(span, mapOfTypeToKeysOfSecrets)) {
-                        buildersForLogFields = prepareForBuild(span, tag, log, buildersForLogFields);
-                        buildersForLogFields.tagBuilder.setVStr(MASKED_BY_HAYSTACK);
-                        buildIntoLogFields(buildersForLogFields, logIndex, tagIndex);
-                    }
-                } else if (!tag.getVBytes().isEmpty()) {
-                    @SuppressWarnings("ObjectAllocationInLoop")
-                    final String input = new String(tag.getVBytes().toByteArray());
-                    final Map<String, List<String>> mapOfTypeToKeysOfSecrets = findSecrets(tag, input);
-                    if (isNonWhitelistedSecretFound(span, mapOfTypeToKeysOfSecrets)) {
-                        buildersForLogFields = prepareForBuild(span, tag, log, buildersForLogFields);
-                        buildersForLogFields.tagBuilder.setVBytes(MASKED_BY_HAYSTACK_BYTE_STRING);
-                        buildIntoLogFields(buildersForLogFields, logIndex, tagIndex);
-                    }
+                if (isSecretToMask(span, tagKeysOfSecretsSink, tag, reportedKeysOfSecrets)) {
+                    spanBuilder = (spanBuilder == null) ? span.toBuilder() : spanBuilder;
+                    mask(spanBuilder.getLogsBuilder(logIndex).getFieldsBuilder(tagIndex));
                 }
             }
         }
-        return (buildersForLogFields == null) ? span : buildersForLogFields.spanBuilder.build();
-    }
-
-    private static void buildIntoLogFields(BuildersForLogFields buildersForLogFields, int logIndex, int tagIndex) {
-        buildersForLogFields.logBuilder.setFields(tagIndex, buildersForLogFields.tagBuilder.build());
-        buildersForLogFields.spanBuilder.setLogs(logIndex, buildersForLogFields.logBuilder.build());
+        return spanBuilder;
     }
 
-    private static BuildersForLogFields prepareForBuild(Span span,
-                                                        Tag tag,
-                                                        Log log,
-                                                        BuildersForLogFields buildersForLogFields) {
-        final BuildersForLogFields buildersForLogFieldsToUseForBuildCalls =
-                createBuildersForLogFieldsIfNull(buildersForLogFields);
-        if (buildersForLogFieldsToUseForBuildCalls.spanBuilder == null) {
-            buildersForLogFieldsToUseForBuildCalls.spanBuilder = Span.newBuilder();
-            buildersForLogFieldsToUseForBuildCalls.spanBuilder.mergeFrom(span);
+    private boolean isSecretToMask(Span span,
+                                   TagKeysOfSecretsSink tagKeysOfSecretsSink,
+                                   Tag tag,
+                                   Map<String, List<String>> reportedKeysOfSecrets) {
+        final ByteString input = tag.getVStrBytes().isEmpty() ? tag.getVBytes() : tag.getVStrBytes();
+        if (input.isEmpty()) {
+            return false;
+        }
+        final Map<String, List<String>> mapOfTypeToKeysOfSecrets = findSecrets(tagKeysOfSecretsSink, tag, input);
+        if (mapOfTypeToKeysOfSecrets.isEmpty()) {
+            return false;
+        }
+        recordSecrets(span, mapOfTypeToKeysOfSecrets);
+        if (reportedKeysOfSecrets != null) {
+            mapOfTypeToKeysOfSecrets.forEach((finderName, keysOfSecrets) -> reportedKeysOfSecrets
+                    .computeIfAbsent(finderName, k -> new ArrayList<>()).addAll(keysOfSecrets));
         }
-        buildersForLogFieldsToUseForBuildCalls.logBuilder = mergeLogIntoNewLogBuilder(log);
-        buildersForLogFieldsToUseForBuildCalls.tagBuilder = mergeTagIntoNewTagBuilder(tag);
-        return buildersForLogFieldsToUseForBuildCalls;
+        return true;
     }
 
-    private static BuildersForLogFields createBuildersForLogFieldsIfNull(BuildersForLogFields buildersForLogFields) {
-        final BuildersForLogFields buildersForLogFieldsToUseForBuildCalls;
-        if(buildersForLogFields == null) {
-            buildersForLogFieldsToUseForBuildCalls = new BuildersForLogFields();
+    /**
+     * Masks the value of a tag (or log field) in which a secret was found, which is either its vStr or its vBytes
+     *
+     * @param tagBuilder the builder of the tag
+     */
+    static void mask(Tag.Builder tagBuilder) {
+        if (tagBuilder.getMyvalueCase() == Tag.MyvalueCase.VSTR) {
+            tagBuilder.setVStr(MASKED_BY_HAYSTACK);
         } else {
-            buildersForLogFieldsToUseForBuildCalls = buildersForLogFields;
+            tagBuilder.setVBytes(MASKED_BY_HAYSTACK_BYTE_STRING);
         }
-        return buildersForLogFieldsToUseForBuildCalls;
     }
 
-    private Map<String, List<String>> findSecrets(Tag tag, String input) {
-        final Map<String, List<String>> mapOfTypeToValuesOfSecrets = haystackFinderEngine.findWithType(input);
-        for (Map.Entry<String, List<String>> stringListEntry : mapOfTypeToValuesOfSecrets.entrySet()) {
-            stringListEntry.getValue().replaceAll(s -> tag.getKey());
-        }
-        return mapOfTypeToValuesOfSecrets; // but the tag values have now been replaced by the tag key
+    /**
+     * Finds secrets in a tag value, skipping the finders whose secrets are whitelisted in the tag; the finder engine
+     * does not run at all when every finder is whitelisted there
+     *
+     * @param tagKeysOfSecretsSink the sink to reuse, for the whole span, for the values of its tags and log fields
+     * @param tag                  the tag (or log field) whose value is being checked
+     * @param input                the UTF-8 bytes of the value, which are only decoded if a secret is found
+     * @return a map of finder name to the key of the tag, which is only valid until the next call to this method
+     */
+    private Map<String, List<String>> findSecrets(TagKeysOfSecretsSink tagKeysOfSecretsSink,
+                                                  Tag tag,
+                                                  ByteString input) {
+        final Map<String, List<String>> mapOfTypeToKeysOfSecrets = tagKeysOfSecretsSink.getMapOfTypeToKeysOfSecrets();
+        mapOfTypeToKeysOfSecrets.clear();
+        tagKeysOfSecretsSink.withTagKey(tag.getKey());
+        haystackFinderEngine.findSecrets(input, tagKeysOfSecretsSink.getWhitelistedFinderNames(), tagKeysOfSecretsSink);
+        return mapOfTypeToKeysOfSecrets;
+    }
+
+    private void recordSecrets(Span span, Map<String, List<String>> mapOfTypeToKeysOfSecrets) {
+        final String serviceName = span.getServiceName();
+        final String operationName = span.getOperationName();
+        mapOfTypeToKeysOfSecrets.forEach((finderName, tagNames) -> {
+            for (final String tagName : tagNames) {
+                spanNameAndCountRecorder.add(finderName, serviceName, operationName, tagName);
+            }
+            incrementCounter(serviceName, finderName, application);
+        });
     }
 
-    private boolean isNonWhitelistedSecretFound(Span span, Map<String, List<String>> mapOfTypeToKeysOfSecrets) {
-        return !mapOfTypeToKeysOfSecrets.isEmpty() && !areAllSecretsWhitelisted(span, mapOfTypeToKeysOfSecrets);
+    /**
+     * Finds secrets in the UTF-8 content of a tag (or log field) value; used by {@link SpanBytesSecretMasker}
+     *
+     * @param input             the value
+     * @param finderNamesToSkip the names of the finders whose secrets are whitelisted in the tag (or log field)
+     * @param secretSink        receives the secrets, if any are found
+     * @return true if secrets were found
+     */
+    boolean findSecrets(ByteString input, Set<String> finderNamesToSkip, SecretSink secretSink) {
+        return haystackFinderEngine.findSecrets(input, finderNamesToSkip, secretSink);
     }
 
-    private static Log.Builder mergeLogIntoNewLogBuilder(Log log) {
-        final Log.Builder newLogBuilder = Log.newBuilder();
-        newLogBuilder.mergeFrom(log);
-        return newLogBuilder;
+    /**
+     * @return true if the whitelist has no entries, so that {@link SpanBytesSecretMasker} need not read the service and
+     * operation names of a span before scanning its tags and log fields
+     */
+    boolean isWhiteListEmpty() {
+        return spanS3ConfigFetcher.isWhiteListEmpty();
     }
 
-    private static Tag.Builder mergeTagIntoNewTagBuilder(Tag tag) {
-        Tag.Builder maskedTagBuilder = Tag.newBuilder();
-        maskedTagBuilder.mergeFrom(tag);
-        return maskedTagBuilder;
+    /**
+     * Resolves the whitelist entries of a span once, for all the tags and log fields that
+     * {@link SpanBytesSecretMasker} scans in it
+     *
+     * @param serviceName   the service name of the span
+     * @param operationName the operation name of the span
+     * @return the view that names the finders to skip for each tag (or log field) of the span
+     */
+    SpanWhiteList.View getWhiteListView(String serviceName, String operationName) {
+        return spanS3ConfigFetcher.getWhiteListView(serviceName, operationName);
     }
 
-    @SuppressWarnings({"BooleanMethodIsAlwaysInverted", "MethodWithMultipleLoops"})
-    private boolean areAllSecretsWhitelisted(Span span, Map<String, List<String>> mapOfTypeToKeysOfSecrets) {
-        final Iterator<Map.Entry<String, List<String>>> firstLevelIterator =
-                mapOfTypeToKeysOfSecrets.entrySet().iterator();
-        final String serviceName = span.getServiceName();
-        final String operationName = span.getOperationName();
-        while (firstLevelIterator.hasNext()) {
-            final Map.Entry<String, List<String>> finderNameToKeysOfSecrets = firstLevelIterator.next();
-            final String finderName = finderNameToKeysOfSecrets.getKey();
-            finderNameToKeysOfSecrets.getValue().removeIf(
-                    tagName -> s3ConfigFetcher.isInWhiteList(finderName, serviceName, operationName, tagName));
-            if (finderNameToKeysOfSecrets.getValue().isEmpty()) {
-                firstLevelIterator.remove();
-            } else {
-                for (String tagName : finderNameToKeysOfSecrets.getValue()) {
-                    spanNameAndCountRecorder.add(finderName, serviceName, operationName, tagName);
-                }
-                incrementCounter(serviceName, finderName, application);
-            }
-        }
-        return mapOfTypeToKeysOfSecrets.isEmpty();
+    /**
+     * Records and counts a secret found by {@link SpanBytesSecretMasker}, just as it is when apply() finds it
+     *
+     * @param finderName    the name of the finder that found the secret
+     * @param serviceName   the service name of the span
+     * @param operationName the operation name of the span
+     * @param tagKey        the key of the tag (or log field) whose value contains the secret
+     */
+    void recordSecret(String finderName, String serviceName, String operationName, String tagKey) {
+        spanNameAndCountRecorder.add(finderName, serviceName, operationName, tagKey);
+        incrementCounter(serviceName, finderName, application);
     }
 
-    @SuppressWarnings("AssignmentToMethodParameter")
     @Override
     public Span apply(@SuppressWarnings("ParameterNameDiffersFromOverriddenParameter") Span span) {
-        span = maskSecretsInTags(span);
-        span = maskSecretsInLogFields(span);
-        return span;
+        return maskSecrets(span, null);
+    }
+
+    /**
+     * Masks the secrets in a span, as apply() does, optionally reporting the keys of the values masked
+     *
+     * @param span                  the span to mask
+     * @param reportedKeysOfSecrets if not null, receives the keys of the tags and log fields masked, by finder name
+     * @return the span, or a copy of it in which the secrets that are not whitelisted are masked
+     */
+    Span maskSecrets(Span span, Map<String, List<String>> reportedKeysOfSecrets) {
+        final TagKeysOfSecretsSink tagKeysOfSecretsSink = new TagKeysOfSecretsSink(new HashMap<>(),
+                spanS3ConfigFetcher.getWhiteListView(span.getServiceName(), span.getOperationName()));
+        final Span.Builder spanBuilder = maskSecretsInLogFields(span, tagKeysOfSecretsSink, reportedKeysOfSecrets,
+                maskSecretsInTags(span, tagKeysOfSecretsSink, reportedKeysOfSecrets));
+        return (spanBuilder == null) ? span : spanBuilder.build();
     }
 
     private void incrementCounter(String serviceName, String finderName, String application) {
         final FinderNameAndServiceName finderNameAndServiceName = CACHED_FINDER_NAME_AND_SECRET_NAME_OBJECTS
-                .computeIfAbsent(finderName, (v -> new HashMap<>()))
+                .computeIfAbsent(finderName, (v -> new ConcurrentHashMap<>()))
                 .computeIfAbsent(serviceName, (v -> new FinderNameAndServiceName(finderName, serviceName)));
         COUNTERS.computeIfAbsent(
                 finderNameAndServiceName, (counter -> factory.createCounter(finderNameAndServiceName, application)))
@@ -0,0 +1,313 @@
+/*
+ * Copyright 2018 Expedia, Inc.
+ *
+ *       Licensed under the Apache License, Version 2.0 (the "License");
+ *       you may not use this file except in compliance with the License.
+ *       You may obtain a copy of the License at
+ *
+ *           http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *       Unless required by applicable law or agreed to in writing, software
+ *       distributed under the License is distributed on an "AS IS" BASIS,
+ *       WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *       See the License for the specific language governing permissions and
+ *       limitations under the License.
+ *
+ */
+package com.expedia.www.haystack.commons.secretDetector.span;
+
+import com.expedia.www.haystack.commons.secretDetector.LongHashSet;
+import com.expedia.www.haystack.commons.secretDetector.NameDictionary;
+import com.netflix.servo.util.VisibleForTesting;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * An immutable snapshot of the span white list, compact enough to hold millions of entries: the service, operation
+ * and tag names are numbered by a {@link NameDictionary}, which stores each distinct name once, and the entries are
+ * stored as longs in two {@link LongHashSet}s instead of as Strings in nested maps. The first set holds the distinct
+ * (service name, operation name) pairs, so that {@link #getView(String, String)} can resolve the names that are the
+ * same for all the tags of a span once per span; the second holds the distinct (pair, tag name) combinations, each of
+ * which refers to the set of the names of the finders white listed for it, so that the detectors can skip those
+ * finders instead of running them. There are only a handful of finders, and so few distinct sets of their names:
+ * each of those sets is stored once, and shared by all the combinations that have it.
+ * <p>
+ * The service, operation and tag names of an entry may be glob patterns, in which {@value GlobTrie#WILDCARD} matches
+ * any sequence of characters: an entry for the operation GET /users/* white lists all the operations whose names
+ * start with GET /users/. The entries with a pattern are kept apart from the others, in a {@link GlobTrie} of service
+ * names whose values are tries of operation names, whose values are tries of tag names, whose values are finder names;
+ * names without a wildcard are stored in these tries as they are, and match only themselves. Finder names are always
+ * matched exactly, since there are only a handful of finders. Build a SpanWhiteList with a {@link Builder}; a
+ * SpanWhiteList never changes once built, so any number of threads can read it without locking.
+ */
+@SuppressWarnings("WeakerAccess")
+public final class SpanWhiteList {
+    public static final SpanWhiteList EMPTY = new Builder().build();
+
+    private final NameDictionary names;
+    private final LongHashSet pairs;
+    private final LongHashSet combinations;
+    private final int[] finderNameSetIndexes;
+    private final Set<String>[] finderNameSets;
+    private final GlobTrie<GlobTrie<GlobTrie<Set<String>>>> servicePatterns;
+    private final int size;
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private SpanWhiteList(List<String[]> entries) {
+        final NameDictionary.Builder namesBuilder = new NameDictionary.Builder();
+        final long[] pairKeys = new long[entries.size()];
+        final int[] tagIds = new int[entries.size()];
+        final List<String> finderNames = new ArrayList<>();
+        final Map<String, Map<String, Map<String, Set<String>>>> patternEntries = new HashMap<>();
+        int distinctCount = 0;
+        for (final String[] entry : entries) {
+            if (GlobTrie.isPattern(entry[1]) || GlobTrie.isPattern(entry[2]) || GlobTrie.isPattern(entry[3])) {
+                if (patternEntries.computeIfAbsent(entry[1], k -> new HashMap<>())
+                        .computeIfAbsent(entry[2], k -> new HashMap<>())
+                        .computeIfAbsent(entry[3], k -> new HashSet<>())
+                        .add(entry[0])) {
+                    distinctCount++;
+                }
+                continue;
+            }
+            pairKeys[finderNames.size()] = LongHashSet.pack(namesBuilder.add(entry[1]), namesBuilder.add(entry[2]));
+            tagIds[finderNames.size()] = namesBuilder.add(entry[3]);
+            finderNames.add(entry[0]);
+        }
+        names = namesBuilder.build();
+        pairs = new LongHashSet(pairKeys, finderNames.size());
+
+        // The slot of a pair in the pairs set numbers it; the tag numbers are never 0, so neither is a combination
+        final Map<Long, Set<String>> finderNamesByCombination = new HashMap<>();
+        for (int index = 0; index < finderNames.size(); index++) {
+            final long combination = LongHashSet.pack(pairs.slotOf(pairKeys[index]), tagIds[index]);
+            if (finderNamesByCombination.computeIfAbsent(combination, k -> new HashSet<>())
+                    .add(finderNames.get(index))) {
+                distinctCount++;
+            }
+        }
+        final long[] combinationKeys = new long[finderNamesByCombination.size()];
+        int combinationCount = 0;
+        for (final long combination : finderNamesByCombination.keySet()) {
+            combinationKeys[combinationCount++] = combination;
+        }
+        combinations = new LongHashSet(combinationKeys, combinationCount);
+        finderNameSetIndexes = new int[combinations.capacity()];
+        final Map<Set<String>, Integer> finderNameSetIndexesBySet = new HashMap<>();
+        finderNamesByCombination.forEach((combination, finderNameSet) ->
+                finderNameSetIndexes[combinations.slotOf(combination)] = finderNameSetIndexesBySet.computeIfAbsent(
+                        finderNameSet, k -> finderNameSetIndexesBySet.size()));
+        finderNameSets = new Set[finderNameSetIndexesBySet.size()];
+        finderNameSetIndexesBySet.forEach((finderNameSet, index) ->
+                finderNameSets[index] = Collections.unmodifiableSet(finderNameSet));
+
+        servicePatterns = compile(patternEntries);
+        size = distinctCount;
+    }
+
+    private static GlobTrie<GlobTrie<GlobTrie<Set<String>>>> compile(
+            Map<String, Map<String, Map<String, Set<String>>>> patternEntries) {
+        final Map<String, GlobTrie<GlobTrie<Set<String>>>> operationPatternsByServicePattern = new HashMap<>();
+        patternEntries.forEach((servicePattern, entriesByOperationPattern) -> {
+            final Map<String, GlobTrie<Set<String>>> tagPatternsByOperationPattern = new HashMap<>();
+            entriesByOperationPattern.forEach((operationPattern, finderNamesByTagPattern) -> {
+                finderNamesByTagPattern.replaceAll((tagPattern, names) -> Collections.unmodifiableSet(names));
+                tagPatternsByOperationPattern.put(operationPattern, new GlobTrie<>(finderNamesByTagPattern));
+            });
+            operationPatternsByServicePattern.put(servicePattern, new GlobTrie<>(tagPatternsByOperationPattern));
+        });
+        return new GlobTrie<>(operationPatternsByServicePattern);
+    }
+
+    /**
+     * @return the slot of the pair in the pairs set, or LongHashSet.NOT_FOUND if no entry without a pattern has it
+     */
+    private int getPairSlot(String serviceName, String operationName) {
+        final int serviceId = names.getId(serviceName);
+        final int operationId = names.getId(operationName);
+        if (serviceId == NameDictionary.NOT_FOUND || operationId == NameDictionary.NOT_FOUND) {
+            return LongHashSet.NOT_FOUND;
+        }
+        return pairs.slotOf(LongHashSet.pack(serviceId, operationId));
+    }
+
+    /**
+     * @return the names of the finders of the entries without a pattern that have the pair and the tag name
+     */
+    private Set<String> getFinderNames(int pairSlot, String tagName) {
+        if (pairSlot == LongHashSet.NOT_FOUND) {
+            return Collections.emptySet();
+        }
+        final int tagId = names.getId(tagName);
+        if (tagId == NameDictionary.NOT_FOUND) {
+            return Collections.emptySet();
+        }
+        final int slot = combinations.slotOf(LongHashSet.pack(pairSlot, tagId));
+        return (slot == LongHashSet.NOT_FOUND) ? Collections.emptySet() : finderNameSets[finderNameSetIndexes[slot]];
+    }
+
+    /**
+     * Tells whether a finder's secrets in a tag of the spans of a service and operation are white listed
+     *
+     * @param finderName    the name of the finder that found the secrets
+     * @param serviceName   the service name of the span
+     * @param operationName the operation name of the span
+     * @param tagName       the key of the tag (or log field) in which the secrets were found
+     * @return true if the secrets are white listed
+     */
+    public boolean contains(String finderName, String serviceName, String operationName, String tagName) {
+        return getFinderNames(getPairSlot(serviceName, operationName), tagName).contains(finderName)
+                || containsFinderName(getTagPatterns(serviceName, operationName), finderName, tagName);
+    }
+
+    /**
+     * Resolves the names that are the same for all the tags of a span; look up the finders and tags of the span in the
+     * view that is returned, rather than calling {@link #contains(String, String, String, String)} for each of them.
+     *
+     * @param serviceName   the service name of the span
+     * @param operationName the operation name of the span
+     * @return the part of the white list that applies to the span; an empty view when none of it applies
+     */
+    public View getView(String serviceName, String operationName) {
+        final int pairSlot = getPairSlot(serviceName, operationName);
+        final List<GlobTrie<Set<String>>> tagPatterns = getTagPatterns(serviceName, operationName);
+        if (pairSlot == LongHashSet.NOT_FOUND && tagPatterns.isEmpty()) {
+            return View.EMPTY;
+        }
+        return new View(this, pairSlot, tagPatterns);
+    }
+
+    /**
+     * @return the tries of tag name patterns of the entries whose service and operation patterns match the names
+     */
+    private List<GlobTrie<Set<String>>> getTagPatterns(String serviceName, String operationName) {
+        if (servicePatterns.isEmpty()) {
+            return Collections.emptyList();
+        }
+        final List<GlobTrie<GlobTrie<Set<String>>>> operationPatterns = new ArrayList<>();
+        servicePatterns.collectMatches(serviceName, operationPatterns);
+        final List<GlobTrie<Set<String>>> tagPatterns = new ArrayList<>();
+        for (final GlobTrie<GlobTrie<Set<String>>> operationPattern : operationPatterns) {
+            operationPattern.collectMatches(operationName, tagPatterns);
+        }
+        return tagPatterns;
+    }
+
+    private static List<Set<String>> getMatchingFinderNames(List<GlobTrie<Set<String>>> tagPatterns,
+                                                            String tagName) {
+        if (tagPatterns.isEmpty()) {
+            return Collections.emptyList();
+        }
+        final List<Set<String>> finderNames = new ArrayList<>();
+        for (final GlobTrie<Set<String>> tagPattern : tagPatterns) {
+            tagPattern.collectMatches(tagName, finderNames);
+        }
+        return finderNames;
+    }
+
+    private static boolean containsFinderName(List<GlobTrie<Set<String>>> tagPatterns, String finderName,
+                                              String tagName) {
+        for (final Set<String> finderNames : getMatchingFinderNames(tagPatterns, tagName)) {
+            if (finderNames.contains(finderName)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the number of distinct entries
+     */
+    public int size() {
+        return size;
+    }
+
+    @VisibleForTesting
+    int capacity() {
+        return combinations.capacity();
+    }
+
+    @VisibleForTesting
+    int getFinderNameSetCount() {
+        return finderNameSets.length;
+    }
+
+    /**
+     * The part of a SpanWhiteList that applies to the spans of one service and operation, returned by
+     * {@link #getView(String, String)}. A view holds the number of the (service name, operation name) pair, so checking
+     * a finder and tag is a single probe of the white list that looks up only the tag name, and the tag name patterns
+     * of the entries whose service and operation patterns match the span, so that only the tag name is matched to them.
+     */
+    public static class View {
+        static final View EMPTY = new View(SpanWhiteList.EMPTY, LongHashSet.NOT_FOUND, Collections.emptyList());
+
+        private final SpanWhiteList spanWhiteList;
+        private final int pairSlot;
+        private final List<GlobTrie<Set<String>>> tagPatterns;
+
+        View(SpanWhiteList spanWhiteList, int pairSlot, List<GlobTrie<Set<String>>> tagPatterns) {
+            this.spanWhiteList = spanWhiteList;
+            this.pairSlot = pairSlot;
+            this.tagPatterns = tagPatterns;
+        }
+
+        /**
+         * @return true if nothing is white listed for the span, in which case there is no need to look up its tags
+         */
+        public boolean isEmpty() {
+            return pairSlot == LongHashSet.NOT_FOUND && tagPatterns.isEmpty();
+        }
+
+        /**
+         * Gets the finders whose secrets are white listed in a tag of the span; they need not be run on its value
+         *
+         * @param tagName the key of the tag (or log field)
+         * @return the names of the finders, which may be empty but is never null; the set must not be modified
+         */
+        public Set<String> getFinderNames(String tagName) {
+            final Set<String> finderNames = spanWhiteList.getFinderNames(pairSlot, tagName);
+            final List<Set<String>> matchingFinderNames = getMatchingFinderNames(tagPatterns, tagName);
+            if (matchingFinderNames.isEmpty()) {
+                return finderNames;
+            }
+            final Set<String> allFinderNames = new HashSet<>(finderNames);
+            matchingFinderNames.forEach(allFinderNames::addAll);
+            return Collections.unmodifiableSet(allFinderNames);
+        }
+
+        /**
+         * Tells whether a finder's secrets in a tag of the span are white listed
+         *
+         * @param finderName the name of the finder that found the secrets
+         * @param tagName    the key of the tag (or log field) in which the secrets were found
+         * @return true if the secrets are white listed
+         */
+        public boolean contains(String finderName, String tagName) {
+            return spanWhiteList.getFinderNames(pairSlot, tagName).contains(finderName)
+                    || containsFinderName(tagPatterns, finderName, tagName);
+        }
+    }
+
+    /**
+     * Collects the entries of a SpanWhiteList; duplicate entries are allowed and are stored once, and the service,
+     * operation and tag names may be glob patterns
+     */
+    public static class Builder {
+        private final List<String[]> entries = new ArrayList<>();
+
+        public Builder add(String finderName, String serviceName, String operationName, String tagName) {
+            entries.add(new String[]{finderName, serviceName, operationName, tagName});
+            return this;
+        }
+
+        public SpanWhiteList build() {
+            return new SpanWhiteList(entries);
+        }
+    }
+}
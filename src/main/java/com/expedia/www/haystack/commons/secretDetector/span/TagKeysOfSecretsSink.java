@@ -0,0 +1,58 @@
+/*
+ * Copyright 2018 Expedia, Inc.
+ *
+ *       Licensed under the Apache License, Version 2.0 (the "License");
+ *       you may not use this file except in compliance with the License.
+ *       You may obtain a copy of the License at
+ *
+ *           http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *       Unless required by applicable law or agreed to in writing, software
+ *       distributed under the License is distributed on an "AS IS" BASIS,
+ *       WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *       See the License for the specific language governing permissions and
+ *       limitations under the License.
+ *
+ */
+package com.expedia.www.haystack.commons.secretDetector.span;
+
+import com.expedia.www.haystack.commons.secretDetector.DetectorBase.KeysOfSecretsSink;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Puts the key of the span tag (or log field) whose value is a secret into the map; set the tag key before checking
+ * each value. A sink is used for a single span, so it also holds the whitelist view of the span.
+ */
+class TagKeysOfSecretsSink extends KeysOfSecretsSink {
+    private final SpanWhiteList.View whiteListView;
+    private String tagKey;
+
+    TagKeysOfSecretsSink(Map<String, List<String>> mapOfTypeToKeysOfSecrets, SpanWhiteList.View whiteListView) {
+        super(mapOfTypeToKeysOfSecrets);
+        this.whiteListView = whiteListView;
+    }
+
+    TagKeysOfSecretsSink withTagKey(String tagKey) {
+        this.tagKey = tagKey;
+        return this;
+    }
+
+    Map<String, List<String>> getMapOfTypeToKeysOfSecrets() {
+        return mapOfTypeToKeysOfSecrets;
+    }
+
+    /**
+     * @return the names of the finders whose secrets are whitelisted in the tag whose key was set last
+     */
+    Set<String> getWhitelistedFinderNames() {
+        return whiteListView.getFinderNames(tagKey);
+    }
+
+    @Override
+    public void accept(String finderName, List<String> secrets) {
+        putKeyOfSecretIntoMap(finderName, tagKey);
+    }
+}
@@ -17,10 +17,11 @@
 package com.expedia.www.haystack.commons.secretDetector.xml;
 
 import com.expedia.www.haystack.commons.secretDetector.DetectorBase;
+import com.expedia.www.haystack.commons.secretDetector.FinderEngineRegistry;
 import com.expedia.www.haystack.commons.secretDetector.HaystackFinderEngine;
 import com.expedia.www.haystack.commons.secretDetector.S3ConfigFetcher;
 import com.expedia.www.haystack.commons.secretDetector.S3ConfigFetcherBase.Prefix;
-import com.expedia.www.haystack.metrics.MetricObjects;
+import com.netflix.servo.util.VisibleForTesting;
 import org.w3c.dom.Attr;
 import org.w3c.dom.Document;
 import org.w3c.dom.NamedNodeMap;
@@ -41,9 +42,19 @@ import static com.expedia.www.haystack.commons.config.Configuration.WHITELIST_S3
 public class XmlDetector extends DetectorBase {
     private static final String[] ZERO_LENGTH_STRING_ARRAY = new String[0];
 
+    /**
+     * Creates an XmlDetector with a fetcher of its own and an engine acquired from
+     * {@link FinderEngineRegistry#getInstance()}; closing the detector closes the fetcher and releases the engine
+     */
     public XmlDetector(String bucket, String subsystem, String application) {
-        this(new HaystackFinderEngine(new MetricObjects(), subsystem, application),
-                new S3ConfigFetcher(Prefix.XML, bucket, WHITELIST_S3_ITEM_NAME));
+        this(FinderEngineRegistry.getInstance(), bucket, subsystem, application);
+    }
+
+    @VisibleForTesting
+    XmlDetector(FinderEngineRegistry finderEngineRegistry, String bucket, String subsystem, String application) {
+        super(finderEngineRegistry.acquire(subsystem, application),
+                new S3ConfigFetcher(Prefix.XML, bucket, WHITELIST_S3_ITEM_NAME),
+                finderEngineRegistry);
     }
 
     public XmlDetector(HaystackFinderEngine haystackFinderEngine, S3ConfigFetcher s3ConfigFetcher) {
@@ -59,50 +70,64 @@ public class XmlDetector extends DetectorBase {
     public Map<String, List<String>> findSecrets(Document document) {
         document.normalizeDocument();
         final Map<String, List<String>> mapOfTypeToKeysOfSecrets = new HashMap<>();
-        findSecrets(document.getDocumentElement(), mapOfTypeToKeysOfSecrets);
+        findSecrets(document.getDocumentElement(), new XmlKeysOfSecretsSink(mapOfTypeToKeysOfSecrets));
         return mapOfTypeToKeysOfSecrets;
     }
 
-    private void findSecrets(Node node, Map<String, List<String>> mapOfTypeToKeysOfSecrets) {
-        findSecretsInNodeValue(node, mapOfTypeToKeysOfSecrets);
-        findSecretsInChildNodes(node, mapOfTypeToKeysOfSecrets);
-        findSecretsInAttributes(node, mapOfTypeToKeysOfSecrets);
+    private void findSecrets(Node node, XmlKeysOfSecretsSink xmlKeysOfSecretsSink) {
+        findSecretsInNodeValue(node, xmlKeysOfSecretsSink);
+        findSecretsInChildNodes(node, xmlKeysOfSecretsSink);
+        findSecretsInAttributes(node, xmlKeysOfSecretsSink);
     }
 
-    private void findSecretsInNodeValue(Node node, Map<String, List<String>> mapOfTypeToKeysOfSecrets) {
+    private void findSecretsInNodeValue(Node node, XmlKeysOfSecretsSink xmlKeysOfSecretsSink) {
         final String nodeValue = node.getNodeValue();
         if (nodeValue != null) {
-            final Map<String, List<String>> secrets = haystackFinderEngine.findWithType(nodeValue);
-            if (!secrets.isEmpty()) {
-                final String completeHierarchy = getCompleteHierarchy(node);
-                if (completeHierarchy.endsWith("/#text")) { // prevents double detection of attribute values;
-                    // couldn't figure out a cleaner way to do this. An attribute with a secret as its value will see
-                    // that secret appear in this check directly (because getNodeValue() returns Attr.value, per
-                    // https://docs.oracle.com/javase/8/docs/api/index.html?javax/xml/parsers/DocumentBuilderFactory.html)
-                    // as well as when the attributes child text node is traversed. This check ensures that only the
-                    // latter will be marked as a secret, and has the nice effect of making the keys of all secrets
-                    // in XML end in the "/#text" String.
-                    putKeysOfSecretsIntoMap(mapOfTypeToKeysOfSecrets, completeHierarchy, secrets);
-                }
-            }
+            xmlKeysOfSecretsSink.node = node;
+            haystackFinderEngine.findSecrets(nodeValue, xmlKeysOfSecretsSink);
         }
     }
 
-    private void findSecretsInChildNodes(Node node, Map<String, List<String>> mapOfTypeToKeysOfSecrets) {
+    private void findSecretsInChildNodes(Node node, XmlKeysOfSecretsSink xmlKeysOfSecretsSink) {
         final NodeList childNodes = node.getChildNodes();
         // childNodes never null: JavaDoc says "If there are no children, this is a NodeList containing no nodes"
         for (int index = 0; index < childNodes.getLength(); index++) {
             final Node childNode = childNodes.item(index);
-            findSecrets(childNode, mapOfTypeToKeysOfSecrets);
+            findSecrets(childNode, xmlKeysOfSecretsSink);
         }
     }
 
-    private void findSecretsInAttributes(Node node, Map<String, List<String>> mapOfTypeToKeysOfSecrets) {
+    private void findSecretsInAttributes(Node node, XmlKeysOfSecretsSink xmlKeysOfSecretsSink) {
         final NamedNodeMap attributes = node.getAttributes();
         if (attributes != null) {
             for (int index = 0; index < attributes.getLength(); index++) {
                 final Node attribute = attributes.item(index);
-                findSecrets(attribute, mapOfTypeToKeysOfSecrets);
+                findSecrets(attribute, xmlKeysOfSecretsSink);
+            }
+        }
+    }
+
+    /**
+     * Puts the path of the node whose value is a secret (computed only when secrets are found) into the map
+     */
+    private static class XmlKeysOfSecretsSink extends KeysOfSecretsSink {
+        private Node node;
+
+        private XmlKeysOfSecretsSink(Map<String, List<String>> mapOfTypeToKeysOfSecrets) {
+            super(mapOfTypeToKeysOfSecrets);
+        }
+
+        @Override
+        public void accept(String finderName, List<String> secrets) {
+            final String completeHierarchy = getCompleteHierarchy(node);
+            if (completeHierarchy.endsWith("/#text")) { // prevents double detection of attribute values;
+                // couldn't figure out a cleaner way to do this. An attribute with a secret as its value will see
+                // that secret appear in this check directly (because getNodeValue() returns Attr.value, per
+                // https://docs.oracle.com/javase/8/docs/api/index.html?javax/xml/parsers/DocumentBuilderFactory.html)
+                // as well as when the attributes child text node is traversed. This check ensures that only the
+                // latter will be marked as a secret, and has the nice effect of making the keys of all secrets
+                // in XML end in the "/#text" String.
+                putKeyOfSecretIntoMap(finderName, completeHierarchy);
             }
         }
     }
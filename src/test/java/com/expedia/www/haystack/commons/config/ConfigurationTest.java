@@ -16,6 +16,8 @@
  */
 package com.expedia.www.haystack.commons.config;
 
+import com.expedia.www.haystack.commons.secretDetector.NonLocalIpV4AddressFinder;
+import com.expedia.www.haystack.commons.secretDetector.NonLocalIpV6AddressFinder;
 import org.cfg4j.provider.ConfigurationProvider;
 import org.junit.Before;
 import org.junit.Test;
@@ -30,10 +32,31 @@ import static org.junit.Assert.assertEquals;
 public class ConfigurationTest {
     private final static String WHITELIST_BUCKET = "haystack.secretsnotifications.whitelist.bucket";
     private final static String WHITELIST_KEY = "haystack.secretsnotifications.whitelist.key";
+    private final static String FINDER_ENGINE_COMBINE_REGEX_FINDERS =
+            "haystack.secretsnotifications.finderengine.combineRegexFinders";
+    private final static String FINDER_ENGINE_ORDER_FINDERS_ADAPTIVELY =
+            "haystack.secretsnotifications.finderengine.orderFindersAdaptively";
+    private final static String FINDER_ENGINE_ADAPTIVE_ORDERING_INTERVAL =
+            "haystack.secretsnotifications.finderengine.adaptiveOrderingInterval";
+    private final static String FINDER_ENGINE_MANDATORY_FINDERS =
+            "haystack.secretsnotifications.finderengine.mandatoryFinders";
+    private final static String FINDER_ENGINE_RESULT_CACHE_BYTES =
+            "haystack.secretsnotifications.finderengine.resultCacheBytes";
+    private final static String FINDER_ENGINE_EXCLUDED_IP_V4_RANGES =
+            "haystack.secretsnotifications.finderengine.excludedIpV4Ranges";
+    private final static String FINDER_ENGINE_EXCLUDED_IP_V6_RANGES =
+            "haystack.secretsnotifications.finderengine.excludedIpV6Ranges";
 
     private final static Object[][] TEST_DATA = {
             {WHITELIST_BUCKET, "haystack-config"},
             {WHITELIST_KEY, WHITELIST_S3_ITEM_NAME},
+            {FINDER_ENGINE_COMBINE_REGEX_FINDERS, false},
+            {FINDER_ENGINE_ORDER_FINDERS_ADAPTIVELY, false},
+            {FINDER_ENGINE_ADAPTIVE_ORDERING_INTERVAL, 10000},
+            {FINDER_ENGINE_MANDATORY_FINDERS, "Credit_Card"},
+            {FINDER_ENGINE_RESULT_CACHE_BYTES, 0},
+            {FINDER_ENGINE_EXCLUDED_IP_V4_RANGES, NonLocalIpV4AddressFinder.DEFAULT_EXCLUDED_RANGES},
+            {FINDER_ENGINE_EXCLUDED_IP_V6_RANGES, NonLocalIpV6AddressFinder.DEFAULT_EXCLUDED_RANGES},
     };
     private static final char UNDERSCORE = '_';
     private static final char PERIOD = '.';
@@ -0,0 +1,132 @@
+/*
+ * Copyright 2018 Expedia, Inc.
+ *
+ *       Licensed under the Apache License, Version 2.0 (the "License");
+ *       you may not use this file except in compliance with the License.
+ *       You may obtain a copy of the License at
+ *
+ *           http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *       Unless required by applicable law or agreed to in writing, software
+ *       distributed under the License is distributed on an "AS IS" BASIS,
+ *       WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *       See the License for the specific language governing permissions and
+ *       limitations under the License.
+ *
+ */
+package com.expedia.www.haystack.commons.secretDetector;
+
+import io.dataapps.chlorine.finder.Finder;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class AdaptiveFinderOrderTest {
+    private static final String MANDATORY = "Mandatory";
+
+    @Mock
+    private Finder mockFinderA;
+
+    @Mock
+    private Finder mockFinderMandatory;
+
+    @Mock
+    private Finder mockFinderB;
+
+    @Mock
+    private Finder mockFinderC;
+
+    private List<Finder> finders;
+    private AdaptiveFinderOrder adaptiveFinderOrder;
+
+    @Before
+    public void setUp() {
+        when(mockFinderA.getName()).thenReturn("A");
+        when(mockFinderMandatory.getName()).thenReturn(MANDATORY);
+        when(mockFinderB.getName()).thenReturn("B");
+        when(mockFinderC.getName()).thenReturn("C");
+        finders = Arrays.asList(mockFinderA, mockFinderMandatory, mockFinderB, mockFinderC);
+        adaptiveFinderOrder = new AdaptiveFinderOrder(finders, Collections.singleton(MANDATORY), 2);
+    }
+
+    @After
+    public void tearDown() {
+        verify(mockFinderA, atLeastOnce()).getName();
+        verify(mockFinderMandatory, atLeastOnce()).getName();
+        verify(mockFinderB, atLeastOnce()).getName();
+        verify(mockFinderC, atLeastOnce()).getName();
+        verifyNoMoreInteractions(mockFinderA, mockFinderMandatory, mockFinderB, mockFinderC);
+    }
+
+    @Test
+    public void testInitialOrderIsConfiguredOrder() {
+        assertEquals(finders, adaptiveFinderOrder.getFinders());
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testGetFindersIsUnmodifiable() {
+        adaptiveFinderOrder.getFinders().clear();
+    }
+
+    @Test
+    public void testReorderKeepsMandatoryFinderInPlace() {
+        adaptiveFinderOrder.record(mockFinderA, 1000L, false);
+        adaptiveFinderOrder.record(mockFinderC, 10L, false);
+        adaptiveFinderOrder.record(mockFinderB, 100L, false);
+
+        adaptiveFinderOrder.reorder();
+
+        assertEquals(Arrays.asList(mockFinderA, mockFinderMandatory, mockFinderC, mockFinderB),
+                adaptiveFinderOrder.getFinders());
+    }
+
+    @Test
+    public void testReorderUsesCostPerDetection() {
+        adaptiveFinderOrder.record(mockFinderB, 100L, true);
+        adaptiveFinderOrder.record(mockFinderC, 60L, false);
+        adaptiveFinderOrder.reorder();
+        assertEquals(finders, adaptiveFinderOrder.getFinders()); // 100 / 2 is cheaper than 60 / 1
+
+        adaptiveFinderOrder.record(mockFinderB, 100L, false);
+        adaptiveFinderOrder.reorder();
+        assertEquals(Arrays.asList(mockFinderA, mockFinderMandatory, mockFinderC, mockFinderB),
+                adaptiveFinderOrder.getFinders()); // 200 / 2 is more expensive than 60 / 1
+    }
+
+    @Test
+    public void testValueCheckedReordersEveryReorderInterval() {
+        adaptiveFinderOrder.record(mockFinderB, 100L, false);
+
+        adaptiveFinderOrder.valueChecked();
+        assertEquals(finders, adaptiveFinderOrder.getFinders());
+
+        adaptiveFinderOrder.valueChecked();
+        assertEquals(Arrays.asList(mockFinderA, mockFinderMandatory, mockFinderC, mockFinderB),
+                adaptiveFinderOrder.getFinders());
+    }
+
+    @Test
+    public void testReorderIntervalLessThanOne() {
+        adaptiveFinderOrder = new AdaptiveFinderOrder(finders, Collections.emptySet(), 0);
+        adaptiveFinderOrder.record(mockFinderA, 100L, false);
+
+        adaptiveFinderOrder.valueChecked();
+
+        assertEquals(Arrays.asList(mockFinderMandatory, mockFinderB, mockFinderC, mockFinderA),
+                adaptiveFinderOrder.getFinders());
+    }
+}
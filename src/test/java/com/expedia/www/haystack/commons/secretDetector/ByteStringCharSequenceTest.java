@@ -0,0 +1,72 @@
+/*
+ * Copyright 2018 Expedia, Inc.
+ *
+ *       Licensed under the Apache License, Version 2.0 (the "License");
+ *       you may not use this file except in compliance with the License.
+ *       You may obtain a copy of the License at
+ *
+ *           http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *       Unless required by applicable law or agreed to in writing, software
+ *       distributed under the License is distributed on an "AS IS" BASIS,
+ *       WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *       See the License for the specific language governing permissions and
+ *       limitations under the License.
+ *
+ */
+package com.expedia.www.haystack.commons.secretDetector;
+
+import com.google.protobuf.ByteString;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class ByteStringCharSequenceTest {
+    private static final String ASCII = "user@example.com";
+    private static final String NON_ASCII = "caf\u00e9";
+
+    private ByteStringCharSequence byteStringCharSequence;
+
+    @Before
+    public void setUp() {
+        byteStringCharSequence = new ByteStringCharSequence(ByteString.copyFromUtf8(ASCII));
+    }
+
+    @Test
+    public void testLength() {
+        assertEquals(ASCII.length(), byteStringCharSequence.length());
+    }
+
+    @Test
+    public void testCharAt() {
+        for (int index = 0; index < ASCII.length(); index++) {
+            assertEquals(ASCII.charAt(index), byteStringCharSequence.charAt(index));
+        }
+    }
+
+    @Test
+    public void testCharAtNonAsciiByte() {
+        byteStringCharSequence = new ByteStringCharSequence(ByteString.copyFromUtf8(NON_ASCII));
+
+        // U+00E9 is the two UTF-8 bytes 0xC3 0xA9, each of which is viewed as a char
+        assertEquals(NON_ASCII.length() + 1, byteStringCharSequence.length());
+        assertEquals('\u00c3', byteStringCharSequence.charAt(3));
+        assertEquals('\u00a9', byteStringCharSequence.charAt(4));
+        assertEquals(NON_ASCII, byteStringCharSequence.toString());
+    }
+
+    @Test
+    public void testSubSequence() {
+        assertEquals("example", byteStringCharSequence.subSequence(5, 12).toString());
+    }
+
+    @Test
+    public void testToStringDecodesOnce() {
+        final String string = byteStringCharSequence.toString();
+
+        assertEquals(ASCII, string);
+        assertSame(string, byteStringCharSequence.toString());
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright 2018 Expedia, Inc.
+ *
+ *       Licensed under the Apache License, Version 2.0 (the "License");
+ *       you may not use this file except in compliance with the License.
+ *       You may obtain a copy of the License at
+ *
+ *           http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *       Unless required by applicable law or agreed to in writing, software
+ *       distributed under the License is distributed on an "AS IS" BASIS,
+ *       WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *       See the License for the specific language governing permissions and
+ *       limitations under the License.
+ *
+ */
+package com.expedia.www.haystack.commons.secretDetector;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static com.expedia.www.haystack.commons.secretDetector.CidrTrie.INVALID_IP_V4_RANGE_MSG;
+import static com.expedia.www.haystack.commons.secretDetector.CidrTrie.INVALID_IP_V6_RANGE_MSG;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class CidrTrieTest {
+    @Test
+    public void testContains() {
+        final CidrTrie cidrTrie =
+                CidrTrie.createIpV4Trie(Arrays.asList("10.0.0.0/8", "172.16.0.0/12", "169.254.0.0/16"));
+
+        assertTrue(contains(cidrTrie, "10.0.0.0"));
+        assertTrue(contains(cidrTrie, "10.255.255.255"));
+        assertFalse(contains(cidrTrie, "11.0.0.0"));
+        assertFalse(contains(cidrTrie, "172.15.255.255"));
+        assertTrue(contains(cidrTrie, "172.16.0.0"));
+        assertTrue(contains(cidrTrie, "172.31.255.255"));
+        assertFalse(contains(cidrTrie, "172.32.0.0"));
+        assertTrue(contains(cidrTrie, "169.254.1.2"));
+        assertFalse(contains(cidrTrie, "169.253.1.2"));
+        assertFalse(contains(cidrTrie, "255.255.255.255"));
+    }
+
+    @Test
+    public void testContainsSingleAddress() {
+        final CidrTrie cidrTrie = CidrTrie.createIpV4Trie(Arrays.asList("1.2.3.4", "1.2.3.6/32"));
+
+        assertTrue(contains(cidrTrie, "1.2.3.4"));
+        assertFalse(contains(cidrTrie, "1.2.3.5"));
+        assertTrue(contains(cidrTrie, "1.2.3.6"));
+    }
+
+    @Test
+    public void testContainsNestedRanges() {
+        for (final CidrTrie cidrTrie : new CidrTrie[]{
+                CidrTrie.createIpV4Trie(Arrays.asList("10.1.0.0/16", "10.0.0.0/8")),
+                CidrTrie.createIpV4Trie(Arrays.asList("10.0.0.0/8", "10.1.0.0/16"))}) {
+            assertTrue(contains(cidrTrie, "10.1.2.3"));
+            assertTrue(contains(cidrTrie, "10.2.3.4"));
+        }
+    }
+
+    @Test
+    public void testContainsAllOrNothing() {
+        assertTrue(contains(CidrTrie.createIpV4Trie(Collections.singletonList("0.0.0.0/0")), "1.2.3.4"));
+        assertFalse(contains(CidrTrie.createIpV4Trie(Collections.emptyList()), "1.2.3.4"));
+    }
+
+    @Test
+    public void testBitsBeyondPrefixLengthAreIgnored() {
+        assertTrue(contains(CidrTrie.createIpV4Trie(Collections.singletonList("10.1.2.3/8")), "10.200.0.0"));
+    }
+
+    @Test
+    public void testInvalidRanges() {
+        final String[] cidrRanges = {"10.0.0/8", "10.0.0.0/", "10.0.0.0/x", "10.0.0.0/-1", "10.0.0.0/33"};
+        for (final String cidrRange : cidrRanges) {
+            try {
+                CidrTrie.createIpV4Trie(Collections.singletonList(cidrRange));
+                fail("Expected an IllegalArgumentException for " + cidrRange);
+            } catch (IllegalArgumentException e) {
+                assertEquals(String.format(INVALID_IP_V4_RANGE_MSG, cidrRange), e.getMessage());
+            }
+        }
+    }
+
+    @Test
+    public void testContainsIpV6() {
+        final CidrTrie cidrTrie = CidrTrie.createIpV6Trie(Arrays.asList("::1/128", "::", "fe80::/10", "fc00::/7"));
+
+        assertTrue(containsIpV6(cidrTrie, "::1"));
+        assertTrue(containsIpV6(cidrTrie, "::"));
+        assertFalse(containsIpV6(cidrTrie, "::2"));
+        assertTrue(containsIpV6(cidrTrie, "fe80::1"));
+        assertTrue(containsIpV6(cidrTrie, "febf:ffff::1"));
+        assertFalse(containsIpV6(cidrTrie, "fec0::1"));
+        assertFalse(containsIpV6(cidrTrie, "fe00::1"));
+        assertTrue(containsIpV6(cidrTrie, "fc00::1"));
+        assertTrue(containsIpV6(cidrTrie, "fdff:ffff:ffff:ffff:ffff:ffff:ffff:ffff"));
+        assertFalse(containsIpV6(cidrTrie, "2001:db8::1"));
+    }
+
+    @Test
+    public void testContainsIpV6PrefixInLowBits() {
+        final CidrTrie cidrTrie = CidrTrie.createIpV6Trie(Arrays.asList("2001:db8:0:0:1::/80", "2001:db8::2:0:0:7"));
+
+        assertTrue(containsIpV6(cidrTrie, "2001:db8::1:0:0:5"));
+        assertFalse(containsIpV6(cidrTrie, "2001:db8::2:0:0:5"));
+        assertTrue(containsIpV6(cidrTrie, "2001:db8::2:0:0:7"));
+        assertFalse(containsIpV6(cidrTrie, "2001:db8::2:0:0:6"));
+    }
+
+    @Test
+    public void testInvalidIpV6Ranges() {
+        final String[] cidrRanges = {"fe80:/10", "fe80::/", "fe80::/x", "fe80::/-1", "fe80::/129", "10.0.0.0/8"};
+        for (final String cidrRange : cidrRanges) {
+            try {
+                CidrTrie.createIpV6Trie(Collections.singletonList(cidrRange));
+                fail("Expected an IllegalArgumentException for " + cidrRange);
+            } catch (IllegalArgumentException e) {
+                assertEquals(String.format(INVALID_IP_V6_RANGE_MSG, cidrRange), e.getMessage());
+            }
+        }
+    }
+
+    private static boolean containsIpV6(CidrTrie cidrTrie, String address) {
+        final long[] parsedAddress = new long[IpV6AddressParser.LONGS_PER_ADDRESS];
+        assertTrue(IpV6AddressParser.parse(address, 0, address.length(), parsedAddress));
+        return cidrTrie.contains(parsedAddress[IpV6AddressParser.HIGH], parsedAddress[IpV6AddressParser.LOW]);
+    }
+
+    private static boolean contains(CidrTrie cidrTrie, String address) {
+        return cidrTrie.contains((int) IpV4AddressParser.parse(address, 0, address.length()));
+    }
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright 2018 Expedia, Inc.
+ *
+ *       Licensed under the Apache License, Version 2.0 (the "License");
+ *       you may not use this file except in compliance with the License.
+ *       You may obtain a copy of the License at
+ *
+ *           http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *       Unless required by applicable law or agreed to in writing, software
+ *       distributed under the License is distributed on an "AS IS" BASIS,
+ *       WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *       See the License for the specific language governing permissions and
+ *       limitations under the License.
+ *
+ */
+package com.expedia.www.haystack.commons.secretDetector;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+
+public class DetectorBaseTest {
+    private static final String KEY = "KEY";
+    private static final String OTHER_KEY = "OTHER_KEY";
+    private static final String FINDER_NAME = "FINDER_NAME";
+    private static final String OTHER_FINDER_NAME = "OTHER_FINDER_NAME";
+
+    @SuppressWarnings("deprecation")
+    @Test
+    public void testPutKeysOfSecretsIntoMap() {
+        final Map<String, List<String>> mapOfTypeToKeysOfSecrets = new HashMap<>();
+        final Map<String, List<String>> mapOfTypeToKeysOfSecretsJustFound = new HashMap<>();
+        mapOfTypeToKeysOfSecretsJustFound.put(FINDER_NAME, Collections.singletonList("secret"));
+        mapOfTypeToKeysOfSecretsJustFound.put(OTHER_FINDER_NAME, Collections.singletonList("other secret"));
+
+        DetectorBase.putKeysOfSecretsIntoMap(mapOfTypeToKeysOfSecrets, KEY, mapOfTypeToKeysOfSecretsJustFound);
+        DetectorBase.putKeysOfSecretsIntoMap(mapOfTypeToKeysOfSecrets, OTHER_KEY,
+                Collections.singletonMap(FINDER_NAME, Collections.singletonList("secret")));
+
+        assertEquals(2, mapOfTypeToKeysOfSecrets.size());
+        assertEquals(Arrays.asList(KEY, OTHER_KEY), mapOfTypeToKeysOfSecrets.get(FINDER_NAME));
+        assertEquals(Collections.singletonList(KEY), mapOfTypeToKeysOfSecrets.get(OTHER_FINDER_NAME));
+    }
+}
@@ -1,7 +1,6 @@
 package com.expedia.www.haystack.commons.secretDetector;
 
 import com.expedia.www.haystack.metrics.MetricObjects;
-import com.netflix.servo.monitor.Stopwatch;
 import com.netflix.servo.monitor.Timer;
 import io.dataapps.chlorine.pattern.RegexFinder;
 import org.junit.After;
@@ -10,7 +9,10 @@ import org.mockito.Mockito;
 
 import static com.expedia.www.haystack.commons.secretDetector.TestConstantsAndCommonCode.RANDOM;
 import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
 
 public abstract class DetectorTestBase {
@@ -23,51 +25,63 @@ public abstract class DetectorTestBase {
     @Mock
     private Timer mockTimer;
 
-    @Mock
-    private Stopwatch mockStopwatch;
-
     @After
     public void tearDown() {
         verifyNoMoreInteractions(mockMetricObjects);
         verifyNoMoreInteractions(mockTimer);
-        verifyNoMoreInteractions(mockStopwatch);
     }
 
     protected void whensForFindSecrets() {
         Mockito.when(mockMetricObjects.createAndRegisterBasicTimer(any(), any(), any(), any(), any()))
                 .thenReturn(mockTimer);
-        Mockito.when(mockTimer.start()).thenReturn(mockStopwatch);
     }
 
-    protected void verifiesForFindSecrets(int wantedNumberOfInvocationsStartAndStop,
-                                          int wantedNumberOfInvocationsNonEmailFinders) {
+    /**
+     * Verifies the timers used by the finders; the timers of the ProfiledFinder objects are only created when their
+     * finders are run, which depends on the profiles of the values being checked.
+     */
+    @SuppressWarnings("MethodWithTooManyParameters")
+    protected void verifiesForFindSecrets(int wantedNumberOfInvocationsRecord,
+                                          int wantedNumberOfInvocationsNonEmailRegexFinders,
+                                          int wantedNumberOfInvocationsCreditCardFinder,
+                                          int wantedNumberOfInvocationsIpV4Finder,
+                                          int wantedNumberOfInvocationsPhoneNumberFinder) {
         Mockito.verify(mockMetricObjects).createAndRegisterBasicTimer(SUBSYSTEM, APPLICATION,
                 RegexFinder.class.getName(), "EMAIL", MILLISECONDS);
-        Mockito.verify(mockMetricObjects, Mockito.times(wantedNumberOfInvocationsNonEmailFinders))
+        Mockito.verify(mockMetricObjects, Mockito.times(wantedNumberOfInvocationsCreditCardFinder))
                 .createAndRegisterBasicTimer(SUBSYSTEM, APPLICATION,
                         HaystackCompositeCreditCardFinder.class.getName(), "CREDIT_CARD",
                         MILLISECONDS);
-        Mockito.verify(mockMetricObjects, Mockito.times(wantedNumberOfInvocationsNonEmailFinders))
+        Mockito.verify(mockMetricObjects, Mockito.times(wantedNumberOfInvocationsIpV4Finder))
                 .createAndRegisterBasicTimer(SUBSYSTEM, APPLICATION,
                         NonLocalIpV4AddressFinder.class.getName(), NonLocalIpV4AddressFinder.FINDER_NAME.toUpperCase(),
                         MILLISECONDS);
-        Mockito.verify(mockMetricObjects, Mockito.times(wantedNumberOfInvocationsNonEmailFinders))
+        Mockito.verify(mockMetricObjects, Mockito.times(wantedNumberOfInvocationsNonEmailRegexFinders))
                 .createAndRegisterBasicTimer(SUBSYSTEM, APPLICATION,
                         RegexFinder.class.getName(), "STREET ADDRESS",
                         MILLISECONDS);
-        Mockito.verify(mockMetricObjects, Mockito.times(wantedNumberOfInvocationsNonEmailFinders))
+        Mockito.verify(mockMetricObjects, Mockito.times(wantedNumberOfInvocationsNonEmailRegexFinders))
                 .createAndRegisterBasicTimer(SUBSYSTEM, APPLICATION,
                         RegexFinder.class.getName(), "SSN-SPACES",
                         MILLISECONDS);
-        Mockito.verify(mockMetricObjects, Mockito.times(wantedNumberOfInvocationsNonEmailFinders))
+        Mockito.verify(mockMetricObjects, Mockito.times(wantedNumberOfInvocationsNonEmailRegexFinders))
                 .createAndRegisterBasicTimer(SUBSYSTEM, APPLICATION,
                         RegexFinder.class.getName(), "SSN-DASHES",
                         MILLISECONDS);
-        Mockito.verify(mockMetricObjects, Mockito.times(wantedNumberOfInvocationsNonEmailFinders))
+        Mockito.verify(mockMetricObjects, Mockito.times(wantedNumberOfInvocationsPhoneNumberFinder))
                 .createAndRegisterBasicTimer(SUBSYSTEM, APPLICATION,
                         HaystackPhoneNumberFinder.class.getName(), HaystackPhoneNumberFinder.FINDER_NAME.toUpperCase(),
                         MILLISECONDS);
-        Mockito.verify(mockTimer, Mockito.times(wantedNumberOfInvocationsStartAndStop)).start();
-        Mockito.verify(mockStopwatch, Mockito.times(wantedNumberOfInvocationsStartAndStop)).stop();
+        Mockito.verify(mockTimer, Mockito.times(wantedNumberOfInvocationsRecord)).record(anyLong(), eq(NANOSECONDS));
+    }
+
+    /**
+     * Verifies the timers used by the finders when values are checked on several threads at once; how many of the
+     * values the FindResultCache answers, and so how many times the finders run, depends on how the threads interleave.
+     */
+    protected void verifiesForFindSecretsOnSeveralThreads() {
+        Mockito.verify(mockMetricObjects, Mockito.atLeastOnce())
+                .createAndRegisterBasicTimer(any(), any(), any(), any(), any());
+        Mockito.verify(mockTimer, Mockito.atLeastOnce()).record(anyLong(), eq(NANOSECONDS));
     }
 }
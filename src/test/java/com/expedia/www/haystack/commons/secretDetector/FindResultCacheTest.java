@@ -0,0 +1,131 @@
+/*
+ * Copyright 2018 Expedia, Inc.
+ *
+ *       Licensed under the Apache License, Version 2.0 (the "License");
+ *       you may not use this file except in compliance with the License.
+ *       You may obtain a copy of the License at
+ *
+ *           http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *       Unless required by applicable law or agreed to in writing, software
+ *       distributed under the License is distributed on an "AS IS" BASIS,
+ *       WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *       See the License for the specific language governing permissions and
+ *       limitations under the License.
+ *
+ */
+package com.expedia.www.haystack.commons.secretDetector;
+
+import com.expedia.www.haystack.commons.secretDetector.FindResultCache.FrequencySketch;
+import com.google.common.base.Strings;
+import com.google.common.hash.HashCode;
+import com.google.protobuf.ByteString;
+import com.netflix.servo.monitor.Counter;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import static com.expedia.www.haystack.commons.secretDetector.FindResultCache.ADMISSION_FREQUENCY;
+import static com.expedia.www.haystack.commons.secretDetector.FindResultCache.ESTIMATED_BYTES_PER_ENTRY;
+import static com.expedia.www.haystack.commons.secretDetector.FindResultCache.FrequencySketch.SAMPLE_SIZE_MULTIPLIER;
+import static com.expedia.www.haystack.commons.secretDetector.FindResultCache.SCRATCH_BUFFER_BYTES;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+
+@RunWith(MockitoJUnitRunner.class)
+public class FindResultCacheTest {
+    // Constants rather than random values, so that the frequency sketch behaves the same way every time
+    private static final String INPUT = "INPUT";
+    private static final String OTHER_INPUT = "OTHER_INPUT";
+
+    @Mock
+    private Counter mockHitsCounter;
+
+    @Mock
+    private Counter mockMissesCounter;
+
+    private FindResultCache findResultCache;
+
+    @Before
+    public void setUp() {
+        findResultCache = new FindResultCache(ESTIMATED_BYTES_PER_ENTRY * 100, mockHitsCounter, mockMissesCounter);
+    }
+
+    @After
+    public void tearDown() {
+        verifyNoMoreInteractions(mockHitsCounter, mockMissesCounter);
+    }
+
+    @Test
+    public void testFingerprint() {
+        assertEquals(findResultCache.fingerprint(INPUT), findResultCache.fingerprint(INPUT));
+        assertNotEquals(findResultCache.fingerprint(INPUT), findResultCache.fingerprint(OTHER_INPUT));
+        assertEquals(32, findResultCache.fingerprint(INPUT).asBytes().length);
+    }
+
+    @Test
+    public void testFingerprintOfByteStringEqualsFingerprintOfString() {
+        assertEquals(findResultCache.fingerprint(INPUT), findResultCache.fingerprint(ByteString.copyFromUtf8(INPUT)));
+        assertEquals(findResultCache.fingerprint(""), findResultCache.fingerprint(ByteString.EMPTY));
+        final String nonAscii = "caf\u00e9";
+        assertEquals(findResultCache.fingerprint(nonAscii),
+                findResultCache.fingerprint(ByteString.copyFromUtf8(nonAscii)));
+    }
+
+    @Test
+    public void testFingerprintOfByteStringLargerThanScratchBuffer() {
+        final String input = Strings.repeat(INPUT, SCRATCH_BUFFER_BYTES);
+
+        assertEquals(findResultCache.fingerprint(input), findResultCache.fingerprint(ByteString.copyFromUtf8(input)));
+    }
+
+    @Test
+    public void testValueWithoutSecretsIsCachedOnceSeenAdmissionFrequencyTimes() {
+        final HashCode fingerprint = findResultCache.fingerprint(INPUT);
+
+        for (int i = 0; i < ADMISSION_FREQUENCY; i++) {
+            assertFalse(findResultCache.isKnownToHaveNoSecrets(fingerprint));
+            findResultCache.recordNoSecrets(fingerprint);
+            assertEquals(i + 1 == ADMISSION_FREQUENCY ? 1 : 0, findResultCache.size());
+        }
+        assertTrue(findResultCache.isKnownToHaveNoSecrets(fingerprint));
+
+        verify(mockMissesCounter, times(ADMISSION_FREQUENCY)).increment();
+        verify(mockHitsCounter).increment();
+    }
+
+    @Test
+    public void testBudgetBoundsTheCache() {
+        findResultCache = new FindResultCache(0, mockHitsCounter, mockMissesCounter);
+        final HashCode fingerprint = findResultCache.fingerprint(INPUT);
+        final HashCode otherFingerprint = findResultCache.fingerprint(OTHER_INPUT);
+
+        for (int i = 0; i < ADMISSION_FREQUENCY; i++) {
+            findResultCache.recordNoSecrets(fingerprint);
+            findResultCache.recordNoSecrets(otherFingerprint);
+        }
+
+        assertEquals(1, findResultCache.size());
+    }
+
+    @Test
+    public void testFrequencySketchHalvesCounts() {
+        final FrequencySketch frequencySketch = new FrequencySketch(1); // 4 counts, so halved every 40 increments
+        // Counts 0, 1, 2 and 3, so that the rows do not share counts
+        final HashCode fingerprint = HashCode.fromLong(1L << Integer.SIZE);
+
+        for (int i = 1; i < SAMPLE_SIZE_MULTIPLIER * 4; i++) {
+            assertEquals(Math.min(i, 15), frequencySketch.increment(fingerprint));
+        }
+        assertEquals(15, frequencySketch.increment(fingerprint));
+        assertEquals(8, frequencySketch.increment(fingerprint));
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright 2018 Expedia, Inc.
+ *
+ *       Licensed under the Apache License, Version 2.0 (the "License");
+ *       you may not use this file except in compliance with the License.
+ *       You may obtain a copy of the License at
+ *
+ *           http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *       Unless required by applicable law or agreed to in writing, software
+ *       distributed under the License is distributed on an "AS IS" BASIS,
+ *       WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *       See the License for the specific language governing permissions and
+ *       limitations under the License.
+ *
+ */
+package com.expedia.www.haystack.commons.secretDetector;
+
+import com.expedia.www.haystack.commons.config.Configuration;
+import com.expedia.www.haystack.commons.config.FinderEngineConfigurationProvider;
+import org.cfg4j.provider.ConfigurationProvider;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class FinderEngineConfigurationProviderTest {
+    private FinderEngineConfigurationProvider finderEngineConfigurationProvider;
+
+    @Before
+    public void setUp() {
+        final Configuration configuration = new Configuration();
+        final ConfigurationProvider mergeConfigurationProvider = configuration.createMergeConfigurationProvider();
+        finderEngineConfigurationProvider = new FinderEngineConfigurationProvider(mergeConfigurationProvider);
+    }
+
+    @Test
+    public void testCombineRegexFinders() {
+        assertFalse(finderEngineConfigurationProvider.combineRegexFinders());
+    }
+
+    @Test
+    public void testOrderFindersAdaptively() {
+        assertFalse(finderEngineConfigurationProvider.orderFindersAdaptively());
+    }
+
+    @Test
+    public void testAdaptiveOrderingInterval() {
+        assertEquals(10000, finderEngineConfigurationProvider.adaptiveOrderingInterval());
+    }
+
+    @Test
+    public void testMandatoryFinders() {
+        assertEquals("Credit_Card", finderEngineConfigurationProvider.mandatoryFinders());
+    }
+
+    @Test
+    public void testResultCacheBytes() {
+        assertEquals(0, finderEngineConfigurationProvider.resultCacheBytes());
+    }
+
+    @Test
+    public void testExcludedIpV4Ranges() {
+        assertEquals(NonLocalIpV4AddressFinder.DEFAULT_EXCLUDED_RANGES,
+                finderEngineConfigurationProvider.excludedIpV4Ranges());
+    }
+
+    @Test
+    public void testExcludedIpV6Ranges() {
+        assertEquals(NonLocalIpV6AddressFinder.DEFAULT_EXCLUDED_RANGES,
+                finderEngineConfigurationProvider.excludedIpV6Ranges());
+    }
+}
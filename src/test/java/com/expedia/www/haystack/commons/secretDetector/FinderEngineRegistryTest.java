@@ -0,0 +1,283 @@
+/*
+ * Copyright 2018 Expedia, Inc.
+ *
+ *       Licensed under the Apache License, Version 2.0 (the "License");
+ *       you may not use this file except in compliance with the License.
+ *       You may obtain a copy of the License at
+ *
+ *           http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *       Unless required by applicable law or agreed to in writing, software
+ *       distributed under the License is distributed on an "AS IS" BASIS,
+ *       WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *       See the License for the specific language governing permissions and
+ *       limitations under the License.
+ *
+ */
+package com.expedia.www.haystack.commons.secretDetector;
+
+import com.expedia.www.haystack.commons.secretDetector.FinderEngineRegistry.CachingMetricObjects;
+import com.expedia.www.haystack.commons.secretDetector.FinderEngineRegistry.Factory;
+import com.expedia.www.haystack.metrics.MetricObjects;
+import com.netflix.servo.monitor.Counter;
+import com.netflix.servo.monitor.Timer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static com.expedia.www.haystack.commons.secretDetector.FinderEngineRegistry.NOT_ACQUIRED_MSG;
+import static com.expedia.www.haystack.commons.secretDetector.TestConstantsAndCommonCode.RANDOM;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class FinderEngineRegistryTest {
+    private static final String SUBSYSTEM = RANDOM.nextLong() + "SUBSYSTEM";
+    private static final String APPLICATION = RANDOM.nextLong() + "APPLICATION";
+    private static final String OTHER_APPLICATION = RANDOM.nextLong() + "OTHER_APPLICATION";
+    private static final String KLASS = RANDOM.nextLong() + "KLASS";
+    private static final String METRIC_NAME = RANDOM.nextLong() + "METRIC_NAME";
+    private static final String OTHER_METRIC_NAME = RANDOM.nextLong() + "OTHER_METRIC_NAME";
+    private static final int THREAD_COUNT = 4;
+    private static final int ACQUISITIONS_PER_THREAD = 1000;
+
+    @Mock
+    private Factory mockFactory;
+
+    @Mock
+    private MetricObjects mockMetricObjects;
+
+    @Mock
+    private Timer mockTimer;
+
+    @Mock
+    private Timer mockOtherTimer;
+
+    @Mock
+    private Counter mockCounter;
+
+    @Mock
+    private Counter mockOtherCounter;
+
+    @Mock
+    private HaystackFinderEngine mockHaystackFinderEngine;
+
+    @Mock
+    private HaystackFinderEngine mockOtherHaystackFinderEngine;
+
+    @Mock
+    private FinderEngineConfig mockFinderEngineConfig;
+
+    private FinderEngineRegistry finderEngineRegistry;
+
+    @Before
+    public void setUp() {
+        when(mockFactory.createMetricObjects()).thenReturn(mockMetricObjects);
+
+        finderEngineRegistry = new FinderEngineRegistry(mockFactory);
+    }
+
+    @After
+    public void tearDown() {
+        verify(mockFactory).createMetricObjects();
+        verifyNoMoreInteractions(mockFactory, mockMetricObjects, mockTimer, mockOtherTimer, mockCounter,
+                mockOtherCounter, mockHaystackFinderEngine, mockOtherHaystackFinderEngine, mockFinderEngineConfig);
+    }
+
+    @Test
+    public void testGetInstance() {
+        assertSame(FinderEngineRegistry.getInstance(), FinderEngineRegistry.getInstance());
+    }
+
+    @Test
+    public void testAcquireSharesEngine() {
+        when(mockFactory.createHaystackFinderEngine(mockMetricObjects, SUBSYSTEM, APPLICATION, null))
+                .thenReturn(mockHaystackFinderEngine);
+
+        assertSame(mockHaystackFinderEngine, finderEngineRegistry.acquire(SUBSYSTEM, APPLICATION));
+        assertSame(mockHaystackFinderEngine, finderEngineRegistry.acquire(SUBSYSTEM, APPLICATION));
+        assertEquals(2, finderEngineRegistry.getReferenceCount(SUBSYSTEM, APPLICATION, null));
+
+        verify(mockFactory).createHaystackFinderEngine(mockMetricObjects, SUBSYSTEM, APPLICATION, null);
+    }
+
+    @Test
+    public void testAcquireOneEnginePerSubsystemAndApplication() {
+        when(mockFactory.createHaystackFinderEngine(mockMetricObjects, SUBSYSTEM, APPLICATION, null))
+                .thenReturn(mockHaystackFinderEngine);
+        when(mockFactory.createHaystackFinderEngine(mockMetricObjects, SUBSYSTEM, OTHER_APPLICATION, null))
+                .thenReturn(mockOtherHaystackFinderEngine);
+
+        assertSame(mockHaystackFinderEngine, finderEngineRegistry.acquire(SUBSYSTEM, APPLICATION));
+        assertSame(mockOtherHaystackFinderEngine, finderEngineRegistry.acquire(SUBSYSTEM, OTHER_APPLICATION));
+        assertEquals(1, finderEngineRegistry.getReferenceCount(SUBSYSTEM, APPLICATION, null));
+        assertEquals(1, finderEngineRegistry.getReferenceCount(SUBSYSTEM, OTHER_APPLICATION, null));
+
+        verify(mockFactory).createHaystackFinderEngine(mockMetricObjects, SUBSYSTEM, APPLICATION, null);
+        verify(mockFactory).createHaystackFinderEngine(mockMetricObjects, SUBSYSTEM, OTHER_APPLICATION, null);
+    }
+
+    @Test
+    public void testAcquireOneEnginePerFinderEngineConfig() {
+        when(mockFactory.createHaystackFinderEngine(mockMetricObjects, SUBSYSTEM, APPLICATION, null))
+                .thenReturn(mockHaystackFinderEngine);
+        when(mockFactory.createHaystackFinderEngine(mockMetricObjects, SUBSYSTEM, APPLICATION, mockFinderEngineConfig))
+                .thenReturn(mockOtherHaystackFinderEngine);
+
+        assertSame(mockHaystackFinderEngine, finderEngineRegistry.acquire(SUBSYSTEM, APPLICATION));
+        assertSame(mockOtherHaystackFinderEngine,
+                finderEngineRegistry.acquire(SUBSYSTEM, APPLICATION, mockFinderEngineConfig));
+        assertSame(mockOtherHaystackFinderEngine,
+                finderEngineRegistry.acquire(SUBSYSTEM, APPLICATION, mockFinderEngineConfig));
+        assertEquals(1, finderEngineRegistry.getReferenceCount(SUBSYSTEM, APPLICATION, null));
+        assertEquals(2, finderEngineRegistry.getReferenceCount(SUBSYSTEM, APPLICATION, mockFinderEngineConfig));
+
+        verify(mockFactory).createHaystackFinderEngine(mockMetricObjects, SUBSYSTEM, APPLICATION, null);
+        verify(mockFactory)
+                .createHaystackFinderEngine(mockMetricObjects, SUBSYSTEM, APPLICATION, mockFinderEngineConfig);
+    }
+
+    @Test
+    public void testReleaseForgetsEngineWithoutReferences() {
+        when(mockFactory.createHaystackFinderEngine(mockMetricObjects, SUBSYSTEM, APPLICATION, null))
+                .thenReturn(mockHaystackFinderEngine, mockOtherHaystackFinderEngine);
+
+        finderEngineRegistry.acquire(SUBSYSTEM, APPLICATION);
+        finderEngineRegistry.acquire(SUBSYSTEM, APPLICATION);
+        finderEngineRegistry.release(mockHaystackFinderEngine);
+        assertEquals(1, finderEngineRegistry.getReferenceCount(SUBSYSTEM, APPLICATION, null));
+        finderEngineRegistry.release(mockHaystackFinderEngine);
+        assertEquals(0, finderEngineRegistry.getReferenceCount(SUBSYSTEM, APPLICATION, null));
+        assertSame(mockOtherHaystackFinderEngine, finderEngineRegistry.acquire(SUBSYSTEM, APPLICATION));
+
+        verify(mockFactory, times(2)).createHaystackFinderEngine(mockMetricObjects, SUBSYSTEM, APPLICATION, null);
+    }
+
+    @Test
+    public void testReacquiredEngineSharesMetricObjectsOfReleasedEngine() {
+        when(mockFactory.createHaystackFinderEngine(mockMetricObjects, SUBSYSTEM, APPLICATION, null))
+                .thenReturn(mockHaystackFinderEngine, mockOtherHaystackFinderEngine);
+
+        finderEngineRegistry.release(finderEngineRegistry.acquire(SUBSYSTEM, APPLICATION));
+        assertSame(mockOtherHaystackFinderEngine, finderEngineRegistry.acquire(SUBSYSTEM, APPLICATION));
+
+        verify(mockFactory, times(2)).createHaystackFinderEngine(mockMetricObjects, SUBSYSTEM, APPLICATION, null);
+    }
+
+    @Test
+    public void testReleaseEngineNotAcquired() {
+        when(mockFactory.createHaystackFinderEngine(mockMetricObjects, SUBSYSTEM, APPLICATION, null))
+                .thenReturn(mockHaystackFinderEngine);
+        finderEngineRegistry.acquire(SUBSYSTEM, APPLICATION);
+        finderEngineRegistry.release(mockHaystackFinderEngine);
+
+        for (final HaystackFinderEngine haystackFinderEngine
+                : new HaystackFinderEngine[]{mockHaystackFinderEngine, mockOtherHaystackFinderEngine}) {
+            try {
+                finderEngineRegistry.release(haystackFinderEngine);
+                fail("Expected an IllegalArgumentException");
+            } catch (IllegalArgumentException e) {
+                assertEquals(NOT_ACQUIRED_MSG, e.getMessage());
+            }
+        }
+
+        verify(mockFactory).createHaystackFinderEngine(mockMetricObjects, SUBSYSTEM, APPLICATION, null);
+    }
+
+    @Test
+    public void testAcquireAndReleaseFromManyThreads() throws Exception {
+        when(mockFactory.createHaystackFinderEngine(mockMetricObjects, SUBSYSTEM, APPLICATION, null))
+                .thenAnswer(invocation -> mock(HaystackFinderEngine.class));
+        final HaystackFinderEngine heldHaystackFinderEngine = finderEngineRegistry.acquire(SUBSYSTEM, APPLICATION);
+        final ExecutorService executorService = Executors.newFixedThreadPool(THREAD_COUNT);
+        try {
+            final List<Future<?>> futures = new ArrayList<>();
+            for (int thread = 0; thread < THREAD_COUNT; thread++) {
+                futures.add(executorService.submit(() -> {
+                    for (int count = 0; count < ACQUISITIONS_PER_THREAD; count++) {
+                        assertSame(heldHaystackFinderEngine, finderEngineRegistry.acquire(SUBSYSTEM, APPLICATION));
+                        finderEngineRegistry.release(heldHaystackFinderEngine);
+                    }
+                }));
+            }
+            for (final Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executorService.shutdown();
+        }
+        assertEquals(1, finderEngineRegistry.getReferenceCount(SUBSYSTEM, APPLICATION, null));
+
+        verify(mockFactory).createHaystackFinderEngine(mockMetricObjects, SUBSYSTEM, APPLICATION, null);
+    }
+
+    @Test
+    public void testCachingMetricObjectsCreatesEachTimerOnce() {
+        when(mockMetricObjects.createAndRegisterBasicTimer(SUBSYSTEM, APPLICATION, KLASS, METRIC_NAME, MILLISECONDS))
+                .thenReturn(mockTimer);
+        when(mockMetricObjects.createAndRegisterBasicTimer(
+                SUBSYSTEM, APPLICATION, KLASS, OTHER_METRIC_NAME, MILLISECONDS)).thenReturn(mockOtherTimer);
+        final CachingMetricObjects cachingMetricObjects = new CachingMetricObjects(mockMetricObjects);
+
+        for (int count = 0; count < 2; count++) {
+            assertSame(mockTimer, cachingMetricObjects.createAndRegisterBasicTimer(
+                    SUBSYSTEM, APPLICATION, KLASS, METRIC_NAME, MILLISECONDS));
+            assertSame(mockOtherTimer, cachingMetricObjects.createAndRegisterBasicTimer(
+                    SUBSYSTEM, APPLICATION, KLASS, OTHER_METRIC_NAME, MILLISECONDS));
+        }
+
+        verify(mockMetricObjects).createAndRegisterBasicTimer(SUBSYSTEM, APPLICATION, KLASS, METRIC_NAME, MILLISECONDS);
+        verify(mockMetricObjects).createAndRegisterBasicTimer(
+                SUBSYSTEM, APPLICATION, KLASS, OTHER_METRIC_NAME, MILLISECONDS);
+    }
+
+    @Test
+    public void testCachingMetricObjectsCreatesEachResettingCounterOnce() {
+        when(mockMetricObjects.createAndRegisterResettingCounter(SUBSYSTEM, APPLICATION, KLASS, METRIC_NAME))
+                .thenReturn(mockCounter);
+        when(mockMetricObjects.createAndRegisterResettingCounter(SUBSYSTEM, APPLICATION, KLASS, OTHER_METRIC_NAME))
+                .thenReturn(mockOtherCounter);
+        final CachingMetricObjects cachingMetricObjects = new CachingMetricObjects(mockMetricObjects);
+
+        for (int count = 0; count < 2; count++) {
+            assertSame(mockCounter, cachingMetricObjects.createAndRegisterResettingCounter(
+                    SUBSYSTEM, APPLICATION, KLASS, METRIC_NAME));
+            assertSame(mockOtherCounter, cachingMetricObjects.createAndRegisterResettingCounter(
+                    SUBSYSTEM, APPLICATION, KLASS, OTHER_METRIC_NAME));
+        }
+
+        verify(mockMetricObjects).createAndRegisterResettingCounter(SUBSYSTEM, APPLICATION, KLASS, METRIC_NAME);
+        verify(mockMetricObjects).createAndRegisterResettingCounter(SUBSYSTEM, APPLICATION, KLASS, OTHER_METRIC_NAME);
+    }
+
+    @Test
+    public void testFactoryCreatesCachingMetricObjects() {
+        assertTrue(new Factory().createMetricObjects() instanceof CachingMetricObjects);
+    }
+
+    @Test
+    public void testFactoryCreatesNewEngines() {
+        final Factory factory = new Factory();
+
+        assertNotSame(factory.createHaystackFinderEngine(mockMetricObjects, SUBSYSTEM, APPLICATION, null),
+                factory.createHaystackFinderEngine(mockMetricObjects, SUBSYSTEM, APPLICATION, null));
+    }
+}
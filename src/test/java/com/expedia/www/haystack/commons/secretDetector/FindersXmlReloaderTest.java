@@ -0,0 +1,286 @@
+/*
+ * Copyright 2018 Expedia, Inc.
+ *
+ *       Licensed under the Apache License, Version 2.0 (the "License");
+ *       you may not use this file except in compliance with the License.
+ *       You may obtain a copy of the License at
+ *
+ *           http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *       Unless required by applicable law or agreed to in writing, software
+ *       distributed under the License is distributed on an "AS IS" BASIS,
+ *       WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *       See the License for the specific language governing permissions and
+ *       limitations under the License.
+ *
+ */
+package com.expedia.www.haystack.commons.secretDetector;
+
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.Headers;
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.S3Object;
+import com.amazonaws.services.s3.model.S3ObjectInputStream;
+import com.expedia.www.haystack.commons.secretDetector.FindersXmlReloader.Factory;
+import com.expedia.www.haystack.commons.secretDetector.FindersXmlReloader.Source;
+import com.google.common.io.ByteStreams;
+import io.dataapps.chlorine.finder.Finder;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.slf4j.Logger;
+import org.xml.sax.SAXException;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+
+import static com.expedia.www.haystack.commons.secretDetector.FindersXmlReloader.NO_FINDERS_MSG;
+import static com.expedia.www.haystack.commons.secretDetector.FindersXmlReloader.RELOADED_MSG;
+import static com.expedia.www.haystack.commons.secretDetector.FindersXmlReloader.RELOAD_PROBLEM_MSG;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class FindersXmlReloaderTest {
+    private static final long PERIOD_MILLIS = 60000L;
+    private static final String SOURCE_NAME = "finders.xml";
+    private static final String ETAG = "ETag";
+    private static final String EMAIL_XML = "<finders><finder><name>Email</name>"
+            + "<pattern>[A-Z0-9._%+-]+@[A-Z0-9.-]+</pattern></finder></finders>";
+    private static final String EMAIL_AND_IP_XML = "<finders><finder><name>Email</name>"
+            + "<pattern>[A-Z0-9._%+-]+@[A-Z0-9.-]+</pattern></finder><finder>"
+            + "<class>" + NonLocalIpV4AddressFinder.class.getName() + "</class></finder></finders>";
+    private static final String NO_ENABLED_FINDERS_XML = "<finders><finder><name>Email</name>"
+            + "<pattern>[A-Z0-9._%+-]+@[A-Z0-9.-]+</pattern><enabled>false</enabled></finder></finders>";
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Mock
+    private HaystackFinderEngine mockHaystackFinderEngine;
+
+    @Mock
+    private Source mockSource;
+
+    @Mock
+    private Logger mockLogger;
+
+    @Mock
+    private Factory mockFactory;
+
+    @Mock
+    private ScheduledExecutorService mockScheduledExecutorService;
+
+    @Mock
+    private AmazonS3 mockAmazonS3;
+
+    @Mock
+    private S3Object mockS3Object;
+
+    private FindersXmlReloader findersXmlReloader;
+
+    @Before
+    public void setUp() {
+        when(mockSource.toString()).thenReturn(SOURCE_NAME);
+        when(mockFactory.createHaystackFinderProviderFactory()).thenReturn(new HaystackFinderProvider.Factory());
+        findersXmlReloader = new FindersXmlReloader(
+                mockHaystackFinderEngine, mockSource, PERIOD_MILLIS, mockLogger, mockFactory);
+    }
+
+    @After
+    public void tearDown() {
+        verifyNoMoreInteractions(mockHaystackFinderEngine, mockSource, mockLogger, mockFactory,
+                mockScheduledExecutorService, mockAmazonS3, mockS3Object);
+    }
+
+    @Test
+    public void testReloadReplacesFindersOnlyWhenContentChanges() throws IOException {
+        when(mockSource.openStream()).thenReturn(toStream(EMAIL_XML), toStream(EMAIL_XML), toStream(EMAIL_AND_IP_XML));
+
+        assertTrue(findersXmlReloader.reload());
+        assertFalse(findersXmlReloader.reload());
+        assertTrue(findersXmlReloader.reload());
+
+        final List<List<Finder>> finderLists = verifyFindersReplaced(2);
+        assertEquals(1, finderLists.get(0).size());
+        assertEquals("Email", finderLists.get(0).get(0).getName());
+        assertEquals(2, finderLists.get(1).size());
+        assertTrue(finderLists.get(1).get(1) instanceof NonLocalIpV4AddressFinder);
+        verify(mockSource, times(3)).openStream();
+        verify(mockFactory, times(2)).createHaystackFinderProviderFactory();
+        verify(mockLogger).info(String.format(RELOADED_MSG, 1, SOURCE_NAME));
+        verify(mockLogger).info(String.format(RELOADED_MSG, 2, SOURCE_NAME));
+    }
+
+    @Test
+    public void testReloadKeepsFindersWhenNoneAreEnabled() throws IOException {
+        when(mockSource.openStream()).thenReturn(toStream(NO_ENABLED_FINDERS_XML), toStream(NO_ENABLED_FINDERS_XML));
+
+        assertFalse(findersXmlReloader.reload());
+        // The content was not accepted, so it is parsed again rather than skipped as unchanged
+        assertFalse(findersXmlReloader.reload());
+
+        verify(mockSource, times(2)).openStream();
+        verify(mockFactory, times(2)).createHaystackFinderProviderFactory();
+        verify(mockLogger, times(2)).error(String.format(NO_FINDERS_MSG, SOURCE_NAME));
+    }
+
+    @Test
+    public void testReloadKeepsFindersWhenContentCannotBeRead() throws IOException {
+        final IOException ioException = new IOException();
+        when(mockSource.openStream()).thenThrow(ioException);
+
+        assertFalse(findersXmlReloader.reload());
+
+        verify(mockSource).openStream();
+        verify(mockLogger).error(String.format(RELOAD_PROBLEM_MSG, SOURCE_NAME), ioException);
+    }
+
+    @Test
+    public void testReloadKeepsFindersWhenContentIsNotXml() throws IOException {
+        when(mockSource.openStream()).thenReturn(toStream("<finders>"));
+
+        assertFalse(findersXmlReloader.reload());
+
+        verify(mockSource).openStream();
+        verify(mockFactory).createHaystackFinderProviderFactory();
+        verify(mockLogger).error(eq(String.format(RELOAD_PROBLEM_MSG, SOURCE_NAME)), any(SAXException.class));
+    }
+
+    @Test
+    public void testReloadKeepsFindersWhenEngineThrows() throws IOException {
+        final IllegalStateException illegalStateException = new IllegalStateException();
+        when(mockSource.openStream()).thenReturn(toStream(EMAIL_XML));
+        doThrow(illegalStateException).when(mockHaystackFinderEngine).replaceFinders(any());
+
+        assertFalse(findersXmlReloader.reload());
+
+        verifyFindersReplaced(1);
+        verify(mockSource).openStream();
+        verify(mockFactory).createHaystackFinderProviderFactory();
+        verify(mockLogger).error(String.format(RELOAD_PROBLEM_MSG, SOURCE_NAME), illegalStateException);
+    }
+
+    @Test
+    public void testStartAndClose() throws IOException {
+        when(mockFactory.createScheduledExecutorService()).thenReturn(mockScheduledExecutorService);
+        when(mockSource.openStream()).thenReturn(toStream(EMAIL_XML));
+
+        findersXmlReloader.start();
+        findersXmlReloader.start();
+        final ArgumentCaptor<Runnable> runnableCaptor = ArgumentCaptor.forClass(Runnable.class);
+        verify(mockScheduledExecutorService).scheduleWithFixedDelay(
+                runnableCaptor.capture(), eq(0L), eq(PERIOD_MILLIS), eq(MILLISECONDS));
+        runnableCaptor.getValue().run();
+        findersXmlReloader.close();
+        findersXmlReloader.close();
+
+        verifyFindersReplaced(1);
+        verify(mockFactory).createScheduledExecutorService();
+        verify(mockScheduledExecutorService).shutdownNow();
+        verify(mockSource).openStream();
+        verify(mockFactory).createHaystackFinderProviderFactory();
+        verify(mockLogger).info(String.format(RELOADED_MSG, 1, SOURCE_NAME));
+    }
+
+    @Test
+    public void testFileSource() throws IOException {
+        final Path path = temporaryFolder.newFile().toPath();
+        Files.write(path, EMAIL_XML.getBytes(StandardCharsets.UTF_8));
+        final Source source = FindersXmlReloader.file(path);
+        findersXmlReloader = new FindersXmlReloader(mockHaystackFinderEngine, source, PERIOD_MILLIS);
+
+        assertEquals(path.toString(), source.toString());
+        assertTrue(findersXmlReloader.reload());
+
+        verifyFindersReplaced(1);
+    }
+
+    @Test
+    public void testS3Source() throws IOException {
+        final ObjectMetadata objectMetadata = new ObjectMetadata();
+        objectMetadata.setHeader(Headers.ETAG, ETAG);
+        when(mockAmazonS3.getObject(any(GetObjectRequest.class))).thenReturn(mockS3Object, (S3Object) null);
+        when(mockS3Object.getObjectContent()).thenReturn(new S3ObjectInputStream(toStream(EMAIL_XML), null));
+        when(mockS3Object.getObjectMetadata()).thenReturn(objectMetadata);
+        final Source source = FindersXmlReloader.s3(mockAmazonS3, "bucket", "key");
+
+        assertEquals("s3://bucket/key", source.toString());
+        assertEquals(EMAIL_XML, new String(readAll(source), StandardCharsets.UTF_8));
+        // The second request carries the ETag of the first response, and S3 answers that nothing has changed
+        assertNull(source.openStream());
+
+        final ArgumentCaptor<GetObjectRequest> getObjectRequestCaptor = ArgumentCaptor.forClass(GetObjectRequest.class);
+        verify(mockAmazonS3, times(2)).getObject(getObjectRequestCaptor.capture());
+        final List<GetObjectRequest> getObjectRequests = getObjectRequestCaptor.getAllValues();
+        for (final GetObjectRequest getObjectRequest : getObjectRequests) {
+            assertEquals("bucket", getObjectRequest.getBucketName());
+            assertEquals("key", getObjectRequest.getKey());
+        }
+        assertEquals(Collections.emptyList(), getObjectRequests.get(0).getNonmatchingETagConstraints());
+        assertEquals(Collections.singletonList(ETAG), getObjectRequests.get(1).getNonmatchingETagConstraints());
+        verify(mockS3Object).getObjectContent();
+        verify(mockS3Object).getObjectMetadata();
+        verify(mockS3Object).close();
+    }
+
+    @Test
+    public void testReloadKeepsFindersWhenSourceIsUnchanged() throws IOException {
+        when(mockSource.openStream()).thenReturn(null);
+
+        assertFalse(findersXmlReloader.reload());
+
+        verify(mockSource).openStream();
+    }
+
+    @Test
+    public void testFactory() {
+        final Factory factory = new Factory();
+        final ScheduledExecutorService scheduledExecutorService = factory.createScheduledExecutorService();
+
+        scheduledExecutorService.shutdownNow();
+        assertNotNull(factory.createHaystackFinderProviderFactory());
+    }
+
+    private List<List<Finder>> verifyFindersReplaced(int wantedNumberOfInvocations) {
+        @SuppressWarnings("unchecked") final ArgumentCaptor<List<Finder>> findersCaptor =
+                ArgumentCaptor.forClass((Class<List<Finder>>) (Class<?>) List.class);
+        verify(mockHaystackFinderEngine, times(wantedNumberOfInvocations)).replaceFinders(findersCaptor.capture());
+        return findersCaptor.getAllValues();
+    }
+
+    private static byte[] readAll(Source source) throws IOException {
+        try (final InputStream in = source.openStream()) {
+            return ByteStreams.toByteArray(in);
+        }
+    }
+
+    private static ByteArrayInputStream toStream(String xml) {
+        return new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8));
+    }
+}
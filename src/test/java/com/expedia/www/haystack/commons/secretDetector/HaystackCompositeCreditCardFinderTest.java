@@ -16,80 +16,124 @@
  */
 package com.expedia.www.haystack.commons.secretDetector;
 
+import com.google.protobuf.ByteString;
 import io.dataapps.chlorine.finder.CompositeFinder;
-import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
-import org.junit.runner.RunWith;
-import org.mockito.Mock;
-import org.mockito.runners.MockitoJUnitRunner;
 
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 
+import static com.expedia.www.haystack.commons.secretDetector.HaystackCompositeCreditCardFinder.AMEX_PATTERN;
+import static com.expedia.www.haystack.commons.secretDetector.HaystackCompositeCreditCardFinder.DINERS_CLUB_1_PATTERN;
+import static com.expedia.www.haystack.commons.secretDetector.HaystackCompositeCreditCardFinder.DINERS_CLUB_2_PATTERN;
+import static com.expedia.www.haystack.commons.secretDetector.HaystackCompositeCreditCardFinder.DISCOVER_PATTERN;
+import static com.expedia.www.haystack.commons.secretDetector.HaystackCompositeCreditCardFinder.JCB_1_PATTERN;
+import static com.expedia.www.haystack.commons.secretDetector.HaystackCompositeCreditCardFinder.JCB_2_PATTERN;
+import static com.expedia.www.haystack.commons.secretDetector.HaystackCompositeCreditCardFinder.MASTERCARD_PATTERN;
+import static com.expedia.www.haystack.commons.secretDetector.HaystackCompositeCreditCardFinder.VISA_PATTERN;
 import static com.expedia.www.haystack.commons.secretDetector.HaystackCreditCardFinderTest.FAKE_VISA_NUMBER_THAT_PASSES_LUHN;
 import static com.expedia.www.haystack.commons.secretDetector.TestConstantsAndCommonCode.RANDOM;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
-import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
-import static org.mockito.Matchers.anyListOf;
-import static org.mockito.Matchers.anyString;
-import static org.mockito.Mockito.verify;
-import static org.mockito.Mockito.verifyNoMoreInteractions;
-import static org.mockito.Mockito.when;
 
-@RunWith(MockitoJUnitRunner.class)
 public class HaystackCompositeCreditCardFinderTest {
     private static final String STRING = RANDOM.nextLong() + "STRING";
-    private static final String OUTPUT = RANDOM.nextLong() + "OUTPUT";
-    private static final List<String> OUTPUTS = Collections.singletonList(OUTPUT);
-
-    @Mock
-    private CompositeFinder mockCompositeFinder;
+    static final String[] CREDIT_CARD_NUMBERS_THAT_PASS_LUHN = {
+            "5500-0000 00000004", // Mastercard
+            "2221 0000 0000 0009", // Mastercard
+            "2720-0000-0000-0005", // Mastercard
+            FAKE_VISA_NUMBER_THAT_PASSES_LUHN,
+            "3400-000000 00009", // AMEX
+            "378282246310005", // AMEX
+            "3000 000000-0004", // Diners Club 1
+            "3600 000000-0008", // Diners Club 2
+            "38000000000006", // Diners Club 2
+            "60110000-0000 0004", // Discover
+            "3088 0000 0000 0009", // JCB 1
+            "180000000000002", // JCB 2
+            "213100000000001", // JCB 2
+    };
+    private static final String[] NUMBERS_THAT_PASS_LUHN_BUT_ARE_NOT_CREDIT_CARD_NUMBERS = {
+            "2220 0000 0000 0000", // below the Mastercard range
+            "2721 0000 0000 0004", // above the Mastercard range
+            "3060 000000 0001", // not a Diners Club number
+            "3500-000000 00006", // not an AMEX number
+            "2131-0000-0000-001", // JCB 2 numbers do not have separators
+            "4640-123-45678-9120", // groups of the wrong sizes
+            "4640--1234-5678-9120", // two separators in a row
+            "4640.1234.5678.9120", // periods are not separators
+            "4640 1234 5678 9120 0000", // too many digits
+            "3400 000000 00009-", // separator after the last group
+            "4640\t1234\t5678\t9120", // tabs are not separators
+    };
+    private static final String[] LINE_TERMINATORS = {"\n", "\r\n", "\r", "\u0085", "\u2028", "\u2029"};
+    private static final String[] SEPARATORS = {"", "", " ", "-", ".", "  ", "x"};
+    private static final int[] PREFIXES = {
+            1800, 1801, 2131, 2130, 2220, 2221, 2720, 2721, 2999, 3000, 3059, 3060, 3399, 3400, 3499, 3500, 3599, 3600,
+            3699, 3700, 3799, 3800, 3899, 3900, 3999, 4000, 4999, 5000, 5099, 5100, 5599, 5600, 6010, 6011, 6012
+    };
+    private static final int EQUIVALENCE_SAMPLE_COUNT = 20000;
 
     private HaystackCompositeCreditCardFinder haystackCompositeCreditCardFinder;
 
     @Before
     public void setUp() {
-        haystackCompositeCreditCardFinder = new HaystackCompositeCreditCardFinder(mockCompositeFinder);
-    }
-
-    @After
-    public void tearDown() {
-        verifyNoMoreInteractions(mockCompositeFinder);
+        haystackCompositeCreditCardFinder = new HaystackCompositeCreditCardFinder();
     }
 
     @Test
     public void testFindCollectionString() {
-        final List<String> samples = Collections.singletonList(STRING);
-        when(mockCompositeFinder.find(anyListOf(String.class))).thenReturn(OUTPUTS);
+        final List<String> samples = Arrays.asList(STRING, FAKE_VISA_NUMBER_THAT_PASSES_LUHN);
 
-        assertSame(OUTPUTS, haystackCompositeCreditCardFinder.find(samples));
-
-        verify(mockCompositeFinder).find(samples);
+        assertEquals(Collections.singletonList(FAKE_VISA_NUMBER_THAT_PASSES_LUHN),
+                haystackCompositeCreditCardFinder.find(samples));
     }
 
     @Test
     public void testFindString() {
-        when(mockCompositeFinder.find(anyString())).thenReturn(OUTPUTS);
-
-        assertSame(OUTPUTS, haystackCompositeCreditCardFinder.find(STRING));
+        for (final String creditCardNumber : CREDIT_CARD_NUMBERS_THAT_PASS_LUHN) {
+            assertEquals(Collections.singletonList(creditCardNumber),
+                    haystackCompositeCreditCardFinder.find(creditCardNumber));
+        }
+    }
 
-        verify(mockCompositeFinder).find(STRING);
+    @Test
+    public void testFindStringNotACreditCardNumber() {
+        assertTrue(haystackCompositeCreditCardFinder.find(STRING).isEmpty());
+        assertTrue(haystackCompositeCreditCardFinder.find("4640-1234-5678-9123").isEmpty()); // fails the Luhn check
+        for (final String number : NUMBERS_THAT_PASS_LUHN_BUT_ARE_NOT_CREDIT_CARD_NUMBERS) {
+            assertTrue(number, haystackCompositeCreditCardFinder.find(number).isEmpty());
+        }
     }
 
     @Test
-    public void testGetName() {
-        when(mockCompositeFinder.getName()).thenReturn(OUTPUT);
+    public void testFindCharSequence() {
+        final ByteString byteString = ByteString.copyFromUtf8(FAKE_VISA_NUMBER_THAT_PASSES_LUHN);
 
-        assertSame(OUTPUT, haystackCompositeCreditCardFinder.getName());
+        assertEquals(Collections.singletonList(FAKE_VISA_NUMBER_THAT_PASSES_LUHN),
+                haystackCompositeCreditCardFinder.find(new ByteStringCharSequence(byteString)));
+    }
 
-        verify(mockCompositeFinder).getName();
+    @Test
+    public void testFindEachLine() {
+        // As with the ^ and $ of a MULTILINE Pattern, each line is checked, but the Luhn check is of the whole value
+        for (final String lineTerminator : LINE_TERMINATORS) {
+            final String input = "no digits here" + lineTerminator + FAKE_VISA_NUMBER_THAT_PASSES_LUHN + lineTerminator
+                    + FAKE_VISA_NUMBER_THAT_PASSES_LUHN + lineTerminator;
+            assertEquals(Arrays.asList(input, input), haystackCompositeCreditCardFinder.find(input));
+        }
+    }
+
+    @Test
+    public void testGetName() {
+        assertEquals("Credit_Card", haystackCompositeCreditCardFinder.getName());
     }
 
     @Test
     public void testThatCreditCardValueIsEntireString() {
-        haystackCompositeCreditCardFinder = new HaystackCompositeCreditCardFinder();
         final String[] creditCardNumbers = {
                 FAKE_VISA_NUMBER_THAT_PASSES_LUHN,
                 FAKE_VISA_NUMBER_THAT_PASSES_LUHN.replace('-', ' ')
@@ -100,4 +144,58 @@ public class HaystackCompositeCreditCardFinderTest {
             assertTrue(haystackCompositeCreditCardFinder.find(creditCardNumber + '-').isEmpty());
         }
     }
+
+    @Test
+    public void testFindSameAsBrandRegexFinders() {
+        final CompositeFinder brandRegexFinders = createBrandRegexFinders();
+        int matchCount = 0;
+        for (int count = 0; count < EQUIVALENCE_SAMPLE_COUNT; count++) {
+            final String input = createCreditCardLikeValue();
+            final List<String> expected = brandRegexFinders.find(input);
+            assertEquals(input, expected, haystackCompositeCreditCardFinder.find(input));
+            matchCount += expected.size();
+        }
+        assertTrue(matchCount > 0);
+    }
+
+    @Test
+    public void testCanMatch() {
+        final ValueProfile valueProfile = new ValueProfile();
+        assertTrue(haystackCompositeCreditCardFinder.canMatch(valueProfile.profile(FAKE_VISA_NUMBER_THAT_PASSES_LUHN)));
+        assertTrue(haystackCompositeCreditCardFinder.canMatch(valueProfile.profile("3056 930902 5904")));
+        assertFalse(haystackCompositeCreditCardFinder.canMatch(valueProfile.profile("3056 930902 590")));
+        assertFalse(haystackCompositeCreditCardFinder.canMatch(valueProfile.profile(STRING.replaceAll("[0-9]", ""))));
+    }
+
+    private static CompositeFinder createBrandRegexFinders() {
+        final CompositeFinder compositeFinder = new CompositeFinder("Credit_Card");
+        compositeFinder.add(new HaystackCreditCardFinder("Mastercard", MASTERCARD_PATTERN));
+        compositeFinder.add(new HaystackCreditCardFinder("Visa", VISA_PATTERN));
+        compositeFinder.add(new HaystackCreditCardFinder("AMEX", AMEX_PATTERN));
+        compositeFinder.add(new HaystackCreditCardFinder("Diners Club 1", DINERS_CLUB_1_PATTERN));
+        compositeFinder.add(new HaystackCreditCardFinder("Diners Club 2", DINERS_CLUB_2_PATTERN));
+        compositeFinder.add(new HaystackCreditCardFinder("Discover", DISCOVER_PATTERN));
+        compositeFinder.add(new HaystackCreditCardFinder("JCB 1", JCB_1_PATTERN));
+        compositeFinder.add(new HaystackCreditCardFinder("JCB 2", JCB_2_PATTERN));
+        return compositeFinder;
+    }
+
+    private static String createCreditCardLikeValue() {
+        final StringBuilder value = new StringBuilder();
+        final int lineCount = 1 + RANDOM.nextInt(3);
+        for (int line = 0; line < lineCount; line++) {
+            if (line > 0) {
+                value.append(LINE_TERMINATORS[RANDOM.nextInt(LINE_TERMINATORS.length)]);
+            }
+            value.append(PREFIXES[RANDOM.nextInt(PREFIXES.length)]);
+            final int digitCount = 13 + RANDOM.nextInt(5);
+            for (int digit = 4; digit < digitCount; digit++) {
+                if (digit == 4 || digit == 8 || digit == 10 || digit == 12 || RANDOM.nextInt(10) == 0) {
+                    value.append(SEPARATORS[RANDOM.nextInt(SEPARATORS.length)]);
+                }
+                value.append(RANDOM.nextInt(10));
+            }
+        }
+        return value.toString();
+    }
 }
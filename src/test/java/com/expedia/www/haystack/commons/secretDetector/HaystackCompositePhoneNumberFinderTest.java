@@ -30,6 +30,7 @@ import java.util.Iterator;
 import java.util.List;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Mockito.verify;
@@ -119,6 +120,20 @@ public class HaystackCompositePhoneNumberFinderTest {
         final List<String> phoneNumbers = haystackCompositePhoneNumberFinder.find(VALID_PHONE_NUMBERS[0]);
 
         assertTrue(phoneNumbers.isEmpty());
-        verify(mockPhoneNumberUtil).parseAndKeepRawInput(VALID_PHONE_NUMBERS[0], "CA");
+        for (final String regionCode : new String[]{"CA", "FR", "DE", "IT", "JP", "GB", "US"}) {
+            verify(mockPhoneNumberUtil).parseAndKeepRawInput(VALID_PHONE_NUMBERS[0], regionCode);
+        }
+    }
+
+    @Test
+    public void testCanMatch() {
+        final ValueProfile valueProfile = new ValueProfile();
+        for (String phoneNumber : VALID_PHONE_NUMBERS) {
+            assertTrue(phoneNumber, haystackCompositePhoneNumberFinder.canMatch(valueProfile.profile(phoneNumber)));
+        }
+        assertFalse(haystackCompositePhoneNumberFinder.canMatch(valueProfile.profile("1-800-FLOWERS")));
+        assertFalse(haystackCompositePhoneNumberFinder.canMatch(valueProfile.profile("8005551212")));
+        assertFalse(haystackCompositePhoneNumberFinder.canMatch(valueProfile.profile("(---) --- ----")));
+        assertFalse(haystackCompositePhoneNumberFinder.canMatch(valueProfile.profile("")));
     }
-}
\ No newline at end of file
+}
@@ -1,6 +1,11 @@
 package com.expedia.www.haystack.commons.secretDetector;
 
 import com.expedia.www.haystack.metrics.MetricObjects;
+import com.google.protobuf.ByteString;
+import com.netflix.servo.monitor.Counter;
+import com.netflix.servo.monitor.Timer;
+import io.dataapps.chlorine.finder.Finder;
+import io.dataapps.chlorine.pattern.RegexFinder;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
@@ -8,18 +13,59 @@ import org.junit.runner.RunWith;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
 
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static com.expedia.www.haystack.commons.secretDetector.HaystackCreditCardFinderTest.FAKE_VISA_NUMBER_THAT_PASSES_LUHN;
+import static com.expedia.www.haystack.commons.secretDetector.HaystackFinderEngine.REGEX_UNION_TIMER_NAME;
+import static com.expedia.www.haystack.commons.secretDetector.TestConstantsAndCommonCode.EMAIL_ADDRESS;
 import static com.expedia.www.haystack.commons.secretDetector.TestConstantsAndCommonCode.RANDOM;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
+import static org.mockito.Mockito.when;
 
 @RunWith(MockitoJUnitRunner.class)
 public class HaystackFinderEngineTest {
     private static final String SUBSYSTEM = RANDOM.nextLong() + "SUBSYSTEM";
     private static final String APPLICATION = RANDOM.nextLong() + "APPLICATION";
+    private static final String IP_ADDRESS = "12.34.56.78";
+    private static final String PHONE_NUMBER = "(800) 555-1212";
+    private static final String CREDIT_CARD_NUMBER = FAKE_VISA_NUMBER_THAT_PASSES_LUHN;
+    private static final String NO_SECRET = "nothing to see here";
+    private static final int RESULT_CACHE_BYTES = 1024;
 
     @Mock
     private MetricObjects mockMetricObjects;
 
+    @Mock
+    private FinderEngineConfig mockFinderEngineConfig;
+
+    @Mock
+    private Timer mockTimer;
+
+    @Mock
+    private SecretSink mockSecretSink;
+
+    @Mock
+    private Counter mockHitsCounter;
+
+    @Mock
+    private Counter mockMissesCounter;
+
     private HaystackFinderEngine haystackFinderEngine;
 
     @Before
@@ -30,10 +76,451 @@ public class HaystackFinderEngineTest {
     @After
     public void tearDown() {
         verifyNoMoreInteractions(mockMetricObjects);
+        verifyNoMoreInteractions(mockFinderEngineConfig);
+        verifyNoMoreInteractions(mockTimer);
+        verifyNoMoreInteractions(mockSecretSink);
+        verifyNoMoreInteractions(mockHitsCounter);
+        verifyNoMoreInteractions(mockMissesCounter);
     }
 
     @Test
     public void testGetFinders() {
-        assertEquals(13, haystackFinderEngine.getFinders().size());
+        assertEquals(8, haystackFinderEngine.getFinders().size());
+    }
+
+    @Test
+    public void testNullFinderEngineConfig() {
+        haystackFinderEngine = new HaystackFinderEngine(mockMetricObjects, SUBSYSTEM, APPLICATION, null);
+        assertEquals(8, haystackFinderEngine.getFinders().size());
+    }
+
+    @Test
+    public void testFinderEngineConfigWithNothingTurnedOn() {
+        haystackFinderEngine = new HaystackFinderEngine(
+                mockMetricObjects, SUBSYSTEM, APPLICATION, mockFinderEngineConfig);
+        assertEquals(8, haystackFinderEngine.getFinders().size());
+        verify(mockFinderEngineConfig).combineRegexFinders();
+        verify(mockFinderEngineConfig).orderFindersAdaptively();
+        verify(mockFinderEngineConfig).resultCacheBytes();
+        verify(mockFinderEngineConfig).excludedIpV4Ranges();
+        verify(mockFinderEngineConfig).excludedIpV6Ranges();
+    }
+
+    @Test
+    public void testExcludedIpV4Ranges() {
+        when(mockFinderEngineConfig.excludedIpV4Ranges()).thenReturn("12.34.0.0/16");
+        whensForTimers();
+        haystackFinderEngine = new HaystackFinderEngine(
+                mockMetricObjects, SUBSYSTEM, APPLICATION, mockFinderEngineConfig);
+
+        assertTrue(haystackFinderEngine.findWithType(IP_ADDRESS).isEmpty());
+        final String tenDotAddress = "10.1.2.3";
+        assertEquals(Collections.singletonList(tenDotAddress),
+                haystackFinderEngine.findWithType(tenDotAddress).get(NonLocalIpV4AddressFinder.FINDER_NAME));
+
+        // All six finders that can match an IP address run for the excluded address, and two for the other one
+        verify(mockTimer, times(6 + 2)).record(anyLong(), eq(NANOSECONDS));
+        verify(mockMetricObjects, times(6)).createAndRegisterBasicTimer(
+                eq(SUBSYSTEM), eq(APPLICATION), anyString(), anyString(), eq(MILLISECONDS));
+        verify(mockFinderEngineConfig).combineRegexFinders();
+        verify(mockFinderEngineConfig).orderFindersAdaptively();
+        verify(mockFinderEngineConfig).resultCacheBytes();
+        verify(mockFinderEngineConfig).excludedIpV4Ranges();
+        verify(mockFinderEngineConfig).excludedIpV6Ranges();
+    }
+
+    @Test
+    public void testReplaceFinders() {
+        when(mockFinderEngineConfig.excludedIpV4Ranges()).thenReturn("12.34.0.0/16");
+        whensForTimers();
+        haystackFinderEngine = new HaystackFinderEngine(
+                mockMetricObjects, SUBSYSTEM, APPLICATION, mockFinderEngineConfig);
+        final NonLocalIpV4AddressFinder nonLocalIpV4AddressFinder = new NonLocalIpV4AddressFinder();
+
+        haystackFinderEngine.replaceFinders(Collections.singletonList(nonLocalIpV4AddressFinder));
+
+        // The new NonLocalIpV4AddressFinder is replaced by one that excludes the configured ranges
+        assertEquals(1, haystackFinderEngine.getFinders().size());
+        assertFalse(haystackFinderEngine.getFinders().contains(nonLocalIpV4AddressFinder));
+        assertTrue(haystackFinderEngine.findWithType(IP_ADDRESS).isEmpty());
+        assertTrue(haystackFinderEngine.findWithType(EMAIL_ADDRESS).isEmpty());
+        final String tenDotAddress = "10.1.2.3";
+        assertEquals(Collections.singletonList(tenDotAddress),
+                haystackFinderEngine.findWithType(tenDotAddress).get(NonLocalIpV4AddressFinder.FINDER_NAME));
+        verify(mockTimer, times(2)).record(anyLong(), eq(NANOSECONDS));
+        verify(mockMetricObjects).createAndRegisterBasicTimer(
+                eq(SUBSYSTEM), eq(APPLICATION), anyString(), anyString(), eq(MILLISECONDS));
+        verify(mockFinderEngineConfig).combineRegexFinders();
+        verify(mockFinderEngineConfig).orderFindersAdaptively();
+        verify(mockFinderEngineConfig).resultCacheBytes();
+        verify(mockFinderEngineConfig).excludedIpV4Ranges();
+        verify(mockFinderEngineConfig).excludedIpV6Ranges();
+    }
+
+    @Test
+    public void testExcludedIpV6Ranges() {
+        when(mockFinderEngineConfig.excludedIpV6Ranges()).thenReturn("2001:db8::/32");
+        whensForTimers();
+        haystackFinderEngine = new HaystackFinderEngine(
+                mockMetricObjects, SUBSYSTEM, APPLICATION, mockFinderEngineConfig);
+
+        assertTrue(haystackFinderEngine.findWithType("2001:db8::1").isEmpty());
+        final String linkLocalAddress = "fe80::1";
+        assertEquals(Collections.singletonList(linkLocalAddress),
+                haystackFinderEngine.findWithType(linkLocalAddress).get(NonLocalIpV6AddressFinder.FINDER_NAME));
+
+        // The Email, Street Address, both SSN and IP V6 finders run for both addresses
+        verify(mockTimer, times(5 + 5)).record(anyLong(), eq(NANOSECONDS));
+        verify(mockMetricObjects, times(5)).createAndRegisterBasicTimer(
+                eq(SUBSYSTEM), eq(APPLICATION), anyString(), anyString(), eq(MILLISECONDS));
+        verify(mockFinderEngineConfig).combineRegexFinders();
+        verify(mockFinderEngineConfig).orderFindersAdaptively();
+        verify(mockFinderEngineConfig).resultCacheBytes();
+        verify(mockFinderEngineConfig).excludedIpV4Ranges();
+        verify(mockFinderEngineConfig).excludedIpV6Ranges();
+    }
+
+    @Test
+    public void testOrderFindersAdaptively() {
+        createEngineThatOrdersFindersAdaptively();
+
+        assertTrue(haystackFinderEngine.findWithType(NO_SECRET).isEmpty());
+        final Map<String, List<String>> map = haystackFinderEngine.findWithType(EMAIL_ADDRESS);
+
+        assertEquals(EMAIL_ADDRESS, map.get("Email").get(0));
+        assertEquals(1, map.size());
+        verify(mockTimer, times(5)).record(anyLong(), eq(NANOSECONDS));
+        verify(mockMetricObjects, times(4)).createAndRegisterBasicTimer(
+                eq(SUBSYSTEM), eq(APPLICATION), eq(RegexFinder.class.getName()), anyString(), eq(MILLISECONDS));
+        verifiesForAdaptiveOrdering();
+    }
+
+    @Test
+    public void testOrderFindersAdaptivelyReordersFinders() {
+        createEngineThatOrdersFindersAdaptively();
+
+        // Nothing is found in the first value, so the phone number finders, which did not run for it and have therefore
+        // not taken any time, move ahead of Street Address, SSN-spaces and SSN-dashes, which did run
+        assertTrue(haystackFinderEngine.findWithType(NO_SECRET).isEmpty());
+        final Map<String, List<String>> map = haystackFinderEngine.findWithType(PHONE_NUMBER);
+
+        assertEquals(PHONE_NUMBER, map.get(HaystackPhoneNumberFinder.FINDER_NAME).get(0));
+        assertEquals(1, map.size());
+        // Email and the first (Canadian) phone number finder for PHONE_NUMBER
+        verify(mockTimer, times(4 + 2)).record(anyLong(), eq(NANOSECONDS));
+        verify(mockMetricObjects, times(4)).createAndRegisterBasicTimer(
+                eq(SUBSYSTEM), eq(APPLICATION), eq(RegexFinder.class.getName()), anyString(), eq(MILLISECONDS));
+        verify(mockMetricObjects).createAndRegisterBasicTimer(SUBSYSTEM, APPLICATION,
+                HaystackPhoneNumberFinder.class.getName(), HaystackPhoneNumberFinder.FINDER_NAME.toUpperCase(),
+                MILLISECONDS);
+        verifiesForAdaptiveOrdering();
+    }
+
+    @Test
+    public void testResultCache() {
+        when(mockFinderEngineConfig.resultCacheBytes()).thenReturn(RESULT_CACHE_BYTES);
+        when(mockMetricObjects.createAndRegisterResettingCounter(
+                SUBSYSTEM, APPLICATION, FindResultCache.class.getName(), FindResultCache.HITS_COUNTER_NAME))
+                .thenReturn(mockHitsCounter);
+        when(mockMetricObjects.createAndRegisterResettingCounter(
+                SUBSYSTEM, APPLICATION, FindResultCache.class.getName(), FindResultCache.MISSES_COUNTER_NAME))
+                .thenReturn(mockMissesCounter);
+        whensForTimers();
+        haystackFinderEngine = new HaystackFinderEngine(
+                mockMetricObjects, SUBSYSTEM, APPLICATION, mockFinderEngineConfig);
+
+        // The value is admitted to the cache the second time it is seen, and the finders do not run the third time;
+        // its String and its UTF-8 bytes have the same fingerprint
+        assertTrue(haystackFinderEngine.findWithType(NO_SECRET).isEmpty());
+        for (int i = 0; i < 2; i++) {
+            assertFalse(haystackFinderEngine.findSecrets(ByteString.copyFromUtf8(NO_SECRET), mockSecretSink));
+        }
+        assertFalse(haystackFinderEngine.findSecrets(NO_SECRET, mockSecretSink));
+        // Values that contain secrets are never cached
+        assertEquals(EMAIL_ADDRESS, haystackFinderEngine.findWithType(EMAIL_ADDRESS).get("Email").get(0));
+        for (int i = 0; i < 2; i++) {
+            assertTrue(haystackFinderEngine.findSecrets(ByteString.copyFromUtf8(EMAIL_ADDRESS), mockSecretSink));
+        }
+
+        verify(mockTimer, times(4 + 4 + 1 + 1 + 1)).record(anyLong(), eq(NANOSECONDS));
+        verify(mockSecretSink, times(2)).accept("Email", Collections.singletonList(EMAIL_ADDRESS));
+        verify(mockHitsCounter, times(2)).increment();
+        verify(mockMissesCounter, times(5)).increment();
+        verify(mockMetricObjects, times(4)).createAndRegisterBasicTimer(
+                eq(SUBSYSTEM), eq(APPLICATION), eq(RegexFinder.class.getName()), anyString(), eq(MILLISECONDS));
+        verify(mockMetricObjects).createAndRegisterResettingCounter(
+                SUBSYSTEM, APPLICATION, FindResultCache.class.getName(), FindResultCache.HITS_COUNTER_NAME);
+        verify(mockMetricObjects).createAndRegisterResettingCounter(
+                SUBSYSTEM, APPLICATION, FindResultCache.class.getName(), FindResultCache.MISSES_COUNTER_NAME);
+        verify(mockFinderEngineConfig).combineRegexFinders();
+        verify(mockFinderEngineConfig).orderFindersAdaptively();
+        verify(mockFinderEngineConfig).resultCacheBytes();
+        verify(mockFinderEngineConfig).excludedIpV4Ranges();
+        verify(mockFinderEngineConfig).excludedIpV6Ranges();
+    }
+
+    @Test
+    public void testFindSecretsNoSecret() {
+        whensForTimers();
+
+        assertFalse(haystackFinderEngine.findSecrets(NO_SECRET, mockSecretSink));
+
+        // Email, Street Address, SSN-spaces and SSN-dashes; the profile rules out the other finders
+        verify(mockTimer, times(4)).record(anyLong(), eq(NANOSECONDS));
+        verify(mockMetricObjects, times(4)).createAndRegisterBasicTimer(
+                eq(SUBSYSTEM), eq(APPLICATION), eq(RegexFinder.class.getName()), anyString(), eq(MILLISECONDS));
+    }
+
+    @Test
+    public void testFindSecretsEmailAddress() {
+        whensForTimers();
+
+        assertTrue(haystackFinderEngine.findSecrets(EMAIL_ADDRESS, mockSecretSink));
+
+        verify(mockSecretSink).accept("Email", Collections.singletonList(EMAIL_ADDRESS));
+        verify(mockTimer).record(anyLong(), eq(NANOSECONDS));
+        verify(mockMetricObjects).createAndRegisterBasicTimer(SUBSYSTEM, APPLICATION,
+                RegexFinder.class.getName(), "EMAIL", MILLISECONDS);
+    }
+
+    @Test
+    public void testFindSecretsByteStringNoSecret() {
+        whensForTimers();
+
+        assertFalse(haystackFinderEngine.findSecrets(ByteString.copyFromUtf8(NO_SECRET), mockSecretSink));
+
+        verify(mockTimer, times(4)).record(anyLong(), eq(NANOSECONDS));
+        verify(mockMetricObjects, times(4)).createAndRegisterBasicTimer(
+                eq(SUBSYSTEM), eq(APPLICATION), eq(RegexFinder.class.getName()), anyString(), eq(MILLISECONDS));
+    }
+
+    @Test
+    public void testFindSecretsByteStringEmailAddress() {
+        whensForTimers();
+
+        assertTrue(haystackFinderEngine.findSecrets(ByteString.copyFromUtf8(EMAIL_ADDRESS), mockSecretSink));
+
+        verify(mockSecretSink).accept("Email", Collections.singletonList(EMAIL_ADDRESS));
+        verify(mockTimer).record(anyLong(), eq(NANOSECONDS));
+        verify(mockMetricObjects).createAndRegisterBasicTimer(SUBSYSTEM, APPLICATION,
+                RegexFinder.class.getName(), "EMAIL", MILLISECONDS);
+    }
+
+    @Test
+    public void testFindSecretsByteStringIpAddress() {
+        whensForTimers();
+
+        assertTrue(haystackFinderEngine.findSecrets(ByteString.copyFromUtf8(IP_ADDRESS), mockSecretSink));
+
+        // The bytes rule out Email without being decoded; Non_Local_IpV4_Address, not a RegexFinder, decodes them
+        verify(mockSecretSink).accept(NonLocalIpV4AddressFinder.FINDER_NAME, Collections.singletonList(IP_ADDRESS));
+        verify(mockTimer, times(2)).record(anyLong(), eq(NANOSECONDS));
+        verify(mockMetricObjects).createAndRegisterBasicTimer(SUBSYSTEM, APPLICATION,
+                RegexFinder.class.getName(), "EMAIL", MILLISECONDS);
+        verify(mockMetricObjects).createAndRegisterBasicTimer(SUBSYSTEM, APPLICATION,
+                NonLocalIpV4AddressFinder.class.getName(), NonLocalIpV4AddressFinder.FINDER_NAME.toUpperCase(),
+                MILLISECONDS);
+    }
+
+    @Test
+    public void testFindSecretsByteStringCreditCard() {
+        whensForTimers();
+
+        assertTrue(haystackFinderEngine.findSecrets(ByteString.copyFromUtf8(CREDIT_CARD_NUMBER), mockSecretSink));
+
+        // Credit_Card scans the bytes too, decoding them only because it found a credit card number
+        verify(mockSecretSink).accept("Credit_Card", Collections.singletonList(CREDIT_CARD_NUMBER));
+        verify(mockTimer, times(2)).record(anyLong(), eq(NANOSECONDS));
+        verify(mockMetricObjects).createAndRegisterBasicTimer(SUBSYSTEM, APPLICATION,
+                RegexFinder.class.getName(), "EMAIL", MILLISECONDS);
+        verify(mockMetricObjects).createAndRegisterBasicTimer(SUBSYSTEM, APPLICATION,
+                HaystackCompositeCreditCardFinder.class.getName(), "CREDIT_CARD", MILLISECONDS);
+    }
+
+    @Test
+    public void testFindSecretsByteStringNonAscii() {
+        whensForTimers();
+        final String input = "caf\u00e9 " + EMAIL_ADDRESS;
+
+        assertTrue(haystackFinderEngine.findSecrets(ByteString.copyFromUtf8(input), mockSecretSink));
+
+        verify(mockSecretSink).accept("Email", Collections.singletonList(EMAIL_ADDRESS));
+        verify(mockTimer).record(anyLong(), eq(NANOSECONDS));
+        verify(mockMetricObjects).createAndRegisterBasicTimer(SUBSYSTEM, APPLICATION,
+                RegexFinder.class.getName(), "EMAIL", MILLISECONDS);
+    }
+
+    @Test
+    public void testFindSecretsSkippingFinders() {
+        whensForTimers();
+        final Set<String> email = Collections.singleton("Email");
+
+        assertFalse(haystackFinderEngine.findSecrets(EMAIL_ADDRESS, email, mockSecretSink));
+        // Content that is not all ASCII is decoded and checked with the same finders skipped
+        assertFalse(haystackFinderEngine.findSecrets(
+                ByteString.copyFromUtf8("caf\u00e9 " + EMAIL_ADDRESS), email, mockSecretSink));
+        assertTrue(haystackFinderEngine.findSecrets(
+                ByteString.copyFromUtf8(IP_ADDRESS), email, mockSecretSink));
+
+        verify(mockSecretSink).accept(NonLocalIpV4AddressFinder.FINDER_NAME, Collections.singletonList(IP_ADDRESS));
+        verify(mockTimer, times(3 + 3 + 1)).record(anyLong(), eq(NANOSECONDS));
+        verify(mockMetricObjects, times(3)).createAndRegisterBasicTimer(
+                eq(SUBSYSTEM), eq(APPLICATION), eq(RegexFinder.class.getName()), anyString(), eq(MILLISECONDS));
+        verify(mockMetricObjects).createAndRegisterBasicTimer(SUBSYSTEM, APPLICATION,
+                NonLocalIpV4AddressFinder.class.getName(), NonLocalIpV4AddressFinder.FINDER_NAME.toUpperCase(),
+                MILLISECONDS);
+    }
+
+    @Test
+    public void testFindSecretsSkippingAllFinders() {
+        final Set<String> allFinderNames = new HashSet<>(Collections.singleton("Not_A_Finder"));
+        for (final Finder finder : haystackFinderEngine.getFinders()) {
+            allFinderNames.add(finder.getName());
+        }
+
+        // Nothing runs, not even the profiling of the value
+        assertFalse(haystackFinderEngine.findSecrets(EMAIL_ADDRESS, allFinderNames, mockSecretSink));
+        assertFalse(haystackFinderEngine.findSecrets(
+                ByteString.copyFromUtf8(EMAIL_ADDRESS), allFinderNames, mockSecretSink));
+    }
+
+    @Test
+    public void testResultCacheSkippingFinders() {
+        when(mockFinderEngineConfig.resultCacheBytes()).thenReturn(RESULT_CACHE_BYTES);
+        when(mockMetricObjects.createAndRegisterResettingCounter(
+                SUBSYSTEM, APPLICATION, FindResultCache.class.getName(), FindResultCache.HITS_COUNTER_NAME))
+                .thenReturn(mockHitsCounter);
+        when(mockMetricObjects.createAndRegisterResettingCounter(
+                SUBSYSTEM, APPLICATION, FindResultCache.class.getName(), FindResultCache.MISSES_COUNTER_NAME))
+                .thenReturn(mockMissesCounter);
+        whensForTimers();
+        haystackFinderEngine = new HaystackFinderEngine(
+                mockMetricObjects, SUBSYSTEM, APPLICATION, mockFinderEngineConfig);
+        final Set<String> email = Collections.singleton("Email");
+
+        // A skipped finder could have found a secret in the value, so the value is never admitted to the cache
+        for (int i = 0; i < 2; i++) {
+            assertFalse(haystackFinderEngine.findSecrets(NO_SECRET, email, mockSecretSink));
+            assertFalse(haystackFinderEngine.findSecrets(ByteString.copyFromUtf8(NO_SECRET), email, mockSecretSink));
+        }
+
+        verify(mockTimer, times(4 * 3)).record(anyLong(), eq(NANOSECONDS));
+        verify(mockMissesCounter, times(4)).increment();
+        verify(mockMetricObjects, times(3)).createAndRegisterBasicTimer(
+                eq(SUBSYSTEM), eq(APPLICATION), eq(RegexFinder.class.getName()), anyString(), eq(MILLISECONDS));
+        verify(mockMetricObjects).createAndRegisterResettingCounter(
+                SUBSYSTEM, APPLICATION, FindResultCache.class.getName(), FindResultCache.HITS_COUNTER_NAME);
+        verify(mockMetricObjects).createAndRegisterResettingCounter(
+                SUBSYSTEM, APPLICATION, FindResultCache.class.getName(), FindResultCache.MISSES_COUNTER_NAME);
+        verify(mockFinderEngineConfig).combineRegexFinders();
+        verify(mockFinderEngineConfig).orderFindersAdaptively();
+        verify(mockFinderEngineConfig).resultCacheBytes();
+        verify(mockFinderEngineConfig).excludedIpV4Ranges();
+        verify(mockFinderEngineConfig).excludedIpV6Ranges();
+    }
+
+    @Test
+    public void testCombineRegexFindersNoSecret() {
+        createEngineThatCombinesRegexFinders();
+
+        assertTrue(haystackFinderEngine.findWithType(NO_SECRET).isEmpty());
+
+        // Email, Street Address, SSN-spaces and SSN-dashes are ruled out by a single walk of the input, and the
+        // profile of the input rules out the credit card, IP address and phone number finders
+        verify(mockTimer, times(1)).record(anyLong(), eq(NANOSECONDS));
+        verifiesForCombinedRegexFinders(1);
+    }
+
+    @Test
+    public void testCombineRegexFindersEmailAddress() {
+        createEngineThatCombinesRegexFinders();
+
+        final Map<String, List<String>> map = haystackFinderEngine.findWithType(EMAIL_ADDRESS);
+
+        assertEquals(EMAIL_ADDRESS, map.get("Email").get(0));
+        assertEquals(1, map.size());
+        verify(mockTimer, times(2)).record(anyLong(), eq(NANOSECONDS));
+        verify(mockMetricObjects).createAndRegisterBasicTimer(SUBSYSTEM, APPLICATION,
+                RegexFinder.class.getName(), "EMAIL", MILLISECONDS);
+        verifiesForCombinedRegexFinders(2);
+    }
+
+    @Test
+    public void testCombineRegexFindersIpAddress() {
+        createEngineThatCombinesRegexFinders();
+
+        final Map<String, List<String>> map = haystackFinderEngine.findWithType(IP_ADDRESS);
+
+        assertEquals(IP_ADDRESS, map.get(NonLocalIpV4AddressFinder.FINDER_NAME).get(0));
+        assertEquals(1, map.size());
+        // One walk of the input rules out Email, then Non_Local_IpV4_Address, which is not combined, finds the secret
+        verify(mockTimer, times(2)).record(anyLong(), eq(NANOSECONDS));
+        verify(mockMetricObjects).createAndRegisterBasicTimer(SUBSYSTEM, APPLICATION,
+                NonLocalIpV4AddressFinder.class.getName(), NonLocalIpV4AddressFinder.FINDER_NAME.toUpperCase(),
+                MILLISECONDS);
+        verifiesForCombinedRegexFinders(2);
+    }
+
+    @Test
+    public void testCombineRegexFindersAfterReplacingFinders() {
+        createEngineThatCombinesRegexFinders();
+        final List<Finder> regexFinders = haystackFinderEngine.getFinders().stream()
+                .filter(finder -> finder.getClass() == RegexFinder.class)
+                .collect(Collectors.toList());
+        assertEquals(EMAIL_ADDRESS, haystackFinderEngine.findWithType(EMAIL_ADDRESS).get("Email").get(0));
+
+        haystackFinderEngine.replaceFinders(regexFinders);
+
+        // The results of the walks of the previous input are cleared, so the Email finder is ruled out again
+        assertTrue(haystackFinderEngine.findWithType(NO_SECRET).isEmpty());
+        assertEquals(EMAIL_ADDRESS, haystackFinderEngine.findWithType(EMAIL_ADDRESS).get("Email").get(0));
+        assertEquals(regexFinders, haystackFinderEngine.getFinders());
+        verify(mockTimer, times(5)).record(anyLong(), eq(NANOSECONDS));
+        verify(mockMetricObjects).createAndRegisterBasicTimer(SUBSYSTEM, APPLICATION,
+                RegexFinder.class.getName(), "EMAIL", MILLISECONDS);
+        verifiesForCombinedRegexFinders(2);
+    }
+
+    private void createEngineThatOrdersFindersAdaptively() {
+        when(mockFinderEngineConfig.orderFindersAdaptively()).thenReturn(true);
+        when(mockFinderEngineConfig.adaptiveOrderingInterval()).thenReturn(1);
+        when(mockFinderEngineConfig.mandatoryFinders()).thenReturn(" Credit_Card, ,Email ");
+        whensForTimers();
+        haystackFinderEngine = new HaystackFinderEngine(
+                mockMetricObjects, SUBSYSTEM, APPLICATION, mockFinderEngineConfig);
+    }
+
+    private void verifiesForAdaptiveOrdering() {
+        verify(mockFinderEngineConfig).combineRegexFinders();
+        verify(mockFinderEngineConfig).orderFindersAdaptively();
+        verify(mockFinderEngineConfig).resultCacheBytes();
+        verify(mockFinderEngineConfig).excludedIpV4Ranges();
+        verify(mockFinderEngineConfig).excludedIpV6Ranges();
+        verify(mockFinderEngineConfig).adaptiveOrderingInterval();
+        verify(mockFinderEngineConfig).mandatoryFinders();
+    }
+
+    private void whensForTimers() {
+        when(mockMetricObjects.createAndRegisterBasicTimer(anyString(), anyString(), anyString(), anyString(), any()))
+                .thenReturn(mockTimer);
+    }
+
+    private void createEngineThatCombinesRegexFinders() {
+        when(mockFinderEngineConfig.combineRegexFinders()).thenReturn(true);
+        whensForTimers();
+        haystackFinderEngine = new HaystackFinderEngine(
+                mockMetricObjects, SUBSYSTEM, APPLICATION, mockFinderEngineConfig);
+    }
+
+    private void verifiesForCombinedRegexFinders(int wantedNumberOfTimers) {
+        verify(mockFinderEngineConfig).combineRegexFinders();
+        verify(mockFinderEngineConfig).orderFindersAdaptively();
+        verify(mockFinderEngineConfig).resultCacheBytes();
+        verify(mockFinderEngineConfig).excludedIpV4Ranges();
+        verify(mockFinderEngineConfig).excludedIpV6Ranges();
+        verify(mockMetricObjects).createAndRegisterBasicTimer(SUBSYSTEM, APPLICATION,
+                RegexFinderUnion.class.getName(), REGEX_UNION_TIMER_NAME, MILLISECONDS);
+        verify(mockMetricObjects, times(wantedNumberOfTimers)).createAndRegisterBasicTimer(
+                eq(SUBSYSTEM), eq(APPLICATION), anyString(), anyString(), eq(MILLISECONDS));
     }
 }
@@ -2,6 +2,7 @@ package com.expedia.www.haystack.commons.secretDetector;
 
 import com.expedia.www.haystack.commons.secretDetector.HaystackFinderProvider.Factory;
 import io.dataapps.chlorine.finder.DefaultFinderProvider;
+import io.dataapps.chlorine.finder.Finder;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
@@ -20,6 +21,7 @@ import javax.xml.parsers.SAXParserFactory;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.List;
 
 import static com.expedia.www.haystack.commons.secretDetector.HaystackFinderProvider.IO_EXCEPTION_PROBLEM;
 import static com.expedia.www.haystack.commons.secretDetector.HaystackFinderProvider.OBJECT_CREATION_PROBLEM;
@@ -28,6 +30,8 @@ import static com.expedia.www.haystack.commons.secretDetector.HaystackFinderProv
 import static com.expedia.www.haystack.commons.secretDetector.HaystackFinderProvider.SAX_EXCEPTION_PROBLEM;
 import static io.dataapps.chlorine.finder.DefaultFinderProvider.FINDERS_DEFAULT_XML;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.doThrow;
@@ -82,13 +86,28 @@ public class HaystackFinderProviderTest {
     @Test
     public void testDefaultConstructor() {
         haystackFinderProvider = new HaystackFinderProvider();
-        assertEquals(13, (haystackFinderProvider.getFinders().size()));
+        assertEquals(8, (haystackFinderProvider.getFinders().size()));
+        verify(mockLogger).error(eq(OBJECT_CREATION_PROBLEM), any(ClassNotFoundException.class));
+    }
+
+    @Test
+    public void testDefaultConstructorSharesFindersButNotLists() {
+        final List<Finder> finders = new HaystackFinderProvider().getFinders();
+        final List<Finder> otherFinders = new HaystackFinderProvider().getFinders();
+
+        assertNotSame(finders, otherFinders);
+        assertEquals(finders, otherFinders);
+        for (int index = 0; index < finders.size(); index++) {
+            assertSame(finders.get(index), otherFinders.get(index));
+        }
+        finders.clear();
+        assertEquals(8, new HaystackFinderProvider().getFinders().size());
         verify(mockLogger).error(eq(OBJECT_CREATION_PROBLEM), any(ClassNotFoundException.class));
     }
 
     @Test
     public void testConstructor() {
-        assertEquals(13, (haystackFinderProvider.getFinders().size()));
+        assertEquals(8, (haystackFinderProvider.getFinders().size()));
         verify(mockLogger).error(eq(OBJECT_CREATION_PROBLEM), any(ClassNotFoundException.class));
     }
 
@@ -0,0 +1,110 @@
+/*
+ * Copyright 2018 Expedia, Inc.
+ *
+ *       Licensed under the Apache License, Version 2.0 (the "License");
+ *       you may not use this file except in compliance with the License.
+ *       You may obtain a copy of the License at
+ *
+ *           http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *       Unless required by applicable law or agreed to in writing, software
+ *       distributed under the License is distributed on an "AS IS" BASIS,
+ *       WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *       See the License for the specific language governing permissions and
+ *       limitations under the License.
+ *
+ */
+package com.expedia.www.haystack.commons.secretDetector;
+
+import com.google.protobuf.ByteString;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static com.expedia.www.haystack.commons.secretDetector.HaystackCompositeCreditCardFinderTest.CREDIT_CARD_NUMBERS_THAT_PASS_LUHN;
+import static com.expedia.www.haystack.commons.secretDetector.HaystackCreditCardFinderTest.FAKE_VISA_NUMBER_THAT_PASSES_LUHN;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class HaystackFreeTextCreditCardFinderTest {
+    private static final String AMEX_NUMBER = "378282246310005";
+    private static final String[] TEXT_AROUND_CREDIT_CARD_NUMBERS = {
+            "", "",
+            "https://www.expedia.com/pay?card=", "&amount=100",
+            "{\"card\":\"", "\"}",
+            "Paid with ", ". Thanks!",
+            "line 1\nline 2: ", "\nline 3",
+    };
+
+    private HaystackFreeTextCreditCardFinder haystackFreeTextCreditCardFinder;
+
+    @Before
+    public void setUp() {
+        haystackFreeTextCreditCardFinder = new HaystackFreeTextCreditCardFinder();
+    }
+
+    @Test
+    public void testFindEmbeddedCreditCardNumbers() {
+        for (final String creditCardNumber : CREDIT_CARD_NUMBERS_THAT_PASS_LUHN) {
+            for (int index = 0; index < TEXT_AROUND_CREDIT_CARD_NUMBERS.length; index += 2) {
+                final String input = TEXT_AROUND_CREDIT_CARD_NUMBERS[index] + creditCardNumber
+                        + TEXT_AROUND_CREDIT_CARD_NUMBERS[index + 1];
+                assertEquals(input, Collections.singletonList(creditCardNumber),
+                        haystackFreeTextCreditCardFinder.find(input));
+            }
+        }
+    }
+
+    @Test
+    public void testFindSeveralCreditCardNumbers() {
+        final String input = "visa=" + FAKE_VISA_NUMBER_THAT_PASSES_LUHN + "&amex=" + AMEX_NUMBER + "&visa="
+                + FAKE_VISA_NUMBER_THAT_PASSES_LUHN;
+
+        assertEquals(Arrays.asList(FAKE_VISA_NUMBER_THAT_PASSES_LUHN, AMEX_NUMBER, FAKE_VISA_NUMBER_THAT_PASSES_LUHN),
+                haystackFreeTextCreditCardFinder.find(input));
+    }
+
+    @Test
+    public void testFindNextToOtherGroupsOfDigits() {
+        final String visaWithSpaces = FAKE_VISA_NUMBER_THAT_PASSES_LUHN.replace('-', ' ');
+
+        assertEquals(Collections.singletonList(visaWithSpaces),
+                haystackFreeTextCreditCardFinder.find(visaWithSpaces + " 123"));
+        assertEquals(Collections.singletonList(visaWithSpaces),
+                haystackFreeTextCreditCardFinder.find("12/25 " + visaWithSpaces));
+        assertEquals(Collections.singletonList(FAKE_VISA_NUMBER_THAT_PASSES_LUHN),
+                haystackFreeTextCreditCardFinder.find(FAKE_VISA_NUMBER_THAT_PASSES_LUHN + "-"));
+    }
+
+    @Test
+    public void testFindNothing() {
+        final String[] inputs = {
+                "",
+                "nothing to see here",
+                "card=4640-1234-5678-9123", // fails the Luhn check
+                "card=4640--1234-5678-9120", // two separators in a row
+                "card=1" + AMEX_NUMBER, // inside a longer run of digits
+                "card=" + AMEX_NUMBER + "1",
+                "card=1234 5678 9012 3456", // not an issuer range
+                "trace=1234567890 1234567890 1234567890 1234567890",
+        };
+        for (final String input : inputs) {
+            assertTrue(input, haystackFreeTextCreditCardFinder.find(input).isEmpty());
+        }
+    }
+
+    @Test
+    public void testFindCharSequence() {
+        final ByteString byteString = ByteString.copyFromUtf8("card=" + AMEX_NUMBER);
+
+        assertEquals(Collections.singletonList(AMEX_NUMBER),
+                haystackFreeTextCreditCardFinder.find(new ByteStringCharSequence(byteString)));
+    }
+
+    @Test
+    public void testGetName() {
+        assertEquals(new HaystackCompositeCreditCardFinder().getName(), haystackFreeTextCreditCardFinder.getName());
+    }
+}
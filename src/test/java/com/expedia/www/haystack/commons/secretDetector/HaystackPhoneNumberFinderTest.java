@@ -18,6 +18,8 @@ package com.expedia.www.haystack.commons.secretDetector;
 
 import com.google.i18n.phonenumbers.NumberParseException;
 import com.google.i18n.phonenumbers.PhoneNumberUtil;
+import com.google.i18n.phonenumbers.PhoneNumberUtil.PhoneNumberFormat;
+import com.google.i18n.phonenumbers.Phonenumber.PhoneNumber;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
@@ -25,14 +27,21 @@ import org.junit.runner.RunWith;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 
 import static com.expedia.www.haystack.commons.secretDetector.CldrRegion.FRANCE;
 import static com.expedia.www.haystack.commons.secretDetector.CldrRegion.UNITED_KINGDOM;
 import static com.expedia.www.haystack.commons.secretDetector.CldrRegion.UNITED_STATES;
+import static com.expedia.www.haystack.commons.secretDetector.HaystackPhoneNumberFinder.UNKNOWN_REGION;
+import static com.google.i18n.phonenumbers.NumberParseException.ErrorType.INVALID_COUNTRY_CODE;
+import static com.google.i18n.phonenumbers.NumberParseException.ErrorType.NOT_A_NUMBER;
+import static com.google.i18n.phonenumbers.NumberParseException.ErrorType.TOO_LONG;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Mockito.verify;
@@ -59,6 +68,12 @@ public class HaystackPhoneNumberFinderTest {
             "18005551212",
     };
 
+    private static final String[] OTHER_INPUTS = {
+            "+1 800 555 1212", "+44 20 1234 5678", "+999 1234 5678", "+", "555+1212", "011 44 20 1234 5678",
+            "00 33 6 23 12 45 54", "\uFF0B33 6 23 12 45 54", "2018-10-17 12:00:00", "1.5", "12-34",
+    };
+    private static final List<CldrRegion> REGIONS = Arrays.asList(UNITED_STATES, FRANCE, UNITED_KINGDOM);
+
     @Mock
     private PhoneNumberUtil mockPhoneNumberUtil;
 
@@ -145,4 +160,159 @@ public class HaystackPhoneNumberFinderTest {
         assertTrue(phoneNumbers.isEmpty());
         verify(mockPhoneNumberUtil).parseAndKeepRawInput(VALID_PHONE_NUMBERS_US[0], UNITED_STATES.getRegionCode());
     }
+
+    @Test
+    public void testFindStringMultipleRegionsSameAsOneFinderPerRegion() {
+        final HaystackPhoneNumberFinder haystackPhoneNumberFinder =
+                new HaystackPhoneNumberFinder(PhoneNumberUtil.getInstance(), REGIONS);
+        final List<String> inputs = new ArrayList<>();
+        inputs.addAll(Arrays.asList(VALID_PHONE_NUMBERS_US));
+        inputs.addAll(Arrays.asList(VALID_PHONE_NUMBERS_FR));
+        inputs.addAll(Arrays.asList(VALID_PHONE_NUMBERS_UK));
+        inputs.addAll(Arrays.asList(INVALID_US_PHONE_NUMBERS));
+        inputs.addAll(Arrays.asList(OTHER_INPUTS));
+        int foundCount = 0;
+        for (final String input : inputs) {
+            final boolean isFoundInAnyRegion = !haystackPhoneNumberFinderUS.find(input).isEmpty()
+                    || !haystackPhoneNumberFinderFR.find(input).isEmpty()
+                    || !haystackPhoneNumberFinderUK.find(input).isEmpty();
+            final List<String> strings = haystackPhoneNumberFinder.find(input);
+            assertEquals(input, isFoundInAnyRegion ? Collections.singletonList(input) : Collections.emptyList(),
+                    strings);
+            foundCount += strings.size();
+        }
+        assertEquals(10, foundCount);
+    }
+
+    @Test
+    public void testFindInternationalNumberParsedOnce() throws NumberParseException {
+        final PhoneNumber phoneNumber = new PhoneNumber().setRawInput(VALID_PHONE_NUMBERS_FR[0]);
+        when(mockPhoneNumberUtil.parseAndKeepRawInput(anyString(), anyString())).thenReturn(phoneNumber);
+        when(mockPhoneNumberUtil.isValidNumberForRegion(phoneNumber, FRANCE.getRegionCode())).thenReturn(true);
+        final HaystackPhoneNumberFinder haystackPhoneNumberFinder =
+                new HaystackPhoneNumberFinder(mockPhoneNumberUtil, REGIONS);
+
+        final List<String> strings = haystackPhoneNumberFinder.find(VALID_PHONE_NUMBERS_FR[0]);
+
+        assertEquals(Collections.singletonList(VALID_PHONE_NUMBERS_FR[0]), strings);
+        verify(mockPhoneNumberUtil).parseAndKeepRawInput(VALID_PHONE_NUMBERS_FR[0], UNKNOWN_REGION);
+        verify(mockPhoneNumberUtil).isValidNumberForRegion(phoneNumber, UNITED_STATES.getRegionCode());
+        verify(mockPhoneNumberUtil).isValidNumberForRegion(phoneNumber, FRANCE.getRegionCode());
+    }
+
+    @Test
+    public void testFindInternationalNumberNotValidInAnyRegion() throws NumberParseException {
+        final PhoneNumber phoneNumber = new PhoneNumber().setRawInput(VALID_PHONE_NUMBERS_FR[0]);
+        when(mockPhoneNumberUtil.parseAndKeepRawInput(anyString(), anyString())).thenReturn(phoneNumber);
+        final HaystackPhoneNumberFinder haystackPhoneNumberFinder =
+                new HaystackPhoneNumberFinder(mockPhoneNumberUtil, REGIONS);
+
+        assertTrue(haystackPhoneNumberFinder.find(VALID_PHONE_NUMBERS_FR[0]).isEmpty());
+
+        verify(mockPhoneNumberUtil).parseAndKeepRawInput(VALID_PHONE_NUMBERS_FR[0], UNKNOWN_REGION);
+        for (final CldrRegion cldrRegion : REGIONS) {
+            verify(mockPhoneNumberUtil).isValidNumberForRegion(phoneNumber, cldrRegion.getRegionCode());
+        }
+    }
+
+    @Test
+    public void testFindInternationalNumberParseException() throws NumberParseException {
+        when(mockPhoneNumberUtil.parseAndKeepRawInput(anyString(), anyString())).thenThrow(
+                new NumberParseException(TOO_LONG, "Test"));
+        final HaystackPhoneNumberFinder haystackPhoneNumberFinder =
+                new HaystackPhoneNumberFinder(mockPhoneNumberUtil, REGIONS);
+
+        assertTrue(haystackPhoneNumberFinder.find(VALID_PHONE_NUMBERS_FR[0]).isEmpty());
+
+        verify(mockPhoneNumberUtil).parseAndKeepRawInput(VALID_PHONE_NUMBERS_FR[0], UNKNOWN_REGION);
+    }
+
+    @Test
+    public void testFindInvalidCountryCodeParsedAsNationalNumber() throws NumberParseException {
+        when(mockPhoneNumberUtil.parseAndKeepRawInput(anyString(), anyString())).thenThrow(
+                new NumberParseException(INVALID_COUNTRY_CODE, "Test"));
+        final HaystackPhoneNumberFinder haystackPhoneNumberFinder =
+                new HaystackPhoneNumberFinder(mockPhoneNumberUtil, REGIONS);
+
+        assertTrue(haystackPhoneNumberFinder.find(VALID_PHONE_NUMBERS_FR[0]).isEmpty());
+
+        verify(mockPhoneNumberUtil).parseAndKeepRawInput(VALID_PHONE_NUMBERS_FR[0], UNKNOWN_REGION);
+        for (final CldrRegion cldrRegion : REGIONS) {
+            verify(mockPhoneNumberUtil).parseAndKeepRawInput(VALID_PHONE_NUMBERS_FR[0], cldrRegion.getRegionCode());
+        }
+    }
+
+    @Test
+    public void testFindNotANumberParsedOnce() throws NumberParseException {
+        when(mockPhoneNumberUtil.parseAndKeepRawInput(anyString(), anyString())).thenThrow(
+                new NumberParseException(NOT_A_NUMBER, "Test"));
+        final HaystackPhoneNumberFinder haystackPhoneNumberFinder =
+                new HaystackPhoneNumberFinder(mockPhoneNumberUtil, REGIONS);
+
+        assertTrue(haystackPhoneNumberFinder.find(VALID_PHONE_NUMBERS_US[0]).isEmpty());
+
+        verify(mockPhoneNumberUtil).parseAndKeepRawInput(VALID_PHONE_NUMBERS_US[0], UNITED_STATES.getRegionCode());
+    }
+
+    @Test
+    public void testFindAllRegionsSameAsParsingEachRegion() {
+        final PhoneNumberUtil phoneNumberUtil = PhoneNumberUtil.getInstance();
+        final List<CldrRegion> allRegions = Arrays.asList(CldrRegion.values());
+        final HaystackPhoneNumberFinder haystackPhoneNumberFinder =
+                new HaystackPhoneNumberFinder(phoneNumberUtil, allRegions);
+        final List<String> inputs = new ArrayList<>(Arrays.asList(OTHER_INPUTS));
+        for (final String regionCode : phoneNumberUtil.getSupportedRegions()) {
+            final PhoneNumber phoneNumber = phoneNumberUtil.getExampleNumber(regionCode);
+            if (phoneNumber != null) {
+                inputs.add(phoneNumberUtil.format(phoneNumber, PhoneNumberFormat.NATIONAL));
+                inputs.add(phoneNumberUtil.format(phoneNumber, PhoneNumberFormat.INTERNATIONAL));
+                inputs.add(phoneNumberUtil.formatOutOfCountryCallingNumber(phoneNumber, UNITED_STATES.getRegionCode()));
+            }
+        }
+        int foundCount = 0;
+        for (final String input : inputs) {
+            final boolean isFound = !haystackPhoneNumberFinder.find(input).isEmpty();
+            assertEquals(input, isValidInAnyRegion(phoneNumberUtil, allRegions, input), isFound);
+            foundCount += isFound ? 1 : 0;
+        }
+        assertTrue(foundCount > inputs.size() / 2);
+    }
+
+    @Test
+    public void testFindTooFewDigitsForAnyRegionNotParsed() {
+        final HaystackPhoneNumberFinder haystackPhoneNumberFinder =
+                new HaystackPhoneNumberFinder(mockPhoneNumberUtil, REGIONS);
+
+        assertTrue(haystackPhoneNumberFinder.find("12:00:00").isEmpty());
+    }
+
+    @Test
+    public void testCanMatch() {
+        final ValueProfile valueProfile = new ValueProfile();
+        for (String phoneNumber : VALID_PHONE_NUMBERS_US) {
+            assertTrue(phoneNumber, haystackPhoneNumberFinderUS.canMatch(valueProfile.profile(phoneNumber)));
+        }
+        assertFalse(haystackPhoneNumberFinderUS.canMatch(valueProfile.profile("1-800-FLOWERS")));
+        assertFalse(haystackPhoneNumberFinderUS.canMatch(valueProfile.profile("8005551212")));
+        assertFalse(haystackPhoneNumberFinderUS.canMatch(valueProfile.profile("(---) --- ----")));
+        assertFalse(haystackPhoneNumberFinderUS.canMatch(valueProfile.profile("")));
+    }
+
+    private static boolean isValidInAnyRegion(PhoneNumberUtil phoneNumberUtil, List<CldrRegion> regions, String input) {
+        final HaystackPhoneNumberFinder haystackPhoneNumberFinderNoRegions =
+                new HaystackPhoneNumberFinder(phoneNumberUtil, Collections.emptyList());
+        if (haystackPhoneNumberFinderNoRegions.canMatch(new ValueProfile().profile(input))) {
+            for (final CldrRegion region : regions) {
+                try {
+                    final PhoneNumber phoneNumber = phoneNumberUtil.parseAndKeepRawInput(input, region.getRegionCode());
+                    if (phoneNumberUtil.isValidNumberForRegion(phoneNumber, region.getRegionCode())) {
+                        return true;
+                    }
+                } catch (NumberParseException e) {
+                    // Not a phone number in this region
+                }
+            }
+        }
+        return false;
+    }
 }
@@ -0,0 +1,79 @@
+/*
+ * Copyright 2018 Expedia, Inc.
+ *
+ *       Licensed under the Apache License, Version 2.0 (the "License");
+ *       you may not use this file except in compliance with the License.
+ *       You may obtain a copy of the License at
+ *
+ *           http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *       Unless required by applicable law or agreed to in writing, software
+ *       distributed under the License is distributed on an "AS IS" BASIS,
+ *       WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *       See the License for the specific language governing permissions and
+ *       limitations under the License.
+ *
+ */
+package com.expedia.www.haystack.commons.secretDetector;
+
+import io.dataapps.chlorine.finder.Finder;
+import io.dataapps.chlorine.pattern.RegexFinder;
+import org.junit.Test;
+
+import static com.expedia.www.haystack.commons.secretDetector.IpV4AddressParser.NOT_AN_ADDRESS;
+import static com.expedia.www.haystack.commons.secretDetector.IpV4AddressParser.isAnyLineAnAddress;
+import static com.expedia.www.haystack.commons.secretDetector.TestConstantsAndCommonCode.RANDOM;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class IpV4AddressParserTest {
+    // The regular expression that NonLocalIpV4AddressFinder used before IpV4AddressParser replaced it
+    private static final Finder IPV4_FINDER = new RegexFinder("IPV4",
+            "^(?:(?:25[0-5]|2[0-4][0-9]|[01]?[0-9][0-9]?)\\.){3}(?:25[0-5]|2[0-4][0-9]|[01]?[0-9][0-9]?)$");
+    private static final String ALPHABET = "0123456789..........255a ";
+    private static final int RANDOM_INPUT_COUNT = 20000;
+
+    @Test
+    public void testParse() {
+        assertEquals(0x0A000001L, parse("10.0.0.1"));
+        assertEquals(0xFFFFFFFFL, parse("255.255.255.255"));
+        assertEquals(0L, parse("0.0.0.0"));
+        assertEquals(0x01020304L, parse("001.02.3.004"));
+        assertEquals(0x0C22384EL, IpV4AddressParser.parse(" 12.34.56.78 ", 1, 12));
+    }
+
+    @Test
+    public void testParseNotAnAddress() {
+        final String[] inputs = {"", "1", "1.2.3", "1.2.3.4.5", "1.2.3.", ".1.2.3", "1..2.3", "1.2.3.256", "1.2.3.0001",
+                "1.2.3.4 ", "1.2.3.a", "1.2.3.1000", "300.1.1.1"};
+        for (final String input : inputs) {
+            assertEquals(input, NOT_AN_ADDRESS, parse(input));
+        }
+    }
+
+    @Test
+    public void testParseSameAsRegularExpression() {
+        for (int count = 0; count < RANDOM_INPUT_COUNT; count++) {
+            final StringBuilder stringBuilder = new StringBuilder();
+            final int length = 7 + RANDOM.nextInt(9);
+            for (int index = 0; index < length; index++) {
+                stringBuilder.append(ALPHABET.charAt(RANDOM.nextInt(ALPHABET.length())));
+            }
+            final String input = stringBuilder.toString();
+            assertEquals(input, !IPV4_FINDER.find(input).isEmpty(), parse(input) != NOT_AN_ADDRESS);
+        }
+    }
+
+    @Test
+    public void testIsAnyLineAnAddress() {
+        assertTrue(isAnyLineAnAddress("12.34.56.78"));
+        assertTrue(isAnyLineAnAddress("address:\n12.34.56.78\n"));
+        assertFalse(isAnyLineAnAddress("address: 12.34.56.78"));
+        assertFalse(isAnyLineAnAddress(""));
+    }
+
+    private static long parse(String input) {
+        return IpV4AddressParser.parse(input, 0, input.length());
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright 2018 Expedia, Inc.
+ *
+ *       Licensed under the Apache License, Version 2.0 (the "License");
+ *       you may not use this file except in compliance with the License.
+ *       You may obtain a copy of the License at
+ *
+ *           http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *       Unless required by applicable law or agreed to in writing, software
+ *       distributed under the License is distributed on an "AS IS" BASIS,
+ *       WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *       See the License for the specific language governing permissions and
+ *       limitations under the License.
+ *
+ */
+package com.expedia.www.haystack.commons.secretDetector;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.expedia.www.haystack.commons.secretDetector.IpV6AddressParser.HIGH;
+import static com.expedia.www.haystack.commons.secretDetector.IpV6AddressParser.LONGS_PER_ADDRESS;
+import static com.expedia.www.haystack.commons.secretDetector.IpV6AddressParser.LOW;
+import static com.expedia.www.haystack.commons.secretDetector.TestConstantsAndCommonCode.RANDOM;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class IpV6AddressParserTest {
+    private static final int GROUP_COUNT = 8;
+    private static final int RANDOM_ADDRESS_COUNT = 20000;
+
+    @Test
+    public void testParseFullForm() {
+        assertAddress(0x20010DB800000000L, 0x0000FF0000428329L, "2001:0db8:0000:0000:0000:ff00:0042:8329");
+        assertAddress(0x20010DB800000000L, 0x0000FF0000428329L, "2001:DB8:0:0:0:FF00:42:8329");
+        assertAddress(-1L, -1L, "ffff:ffff:ffff:ffff:ffff:ffff:ffff:ffff");
+        assertAddress(0L, 0L, "0:0:0:0:0:0:0:0");
+    }
+
+    @Test
+    public void testParseCompressedForm() {
+        assertAddress(0L, 0L, "::");
+        assertAddress(0L, 1L, "::1");
+        assertAddress(0x0001000000000000L, 0L, "1::");
+        assertAddress(0xFE80000000000000L, 0x0000000000000001L, "fe80::1");
+        assertAddress(0x20010DB800000000L, 0x0000FF0000428329L, "2001:db8::ff00:42:8329");
+        assertAddress(0x0001000200030004L, 0x0005000600070000L, "1:2:3:4:5:6:7::");
+        assertAddress(0x0000000200030004L, 0x0005000600070008L, "::2:3:4:5:6:7:8");
+        assertAddress(0x0001000200030004L, 0x0005000000070008L, "1:2:3:4:5::7:8");
+        assertAddress(0x0001000200000000L, 0x0000000000000008L, "1:2::8");
+    }
+
+    @Test
+    public void testParseIpV4Suffix() {
+        assertAddress(0L, 0x0000FFFFC0000201L, "::ffff:192.0.2.1");
+        assertAddress(0L, 0x000000000A000001L, "::10.0.0.1");
+        assertAddress(0x0064FF9B00000000L, 0x00000000C0000201L, "64:ff9b::192.0.2.1");
+        assertAddress(0x0001000200030004L, 0x00050006C0000201L, "1:2:3:4:5:6:192.0.2.1");
+    }
+
+    @Test
+    public void testParsePartOfValue() {
+        final long[] address = new long[LONGS_PER_ADDRESS];
+        final String input = "address: fe80::1 ";
+
+        assertTrue(IpV6AddressParser.parse(input, 9, 16, address));
+        assertEquals(0xFE80000000000000L, address[HIGH]);
+        assertEquals(1L, address[LOW]);
+    }
+
+    @Test
+    public void testParseNotAnAddress() {
+        final String[] inputs = {"", ":", ":::", "1", "1:2", "1:2:3:4:5:6:7", "1:2:3:4:5:6:7:8:9",
+                "1:2:3:4:5:6:7:8:9:10", "1:2:3:4:5:6:7:8::", "::1:2:3:4:5:6:7:8", "1:2:3:4::5:6:7:8", "1::2::3",
+                ":1::", "1:", ":1", "1::2:", "12345::", "1:::2", "g::", "fe80::1%eth0", "[::1]", " ::1", "::1 ",
+                "1.2.3.4", "::1.2.3", "::1.2.3.256", "::1:2:3:4:5:6:1.2.3.4", "1:2:3:4:5:6:7:1.2.3.4", "::1.2.3.4:5",
+                "::\uFF11", "::x"};
+        final long[] address = new long[LONGS_PER_ADDRESS];
+        for (final String input : inputs) {
+            assertFalse(input, IpV6AddressParser.parse(input, 0, input.length(), address));
+        }
+    }
+
+    @Test
+    public void testParseRandomAddresses() {
+        final long[] address = new long[LONGS_PER_ADDRESS];
+        for (int count = 0; count < RANDOM_ADDRESS_COUNT; count++) {
+            final int[] groups = createRandomGroups();
+            final String input = format(groups);
+            assertTrue(input, IpV6AddressParser.parse(input, 0, input.length(), address));
+            assertArrayEquals(input, new long[]{toLong(groups, 0), toLong(groups, GROUP_COUNT / 2)}, address);
+        }
+    }
+
+    /**
+     * Creates the groups of an address, about half of which are 0 so that there are runs of zeros to compress
+     */
+    private static int[] createRandomGroups() {
+        final int[] groups = new int[GROUP_COUNT];
+        for (int index = 0; index < GROUP_COUNT; index++) {
+            groups[index] = RANDOM.nextBoolean() ? 0 : RANDOM.nextInt(0x10000);
+        }
+        return groups;
+    }
+
+    /**
+     * Formats an address in one of the many ways it can be written: with or without leading zeros, in upper or lower
+     * case, with the first run of zeros compressed or not, and with its last 32 bits as an IP V4 address or not
+     */
+    private static String format(int[] groups) {
+        final boolean isIpV4Suffix = RANDOM.nextBoolean();
+        final int hexGroupCount = isIpV4Suffix ? GROUP_COUNT - 2 : GROUP_COUNT;
+        final List<String> pieces = new ArrayList<>();
+        for (int index = 0; index < hexGroupCount; index++) {
+            final String group = String.format(RANDOM.nextBoolean() ? "%04x" : "%x", groups[index]);
+            pieces.add(RANDOM.nextBoolean() ? group.toUpperCase() : group);
+        }
+        if (isIpV4Suffix) {
+            pieces.add(String.format("%d.%d.%d.%d",
+                    groups[6] >> 8, groups[6] & 0xFF, groups[7] >> 8, groups[7] & 0xFF));
+        }
+        int compressionStart = 0;
+        while (compressionStart < hexGroupCount && groups[compressionStart] != 0) {
+            compressionStart++;
+        }
+        int compressionEnd = compressionStart;
+        while (compressionEnd < hexGroupCount && groups[compressionEnd] == 0) {
+            compressionEnd++;
+        }
+        if (compressionStart == compressionEnd || RANDOM.nextBoolean()) {
+            return String.join(":", pieces);
+        }
+        return String.join(":", pieces.subList(0, compressionStart)) + "::"
+                + String.join(":", pieces.subList(compressionEnd, pieces.size()));
+    }
+
+    private static long toLong(int[] groups, int start) {
+        long value = 0;
+        for (int index = start; index < start + GROUP_COUNT / 2; index++) {
+            value = (value << 16) | groups[index];
+        }
+        return value;
+    }
+
+    private static void assertAddress(long high, long low, String input) {
+        final long[] address = new long[LONGS_PER_ADDRESS];
+        assertTrue(input, IpV6AddressParser.parse(input, 0, input.length(), address));
+        assertArrayEquals(input, new long[]{high, low}, address);
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright 2018 Expedia, Inc.
+ *
+ *       Licensed under the Apache License, Version 2.0 (the "License");
+ *       you may not use this file except in compliance with the License.
+ *       You may obtain a copy of the License at
+ *
+ *           http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *       Unless required by applicable law or agreed to in writing, software
+ *       distributed under the License is distributed on an "AS IS" BASIS,
+ *       WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *       See the License for the specific language governing permissions and
+ *       limitations under the License.
+ *
+ */
+package com.expedia.www.haystack.commons.secretDetector;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertEquals;
+
+public class LinesTest {
+    // What a MULTILINE pattern anchored at both ends finds is what Lines splits a value into
+    private static final Pattern LINE_PATTERN = Pattern.compile("^[^\\n\\r\\u0085\\u2028\\u2029]+$", Pattern.MULTILINE);
+    private static final String[] INPUTS = {
+            "", "a", "a\n", "\na", "a\nb", "a\r\nb", "a\rb", "a\r\rb", "a\n\rb", "a\u0085b", "a\u2028b", "a\u2029b\r",
+            "a\tb\u000Bc\u000Cd", "\r\n\r\n",
+    };
+
+    @Test
+    public void testFindEndAndFindNextStart() {
+        for (final String input : INPUTS) {
+            assertEquals(input, findWithPattern(input), findWithLines(input));
+        }
+    }
+
+    @Test
+    public void testFindEndLastLine() {
+        assertEquals(3, Lines.findEnd("abc", 1));
+        assertEquals(Arrays.asList("abc", "d"), findWithLines("abc\r\nd"));
+    }
+
+    private static List<String> findWithPattern(String input) {
+        final List<String> lines = new ArrayList<>();
+        final Matcher matcher = LINE_PATTERN.matcher(input);
+        while (matcher.find()) {
+            lines.add(matcher.group());
+        }
+        return lines;
+    }
+
+    private static List<String> findWithLines(String input) {
+        final List<String> lines = new ArrayList<>();
+        int lineStart = 0;
+        while (lineStart <= input.length()) {
+            final int lineEnd = Lines.findEnd(input, lineStart);
+            if (lineEnd > lineStart) {
+                lines.add(input.substring(lineStart, lineEnd));
+            }
+            lineStart = Lines.findNextStart(input, lineEnd);
+        }
+        return lines;
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright 2018 Expedia, Inc.
+ *
+ *       Licensed under the Apache License, Version 2.0 (the "License");
+ *       you may not use this file except in compliance with the License.
+ *       You may obtain a copy of the License at
+ *
+ *           http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *       Unless required by applicable law or agreed to in writing, software
+ *       distributed under the License is distributed on an "AS IS" BASIS,
+ *       WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *       See the License for the specific language governing permissions and
+ *       limitations under the License.
+ *
+ */
+package com.expedia.www.haystack.commons.secretDetector;
+
+import org.junit.Test;
+
+import static com.expedia.www.haystack.commons.secretDetector.LongHashSet.ZERO_KEY_MSG;
+import static com.expedia.www.haystack.commons.secretDetector.TestConstantsAndCommonCode.RANDOM;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class LongHashSetTest {
+    @Test
+    public void testEmpty() {
+        final LongHashSet longHashSet = new LongHashSet(new long[0], 0);
+
+        assertEquals(0, longHashSet.size());
+        assertEquals(4, longHashSet.capacity());
+        assertFalse(longHashSet.contains(1L));
+        assertEquals(LongHashSet.NOT_FOUND, longHashSet.slotOf(1L));
+    }
+
+    @Test
+    public void testDuplicatesAreStoredOnce() {
+        final LongHashSet longHashSet = new LongHashSet(new long[]{1L, -1L, 1L, Long.MIN_VALUE, 42L}, 4);
+
+        assertEquals(3, longHashSet.size());
+        assertTrue(longHashSet.contains(1L));
+        assertTrue(longHashSet.contains(-1L));
+        assertTrue(longHashSet.contains(Long.MIN_VALUE));
+        assertFalse(longHashSet.contains(42L));
+        assertNotEquals(longHashSet.slotOf(1L), longHashSet.slotOf(-1L));
+    }
+
+    @Test
+    public void testZeroKey() {
+        try {
+            new LongHashSet(new long[]{1L, 0L}, 2);
+            fail();
+        } catch (IllegalArgumentException e) {
+            assertEquals(ZERO_KEY_MSG, e.getMessage());
+        }
+    }
+
+    @Test
+    public void testPack() {
+        assertEquals(0x0000000100000002L, LongHashSet.pack(1, 2));
+        assertEquals(0xFFFFFFFF00000000L, LongHashSet.pack(-1, 0));
+        assertEquals(0x00000000FFFFFFFFL, LongHashSet.pack(0, -1));
+        assertEquals(0L, LongHashSet.pack(0, 0));
+    }
+
+    @Test
+    public void testManyKeys() {
+        final int count = 10000 + RANDOM.nextInt(1000);
+        final long[] keys = new long[count];
+        for (int index = 0; index < count; index++) {
+            // Keys that differ only in their high bits must not crowd into the same slots
+            keys[index] = LongHashSet.pack(index + 1, 1);
+        }
+        final LongHashSet longHashSet = new LongHashSet(keys, count);
+
+        assertEquals(count, longHashSet.size());
+        assertTrue(longHashSet.capacity() >= 2 * count);
+        assertTrue(longHashSet.capacity() <= 4 * count);
+        for (int index = 0; index < count; index++) {
+            final int slot = longHashSet.slotOf(keys[index]);
+            assertTrue(slot >= 0 && slot < longHashSet.capacity());
+            assertFalse(longHashSet.contains(LongHashSet.pack(index + 1, 2)));
+        }
+    }
+}
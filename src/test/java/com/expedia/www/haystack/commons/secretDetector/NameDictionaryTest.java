@@ -0,0 +1,81 @@
+/*
+ * Copyright 2018 Expedia, Inc.
+ *
+ *       Licensed under the Apache License, Version 2.0 (the "License");
+ *       you may not use this file except in compliance with the License.
+ *       You may obtain a copy of the License at
+ *
+ *           http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *       Unless required by applicable law or agreed to in writing, software
+ *       distributed under the License is distributed on an "AS IS" BASIS,
+ *       WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *       See the License for the specific language governing permissions and
+ *       limitations under the License.
+ *
+ */
+package com.expedia.www.haystack.commons.secretDetector;
+
+import org.junit.Test;
+
+import static com.expedia.www.haystack.commons.secretDetector.TestConstantsAndCommonCode.RANDOM;
+import static org.junit.Assert.assertEquals;
+
+public class NameDictionaryTest {
+    private static final String NAME = "Name";
+    // "Aa" and "BB" have the same hash code
+    private static final String COLLIDING_NAME = "Aa";
+    private static final String OTHER_COLLIDING_NAME = "BB";
+
+    @Test
+    public void testEmpty() {
+        final NameDictionary nameDictionary = new NameDictionary.Builder().build();
+
+        assertEquals(0, nameDictionary.size());
+        assertEquals(NameDictionary.NOT_FOUND, nameDictionary.getId(NAME));
+        assertEquals(NameDictionary.NOT_FOUND, nameDictionary.getId(""));
+    }
+
+    @Test
+    public void testNamesAreNumberedInOrder() {
+        final NameDictionary.Builder builder = new NameDictionary.Builder();
+
+        assertEquals(1, builder.add(NAME));
+        assertEquals(2, builder.add(NAME + 2));
+        assertEquals(1, builder.add(NAME));
+        assertEquals(3, builder.add(""));
+        final NameDictionary nameDictionary = builder.build();
+
+        assertEquals(3, nameDictionary.size());
+        assertEquals(1, nameDictionary.getId(NAME));
+        assertEquals(2, nameDictionary.getId(NAME + 2));
+        assertEquals(3, nameDictionary.getId(""));
+        assertEquals(NameDictionary.NOT_FOUND, nameDictionary.getId(NAME + 3));
+    }
+
+    @Test
+    public void testHashCollisionsAreVerified() {
+        final NameDictionary.Builder builder = new NameDictionary.Builder();
+        builder.add(COLLIDING_NAME);
+        final NameDictionary nameDictionary = builder.build();
+
+        assertEquals(1, nameDictionary.getId(COLLIDING_NAME));
+        assertEquals(NameDictionary.NOT_FOUND, nameDictionary.getId(OTHER_COLLIDING_NAME));
+    }
+
+    @Test
+    public void testManyNames() {
+        final int count = 10000 + RANDOM.nextInt(1000);
+        final NameDictionary.Builder builder = new NameDictionary.Builder();
+        for (int index = 0; index < count; index++) {
+            builder.add(NAME + index);
+        }
+        final NameDictionary nameDictionary = builder.build();
+
+        assertEquals(count, nameDictionary.size());
+        for (int index = 0; index < count; index++) {
+            assertEquals(index + 1, nameDictionary.getId(NAME + index));
+        }
+        assertEquals(NameDictionary.NOT_FOUND, nameDictionary.getId(NAME + count));
+    }
+}
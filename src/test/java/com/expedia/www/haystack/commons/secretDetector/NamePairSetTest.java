@@ -0,0 +1,69 @@
+/*
+ * Copyright 2018 Expedia, Inc.
+ *
+ *       Licensed under the Apache License, Version 2.0 (the "License");
+ *       you may not use this file except in compliance with the License.
+ *       You may obtain a copy of the License at
+ *
+ *           http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *       Unless required by applicable law or agreed to in writing, software
+ *       distributed under the License is distributed on an "AS IS" BASIS,
+ *       WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *       See the License for the specific language governing permissions and
+ *       limitations under the License.
+ *
+ */
+package com.expedia.www.haystack.commons.secretDetector;
+
+import org.junit.Test;
+
+import static com.expedia.www.haystack.commons.secretDetector.TestConstantsAndCommonCode.RANDOM;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class NamePairSetTest {
+    private static final String FINDER_NAME = "Email";
+    private static final String PATH = "/root/element";
+
+    @Test
+    public void testEmpty() {
+        assertEquals(0, NamePairSet.EMPTY.size());
+        assertFalse(NamePairSet.EMPTY.contains(FINDER_NAME, PATH));
+    }
+
+    @Test
+    public void testContains() {
+        final NamePairSet namePairSet = new NamePairSet.Builder()
+                .add(FINDER_NAME, PATH)
+                .add(FINDER_NAME, PATH)
+                .add("Credit_Card", PATH + 2)
+                .build();
+
+        assertEquals(2, namePairSet.size());
+        assertTrue(namePairSet.contains(FINDER_NAME, PATH));
+        assertTrue(namePairSet.contains("Credit_Card", PATH + 2));
+        assertFalse(namePairSet.contains(FINDER_NAME, PATH + 2));
+        assertFalse(namePairSet.contains("Credit_Card", PATH));
+        assertFalse(namePairSet.contains(PATH, FINDER_NAME));
+        assertFalse(namePairSet.contains("Phone_Number", PATH));
+        assertFalse(namePairSet.contains(FINDER_NAME, PATH + 3));
+    }
+
+    @Test
+    public void testManyPairs() {
+        final int count = 10000 + RANDOM.nextInt(1000);
+        final NamePairSet.Builder builder = new NamePairSet.Builder();
+        for (int index = 0; index < count; index++) {
+            builder.add(FINDER_NAME + index % 5, PATH + index);
+        }
+        final NamePairSet namePairSet = builder.build();
+
+        assertEquals(count, namePairSet.size());
+        for (int index = 0; index < count; index++) {
+            assertTrue(namePairSet.contains(FINDER_NAME + index % 5, PATH + index));
+            assertFalse(namePairSet.contains(FINDER_NAME + (index + 1) % 5, PATH + index));
+        }
+    }
+}
@@ -20,6 +20,8 @@ import com.google.common.collect.ImmutableList;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
 import static com.expedia.www.haystack.commons.secretDetector.NonLocalIpV4AddressFinder.FINDER_NAME;
@@ -46,8 +48,15 @@ public class NonLocalIpV4AddressFinderTest {
         do {
             NON_INTERNAL_IP_V4_ADDRESS = String.format("%d.%d.%d.%d", RANDOM.nextInt(IP_V4_PIECE_MAX),
                     RANDOM.nextInt(IP_V4_PIECE_MAX), RANDOM.nextInt(IP_V4_PIECE_MAX), RANDOM.nextInt(IP_V4_PIECE_MAX));
-        } while (NON_INTERNAL_IP_V4_ADDRESS.startsWith(TEN_DOT_PREFIX)
-                || NON_INTERNAL_IP_V4_ADDRESS.startsWith(ONE92_DOT_168));
+        } while (isInDefaultExcludedRange(NON_INTERNAL_IP_V4_ADDRESS));
+    }
+
+    private static boolean isInDefaultExcludedRange(String address) {
+        final String[] octets = address.split("\\.");
+        final int first = Integer.parseInt(octets[0]);
+        final int second = Integer.parseInt(octets[1]);
+        return first == 10 || first == 127 || (first == 172 && second >= 16 && second <= 31)
+                || (first == 192 && second == 168) || (first == 169 && second == 254);
     }
 
     private static final String SHOULD_NOT_BE_SECRET_FORMAT = "%s should not have been marked as secret";
@@ -88,6 +97,45 @@ public class NonLocalIpV4AddressFinderTest {
         testAddressIsInternal("127.0.0.1");
     }
 
+    @Test
+    public void testLoopbackAddress() {
+        testAddressIsInternal("127.1.2.3");
+    }
+
+    @Test
+    public void test172Dot16Address() {
+        testAddressIsInternal("172.16.0.1");
+        testAddressIsInternal("172.31.255.254");
+        assertFalse(nonLocalIpV4AddressFinder.find("172.32.0.1").isEmpty());
+    }
+
+    @Test
+    public void testLinkLocalAddress() {
+        testAddressIsInternal("169.254.169.254");
+    }
+
+    @Test
+    public void testExcludedRanges() {
+        nonLocalIpV4AddressFinder = new NonLocalIpV4AddressFinder(" 12.34.0.0/16, ,1.2.3.4 ");
+
+        testAddressIsInternal("12.34.56.78");
+        testAddressIsInternal("1.2.3.4");
+        assertEquals(Collections.singletonList(TEN_DOT_ADDRESS), nonLocalIpV4AddressFinder.find(TEN_DOT_ADDRESS));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidExcludedRange() {
+        new NonLocalIpV4AddressFinder("10.0.0.0/8,localhost");
+    }
+
+    @Test
+    public void testFindEachLine() {
+        final String input = NON_INTERNAL_IP_V4_ADDRESS + '\n' + TEN_DOT_ADDRESS + "\r\n" + NON_INTERNAL_IP_V4_ADDRESS;
+
+        assertEquals(Arrays.asList(NON_INTERNAL_IP_V4_ADDRESS, NON_INTERNAL_IP_V4_ADDRESS),
+                nonLocalIpV4AddressFinder.find(input));
+    }
+
     private void testAddressIsInternal(String address) {
         final String message = String.format(SHOULD_NOT_BE_SECRET_FORMAT, address);
         assertTrue(message, nonLocalIpV4AddressFinder.find(address).isEmpty());
@@ -115,4 +163,13 @@ public class NonLocalIpV4AddressFinderTest {
     public void testStringIsNotAnIpAddress() {
         assertTrue(nonLocalIpV4AddressFinder.find(TEN_DOT_FORMAT).isEmpty());
     }
+
+    @Test
+    public void testCanMatch() {
+        final ValueProfile valueProfile = new ValueProfile();
+        assertTrue(nonLocalIpV4AddressFinder.canMatch(valueProfile.profile(NON_INTERNAL_IP_V4_ADDRESS)));
+        assertTrue(nonLocalIpV4AddressFinder.canMatch(valueProfile.profile(TEN_DOT_ADDRESS)));
+        assertFalse(nonLocalIpV4AddressFinder.canMatch(valueProfile.profile("1.2.3")));
+        assertFalse(nonLocalIpV4AddressFinder.canMatch(valueProfile.profile("a.b.c.d")));
+    }
 }
@@ -0,0 +1,122 @@
+/*
+ * Copyright 2018 Expedia, Inc.
+ *
+ *       Licensed under the Apache License, Version 2.0 (the "License");
+ *       you may not use this file except in compliance with the License.
+ *       You may obtain a copy of the License at
+ *
+ *           http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *       Unless required by applicable law or agreed to in writing, software
+ *       distributed under the License is distributed on an "AS IS" BASIS,
+ *       WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *       See the License for the specific language governing permissions and
+ *       limitations under the License.
+ *
+ */
+package com.expedia.www.haystack.commons.secretDetector;
+
+import com.google.common.collect.ImmutableList;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static com.expedia.www.haystack.commons.secretDetector.NonLocalIpV6AddressFinder.FINDER_NAME;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class NonLocalIpV6AddressFinderTest {
+    private static final String NON_LOCAL_ADDRESS = "2001:db8:85a3::8a2e:370:7334";
+    private static final String LINK_LOCAL_ADDRESS = "fe80::1ff:fe23:4567:890a";
+    private static final String SHOULD_NOT_BE_SECRET_FORMAT = "%s should not have been marked as secret";
+
+    private NonLocalIpV6AddressFinder nonLocalIpV6AddressFinder;
+
+    @Before
+    public void setUp() {
+        nonLocalIpV6AddressFinder = new NonLocalIpV6AddressFinder();
+    }
+
+    @Test
+    public void testGetName() {
+        assertEquals(FINDER_NAME, nonLocalIpV6AddressFinder.getName());
+    }
+
+    @Test
+    public void testAddressIsNotInternal() {
+        assertEquals(Collections.singletonList(NON_LOCAL_ADDRESS), nonLocalIpV6AddressFinder.find(NON_LOCAL_ADDRESS));
+        assertFalse(nonLocalIpV6AddressFinder.find("2606:4700:4700:0:0:0:0:1111").isEmpty());
+        assertFalse(nonLocalIpV6AddressFinder.find("::ffff:8.8.8.8").isEmpty());
+    }
+
+    @Test
+    public void testLoopbackAndUnspecifiedAddresses() {
+        testAddressIsInternal("::1");
+        testAddressIsInternal("0:0:0:0:0:0:0:1");
+        testAddressIsInternal("::");
+    }
+
+    @Test
+    public void testLinkLocalAddress() {
+        testAddressIsInternal(LINK_LOCAL_ADDRESS);
+        testAddressIsInternal("febf::1");
+        assertFalse(nonLocalIpV6AddressFinder.find("fec0::1").isEmpty());
+    }
+
+    @Test
+    public void testUniqueLocalAddress() {
+        testAddressIsInternal("fc00::1");
+        testAddressIsInternal("fd12:3456:789a:1::1");
+    }
+
+    @Test
+    public void testExcludedRanges() {
+        nonLocalIpV6AddressFinder = new NonLocalIpV6AddressFinder(" 2001:db8::/32, ,2606:4700:4700::1111 ");
+
+        testAddressIsInternal(NON_LOCAL_ADDRESS);
+        testAddressIsInternal("2606:4700:4700::1111");
+        assertEquals(Collections.singletonList(LINK_LOCAL_ADDRESS),
+                nonLocalIpV6AddressFinder.find(LINK_LOCAL_ADDRESS));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidExcludedRange() {
+        new NonLocalIpV6AddressFinder("fe80::/10,localhost");
+    }
+
+    @Test
+    public void testFindEachLine() {
+        final String input = NON_LOCAL_ADDRESS + '\n' + LINK_LOCAL_ADDRESS + "\r\n" + NON_LOCAL_ADDRESS;
+
+        assertEquals(Arrays.asList(NON_LOCAL_ADDRESS, NON_LOCAL_ADDRESS), nonLocalIpV6AddressFinder.find(input));
+    }
+
+    @Test
+    public void testStringIsNotAnIpAddress() {
+        assertTrue(nonLocalIpV6AddressFinder.find("12:00:00").isEmpty());
+        assertTrue(nonLocalIpV6AddressFinder.find("address: " + NON_LOCAL_ADDRESS).isEmpty());
+    }
+
+    @Test
+    public void testFindCollection() {
+        assertEquals(Collections.singletonList(NON_LOCAL_ADDRESS),
+                nonLocalIpV6AddressFinder.find(ImmutableList.of(LINK_LOCAL_ADDRESS, NON_LOCAL_ADDRESS)));
+    }
+
+    @Test
+    public void testCanMatch() {
+        final ValueProfile valueProfile = new ValueProfile();
+        assertTrue(nonLocalIpV6AddressFinder.canMatch(valueProfile.profile(NON_LOCAL_ADDRESS)));
+        assertTrue(nonLocalIpV6AddressFinder.canMatch(valueProfile.profile("::")));
+        assertFalse(nonLocalIpV6AddressFinder.canMatch(valueProfile.profile("1:2")));
+        assertFalse(nonLocalIpV6AddressFinder.canMatch(valueProfile.profile("12.34.56.78")));
+    }
+
+    private void testAddressIsInternal(String address) {
+        final String message = String.format(SHOULD_NOT_BE_SECRET_FORMAT, address);
+        assertTrue(message, nonLocalIpV6AddressFinder.find(address).isEmpty());
+    }
+}
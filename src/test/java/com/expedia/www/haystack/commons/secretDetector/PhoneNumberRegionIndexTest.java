@@ -0,0 +1,226 @@
+/*
+ * Copyright 2018 Expedia, Inc.
+ *
+ *       Licensed under the Apache License, Version 2.0 (the "License");
+ *       you may not use this file except in compliance with the License.
+ *       You may obtain a copy of the License at
+ *
+ *           http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *       Unless required by applicable law or agreed to in writing, software
+ *       distributed under the License is distributed on an "AS IS" BASIS,
+ *       WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *       See the License for the specific language governing permissions and
+ *       limitations under the License.
+ *
+ */
+package com.expedia.www.haystack.commons.secretDetector;
+
+import com.expedia.www.haystack.commons.secretDetector.PhoneNumberRegionIndex.DigitCountBounds;
+import com.expedia.www.haystack.commons.secretDetector.PhoneNumberRegionIndex.Factory;
+import com.google.i18n.phonenumbers.Phonemetadata.PhoneMetadata;
+import com.google.i18n.phonenumbers.Phonemetadata.PhoneNumberDesc;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.slf4j.Logger;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static com.expedia.www.haystack.commons.secretDetector.PhoneNumberRegionIndex.MISSING_METADATA_MSG;
+import static com.expedia.www.haystack.commons.secretDetector.PhoneNumberRegionIndex.UNBOUNDED;
+import static com.expedia.www.haystack.commons.secretDetector.PhoneNumberRegionIndex.UNREADABLE_METADATA_MSG;
+import static com.expedia.www.haystack.commons.secretDetector.PhoneNumberRegionIndex.getDigitCountBounds;
+import static com.expedia.www.haystack.commons.secretDetector.PhoneNumberRegionIndex.getMaximumMatchLength;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class PhoneNumberRegionIndexTest {
+    private static final String US = CldrRegion.UNITED_STATES.getRegionCode();
+    private static final String FR = CldrRegion.FRANCE.getRegionCode();
+    private static final String CA = CldrRegion.CANADA.getRegionCode();
+    private static final String AR = CldrRegion.ARGENTINA.getRegionCode();
+    private static final String AQ = CldrRegion.ANTARCTICA.getRegionCode();
+    private static final int US_NATIONAL_NUMBER_LENGTH = 10;
+    // The 011 international prefix, a country code of up to 3 digits and twice the 1 national prefix
+    private static final int US_MAXIMUM_PREFIX_LENGTH = 3 + 3 + 2;
+
+    @Mock
+    private Factory mockFactory;
+
+    @Mock
+    private Logger mockLogger;
+
+    @After
+    public void tearDown() {
+        verifyNoMoreInteractions(mockFactory, mockLogger);
+    }
+
+    @Test
+    public void testGetMaximumMatchLength() {
+        assertEquals(0, getMaximumMatchLength(""));
+        assertEquals(3, getMaximumMatchLength("011"));
+        assertEquals(3, getMaximumMatchLength("0(?:0|1[01])"));
+        assertEquals(3, getMaximumMatchLength("0(0|1[01])"));
+        assertEquals(2, getMaximumMatchLength("00|1[02]"));
+        assertEquals(4, getMaximumMatchLength("\\d{2,4}"));
+        assertEquals(6, getMaximumMatchLength("(?:1\\d){3}"));
+        assertEquals(1, getMaximumMatchLength("0?"));
+        assertEquals(1, getMaximumMatchLength("^0$"));
+        assertEquals(2, getMaximumMatchLength(".."));
+        assertEquals(1, getMaximumMatchLength("[]0]"));
+        assertEquals(1, getMaximumMatchLength("[^0\\]]"));
+        assertEquals(1, getMaximumMatchLength("[0[12]]"));
+    }
+
+    @Test
+    public void testGetMaximumMatchLengthUnbounded() {
+        for (final String regex : new String[]{"\\d+", "0*", "\\d{2,}", "0{2", "0{x}", "\\p{L}", "(?=0)0", "(0)\\1",
+                "(0", "0)", "[0", "\\", "(", "[", "[^"}) {
+            assertEquals(regex, UNBOUNDED, getMaximumMatchLength(regex));
+        }
+    }
+
+    @Test
+    public void testGetDigitCountBounds() {
+        final Factory factory = new Factory();
+
+        final DigitCountBounds usBounds = getDigitCountBounds(US, factory, mockLogger);
+        assertEquals(US_NATIONAL_NUMBER_LENGTH, usBounds.minimum);
+        assertEquals(US_NATIONAL_NUMBER_LENGTH + US_MAXIMUM_PREFIX_LENGTH, usBounds.maximum);
+
+        // Canadian numbers dialed with a country code are parsed with the metadata of the United States
+        final DigitCountBounds caBounds = getDigitCountBounds(CA, factory, mockLogger);
+        assertEquals(US_NATIONAL_NUMBER_LENGTH, caBounds.minimum);
+        assertEquals(US_NATIONAL_NUMBER_LENGTH + US_MAXIMUM_PREFIX_LENGTH, caBounds.maximum);
+
+        // The transform rule of Argentina inserts a 9 into mobile numbers
+        final int minimumArgentinaLength = Collections.min(
+                getMetadata(AR).getGeneralDesc().getPossibleLengthList());
+        assertEquals(minimumArgentinaLength - 1, getDigitCountBounds(AR, factory, mockLogger).minimum);
+    }
+
+    @Test
+    public void testGetDigitCountBoundsUnsupportedRegion() {
+        final Factory factory = new Factory();
+        assertFalse(factory.isSupportedRegion(AQ));
+
+        final DigitCountBounds bounds = getDigitCountBounds(AQ, factory, mockLogger);
+
+        assertEquals(UNBOUNDED, bounds.minimum);
+        assertEquals(UNBOUNDED, bounds.maximum);
+    }
+
+    @Test
+    public void testFactoryGetMetadataNoResource() throws IOException {
+        assertNull(new Factory().getMetadata(AQ));
+    }
+
+    @Test
+    public void testGetDigitCountBoundsNoResource() throws IOException {
+        when(mockFactory.isSupportedRegion(US)).thenReturn(true);
+
+        assertUnknownBounds(getDigitCountBounds(US, mockFactory, mockLogger));
+
+        verify(mockFactory).isSupportedRegion(US);
+        verify(mockFactory).getMetadata(US);
+        verify(mockLogger).warn(String.format(MISSING_METADATA_MSG, US));
+    }
+
+    @Test
+    public void testGetDigitCountBoundsIOException() throws IOException {
+        final IOException ioException = new IOException();
+        when(mockFactory.isSupportedRegion(US)).thenReturn(true);
+        when(mockFactory.getMetadata(US)).thenThrow(ioException);
+
+        assertUnknownBounds(getDigitCountBounds(US, mockFactory, mockLogger));
+
+        verify(mockFactory).isSupportedRegion(US);
+        verify(mockFactory).getMetadata(US);
+        verify(mockLogger).warn(String.format(UNREADABLE_METADATA_MSG, US), ioException);
+    }
+
+    @Test
+    public void testGetDigitCountBoundsNoPossibleLengths() throws IOException {
+        when(mockFactory.isSupportedRegion(US)).thenReturn(true);
+        when(mockFactory.getMetadata(US)).thenReturn(new PhoneMetadata().setGeneralDesc(new PhoneNumberDesc()));
+
+        assertUnknownBounds(getDigitCountBounds(US, mockFactory, mockLogger));
+
+        verify(mockFactory).isSupportedRegion(US);
+        verify(mockFactory).getMetadata(US);
+    }
+
+    @Test
+    public void testGetDigitCountBoundsNoMetadataForMainRegion() throws IOException {
+        final PhoneMetadata caMetadata = getMetadata(CA);
+        when(mockFactory.isSupportedRegion(CA)).thenReturn(true);
+        when(mockFactory.getMetadata(CA)).thenReturn(caMetadata);
+        when(mockFactory.getMainRegionCode(caMetadata.getCountryCode())).thenReturn(US);
+
+        assertUnknownBounds(getDigitCountBounds(CA, mockFactory, mockLogger));
+
+        verify(mockFactory).isSupportedRegion(CA);
+        verify(mockFactory).getMetadata(CA);
+        verify(mockFactory).getMainRegionCode(caMetadata.getCountryCode());
+        verify(mockFactory).getMetadata(US);
+        verify(mockLogger).warn(String.format(MISSING_METADATA_MSG, US));
+    }
+
+    @Test
+    public void testGetCandidateRegionCodes() {
+        final PhoneNumberRegionIndex phoneNumberRegionIndex = new PhoneNumberRegionIndex(Arrays.asList(US, FR, AQ));
+        final List<String> usAndFr = Arrays.asList(US, FR);
+
+        assertEquals(Collections.emptyList(), phoneNumberRegionIndex.getCandidateRegionCodes("12:00:00"));
+        assertEquals(Collections.singletonList(FR), phoneNumberRegionIndex.getCandidateRegionCodes("6 23 12 45 54"));
+        assertEquals(usAndFr, phoneNumberRegionIndex.getCandidateRegionCodes("(800) 555-1212"));
+        assertEquals(Collections.singletonList(US),
+                phoneNumberRegionIndex.getCandidateRegionCodes("011 1 800 555 1212 123"));
+        assertEquals(Collections.emptyList(),
+                phoneNumberRegionIndex.getCandidateRegionCodes("(800) 555-1212 1234567890123"));
+    }
+
+    @Test
+    public void testGetCandidateRegionCodesExtension() {
+        final PhoneNumberRegionIndex phoneNumberRegionIndex = new PhoneNumberRegionIndex(Arrays.asList(US, FR, AQ));
+        final List<String> usAndFr = Arrays.asList(US, FR);
+
+        // The digits after these characters could be an extension, so there is no upper bound
+        for (final char c : PhoneNumberRegionIndex.EXTENSION_CHARS.toCharArray()) {
+            final String input = "(800) 555-1212" + c + "1234567890123";
+            assertEquals(input, usAndFr, phoneNumberRegionIndex.getCandidateRegionCodes(input));
+        }
+    }
+
+    @Test
+    public void testGetCandidateRegionCodesNonAscii() {
+        final PhoneNumberRegionIndex phoneNumberRegionIndex = new PhoneNumberRegionIndex(Arrays.asList(US, FR, AQ));
+
+        // Full width digits are digits to libphonenumber, so a value with non-ASCII characters is not indexed
+        assertEquals(Arrays.asList(US, FR, AQ), phoneNumberRegionIndex.getCandidateRegionCodes("\uFF11\uFF12"));
+    }
+
+    private static void assertUnknownBounds(DigitCountBounds bounds) {
+        assertEquals(0, bounds.minimum);
+        assertEquals(UNBOUNDED, bounds.maximum);
+    }
+
+    private static PhoneMetadata getMetadata(String regionCode) {
+        try {
+            return new Factory().getMetadata(regionCode);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2018 Expedia, Inc.
+ *
+ *       Licensed under the Apache License, Version 2.0 (the "License");
+ *       you may not use this file except in compliance with the License.
+ *       You may obtain a copy of the License at
+ *
+ *           http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *       Unless required by applicable law or agreed to in writing, software
+ *       distributed under the License is distributed on an "AS IS" BASIS,
+ *       WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *       See the License for the specific language governing permissions and
+ *       limitations under the License.
+ *
+ */
+package com.expedia.www.haystack.commons.secretDetector;
+
+import com.google.common.collect.ImmutableList;
+import io.dataapps.chlorine.finder.Finder;
+import io.dataapps.chlorine.pattern.RegexFinder;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class RegexFinderUnionTest {
+    private static final RegexFinder EMAIL_FINDER =
+            new RegexFinder("Email", "(\\D|^)[A-Z0-9._%+-]+@([A-Z0-9.-]+)\\.([A-Z]{2,4})(\\D|$)");
+    private static final RegexFinder SSN_DASHES_FINDER =
+            new RegexFinder("SSN-dashes", "^[0-9]{3}\\-[0-9]{2}\\-[0-9]{4}$");
+    private static final RegexFinder CASE_SENSITIVE_FINDER = new RegexFinder("CaseSensitive", "abc", 0);
+    private static final RegexFinder OTHER_CASE_SENSITIVE_FINDER = new RegexFinder("OtherCaseSensitive", "xyz", 0);
+    private static final RegexFinder BACK_REFERENCE_FINDER = new RegexFinder("BackReference", "(a)\\1");
+    private static final RegexFinder NAMED_GROUP_FINDER = new RegexFinder("NamedGroup", "(?<n>q)", 0);
+    private static final RegexFinder SAME_NAMED_GROUP_FINDER = new RegexFinder("SameNamedGroup", "(?<n>r)", 0);
+    private static final Finder NON_LOCAL_IP_V4_ADDRESS_FINDER = new NonLocalIpV4AddressFinder();
+
+    private RegexFinderUnion regexFinderUnion;
+
+    @Before
+    public void setUp() {
+        regexFinderUnion = new RegexFinderUnion(ImmutableList.of(EMAIL_FINDER, NON_LOCAL_IP_V4_ADDRESS_FINDER,
+                SSN_DASHES_FINDER, CASE_SENSITIVE_FINDER, OTHER_CASE_SENSITIVE_FINDER, BACK_REFERENCE_FINDER));
+    }
+
+    @Test
+    public void testPatternsAreGroupedByFlags() {
+        assertEquals(2, regexFinderUnion.getUnionCount());
+        assertEquals(0, regexFinderUnion.getUnionIndex(EMAIL_FINDER));
+        assertEquals(0, regexFinderUnion.getUnionIndex(SSN_DASHES_FINDER));
+        assertEquals(1, regexFinderUnion.getUnionIndex(CASE_SENSITIVE_FINDER));
+        assertEquals(1, regexFinderUnion.getUnionIndex(OTHER_CASE_SENSITIVE_FINDER));
+    }
+
+    @Test
+    public void testFindersThatAreNotCombined() {
+        assertEquals(-1, regexFinderUnion.getUnionIndex(NON_LOCAL_IP_V4_ADDRESS_FINDER));
+        assertEquals(-1, regexFinderUnion.getUnionIndex(BACK_REFERENCE_FINDER));
+    }
+
+    @Test
+    public void testSinglePatternIsNotCombined() {
+        regexFinderUnion = new RegexFinderUnion(ImmutableList.of(EMAIL_FINDER, CASE_SENSITIVE_FINDER));
+        assertEquals(0, regexFinderUnion.getUnionCount());
+        assertEquals(-1, regexFinderUnion.getUnionIndex(EMAIL_FINDER));
+    }
+
+    @Test
+    public void testPatternsThatCannotBeCombined() {
+        regexFinderUnion = new RegexFinderUnion(ImmutableList.of(NAMED_GROUP_FINDER, SAME_NAMED_GROUP_FINDER));
+        assertEquals(0, regexFinderUnion.getUnionCount());
+        assertEquals(-1, regexFinderUnion.getUnionIndex(NAMED_GROUP_FINDER));
+    }
+
+    @Test
+    public void testFind() {
+        assertTrue(regexFinderUnion.find(0, "mail haystack@expedia.com now"));
+        assertTrue(regexFinderUnion.find(0, "123-45-6789"));
+        assertFalse(regexFinderUnion.find(0, "nothing to see here"));
+        assertTrue(regexFinderUnion.find(1, "--xyz--"));
+        assertFalse(regexFinderUnion.find(1, "ABC"));
+    }
+
+    @Test
+    public void testFindAgreesWithIndividualFinders() {
+        final String[] inputs = {"", "abc", "123 45 6789", "123-45-6789", "line\n123-45-6789\nline", "a@b.com",
+                "a@b", "A@B.COM.", "xyz"};
+        for (final String input : inputs) {
+            final boolean expected = !EMAIL_FINDER.find(input).isEmpty() || !SSN_DASHES_FINDER.find(input).isEmpty();
+            assertEquals(input, expected, regexFinderUnion.find(0, input));
+        }
+    }
+}
@@ -16,13 +16,18 @@
  */
 package com.expedia.www.haystack.commons.secretDetector;
 
+import com.amazonaws.SdkClientException;
 import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.Headers;
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.ObjectMetadata;
 import com.amazonaws.services.s3.model.S3Object;
 import com.amazonaws.services.s3.model.S3ObjectInputStream;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Matchers;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
@@ -31,21 +36,28 @@ import org.slf4j.Logger;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
-import java.util.Map;
-import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 
 import static com.expedia.www.haystack.commons.secretDetector.S3ConfigFetcherBase.ERROR_MESSAGE;
 import static com.expedia.www.haystack.commons.secretDetector.S3ConfigFetcherBase.INVALID_DATA_MSG;
+import static com.expedia.www.haystack.commons.secretDetector.S3ConfigFetcherBase.ONE_HOUR;
 import static com.expedia.www.haystack.commons.secretDetector.S3ConfigFetcherBase.SUCCESSFUL_WHITELIST_UPDATE_MSG;
+import static com.expedia.www.haystack.commons.secretDetector.S3ConfigFetcherBase.UNCHANGED_WHITELIST_MSG;
 import static com.expedia.www.haystack.commons.secretDetector.TestConstantsAndCommonCode.RANDOM;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
 import static org.mockito.Matchers.any;
-import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.anyLong;
 import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
@@ -56,8 +68,7 @@ import static org.mockito.Mockito.when;
 public class S3ConfigFetcherTest {
     private static final String BUCKET = RANDOM.nextLong() + "BUCKET";
     private static final String KEY = RANDOM.nextLong() + "KEY";
-    private static final long ONE_HOUR = 60L * 60L * 1000L;
-    private static final long MORE_THAN_ONE_HOUR = ONE_HOUR + 1L + RANDOM.nextInt(Integer.MAX_VALUE);
+    private static final String ETAG = RANDOM.nextLong() + "ETAG";
     private static final String FINDER_NAME = "FinderName";
     private static final String XML_PATH = "XmlPath";
     private static final String COMMENT = "Comment";
@@ -98,15 +109,25 @@ public class S3ConfigFetcherTest {
     @Mock
     private BufferedReader mockBufferedReader;
 
+    @Mock
+    private ScheduledExecutorService mockScheduledExecutorService;
+
+    @Mock
+    private ScheduledFuture<?> mockScheduledFuture;
+
     private S3ConfigFetcher spanS3ConfigFetcher;
     private S3ConfigFetcher.SpanFactory factory;
-    private int wantedNumberOfInvocationsCreateWhiteList = 1;
+    private int wantedNumberOfInvocationsCreateWhiteList;
 
     @Before
     public void setUp() {
         factory = new S3ConfigFetcher.SpanFactory();
         when(mockWhiteListConfig.bucket()).thenReturn(BUCKET);
         when(mockWhiteListConfig.key()).thenReturn(KEY);
+        when(mockFactory.createScheduledExecutorService()).thenReturn(mockScheduledExecutorService);
+        when(mockFactory.createWhiteList()).thenAnswer(invocation -> new NamePairSet.Builder());
+        doReturn(mockScheduledFuture).when(mockScheduledExecutorService).scheduleWithFixedDelay(
+                any(Runnable.class), anyLong(), anyLong(), any(TimeUnit.class));
         spanS3ConfigFetcher = new S3ConfigFetcher(
                 null, mockS3ConfigFetcherLogger, mockWhiteListConfig, mockAmazonS3, mockFactory);
     }
@@ -116,114 +137,217 @@ public class S3ConfigFetcherTest {
         verify(mockFactory, times(wantedNumberOfInvocationsCreateWhiteList)).createWhiteList();
         verify(mockWhiteListConfig).bucket();
         verify(mockWhiteListConfig).key();
+        verifyNoMoreInteractions(mockScheduledExecutorService, mockScheduledFuture);
         verifyNoMoreInteractions(mockS3Object, mockS3ObjectInputStream, mockInputStreamReader, mockBufferedReader);
         verifyNoMoreInteractions(mockS3ConfigFetcherLogger, mockWhiteListConfig, mockAmazonS3, mockFactory);
     }
 
     @Test
     public void testSmallConstructor() {
-        new S3ConfigFetcher(null, BUCKET, KEY);
+        new S3ConfigFetcher(null, BUCKET, KEY).close();
+    }
+
+    @Test
+    public void testDefaultToWhiteListSnapshotReturnsWhiteList() {
+        final S3ConfigFetcherBase s3ConfigFetcherBase = new S3ConfigFetcherBase(
+                S3ConfigFetcherBase.Prefix.JSON, mockS3ConfigFetcherLogger, BUCKET, KEY, mockAmazonS3, mockFactory, 0) {
+            @Override
+            protected void putItemInWhiteList(Object whiteList, WhiteListItemBase whiteListItem) {
+            }
+
+            @Override
+            public boolean isInWhiteList(String... strings) {
+                return false;
+            }
+        };
+        final Object whiteList = new Object();
+
+        assertSame(whiteList, s3ConfigFetcherBase.toWhiteListSnapshot(whiteList));
+    }
+
+    @Test
+    public void testGetWhiteListItemsStartsTheFetcher() {
+        wantedNumberOfInvocationsCreateWhiteList = 1;
+        final SdkClientException sdkClientException = new SdkClientException("Test");
+        when(mockAmazonS3.getObject(any(GetObjectRequest.class))).thenThrow(sdkClientException);
+
+        assertEquals(0, ((NamePairSet) spanS3ConfigFetcher.getWhiteListItems()).size());
+        // Only the first lookup fetches the white list
+        assertEquals(0, ((NamePairSet) spanS3ConfigFetcher.getWhiteListItems()).size());
+
+        assertGetObjectRequests(Collections.emptyList());
+        verifiesForStart();
+        verify(mockS3ConfigFetcherLogger).error(ERROR_MESSAGE, sdkClientException);
     }
 
     @Test
-    public void testGetWhiteListItemsOneMillisecondEarly() {
-        when(mockFactory.createCurrentTimeMillis()).thenReturn(ONE_HOUR);
+    public void testCloseBeforeStart() {
+        wantedNumberOfInvocationsCreateWhiteList = 1;
+        final SdkClientException sdkClientException = new SdkClientException("Test");
+        when(mockAmazonS3.getObject(any(GetObjectRequest.class))).thenThrow(sdkClientException);
 
-        @SuppressWarnings("unchecked") final Map<String, Set<String>> whiteList =
-                (Map<String, Set<String>>) spanS3ConfigFetcher.getWhiteListItems();
-        assertTrue(whiteList.isEmpty());
+        spanS3ConfigFetcher.close();
+        assertEquals(0, ((NamePairSet) spanS3ConfigFetcher.getWhiteListItems()).size());
 
-        verify(mockFactory).createCurrentTimeMillis();
+        assertGetObjectRequests(Collections.emptyList());
+        verify(mockS3ConfigFetcherLogger).error(ERROR_MESSAGE, sdkClientException);
     }
 
     @Test
-    public void testGetWhiteListItemsSuccessfulFetch() throws IOException {
-        wantedNumberOfInvocationsCreateWhiteList = 2;
-        whensForGetWhiteListItems();
-        when(mockBufferedReader.readLine()).thenReturn(ONE_LINE_OF_GOOD_DATA)
-                .thenReturn(SECOND_LINE_OF_GOOD_DATA, (String) null);
+    public void testRefreshSuccessfulFetch() throws IOException {
+        wantedNumberOfInvocationsCreateWhiteList = 1;
+        whensForRefresh();
+        when(mockBufferedReader.readLine()).thenReturn(ONE_LINE_OF_GOOD_DATA, SECOND_LINE_OF_GOOD_DATA, null);
         when(mockFactory.createWhiteListItem(Matchers.<String>anyVararg()))
                 .thenReturn(SPAN_WHITE_LIST_ITEM, SECOND_SPAN_WHITE_LIST_ITEM);
 
-        spanS3ConfigFetcher.getWhiteListItems();
+        spanS3ConfigFetcher.start();
+        spanS3ConfigFetcher.start();
 
         assertTrue(spanS3ConfigFetcher.isInWhiteList(FINDER_NAME, XML_PATH));
         assertFalse(spanS3ConfigFetcher.isInWhiteList(MISSING_FINDER_NAME, XML_PATH));
         assertFalse(spanS3ConfigFetcher.isInWhiteList(FINDER_NAME, MISSING_XML_PATH));
-        assertEquals(MORE_THAN_ONE_HOUR, spanS3ConfigFetcher.getLastUpdateTimeForTest());
-        assertFalse(spanS3ConfigFetcher.isUpdateInProgressForTest());
 
-        verifiesForGetWhiteListItems(3, 4);
+        assertGetObjectRequests(Collections.emptyList());
+        verifiesForRefresh(3);
+        verify(mockS3Object).getObjectMetadata();
         verify(mockFactory).createWhiteListItem(FINDER_NAME, XML_PATH, COMMENT);
         verify(mockFactory).createWhiteListItem(SECOND_FINDER_NAME, XML_PATH, COMMENT);
+        verifiesForStart();
+        verify(mockS3ConfigFetcherLogger).info(SUCCESSFUL_WHITELIST_UPDATE_MSG);
+    }
+
+    @Test
+    public void testRefreshUnchanged() throws IOException {
+        wantedNumberOfInvocationsCreateWhiteList = 1;
+        whensForRefresh();
+        when(mockAmazonS3.getObject(any(GetObjectRequest.class))).thenReturn(mockS3Object, (S3Object) null);
+        when(mockBufferedReader.readLine()).thenReturn(ONE_LINE_OF_GOOD_DATA, (String) null);
+        when(mockFactory.createWhiteListItem(Matchers.<String>anyVararg())).thenReturn(SPAN_WHITE_LIST_ITEM);
+
+        spanS3ConfigFetcher.start();
+        spanS3ConfigFetcher.refresh();
+
+        // The second request carries the ETag of the first response, and S3 answers that nothing has changed
+        assertTrue(spanS3ConfigFetcher.isInWhiteList(FINDER_NAME, XML_PATH));
+        assertGetObjectRequests(Collections.emptyList(), Collections.singletonList(ETAG));
+        verifiesForRefresh(2);
+        verify(mockS3Object).getObjectMetadata();
+        verify(mockFactory).createWhiteListItem(Matchers.<String>anyVararg());
+        verifiesForStart();
         verify(mockS3ConfigFetcherLogger).info(SUCCESSFUL_WHITELIST_UPDATE_MSG);
+        verify(mockS3ConfigFetcherLogger).debug(UNCHANGED_WHITELIST_MSG);
     }
 
     @Test
-    public void testGetWhiteListItemsUpdateInProgress() throws IOException {
+    public void testScheduledRefresh() {
+        wantedNumberOfInvocationsCreateWhiteList = 1;
+        final SdkClientException sdkClientException = new SdkClientException("Test");
+        when(mockAmazonS3.getObject(any(GetObjectRequest.class))).thenThrow(sdkClientException);
+        spanS3ConfigFetcher.start();
+        final ArgumentCaptor<Runnable> runnableCaptor = ArgumentCaptor.forClass(Runnable.class);
+        verify(mockScheduledExecutorService).scheduleWithFixedDelay(
+                runnableCaptor.capture(), anyLong(), anyLong(), any(TimeUnit.class));
+
+        runnableCaptor.getValue().run();
+
+        assertGetObjectRequests(Collections.emptyList(), Collections.emptyList());
+        verifiesForStart();
+        verify(mockS3ConfigFetcherLogger, times(2)).error(ERROR_MESSAGE, sdkClientException);
+    }
+
+    @SuppressWarnings("deprecation")
+    @Test
+    public void testDeprecatedTestHooksDoNotGateRefresh() {
+        final SdkClientException sdkClientException = new SdkClientException("Test");
+        when(mockAmazonS3.getObject(any(GetObjectRequest.class))).thenThrow(sdkClientException);
         spanS3ConfigFetcher.setUpdateInProgressForTest(true);
-        whensForGetWhiteListItems();
-        when(mockBufferedReader.readLine()).thenReturn(ONE_LINE_OF_GOOD_DATA).thenReturn(null);
 
-        @SuppressWarnings("unchecked") final Map<String, Set<String>> whiteList =
-                (Map<String, Set<String>>) spanS3ConfigFetcher.getWhiteListItems();
-        assertsForEmptyWhiteList(whiteList, true, 0);
+        spanS3ConfigFetcher.refresh();
 
-        verify(mockFactory).createCurrentTimeMillis();
+        assertFalse(spanS3ConfigFetcher.isUpdateInProgressForTest());
+        assertEquals(0L, spanS3ConfigFetcher.getLastUpdateTimeForTest());
+        assertGetObjectRequests(Collections.emptyList());
+        verify(mockS3ConfigFetcherLogger).error(ERROR_MESSAGE, sdkClientException);
     }
 
     @Test
-    public void testGetWhiteListItemsExceptionReadingFromS3() throws IOException {
+    public void testClose() {
+        wantedNumberOfInvocationsCreateWhiteList = 1;
+        final SdkClientException sdkClientException = new SdkClientException("Test");
+        when(mockAmazonS3.getObject(any(GetObjectRequest.class))).thenThrow(sdkClientException);
+        spanS3ConfigFetcher.start();
+
+        spanS3ConfigFetcher.close();
+
+        assertGetObjectRequests(Collections.emptyList());
+        verifiesForStart();
+        verify(mockS3ConfigFetcherLogger).error(ERROR_MESSAGE, sdkClientException);
+        verify(mockScheduledFuture).cancel(false);
+    }
+
+    @Test
+    public void testRefreshExceptionReadingFromS3() throws IOException {
         wantedNumberOfInvocationsCreateWhiteList = 2;
         final IOException ioException = new IOException("Test");
-        whensForGetWhiteListItems();
+        whensForRefresh();
         when(mockBufferedReader.readLine()).thenThrow(ioException);
 
-        @SuppressWarnings("unchecked") final Map<String, Set<String>> whiteList =
-                (Map<String, Set<String>>) spanS3ConfigFetcher.getWhiteListItems();
-        assertsForEmptyWhiteList(whiteList, false, MORE_THAN_ONE_HOUR);
+        spanS3ConfigFetcher.start();
 
-        verifiesForGetWhiteListItems(1, 1);
+        assertEquals(0, ((NamePairSet) spanS3ConfigFetcher.getWhiteListItems()).size());
+        assertGetObjectRequests(Collections.emptyList());
+        verifiesForStart();
+        verifiesForRefresh(1);
         verify(mockS3ConfigFetcherLogger).error(ERROR_MESSAGE, ioException);
     }
 
     @Test
-    public void testGetWhiteListItemsBadData() throws IOException {
+    public void testRefreshBadData() throws IOException {
         wantedNumberOfInvocationsCreateWhiteList = 2;
-        whensForGetWhiteListItems();
+        whensForRefresh();
         when(mockBufferedReader.readLine()).thenReturn(ONE_LINE_OF_BAD_DATA, (String) null);
 
-        @SuppressWarnings("unchecked") final Map<String, Set<String>> whiteList =
-                (Map<String, Set<String>>) spanS3ConfigFetcher.getWhiteListItems();
+        spanS3ConfigFetcher.start();
 
-        assertsForEmptyWhiteList(whiteList, false, MORE_THAN_ONE_HOUR);
-        verifiesForGetWhiteListItems(1, 1);
+        assertEquals(0, ((NamePairSet) spanS3ConfigFetcher.getWhiteListItems()).size());
+        assertGetObjectRequests(Collections.emptyList());
+        verifiesForStart();
+        verifiesForRefresh(1);
         verify(mockS3ConfigFetcherLogger).error(eq(String.format(INVALID_DATA_MSG, ONE_LINE_OF_BAD_DATA, 1)),
                 any(S3ConfigFetcherBase.InvalidWhitelistItemInputException.class));
     }
 
-    private void assertsForEmptyWhiteList(Map<String, Set<String>> whiteList,
-                                          boolean isUpdateInProgress,
-                                          long lastUpdateTime) {
-        assertTrue(whiteList.isEmpty());
-        assertEquals(lastUpdateTime, spanS3ConfigFetcher.getLastUpdateTimeForTest());
-        assertEquals(isUpdateInProgress, spanS3ConfigFetcher.isUpdateInProgressForTest());
-    }
-
-    private void whensForGetWhiteListItems() {
-        when(mockFactory.createCurrentTimeMillis()).thenReturn(MORE_THAN_ONE_HOUR);
-        when(mockAmazonS3.getObject(anyString(), anyString())).thenReturn(mockS3Object);
+    private void whensForRefresh() {
+        final ObjectMetadata objectMetadata = new ObjectMetadata();
+        objectMetadata.setHeader(Headers.ETAG, ETAG);
+        when(mockAmazonS3.getObject(any(GetObjectRequest.class))).thenReturn(mockS3Object);
         when(mockS3Object.getObjectContent()).thenReturn(mockS3ObjectInputStream);
+        when(mockS3Object.getObjectMetadata()).thenReturn(objectMetadata);
         when(mockFactory.createInputStreamReader(any())).thenReturn(mockInputStreamReader);
         when(mockFactory.createBufferedReader(any())).thenReturn(mockBufferedReader);
-        when(mockFactory.createWhiteList()).thenReturn(new ConcurrentHashMap<>());
     }
 
-    @SuppressWarnings("resource")
-    private void verifiesForGetWhiteListItems(int wantedNumberOfInvocationsReadLine,
-                                              int wantedNumberOfInvocationsCreateCurrentTimeMillis) throws IOException {
-        verify(mockFactory, times(wantedNumberOfInvocationsCreateCurrentTimeMillis)).createCurrentTimeMillis();
-        verify(mockAmazonS3).getObject(BUCKET, KEY);
+    @SafeVarargs
+    private final void assertGetObjectRequests(List<String>... nonmatchingETagConstraints) {
+        final ArgumentCaptor<GetObjectRequest> getObjectRequestCaptor = ArgumentCaptor.forClass(GetObjectRequest.class);
+        verify(mockAmazonS3, times(nonmatchingETagConstraints.length)).getObject(getObjectRequestCaptor.capture());
+        for (int index = 0; index < nonmatchingETagConstraints.length; index++) {
+            final GetObjectRequest getObjectRequest = getObjectRequestCaptor.getAllValues().get(index);
+            assertEquals(BUCKET, getObjectRequest.getBucketName());
+            assertEquals(KEY, getObjectRequest.getKey());
+            assertEquals(nonmatchingETagConstraints[index], getObjectRequest.getNonmatchingETagConstraints());
+        }
+    }
+
+    private void verifiesForStart() {
+        verify(mockFactory).createScheduledExecutorService();
+        verify(mockScheduledExecutorService).scheduleWithFixedDelay(
+                any(Runnable.class), eq(ONE_HOUR), eq(ONE_HOUR), eq(MILLISECONDS));
+    }
+
+    @SuppressWarnings({"resource", "Duplicates"})
+    private void verifiesForRefresh(int wantedNumberOfInvocationsReadLine) throws IOException {
         verify(mockS3Object).getObjectContent();
         verify(mockS3Object).close();
         verify(mockFactory).createInputStreamReader(mockS3ObjectInputStream);
@@ -231,11 +355,22 @@ public class S3ConfigFetcherTest {
         verify(mockBufferedReader, times(wantedNumberOfInvocationsReadLine)).readLine();
     }
 
+    @Test
+    public void testFactoryCreateScheduledExecutorService() {
+        final ScheduledExecutorService scheduledExecutorService = factory.createScheduledExecutorService();
+
+        assertSame(scheduledExecutorService, factory.createScheduledExecutorService());
+        assertFalse(scheduledExecutorService.isShutdown());
+    }
+
+    @SuppressWarnings("deprecation")
     @Test
     public void testFactoryCreateCurrentTimeMillis() {
-        final long currentTimeMillis = System.currentTimeMillis();
+        final long before = System.currentTimeMillis();
+        final long currentTimeMillis = factory.createCurrentTimeMillis();
 
-        assertTrue(factory.createCurrentTimeMillis() >= currentTimeMillis);
+        assertTrue(before <= currentTimeMillis);
+        assertTrue(currentTimeMillis <= System.currentTimeMillis());
     }
 
     @Test
@@ -258,7 +393,6 @@ public class S3ConfigFetcherTest {
 
     @Test
     public void testGetWhiteList() {
-        final Map<String, Set<String>> whiteList = factory.createWhiteList();
-        assertNotNull(whiteList);
+        assertNotNull(factory.createWhiteList());
     }
 }
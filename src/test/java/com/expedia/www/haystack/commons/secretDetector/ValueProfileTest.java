@@ -0,0 +1,107 @@
+/*
+ * Copyright 2018 Expedia, Inc.
+ *
+ *       Licensed under the Apache License, Version 2.0 (the "License");
+ *       you may not use this file except in compliance with the License.
+ *       You may obtain a copy of the License at
+ *
+ *           http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *       Unless required by applicable law or agreed to in writing, software
+ *       distributed under the License is distributed on an "AS IS" BASIS,
+ *       WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *       See the License for the specific language governing permissions and
+ *       limitations under the License.
+ *
+ */
+package com.expedia.www.haystack.commons.secretDetector;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ValueProfileTest {
+    private ValueProfile valueProfile;
+
+    @Before
+    public void setUp() {
+        valueProfile = new ValueProfile();
+    }
+
+    @Test
+    public void testProfileReturnsThis() {
+        assertSame(valueProfile, valueProfile.profile(""));
+    }
+
+    @Test
+    public void testProfileEmptyValue() {
+        valueProfile.profile("");
+
+        verifyCounts(0, 0, 0, 0, 0, 0);
+        assertFalse(valueProfile.hasAsciiLetters());
+        assertFalse(valueProfile.isAllAsciiDigits());
+        assertTrue(valueProfile.isAscii());
+    }
+
+    @Test
+    public void testProfileMixedValue() {
+        valueProfile.profile("Az 09-@.\u0663_");
+
+        verifyCounts(10, 3, 2, 1, 1, 2);
+        assertTrue(valueProfile.hasAsciiLetters());
+        assertFalse(valueProfile.isAllAsciiDigits());
+        assertFalse(valueProfile.isAscii());
+    }
+
+    @Test
+    public void testProfileAllAsciiDigits() {
+        valueProfile.profile("0123456789");
+
+        verifyCounts(10, 10, 10, 0, 0, 0);
+        assertFalse(valueProfile.hasAsciiLetters());
+        assertTrue(valueProfile.isAllAsciiDigits());
+        assertTrue(valueProfile.isAscii());
+    }
+
+    @Test
+    public void testProfileReplacesPreviousProfile() {
+        valueProfile.profile("user@example.com 555-1212");
+        valueProfile.profile("\u0663\u0664");
+
+        verifyCounts(2, 2, 0, 0, 0, 0);
+        assertFalse(valueProfile.hasAsciiLetters());
+        assertFalse(valueProfile.isAllAsciiDigits());
+    }
+
+    @Test
+    public void testProfileNonAsciiLetter() {
+        valueProfile.profile("caf\u00e9");
+
+        verifyCounts(4, 0, 0, 0, 0, 0);
+        assertTrue(valueProfile.hasAsciiLetters());
+        assertFalse(valueProfile.isAscii());
+    }
+
+    @Test
+    public void testProfileColons() {
+        valueProfile.profile("fe80::1:2");
+
+        verifyCounts(9, 4, 4, 0, 0, 0);
+        assertEquals(3, valueProfile.getColonCount());
+        assertTrue(valueProfile.hasAsciiLetters());
+    }
+
+    private void verifyCounts(int length, int digitCount, int asciiDigitCount,
+                              int atSignCount, int periodCount, int separatorCount) {
+        assertEquals(length, valueProfile.getLength());
+        assertEquals(digitCount, valueProfile.getDigitCount());
+        assertEquals(asciiDigitCount, valueProfile.getAsciiDigitCount());
+        assertEquals(atSignCount, valueProfile.getAtSignCount());
+        assertEquals(periodCount, valueProfile.getPeriodCount());
+        assertEquals(separatorCount, valueProfile.getSeparatorCount());
+    }
+}
@@ -17,6 +17,7 @@
 package com.expedia.www.haystack.commons.secretDetector.json;
 
 import com.expedia.www.haystack.commons.secretDetector.DetectorTestBase;
+import com.expedia.www.haystack.commons.secretDetector.FinderEngineRegistry;
 import com.expedia.www.haystack.commons.secretDetector.HaystackFinderEngine;
 import com.expedia.www.haystack.commons.secretDetector.S3ConfigFetcher;
 import com.google.gson.Gson;
@@ -41,7 +42,10 @@ import static com.expedia.www.haystack.commons.secretDetector.TestConstantsAndCo
 import static com.expedia.www.haystack.commons.secretDetector.TestConstantsAndCommonCode.RANDOM;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
+import static org.mockito.Mockito.when;
 
 @RunWith(MockitoJUnitRunner.class)
 public class JsonDetectorTest extends DetectorTestBase {
@@ -55,6 +59,12 @@ public class JsonDetectorTest extends DetectorTestBase {
     @Mock
     private S3ConfigFetcher mockS3ConfigFetcher;
 
+    @Mock
+    private FinderEngineRegistry mockFinderEngineRegistry;
+
+    @Mock
+    private HaystackFinderEngine mockHaystackFinderEngine;
+
     private JsonDetector jsonDetector;
 
     @Before
@@ -67,6 +77,7 @@ public class JsonDetectorTest extends DetectorTestBase {
     @After
     public void tearDown() {
         verifyNoMoreInteractions(mockS3ConfigFetcher);
+        verifyNoMoreInteractions(mockFinderEngineRegistry, mockHaystackFinderEngine);
     }
 
     @Test
@@ -74,6 +85,26 @@ public class JsonDetectorTest extends DetectorTestBase {
         new JsonDetector(BUCKET, SUBSYSTEM, APPLICATION);
     }
 
+    @Test
+    public void testCloseLeavesFetcherOfCallerOpen() {
+        jsonDetector.close();
+
+        verify(mockS3ConfigFetcher, never()).close();
+    }
+
+    @Test
+    public void testCloseReleasesAcquiredEngine() {
+        when(mockFinderEngineRegistry.acquire(SUBSYSTEM, APPLICATION)).thenReturn(mockHaystackFinderEngine);
+        final JsonDetector jsonDetectorThatAcquired =
+                new JsonDetector(mockFinderEngineRegistry, BUCKET, SUBSYSTEM, APPLICATION);
+
+        jsonDetectorThatAcquired.close();
+        jsonDetectorThatAcquired.close();
+
+        verify(mockFinderEngineRegistry).acquire(SUBSYSTEM, APPLICATION);
+        verify(mockFinderEngineRegistry).release(mockHaystackFinderEngine);
+    }
+
     @Test
     public void testFindSecretsNoSecrets() {
         whensForFindSecrets();
@@ -82,7 +113,7 @@ public class JsonDetectorTest extends DetectorTestBase {
                 jsonDetector.findSecrets(createJsonString(NOT_A_SECRET_STRING, NOT_A_SECRET_STRING));
 
         assertTrue(secrets.isEmpty());
-        verifiesForFindSecrets(26, 1);
+        verifiesForFindSecrets(8, 1, 0, 0, 0);
     }
 
     @Test
@@ -97,7 +128,7 @@ public class JsonDetectorTest extends DetectorTestBase {
         final Collection<List<String>> values = secrets.values();
         assertEquals(1, values.size());
         assertEquals("rootElement.childMap.childKey", values.iterator().next().get(0));
-        verifiesForFindSecrets(14, 1);
+        verifiesForFindSecrets(5, 1, 0, 0, 0);
     }
 
     @Test
@@ -112,7 +143,7 @@ public class JsonDetectorTest extends DetectorTestBase {
         final Collection<List<String>> values = secrets.values();
         assertEquals(1, values.size());
         assertEquals("rootElement.childArray.[0]", values.iterator().next().get(0));
-        verifiesForFindSecrets(14, 1);
+        verifiesForFindSecrets(5, 1, 0, 0, 0);
     }
 
     @Test
@@ -129,7 +160,7 @@ public class JsonDetectorTest extends DetectorTestBase {
         final List<String> ids = values.iterator().next();
         assertEquals("rootElement.childMap.childKey", ids.get(0));
         assertEquals("rootElement.childArray.[0]", ids.get(1));
-        verifiesForFindSecrets(2, 0);
+        verifiesForFindSecrets(2, 0, 0, 0, 0);
     }
 
     private static JsonObject createJsonString(String mapValue, String arrayValue) {
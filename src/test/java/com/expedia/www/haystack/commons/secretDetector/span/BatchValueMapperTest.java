@@ -0,0 +1,191 @@
+/*
+ * Copyright 2018 Expedia, Inc.
+ *
+ *       Licensed under the Apache License, Version 2.0 (the "License");
+ *       you may not use this file except in compliance with the License.
+ *       You may obtain a copy of the License at
+ *
+ *           http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *       Unless required by applicable law or agreed to in writing, software
+ *       distributed under the License is distributed on an "AS IS" BASIS,
+ *       WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *       See the License for the specific language governing permissions and
+ *       limitations under the License.
+ *
+ */
+package com.expedia.www.haystack.commons.secretDetector.span;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+
+import static com.expedia.www.haystack.commons.secretDetector.span.BatchValueMapper.CHUNKS_PER_THREAD;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+
+@RunWith(MockitoJUnitRunner.class)
+public class BatchValueMapperTest {
+    private static final int PARALLELISM = 4;
+    private static final int BATCH_SIZE = PARALLELISM * CHUNKS_PER_THREAD * 10 + 3;
+
+    @Mock
+    private Executor mockExecutor;
+
+    private ForkJoinPool forkJoinPool;
+
+    @Before
+    public void setUp() {
+        forkJoinPool = new ForkJoinPool(PARALLELISM);
+    }
+
+    @After
+    public void tearDown() {
+        forkJoinPool.shutdown();
+        verifyNoMoreInteractions(mockExecutor);
+    }
+
+    @Test
+    public void testApplyKeepsOrder() {
+        final BatchValueMapper<Integer, String> batchValueMapper =
+                new BatchValueMapper<>(String::valueOf, forkJoinPool);
+        final List<Integer> values = createValues(BATCH_SIZE);
+
+        final List<String> results = batchValueMapper.apply(values);
+
+        assertEquals(BATCH_SIZE, results.size());
+        for (int index = 0; index < BATCH_SIZE; index++) {
+            assertEquals(String.valueOf(index), results.get(index));
+        }
+    }
+
+    @Test
+    public void testApplyBatchSmallerThanChunkCount() {
+        final BatchValueMapper<Integer, String> batchValueMapper =
+                new BatchValueMapper<>(String::valueOf, forkJoinPool);
+
+        assertEquals(createStrings(2), batchValueMapper.apply(createValues(2)));
+    }
+
+    @Test
+    public void testApplyEmptyBatch() {
+        final BatchValueMapper<Integer, String> batchValueMapper =
+                new BatchValueMapper<>(String::valueOf, mockExecutor, PARALLELISM);
+
+        assertTrue(batchValueMapper.apply(Collections.emptyList()).isEmpty());
+    }
+
+    @Test
+    public void testApplySingleValueDoesNotUseExecutor() {
+        final BatchValueMapper<Integer, String> batchValueMapper =
+                new BatchValueMapper<>(String::valueOf, mockExecutor, PARALLELISM);
+
+        assertEquals(createStrings(1), batchValueMapper.apply(createValues(1)));
+    }
+
+    @Test
+    public void testApplyParallelismOfOneDoesNotUseExecutor() {
+        final BatchValueMapper<Integer, String> batchValueMapper =
+                new BatchValueMapper<>(String::valueOf, mockExecutor, 1);
+
+        assertEquals(createStrings(BATCH_SIZE), batchValueMapper.apply(createValues(BATCH_SIZE)));
+    }
+
+    @Test
+    public void testApplyRethrowsExceptionOfValueMapper() {
+        final IllegalArgumentException illegalArgumentException = new IllegalArgumentException();
+        final BatchValueMapper<Integer, String> batchValueMapper =
+                new BatchValueMapper<>(value -> throwInMiddleOfBatch(value, illegalArgumentException), forkJoinPool);
+
+        try {
+            batchValueMapper.apply(createValues(BATCH_SIZE));
+            fail("Expected an IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            assertSame(illegalArgumentException, e);
+        }
+    }
+
+    @Test
+    public void testApplyRethrowsErrorOfValueMapper() {
+        final StackOverflowError stackOverflowError = new StackOverflowError();
+        final BatchValueMapper<Integer, String> batchValueMapper =
+                new BatchValueMapper<>(value -> throwInMiddleOfBatch(value, stackOverflowError), forkJoinPool);
+
+        try {
+            batchValueMapper.apply(createValues(BATCH_SIZE));
+            fail("Expected a StackOverflowError");
+        } catch (StackOverflowError e) {
+            assertSame(stackOverflowError, e);
+        }
+    }
+
+    @Test
+    public void testApplyWrapsCheckedExceptionOfValueMapper() {
+        final IOException ioException = new IOException();
+        final BatchValueMapper<Integer, String> batchValueMapper =
+                new BatchValueMapper<>(value -> throwInMiddleOfBatch(value, ioException), forkJoinPool);
+
+        try {
+            batchValueMapper.apply(createValues(BATCH_SIZE));
+            fail("Expected a CompletionException");
+        } catch (CompletionException e) {
+            assertSame(ioException, e.getCause());
+        }
+    }
+
+    private static String throwInMiddleOfBatch(int value, RuntimeException runtimeException) {
+        if (value == BATCH_SIZE / 2) {
+            throw runtimeException;
+        }
+        return String.valueOf(value);
+    }
+
+    private static String throwInMiddleOfBatch(int value, Error error) {
+        if (value == BATCH_SIZE / 2) {
+            throw error;
+        }
+        return String.valueOf(value);
+    }
+
+    private static String throwInMiddleOfBatch(int value, Exception exception) {
+        if (value == BATCH_SIZE / 2) {
+            BatchValueMapperTest.<RuntimeException>throwSneakily(exception);
+        }
+        return String.valueOf(value);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <E extends Exception> void throwSneakily(Exception exception) throws E {
+        throw (E) exception;
+    }
+
+    private static List<Integer> createValues(int count) {
+        final List<Integer> values = new ArrayList<>(count);
+        for (int index = 0; index < count; index++) {
+            values.add(index);
+        }
+        return values;
+    }
+
+    private static List<String> createStrings(int count) {
+        final List<String> strings = new ArrayList<>(count);
+        for (int index = 0; index < count; index++) {
+            strings.add(String.valueOf(index));
+        }
+        return strings;
+    }
+}
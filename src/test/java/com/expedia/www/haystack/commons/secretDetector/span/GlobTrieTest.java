@@ -0,0 +1,107 @@
+/*
+ * Copyright 2018 Expedia, Inc.
+ *
+ *       Licensed under the Apache License, Version 2.0 (the "License");
+ *       you may not use this file except in compliance with the License.
+ *       You may obtain a copy of the License at
+ *
+ *           http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *       Unless required by applicable law or agreed to in writing, software
+ *       distributed under the License is distributed on an "AS IS" BASIS,
+ *       WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *       See the License for the specific language governing permissions and
+ *       limitations under the License.
+ *
+ */
+package com.expedia.www.haystack.commons.secretDetector.span;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class GlobTrieTest {
+    @Test
+    public void testIsPattern() {
+        assertTrue(GlobTrie.isPattern("*"));
+        assertTrue(GlobTrie.isPattern("GET /users/*"));
+        assertFalse(GlobTrie.isPattern("GET /users"));
+        assertFalse(GlobTrie.isPattern(""));
+    }
+
+    @Test
+    public void testEmpty() {
+        final GlobTrie<String> globTrie = new GlobTrie<>(Collections.emptyMap());
+
+        assertTrue(globTrie.isEmpty());
+        assertEquals(Collections.emptyList(), collectMatches(globTrie, ""));
+        assertEquals(Collections.emptyList(), collectMatches(globTrie, "name"));
+    }
+
+    @Test
+    public void testExactNames() {
+        final GlobTrie<String> globTrie = createGlobTrie("users", "user", "");
+
+        assertFalse(globTrie.isEmpty());
+        assertEquals(Collections.singletonList("users"), collectMatches(globTrie, "users"));
+        assertEquals(Collections.singletonList("user"), collectMatches(globTrie, "user"));
+        assertEquals(Collections.singletonList(""), collectMatches(globTrie, ""));
+        assertEquals(Collections.emptyList(), collectMatches(globTrie, "use"));
+        assertEquals(Collections.emptyList(), collectMatches(globTrie, "userss"));
+        assertEquals(Collections.emptyList(), collectMatches(globTrie, "other"));
+    }
+
+    @Test
+    public void testPatterns() {
+        final GlobTrie<String> globTrie = createGlobTrie(
+                "*", "GET /users/*", "GET /users/*/orders", "*/orders/*", "GET*/*s", "GET /users/42");
+
+        assertMatches(globTrie, "GET /users/42", "*", "GET /users/*", "GET /users/42");
+        assertMatches(globTrie, "GET /users/42/orders", "*", "GET /users/*", "GET /users/*/orders", "GET*/*s");
+        assertMatches(globTrie, "GET /users/42/orders/7", "*", "GET /users/*", "*/orders/*");
+        assertMatches(globTrie, "GET /users/", "*", "GET /users/*");
+        assertMatches(globTrie, "GET /users", "*", "GET*/*s");
+        assertMatches(globTrie, "", "*");
+    }
+
+    @Test
+    public void testPatternsDoNotOverlapTheirParts() {
+        final GlobTrie<String> globTrie = createGlobTrie("ab*ba", "a*b*c", "a**c");
+
+        assertMatches(globTrie, "aba");
+        assertMatches(globTrie, "abba", "ab*ba");
+        assertMatches(globTrie, "abc", "a*b*c", "a**c");
+        assertMatches(globTrie, "ac", "a**c");
+        assertMatches(globTrie, "acb");
+    }
+
+    private static GlobTrie<String> createGlobTrie(String... patterns) {
+        final Map<String, String> valuesByPattern = new HashMap<>();
+        for (final String pattern : patterns) {
+            valuesByPattern.put(pattern, pattern);
+        }
+        return new GlobTrie<>(valuesByPattern);
+    }
+
+    private static List<String> collectMatches(GlobTrie<String> globTrie, String name) {
+        final List<String> matches = new ArrayList<>();
+        globTrie.collectMatches(name, matches);
+        return matches;
+    }
+
+    private static void assertMatches(GlobTrie<String> globTrie, String name, String... patterns) {
+        final List<String> matches = collectMatches(globTrie, name);
+        assertEquals(name, patterns.length, matches.size());
+        assertEquals(name, new HashSet<>(Arrays.asList(patterns)), new HashSet<>(matches));
+    }
+}
@@ -0,0 +1,314 @@
+/*
+ * Copyright 2018 Expedia, Inc.
+ *
+ *       Licensed under the Apache License, Version 2.0 (the "License");
+ *       you may not use this file except in compliance with the License.
+ *       You may obtain a copy of the License at
+ *
+ *           http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *       Unless required by applicable law or agreed to in writing, software
+ *       distributed under the License is distributed on an "AS IS" BASIS,
+ *       WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *       See the License for the specific language governing permissions and
+ *       limitations under the License.
+ *
+ */
+package com.expedia.www.haystack.commons.secretDetector.span;
+
+import com.expedia.open.tracing.Span;
+import com.expedia.open.tracing.Tag;
+import com.expedia.www.haystack.commons.secretDetector.DetectorTestBase;
+import com.expedia.www.haystack.commons.secretDetector.FinderNameAndServiceName;
+import com.expedia.www.haystack.commons.secretDetector.HaystackFinderEngine;
+import com.expedia.www.haystack.commons.secretDetector.NonLocalIpV4AddressFinder;
+import com.expedia.www.haystack.commons.secretDetector.span.SpanSecretMasker.Factory;
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.netflix.servo.monitor.Counter;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.slf4j.Logger;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import static com.expedia.www.haystack.commons.secretDetector.TestConstantsAndCommonCode.BYTES_FIELD_KEY;
+import static com.expedia.www.haystack.commons.secretDetector.TestConstantsAndCommonCode.BYTES_TAG_KEY;
+import static com.expedia.www.haystack.commons.secretDetector.TestConstantsAndCommonCode.EMAIL_ADDRESS;
+import static com.expedia.www.haystack.commons.secretDetector.TestConstantsAndCommonCode.EMAIL_ADDRESSES_AND_IP_ADDRESS_SPAN;
+import static com.expedia.www.haystack.commons.secretDetector.TestConstantsAndCommonCode.EMAIL_ADDRESS_LOG_SPAN;
+import static com.expedia.www.haystack.commons.secretDetector.TestConstantsAndCommonCode.FULLY_POPULATED_SPAN;
+import static com.expedia.www.haystack.commons.secretDetector.TestConstantsAndCommonCode.OPERATION_NAME;
+import static com.expedia.www.haystack.commons.secretDetector.TestConstantsAndCommonCode.RANDOM;
+import static com.expedia.www.haystack.commons.secretDetector.TestConstantsAndCommonCode.SERVICE_NAME;
+import static com.expedia.www.haystack.commons.secretDetector.TestConstantsAndCommonCode.STRING_FIELD_KEY;
+import static com.expedia.www.haystack.commons.secretDetector.TestConstantsAndCommonCode.STRING_TAG_KEY;
+import static com.expedia.www.haystack.commons.secretDetector.span.SpanBytesSecretMasker.MALFORMED_SPAN_MESSAGE;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class SpanBytesSecretMaskerTest extends DetectorTestBase {
+    private static final String BUCKET = RANDOM.nextLong() + "BUCKET";
+    private static final String EMAIL_FINDER_NAME_IN_FINDERS_DEFAULT_DOT_XML = "Email";
+    private static final FinderNameAndServiceName EMAIL_FINDER_NAME_AND_SERVICE_NAME =
+            new FinderNameAndServiceName(EMAIL_FINDER_NAME_IN_FINDERS_DEFAULT_DOT_XML, SERVICE_NAME);
+    private static final FinderNameAndServiceName IPV4_FINDER_NAME_AND_SERVICE_NAME =
+            new FinderNameAndServiceName(NonLocalIpV4AddressFinder.FINDER_NAME, SERVICE_NAME);
+
+    @Mock
+    private Logger mockLogger;
+
+    @Mock
+    private Factory mockFactory;
+
+    @Mock
+    private SpanS3ConfigFetcher mockSpanS3ConfigFetcher;
+
+    @Mock
+    private Counter mockCounter;
+
+    @Mock
+    private SpanNameAndCountRecorder mockSpanNameAndCountRecorder;
+
+    private SpanBytesSecretMasker spanBytesSecretMasker;
+
+    @Before
+    public void setUp() {
+        when(mockSpanS3ConfigFetcher.getWhiteListView(anyString(), anyString())).thenReturn(SpanWhiteList.View.EMPTY);
+        final HaystackFinderEngine haystackFinderEngine =
+                new HaystackFinderEngine(mockMetricObjects, SUBSYSTEM, APPLICATION);
+        final SpanSecretMasker spanSecretMasker = new SpanSecretMasker(
+                haystackFinderEngine, mockFactory, mockSpanS3ConfigFetcher, mockSpanNameAndCountRecorder, APPLICATION);
+        spanBytesSecretMasker = new SpanBytesSecretMasker(spanSecretMasker, mockLogger);
+    }
+
+    @After
+    public void tearDown() {
+        SpanSecretMasker.COUNTERS.clear();
+        verifyNoMoreInteractions(mockLogger);
+        verifyNoMoreInteractions(mockFactory);
+        verifyNoMoreInteractions(mockSpanS3ConfigFetcher);
+        verifyNoMoreInteractions(mockCounter);
+        verifyNoMoreInteractions(mockSpanNameAndCountRecorder);
+    }
+
+    @Test
+    public void testSmallConstructor() {
+        new SpanBytesSecretMasker(BUCKET, SUBSYSTEM, APPLICATION);
+    }
+
+    @Test
+    public void testCloseLeavesFetcherOfCallerOpen() {
+        spanBytesSecretMasker.close();
+
+        verify(mockSpanS3ConfigFetcher, never()).close();
+    }
+
+    @Test
+    public void testApplyNoSecret() {
+        whensForFindSecrets();
+        final byte[] spanBytes = FULLY_POPULATED_SPAN.toByteArray();
+
+        assertSame(spanBytes, spanBytesSecretMasker.apply(spanBytes));
+
+        verify(mockSpanS3ConfigFetcher).isWhiteListEmpty();
+        verify(mockSpanS3ConfigFetcher).getWhiteListView(SERVICE_NAME, OPERATION_NAME);
+        verifiesForFindSecrets(16, 1, 0, 0, 0);
+    }
+
+    @Test
+    public void testApplyEmailAddressesAndIpAddress() {
+        whensForFindSecrets();
+        when(mockFactory.createCounter(any(), anyString())).thenReturn(mockCounter);
+
+        final byte[] spanBytes = spanBytesSecretMasker.apply(EMAIL_ADDRESSES_AND_IP_ADDRESS_SPAN.toByteArray());
+
+        final Span expectedSpan =
+                mask(EMAIL_ADDRESSES_AND_IP_ADDRESS_SPAN, STRING_TAG_KEY, BYTES_TAG_KEY, BYTES_FIELD_KEY);
+        assertArrayEquals(expectedSpan.toByteArray(), spanBytes);
+        verify(mockSpanS3ConfigFetcher).isWhiteListEmpty();
+        verify(mockSpanS3ConfigFetcher).getWhiteListView(SERVICE_NAME, OPERATION_NAME);
+        verifiesForSecret(EMAIL_FINDER_NAME_IN_FINDERS_DEFAULT_DOT_XML, BYTES_TAG_KEY);
+        verifiesForSecret(EMAIL_FINDER_NAME_IN_FINDERS_DEFAULT_DOT_XML, BYTES_FIELD_KEY);
+        verifiesForSecret(NonLocalIpV4AddressFinder.FINDER_NAME, STRING_TAG_KEY);
+        verify(mockFactory).createCounter(EMAIL_FINDER_NAME_AND_SERVICE_NAME, APPLICATION);
+        verify(mockFactory).createCounter(IPV4_FINDER_NAME_AND_SERVICE_NAME, APPLICATION);
+        verify(mockCounter, times(3)).increment();
+        verifiesForFindSecrets(8, 1, 0, 1, 0);
+    }
+
+    @Test
+    public void testApplyEmailAddressesAndIpAddressEmptyWhitelist() {
+        whensForFindSecrets();
+        when(mockFactory.createCounter(any(), anyString())).thenReturn(mockCounter);
+        when(mockSpanS3ConfigFetcher.isWhiteListEmpty()).thenReturn(true);
+
+        final byte[] spanBytes = spanBytesSecretMasker.apply(EMAIL_ADDRESSES_AND_IP_ADDRESS_SPAN.toByteArray());
+
+        final Span expectedSpan =
+                mask(EMAIL_ADDRESSES_AND_IP_ADDRESS_SPAN, STRING_TAG_KEY, BYTES_TAG_KEY, BYTES_FIELD_KEY);
+        assertArrayEquals(expectedSpan.toByteArray(), spanBytes);
+        verify(mockSpanS3ConfigFetcher).isWhiteListEmpty();
+        verify(mockSpanNameAndCountRecorder)
+                .add(EMAIL_FINDER_NAME_IN_FINDERS_DEFAULT_DOT_XML, SERVICE_NAME, OPERATION_NAME, BYTES_TAG_KEY);
+        verify(mockSpanNameAndCountRecorder)
+                .add(EMAIL_FINDER_NAME_IN_FINDERS_DEFAULT_DOT_XML, SERVICE_NAME, OPERATION_NAME, BYTES_FIELD_KEY);
+        verify(mockSpanNameAndCountRecorder)
+                .add(NonLocalIpV4AddressFinder.FINDER_NAME, SERVICE_NAME, OPERATION_NAME, STRING_TAG_KEY);
+        verify(mockFactory).createCounter(EMAIL_FINDER_NAME_AND_SERVICE_NAME, APPLICATION);
+        verify(mockFactory).createCounter(IPV4_FINDER_NAME_AND_SERVICE_NAME, APPLICATION);
+        verify(mockCounter, times(3)).increment();
+        verifiesForFindSecrets(8, 1, 0, 1, 0);
+    }
+
+    @Test
+    public void testApplyEmailAddressesWhitelistedInSomeTags() {
+        whensForFindSecrets();
+        when(mockFactory.createCounter(any(), anyString())).thenReturn(mockCounter);
+        when(mockSpanS3ConfigFetcher.getWhiteListView(anyString(), anyString())).thenReturn(new SpanWhiteList.Builder()
+                .add(EMAIL_FINDER_NAME_IN_FINDERS_DEFAULT_DOT_XML, SERVICE_NAME, OPERATION_NAME, BYTES_TAG_KEY)
+                .add(NonLocalIpV4AddressFinder.FINDER_NAME, SERVICE_NAME, OPERATION_NAME, STRING_TAG_KEY)
+                .build()
+                .getView(SERVICE_NAME, OPERATION_NAME));
+
+        final byte[] spanBytes = spanBytesSecretMasker.apply(EMAIL_ADDRESSES_AND_IP_ADDRESS_SPAN.toByteArray());
+
+        assertArrayEquals(mask(EMAIL_ADDRESSES_AND_IP_ADDRESS_SPAN, BYTES_FIELD_KEY).toByteArray(), spanBytes);
+        verify(mockSpanS3ConfigFetcher).isWhiteListEmpty();
+        verify(mockSpanS3ConfigFetcher).getWhiteListView(SERVICE_NAME, OPERATION_NAME);
+        verifiesForSecret(EMAIL_FINDER_NAME_IN_FINDERS_DEFAULT_DOT_XML, BYTES_FIELD_KEY);
+        verify(mockFactory).createCounter(EMAIL_FINDER_NAME_AND_SERVICE_NAME, APPLICATION);
+        verify(mockCounter).increment();
+        verifiesForFindSecrets(13, 1, 0, 0, 1);
+    }
+
+    @Test
+    public void testApplyEmailAddressWhitelisted() {
+        whensForFindSecrets();
+        when(mockSpanS3ConfigFetcher.getWhiteListView(anyString(), anyString())).thenReturn(new SpanWhiteList.Builder()
+                .add(EMAIL_FINDER_NAME_IN_FINDERS_DEFAULT_DOT_XML, SERVICE_NAME, OPERATION_NAME, STRING_FIELD_KEY)
+                .build()
+                .getView(SERVICE_NAME, OPERATION_NAME));
+        final byte[] spanBytes = EMAIL_ADDRESS_LOG_SPAN.toByteArray();
+
+        assertSame(spanBytes, spanBytesSecretMasker.apply(spanBytes));
+
+        verify(mockSpanS3ConfigFetcher).isWhiteListEmpty();
+        verify(mockSpanS3ConfigFetcher).getWhiteListView(SERVICE_NAME, OPERATION_NAME);
+        verifiesForFindSecrets(15, 1, 0, 0, 0);
+    }
+
+    @Test
+    public void testApplyTombstone() {
+        assertNull(spanBytesSecretMasker.apply(null));
+    }
+
+    @Test
+    public void testApplyStringValueReplacedByLaterLongValue() throws IOException {
+        final byte[] tagBytes = concatenate(
+                Tag.newBuilder().setKey(STRING_TAG_KEY).setVStr(EMAIL_ADDRESS).build().toByteArray(),
+                Tag.newBuilder().setVLong(RANDOM.nextLong()).build().toByteArray());
+        final byte[] spanBytes = createSpanBytes(output -> output.writeByteArray(Span.TAGS_FIELD_NUMBER, tagBytes));
+
+        assertSame(spanBytes, spanBytesSecretMasker.apply(spanBytes));
+
+        assertEquals(Tag.MyvalueCase.VLONG, Span.parseFrom(spanBytes).getTags(0).getMyvalueCase());
+        verify(mockSpanS3ConfigFetcher).isWhiteListEmpty();
+        verify(mockSpanS3ConfigFetcher).getWhiteListView(SERVICE_NAME, OPERATION_NAME);
+    }
+
+    @Test
+    public void testApplyFieldsWithUnexpectedWireTypes() throws IOException {
+        // A vStr written as a varint, and a tag written as a varint, are skipped as unknown fields
+        final ByteArrayOutputStream tagBytes = new ByteArrayOutputStream();
+        final CodedOutputStream tagOutput = CodedOutputStream.newInstance(tagBytes);
+        tagOutput.writeString(Tag.KEY_FIELD_NUMBER, STRING_TAG_KEY);
+        tagOutput.writeInt64(Tag.VSTR_FIELD_NUMBER, Long.MAX_VALUE);
+        tagOutput.flush();
+        final byte[] spanBytes = createSpanBytes(output -> {
+            output.writeByteArray(Span.TAGS_FIELD_NUMBER, tagBytes.toByteArray());
+            output.writeInt64(Span.TAGS_FIELD_NUMBER, Long.MAX_VALUE);
+        });
+
+        assertSame(spanBytes, spanBytesSecretMasker.apply(spanBytes));
+
+        verify(mockSpanS3ConfigFetcher).isWhiteListEmpty();
+        verify(mockSpanS3ConfigFetcher).getWhiteListView(SERVICE_NAME, OPERATION_NAME);
+    }
+
+    @Test
+    public void testApplyMalformedSpan() {
+        final byte[] spanBytes = Arrays.copyOf(EMAIL_ADDRESS_LOG_SPAN.toByteArray(), 10);
+
+        assertSame(spanBytes, spanBytesSecretMasker.apply(spanBytes));
+
+        verify(mockSpanS3ConfigFetcher).isWhiteListEmpty();
+        verify(mockLogger).error(eq(MALFORMED_SPAN_MESSAGE), any(InvalidProtocolBufferException.class));
+    }
+
+    /**
+     * Writes a span with the service and operation names of the test, followed by the fields written by fieldWriter
+     */
+    private static byte[] createSpanBytes(FieldWriter fieldWriter) throws IOException {
+        final ByteArrayOutputStream spanBytes = new ByteArrayOutputStream();
+        final CodedOutputStream output = CodedOutputStream.newInstance(spanBytes);
+        output.writeString(Span.SERVICENAME_FIELD_NUMBER, SERVICE_NAME);
+        output.writeString(Span.OPERATIONNAME_FIELD_NUMBER, OPERATION_NAME);
+        fieldWriter.write(output);
+        output.flush();
+        return spanBytes.toByteArray();
+    }
+
+    private static byte[] concatenate(byte[] first, byte[] second) {
+        final byte[] bytes = Arrays.copyOf(first, first.length + second.length);
+        System.arraycopy(second, 0, bytes, first.length, second.length);
+        return bytes;
+    }
+
+    private interface FieldWriter {
+        void write(CodedOutputStream output) throws IOException;
+    }
+
+    private void verifiesForSecret(String finderName, String tagKey) {
+        verify(mockSpanS3ConfigFetcher).getWhiteListView(SERVICE_NAME, OPERATION_NAME);
+        verify(mockSpanNameAndCountRecorder).add(finderName, SERVICE_NAME, OPERATION_NAME, tagKey);
+    }
+
+    private static Span mask(Span span, String... tagKeys) {
+        final List<String> tagKeysToMask = Arrays.asList(tagKeys);
+        final Span.Builder spanBuilder = span.toBuilder();
+        for (int tagIndex = 0; tagIndex < span.getTagsCount(); tagIndex++) {
+            maskIfListed(spanBuilder.getTagsBuilder(tagIndex), tagKeysToMask);
+        }
+        for (int logIndex = 0; logIndex < span.getLogsCount(); logIndex++) {
+            for (int tagIndex = 0; tagIndex < span.getLogs(logIndex).getFieldsCount(); tagIndex++) {
+                maskIfListed(spanBuilder.getLogsBuilder(logIndex).getFieldsBuilder(tagIndex), tagKeysToMask);
+            }
+        }
+        return spanBuilder.build();
+    }
+
+    private static void maskIfListed(Tag.Builder tagBuilder, List<String> tagKeysToMask) {
+        if (tagKeysToMask.contains(tagBuilder.getKey())) {
+            SpanSecretMasker.mask(tagBuilder);
+        }
+    }
+}
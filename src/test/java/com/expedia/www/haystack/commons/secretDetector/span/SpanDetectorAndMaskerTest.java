@@ -0,0 +1,238 @@
+/*
+ * Copyright 2018 Expedia, Inc.
+ *
+ *       Licensed under the Apache License, Version 2.0 (the "License");
+ *       you may not use this file except in compliance with the License.
+ *       You may obtain a copy of the License at
+ *
+ *           http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *       Unless required by applicable law or agreed to in writing, software
+ *       distributed under the License is distributed on an "AS IS" BASIS,
+ *       WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *       See the License for the specific language governing permissions and
+ *       limitations under the License.
+ *
+ */
+package com.expedia.www.haystack.commons.secretDetector.span;
+
+import com.expedia.open.tracing.Span;
+import com.expedia.www.haystack.commons.secretDetector.DetectorTestBase;
+import com.expedia.www.haystack.commons.secretDetector.FinderEngineRegistry;
+import com.expedia.www.haystack.commons.secretDetector.FinderNameAndServiceName;
+import com.expedia.www.haystack.commons.secretDetector.HaystackFinderEngine;
+import com.expedia.www.haystack.commons.secretDetector.NonLocalIpV4AddressFinder;
+import com.netflix.servo.monitor.Counter;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.slf4j.Logger;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import static com.expedia.www.haystack.commons.secretDetector.TestConstantsAndCommonCode.BYTES_FIELD_KEY;
+import static com.expedia.www.haystack.commons.secretDetector.TestConstantsAndCommonCode.BYTES_TAG_KEY;
+import static com.expedia.www.haystack.commons.secretDetector.TestConstantsAndCommonCode.CREDIT_CARD_LOG_SPAN;
+import static com.expedia.www.haystack.commons.secretDetector.TestConstantsAndCommonCode.EMAIL_ADDRESSES_AND_IP_ADDRESS_SPAN;
+import static com.expedia.www.haystack.commons.secretDetector.TestConstantsAndCommonCode.FULLY_POPULATED_SPAN;
+import static com.expedia.www.haystack.commons.secretDetector.TestConstantsAndCommonCode.OPERATION_NAME;
+import static com.expedia.www.haystack.commons.secretDetector.TestConstantsAndCommonCode.RANDOM;
+import static com.expedia.www.haystack.commons.secretDetector.TestConstantsAndCommonCode.SERVICE_NAME;
+import static com.expedia.www.haystack.commons.secretDetector.TestConstantsAndCommonCode.STRING_FIELD_KEY;
+import static com.expedia.www.haystack.commons.secretDetector.TestConstantsAndCommonCode.STRING_TAG_KEY;
+import static com.expedia.www.haystack.commons.secretDetector.span.SpanDetector.getEmailText;
+import static com.expedia.www.haystack.commons.secretDetector.span.SpanSecretMasker.MASKED_BY_HAYSTACK;
+import static com.expedia.www.haystack.commons.secretDetector.span.SpanSecretMasker.MASKED_BY_HAYSTACK_BYTES;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class SpanDetectorAndMaskerTest extends DetectorTestBase {
+    private static final String BUCKET = RANDOM.nextLong() + "BUCKET";
+    private static final String EMAIL_FINDER_NAME_IN_FINDERS_DEFAULT_DOT_XML = "Email";
+    private static final String CREDIT_CARD_FINDER_NAME_IN_FINDERS_DEFAULT_DOT_XML = "Credit_Card";
+    private static final FinderNameAndServiceName EMAIL_FINDER_NAME_AND_SERVICE_NAME =
+            new FinderNameAndServiceName(EMAIL_FINDER_NAME_IN_FINDERS_DEFAULT_DOT_XML, SERVICE_NAME);
+    private static final FinderNameAndServiceName IPV4_FINDER_NAME_AND_SERVICE_NAME =
+            new FinderNameAndServiceName(NonLocalIpV4AddressFinder.FINDER_NAME, SERVICE_NAME);
+    private static final FinderNameAndServiceName CREDIT_CARD_FINDER_NAME_AND_SERVICE_NAME =
+            new FinderNameAndServiceName(CREDIT_CARD_FINDER_NAME_IN_FINDERS_DEFAULT_DOT_XML, SERVICE_NAME);
+
+    @Mock
+    private Logger mockLogger;
+
+    @Mock
+    private SpanDetector.Factory mockSpanDetectorFactory;
+
+    @Mock
+    private SpanSecretMasker.Factory mockSpanSecretMaskerFactory;
+
+    @Mock
+    private SpanS3ConfigFetcher mockSpanS3ConfigFetcher;
+
+    @Mock
+    private FinderEngineRegistry mockFinderEngineRegistry;
+
+    @Mock
+    private HaystackFinderEngine mockHaystackFinderEngine;
+
+    @Mock
+    private Counter mockSpanDetectorCounter;
+
+    @Mock
+    private Counter mockSpanSecretMaskerCounter;
+
+    @Mock
+    private SpanNameAndCountRecorder mockSpanNameAndCountRecorder;
+
+    private SpanDetectorAndMasker spanDetectorAndMasker;
+
+    @Before
+    public void setUp() {
+        when(mockSpanS3ConfigFetcher.getWhiteListView(anyString(), anyString())).thenReturn(SpanWhiteList.View.EMPTY);
+        final HaystackFinderEngine haystackFinderEngine =
+                new HaystackFinderEngine(mockMetricObjects, SUBSYSTEM, APPLICATION);
+        final SpanDetector spanDetector = new SpanDetector(
+                mockLogger, haystackFinderEngine, mockSpanDetectorFactory, mockSpanS3ConfigFetcher, APPLICATION);
+        final SpanSecretMasker spanSecretMasker = new SpanSecretMasker(haystackFinderEngine,
+                mockSpanSecretMaskerFactory, mockSpanS3ConfigFetcher, mockSpanNameAndCountRecorder, APPLICATION);
+        spanDetectorAndMasker = new SpanDetectorAndMasker(spanDetector, spanSecretMasker);
+    }
+
+    @After
+    public void tearDown() {
+        SpanDetector.COUNTERS.clear();
+        SpanSecretMasker.COUNTERS.clear();
+        verifyNoMoreInteractions(mockLogger);
+        verifyNoMoreInteractions(mockSpanDetectorFactory);
+        verifyNoMoreInteractions(mockSpanSecretMaskerFactory);
+        verifyNoMoreInteractions(mockSpanS3ConfigFetcher);
+        verifyNoMoreInteractions(mockFinderEngineRegistry, mockHaystackFinderEngine);
+        verifyNoMoreInteractions(mockSpanDetectorCounter);
+        verifyNoMoreInteractions(mockSpanSecretMaskerCounter);
+        verifyNoMoreInteractions(mockSpanNameAndCountRecorder);
+    }
+
+    @Test
+    public void testSmallConstructor() {
+        new SpanDetectorAndMasker(BUCKET, SUBSYSTEM, APPLICATION);
+    }
+
+    @Test
+    public void testCloseLeavesFetcherOfCallerOpen() {
+        spanDetectorAndMasker.close();
+
+        verify(mockSpanS3ConfigFetcher, never()).close();
+    }
+
+    @Test
+    public void testCloseReleasesAcquiredEngine() {
+        when(mockFinderEngineRegistry.acquire(SUBSYSTEM, APPLICATION)).thenReturn(mockHaystackFinderEngine);
+        final SpanDetectorAndMasker spanDetectorAndMaskerThatAcquired =
+                new SpanDetectorAndMasker(mockFinderEngineRegistry, BUCKET, SUBSYSTEM, APPLICATION);
+
+        spanDetectorAndMaskerThatAcquired.close();
+        spanDetectorAndMaskerThatAcquired.close();
+
+        verify(mockFinderEngineRegistry).acquire(SUBSYSTEM, APPLICATION);
+        verify(mockFinderEngineRegistry).release(mockHaystackFinderEngine);
+    }
+
+    @Test
+    public void testApplyNoSecret() {
+        whensForFindSecrets();
+
+        final DetectedAndMaskedSpan detectedAndMaskedSpan = spanDetectorAndMasker.apply(FULLY_POPULATED_SPAN);
+
+        assertSame(FULLY_POPULATED_SPAN, detectedAndMaskedSpan.getMaskedSpan());
+        assertEquals(SERVICE_NAME, detectedAndMaskedSpan.getServiceName());
+        assertEquals(OPERATION_NAME, detectedAndMaskedSpan.getOperationName());
+        assertTrue(detectedAndMaskedSpan.getMapOfTypeToKeysOfSecrets().isEmpty());
+        assertFalse(detectedAndMaskedSpan.getEmailTexts().iterator().hasNext());
+        verify(mockSpanS3ConfigFetcher).getWhiteListView(SERVICE_NAME, OPERATION_NAME);
+        verifiesForFindSecrets(16, 1, 0, 0, 0);
+    }
+
+    @Test
+    public void testApplyEmailAddressesAndIpAddress() {
+        whensForFindSecrets();
+        whensForCounters();
+
+        final DetectedAndMaskedSpan detectedAndMaskedSpan =
+                spanDetectorAndMasker.apply(EMAIL_ADDRESSES_AND_IP_ADDRESS_SPAN);
+
+        final Span maskedSpan = detectedAndMaskedSpan.getMaskedSpan();
+        assertEquals(MASKED_BY_HAYSTACK, maskedSpan.getTags(0).getVStr());
+        assertArrayEquals(MASKED_BY_HAYSTACK_BYTES, maskedSpan.getTags(4).getVBytes().toByteArray());
+        assertArrayEquals(MASKED_BY_HAYSTACK_BYTES, maskedSpan.getLogs(1).getFields(1).getVBytes().toByteArray());
+        final Map<String, List<String>> expected = new HashMap<>();
+        expected.put(EMAIL_FINDER_NAME_IN_FINDERS_DEFAULT_DOT_XML, Arrays.asList(BYTES_TAG_KEY, BYTES_FIELD_KEY));
+        expected.put(NonLocalIpV4AddressFinder.FINDER_NAME, Collections.singletonList(STRING_TAG_KEY));
+        assertEquals(expected, detectedAndMaskedSpan.getMapOfTypeToKeysOfSecrets());
+        final Iterator<String> iterator = detectedAndMaskedSpan.getEmailTexts().iterator();
+        assertEquals(getEmailText(EMAIL_ADDRESSES_AND_IP_ADDRESS_SPAN, expected), iterator.next());
+        assertFalse(iterator.hasNext());
+        // Each secret is checked against the whitelist once, and each finder is counted once by the SpanDetector
+        // counters and once per tag by the SpanSecretMasker counters
+        verify(mockSpanS3ConfigFetcher).getWhiteListView(SERVICE_NAME, OPERATION_NAME);
+        verifiesForSecret(EMAIL_FINDER_NAME_IN_FINDERS_DEFAULT_DOT_XML, BYTES_TAG_KEY);
+        verifiesForSecret(EMAIL_FINDER_NAME_IN_FINDERS_DEFAULT_DOT_XML, BYTES_FIELD_KEY);
+        verifiesForSecret(NonLocalIpV4AddressFinder.FINDER_NAME, STRING_TAG_KEY);
+        verify(mockSpanDetectorFactory).createCounter(EMAIL_FINDER_NAME_AND_SERVICE_NAME, APPLICATION);
+        verify(mockSpanDetectorFactory).createCounter(IPV4_FINDER_NAME_AND_SERVICE_NAME, APPLICATION);
+        verify(mockSpanSecretMaskerFactory).createCounter(EMAIL_FINDER_NAME_AND_SERVICE_NAME, APPLICATION);
+        verify(mockSpanSecretMaskerFactory).createCounter(IPV4_FINDER_NAME_AND_SERVICE_NAME, APPLICATION);
+        verify(mockSpanDetectorCounter, times(2)).increment();
+        verify(mockSpanSecretMaskerCounter, times(3)).increment();
+        verifiesForFindSecrets(8, 1, 0, 1, 0);
+    }
+
+    @Test
+    public void testApplyCreditCardIsLogged() {
+        whensForFindSecrets();
+        whensForCounters();
+
+        final DetectedAndMaskedSpan detectedAndMaskedSpan = spanDetectorAndMasker.apply(CREDIT_CARD_LOG_SPAN);
+
+        assertEquals(MASKED_BY_HAYSTACK, detectedAndMaskedSpan.getMaskedSpan().getLogs(0).getFields(0).getVStr());
+        final String emailText = getEmailText(CREDIT_CARD_LOG_SPAN, Collections.singletonMap(
+                CREDIT_CARD_FINDER_NAME_IN_FINDERS_DEFAULT_DOT_XML, Collections.singletonList(STRING_FIELD_KEY)));
+        assertEquals(emailText, detectedAndMaskedSpan.getEmailTexts().iterator().next());
+        verify(mockLogger).info(emailText);
+        verify(mockSpanS3ConfigFetcher).getWhiteListView(SERVICE_NAME, OPERATION_NAME);
+        verifiesForSecret(CREDIT_CARD_FINDER_NAME_IN_FINDERS_DEFAULT_DOT_XML, STRING_FIELD_KEY);
+        verify(mockSpanDetectorFactory).createCounter(CREDIT_CARD_FINDER_NAME_AND_SERVICE_NAME, APPLICATION);
+        verify(mockSpanSecretMaskerFactory).createCounter(CREDIT_CARD_FINDER_NAME_AND_SERVICE_NAME, APPLICATION);
+        verify(mockSpanDetectorCounter).increment();
+        verify(mockSpanSecretMaskerCounter).increment();
+        verifiesForFindSecrets(14, 1, 1, 0, 0);
+    }
+
+    private void whensForCounters() {
+        when(mockSpanDetectorFactory.createCounter(any(), anyString())).thenReturn(mockSpanDetectorCounter);
+        when(mockSpanSecretMaskerFactory.createCounter(any(), anyString())).thenReturn(mockSpanSecretMaskerCounter);
+    }
+
+    private void verifiesForSecret(String finderName, String tagKey) {
+        verify(mockSpanS3ConfigFetcher).getWhiteListView(SERVICE_NAME, OPERATION_NAME);
+        verify(mockSpanNameAndCountRecorder).add(finderName, SERVICE_NAME, OPERATION_NAME, tagKey);
+    }
+}
@@ -17,6 +17,7 @@
 package com.expedia.www.haystack.commons.secretDetector.span;
 
 import com.expedia.www.haystack.commons.secretDetector.DetectorTestBase;
+import com.expedia.www.haystack.commons.secretDetector.FinderEngineRegistry;
 import com.expedia.www.haystack.commons.secretDetector.FinderNameAndServiceName;
 import com.expedia.www.haystack.commons.secretDetector.HaystackFinderEngine;
 import com.expedia.www.haystack.commons.secretDetector.NonLocalIpV4AddressFinder;
@@ -60,6 +61,7 @@ import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
@@ -88,6 +90,12 @@ public class SpanDetectorTest extends DetectorTestBase {
     @Mock
     private SpanS3ConfigFetcher mockSpanS3ConfigFetcher;
 
+    @Mock
+    private FinderEngineRegistry mockFinderEngineRegistry;
+
+    @Mock
+    private HaystackFinderEngine mockHaystackFinderEngine;
+
     private SpanDetector spanDetector;
     private Factory factory;
 
@@ -97,6 +105,7 @@ public class SpanDetectorTest extends DetectorTestBase {
                 new HaystackFinderEngine(mockMetricObjects, SUBSYSTEM, APPLICATION);
         spanDetector = new SpanDetector(
                 mockLogger, haystackFinderEngine, mockFactory, mockSpanS3ConfigFetcher, APPLICATION);
+        when(mockSpanS3ConfigFetcher.getWhiteListView(anyString(), anyString())).thenReturn(SpanWhiteList.View.EMPTY);
         factory = new Factory(mockMetricObjects);
     }
 
@@ -107,6 +116,7 @@ public class SpanDetectorTest extends DetectorTestBase {
         verifyNoMoreInteractions(mockFactory);
         verifyNoMoreInteractions(mockCounter);
         verifyNoMoreInteractions(mockSpanS3ConfigFetcher);
+        verifyNoMoreInteractions(mockFinderEngineRegistry, mockHaystackFinderEngine);
     }
 
     @Test
@@ -114,6 +124,26 @@ public class SpanDetectorTest extends DetectorTestBase {
         new SpanDetector(BUCKET, SUBSYSTEM, APPLICATION);
     }
 
+    @Test
+    public void testCloseLeavesFetcherOfCallerOpen() {
+        spanDetector.close();
+
+        verify(mockSpanS3ConfigFetcher, never()).close();
+    }
+
+    @Test
+    public void testCloseReleasesAcquiredEngine() {
+        when(mockFinderEngineRegistry.acquire(SUBSYSTEM, APPLICATION)).thenReturn(mockHaystackFinderEngine);
+        final SpanDetector spanDetectorThatAcquired =
+                new SpanDetector(mockFinderEngineRegistry, BUCKET, SUBSYSTEM, APPLICATION);
+
+        spanDetectorThatAcquired.close();
+        spanDetectorThatAcquired.close();
+
+        verify(mockFinderEngineRegistry).acquire(SUBSYSTEM, APPLICATION);
+        verify(mockFinderEngineRegistry).release(mockHaystackFinderEngine);
+    }
+
     @Test
     public void testFindSecretsHaystackEmailAddress() {
         whensForFindSecrets();
@@ -122,7 +152,8 @@ public class SpanDetectorTest extends DetectorTestBase {
         final Map<String, List<String>> secrets = spanDetector.findSecrets(EMAIL_ADDRESS_SPAN);
 
         verifyHaystackEmailAddressFound(secrets, STRING_TAG_KEY);
-        verifiesForFindSecrets(40, 1);
+        verify(mockSpanS3ConfigFetcher).getWhiteListView(TestConstantsAndCommonCode.SERVICE_NAME, OPERATION_NAME);
+        verifiesForFindSecrets(13, 1, 0, 0, 0);
     }
 
     @Test
@@ -138,7 +169,8 @@ public class SpanDetectorTest extends DetectorTestBase {
         final Iterator<String> iterator = tagsThatContainEmails.iterator();
         assertEquals(BYTES_TAG_KEY, iterator.next());
         assertEquals(BYTES_FIELD_KEY, iterator.next());
-        verifiesForFindSecrets(28, 1);
+        verify(mockSpanS3ConfigFetcher).getWhiteListView(TestConstantsAndCommonCode.SERVICE_NAME, OPERATION_NAME);
+        verifiesForFindSecrets(10, 1, 0, 0, 0);
     }
 
     @Test
@@ -149,7 +181,8 @@ public class SpanDetectorTest extends DetectorTestBase {
         final Map<String, List<String>> secrets = spanDetector.findSecrets(EMAIL_ADDRESS_LOG_SPAN_TAG_AND_VBYTES);
 
         verifyHaystackEmailAddressFound(secrets, BYTES_TAG_KEY, STRING_FIELD_KEY, BYTES_FIELD_KEY);
-        verifiesForFindSecrets(16, 1);
+        verify(mockSpanS3ConfigFetcher).getWhiteListView(TestConstantsAndCommonCode.SERVICE_NAME, OPERATION_NAME);
+        verifiesForFindSecrets(7, 1, 0, 0, 0);
     }
 
     private static void verifyHaystackEmailAddressFound(Map<String, List<String>> secrets, String... keysOfSecret) {
@@ -172,7 +205,8 @@ public class SpanDetectorTest extends DetectorTestBase {
         assertEquals(IP_ADDRESS + " should have been flagged as a secret", 1, secrets.size());
         assertEquals(NonLocalIpV4AddressFinder.FINDER_NAME, secrets.keySet().iterator().next());
         assertEquals(STRING_TAG_KEY, secrets.get(NonLocalIpV4AddressFinder.FINDER_NAME).iterator().next());
-        verifiesForFindSecrets(42, 1);
+        verify(mockSpanS3ConfigFetcher).getWhiteListView(TestConstantsAndCommonCode.SERVICE_NAME, OPERATION_NAME);
+        verifiesForFindSecrets(14, 1, 0, 1, 0);
     }
 
     @Test
@@ -181,7 +215,8 @@ public class SpanDetectorTest extends DetectorTestBase {
 
         assertTrue(spanDetector.findSecrets(FULLY_POPULATED_SPAN).isEmpty());
 
-        verifiesForFindSecrets(52, 1);
+        verify(mockSpanS3ConfigFetcher).getWhiteListView(TestConstantsAndCommonCode.SERVICE_NAME, OPERATION_NAME);
+        verifiesForFindSecrets(16, 1, 0, 0, 0);
     }
 
     @Test
@@ -191,15 +226,14 @@ public class SpanDetectorTest extends DetectorTestBase {
         final Iterable<String> iterable = spanDetector.apply(FULLY_POPULATED_SPAN);
 
         assertFalse(iterable.iterator().hasNext());
-        verifiesForFindSecrets(52, 1);
+        verify(mockSpanS3ConfigFetcher).getWhiteListView(TestConstantsAndCommonCode.SERVICE_NAME, OPERATION_NAME);
+        verifiesForFindSecrets(16, 1, 0, 0, 0);
     }
 
     @Test
     public void testApplyCreditCardInLog() {
         whensForFindSecrets();
         when(mockFactory.createCounter(any(), anyString())).thenReturn(mockCounter);
-        when(mockSpanS3ConfigFetcher.isInWhiteList(anyString(), anyString(), anyString(), anyString()))
-                .thenReturn(false);
         final Iterator<String> iterator = spanDetector.apply(CREDIT_CARD_LOG_SPAN).iterator();
 
         final String emailText = getEmailText(
@@ -207,21 +241,24 @@ public class SpanDetectorTest extends DetectorTestBase {
                         Collections.singletonList(STRING_FIELD_KEY)));
         assertEquals(emailText, iterator.next());
         assertFalse(iterator.hasNext());
-        verify(mockSpanS3ConfigFetcher).isInWhiteList(
-                CREDIT_CARD_FINDER_NAME, TestConstantsAndCommonCode.SERVICE_NAME, OPERATION_NAME, STRING_FIELD_KEY);
+        verify(mockSpanS3ConfigFetcher).getWhiteListView(TestConstantsAndCommonCode.SERVICE_NAME, OPERATION_NAME);
         if (FINDERS_TO_LOG.contains(CREDIT_CARD_FINDER_NAME)) {
             verify(mockLogger).info(emailText);
         }
         verifyCounterIncrement();
-        verifiesForFindSecrets(41, 1);
+        verifiesForFindSecrets(14, 1, 1, 0, 0);
     }
 
     @Test
     public void testApplyEMailAddressInLog() {
         whensForFindSecrets();
         when(mockFactory.createCounter(any(), anyString())).thenReturn(mockCounter);
-        when(mockSpanS3ConfigFetcher.isInWhiteList(anyString(), anyString(), anyString(), anyString()))
-                .thenReturn(true, false);
+        final SpanWhiteList.View whiteListView = new SpanWhiteList.Builder()
+                .add("Email", TestConstantsAndCommonCode.SERVICE_NAME, OPERATION_NAME, STRING_FIELD_KEY)
+                .build()
+                .getView(TestConstantsAndCommonCode.SERVICE_NAME, OPERATION_NAME);
+        when(mockSpanS3ConfigFetcher.getWhiteListView(anyString(), anyString()))
+                .thenReturn(whiteListView, SpanWhiteList.View.EMPTY);
         for (int i = 0; i < 2; i++) {
             final Iterator<String> iterator = spanDetector.apply(EMAIL_ADDRESS_LOG_SPAN).iterator();
             final String emailText = getEmailText(
@@ -232,13 +269,13 @@ public class SpanDetectorTest extends DetectorTestBase {
             }
             assertFalse(iterator.hasNext());
         }
-        verify(mockSpanS3ConfigFetcher, times(2)).isInWhiteList(
-                "Email", TestConstantsAndCommonCode.SERVICE_NAME, OPERATION_NAME, STRING_FIELD_KEY);
+        verify(mockSpanS3ConfigFetcher, times(2)).getWhiteListView(
+                TestConstantsAndCommonCode.SERVICE_NAME, OPERATION_NAME);
         FinderNameAndServiceName finderNameAndServiceName =
                 new FinderNameAndServiceName("Email", TestConstantsAndCommonCode.SERVICE_NAME);
         verify(mockFactory).createCounter(finderNameAndServiceName, APPLICATION);
         verify(mockCounter).increment();
-        verifiesForFindSecrets(80, 1);
+        verifiesForFindSecrets(28, 1, 0, 0, 0);
     }
 
     private void verifyCounterIncrement() {
@@ -16,15 +16,21 @@
  */
 package com.expedia.www.haystack.commons.secretDetector.span;
 
+import com.amazonaws.SdkClientException;
 import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.Headers;
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.ObjectMetadata;
 import com.amazonaws.services.s3.model.S3Object;
 import com.amazonaws.services.s3.model.S3ObjectInputStream;
+import com.expedia.www.haystack.commons.secretDetector.HaystackFinderEngine;
 import com.expedia.www.haystack.commons.secretDetector.S3ConfigFetcherBase;
 import com.expedia.www.haystack.commons.secretDetector.WhiteListConfig;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Matchers;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
@@ -33,24 +39,32 @@ import org.slf4j.Logger;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
-import java.util.Map;
-import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 
 import static com.expedia.www.haystack.commons.secretDetector.S3ConfigFetcherBase.Prefix.SPAN;
 import static com.expedia.www.haystack.commons.secretDetector.S3ConfigFetcherBase.Prefix.XML;
 import static com.expedia.www.haystack.commons.secretDetector.S3ConfigFetcherBase.SUCCESSFUL_WHITELIST_UPDATE_MSG;
+import static com.expedia.www.haystack.commons.secretDetector.S3ConfigFetcherBase.UNCHANGED_WHITELIST_MSG;
 import static com.expedia.www.haystack.commons.secretDetector.TestConstantsAndCommonCode.RANDOM;
 import static com.expedia.www.haystack.commons.secretDetector.span.SpanS3ConfigFetcher.ERROR_MESSAGE;
 import static com.expedia.www.haystack.commons.secretDetector.span.SpanS3ConfigFetcher.INVALID_DATA_MSG;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
-import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
 import static org.mockito.Matchers.any;
-import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.anyBoolean;
+import static org.mockito.Matchers.anyLong;
 import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
@@ -58,10 +72,10 @@ import static org.mockito.Mockito.when;
 
 @RunWith(MockitoJUnitRunner.class)
 public class SpanS3ConfigFetcherTest {
+    private static final long ONE_HOUR = TimeUnit.HOURS.toMillis(1L);
     private static final String BUCKET = RANDOM.nextLong() + "BUCKET";
     private static final String KEY = RANDOM.nextLong() + "KEY";
-    private static final long ONE_HOUR = 60L * 60L * 1000L;
-    private static final long MORE_THAN_ONE_HOUR = ONE_HOUR + 1L + RANDOM.nextInt(Integer.MAX_VALUE);
+    private static final String ETAG = RANDOM.nextLong() + "ETAG";
     private static final String FINDER_NAME = "FinderName";
     private static final String SERVICE_NAME = "ServiceName";
     private static final String OPERATION_NAME = "OperationName";
@@ -83,6 +97,7 @@ public class SpanS3ConfigFetcherTest {
             SPAN, FINDER_NAME, SERVICE_NAME, OPERATION_NAME);
     private static final String MISSING_FINDER_NAME = "MissingFinderName";
     private static final String MISSING_SERVICE_NAME = "MissingServiceName";
+    private static final String APPLICATION = "Application";
 
     @Mock
     private Logger mockS3ConfigFetcherLogger;
@@ -108,15 +123,25 @@ public class SpanS3ConfigFetcherTest {
     @Mock
     private BufferedReader mockBufferedReader;
 
+    @Mock
+    private ScheduledExecutorService mockScheduledExecutorService;
+
+    @Mock
+    private ScheduledFuture<?> mockScheduledFuture;
+
     private SpanS3ConfigFetcher spanS3ConfigFetcher;
     private SpanS3ConfigFetcher.SpanFactory factory;
-    private int wantedNumberOfInvocationsCreateWhiteList = 1;
+    private int wantedNumberOfInvocationsCreateWhiteList;
 
     @Before
     public void setUp() {
         factory = new SpanS3ConfigFetcher.SpanFactory();
         when(mockWhiteListConfig.bucket()).thenReturn(BUCKET);
         when(mockWhiteListConfig.key()).thenReturn(KEY);
+        when(mockFactory.createScheduledExecutorService()).thenReturn(mockScheduledExecutorService);
+        when(mockFactory.createWhiteList()).thenAnswer(invocation -> new SpanWhiteList.Builder());
+        doReturn(mockScheduledFuture).when(mockScheduledExecutorService).scheduleWithFixedDelay(
+                any(Runnable.class), anyLong(), anyLong(), any(TimeUnit.class));
         spanS3ConfigFetcher = new SpanS3ConfigFetcher(
                 mockS3ConfigFetcherLogger, mockWhiteListConfig, mockAmazonS3, mockFactory);
     }
@@ -127,112 +152,219 @@ public class SpanS3ConfigFetcherTest {
         verify(mockFactory, times(wantedNumberOfInvocationsCreateWhiteList)).createWhiteList();
         verify(mockWhiteListConfig).bucket();
         verify(mockWhiteListConfig).key();
+        verifyNoMoreInteractions(mockScheduledExecutorService, mockScheduledFuture);
         verifyNoMoreInteractions(mockS3Object, mockS3ObjectInputStream, mockInputStreamReader, mockBufferedReader);
         verifyNoMoreInteractions(mockS3ConfigFetcherLogger, mockWhiteListConfig, mockAmazonS3, mockFactory);
     }
 
     @Test
     public void testSmallConstructor() {
-        new SpanS3ConfigFetcher(BUCKET, KEY);
+        new SpanS3ConfigFetcher(BUCKET, KEY).close();
+    }
+
+    @Test
+    public void testGetWhiteListItemsStartsTheFetcher() {
+        wantedNumberOfInvocationsCreateWhiteList = 1;
+        final SdkClientException sdkClientException = new SdkClientException("Test");
+        when(mockAmazonS3.getObject(any(GetObjectRequest.class))).thenThrow(sdkClientException);
+
+        assertEquals(0, ((SpanWhiteList) spanS3ConfigFetcher.getWhiteListItems()).size());
+        // Only the first lookup fetches the white list
+        assertEquals(0, ((SpanWhiteList) spanS3ConfigFetcher.getWhiteListItems()).size());
+        assertTrue(spanS3ConfigFetcher.isWhiteListEmpty());
+
+        assertGetObjectRequests(Collections.emptyList());
+        verifiesForStart();
+        verify(mockS3ConfigFetcherLogger).error(ERROR_MESSAGE, sdkClientException);
     }
 
     @Test
-    public void testGetWhiteListItemsOneMillisecondEarly() {
-        when(mockFactory.createCurrentTimeMillis()).thenReturn(ONE_HOUR);
+    public void testCloseBeforeStart() {
+        wantedNumberOfInvocationsCreateWhiteList = 1;
+        final SdkClientException sdkClientException = new SdkClientException("Test");
+        when(mockAmazonS3.getObject(any(GetObjectRequest.class))).thenThrow(sdkClientException);
 
-        assertNull(spanS3ConfigFetcher.getWhiteListItems());
+        spanS3ConfigFetcher.close();
+        assertEquals(0, ((SpanWhiteList) spanS3ConfigFetcher.getWhiteListItems()).size());
 
-        verify(mockFactory).createCurrentTimeMillis();
+        assertGetObjectRequests(Collections.emptyList());
+        verify(mockS3ConfigFetcherLogger).error(ERROR_MESSAGE, sdkClientException);
     }
 
     @Test
-    public void testGetWhiteListItemsSuccessfulFetch() throws IOException {
-        wantedNumberOfInvocationsCreateWhiteList = 2;
-        whensForGetWhiteListItems();
+    public void testRefreshSuccessfulFetch() throws IOException {
+        wantedNumberOfInvocationsCreateWhiteList = 1;
+        whensForRefresh();
         when(mockBufferedReader.readLine()).thenReturn(
                 ONE_LINE_OF_GOOD_DATA_SPAN, SECOND_LINE_OF_GOOD_DATA_SPAN, THIRD_LINE_OF_GOOD_DATA_XML, null);
         when(mockFactory.createWhiteListItem(Matchers.<String>anyVararg()))
                 .thenReturn(SPAN_WHITE_LIST_ITEM, SECOND_SPAN_WHITE_LIST_ITEM);
 
-        assertNotNull(spanS3ConfigFetcher.getWhiteListItems());
+        spanS3ConfigFetcher.start();
+        spanS3ConfigFetcher.start();
 
+        assertFalse(spanS3ConfigFetcher.isWhiteListEmpty());
         assertTrue(spanS3ConfigFetcher.isInWhiteList(FINDER_NAME, SERVICE_NAME, OPERATION_NAME, TAG_NAME));
         assertFalse(spanS3ConfigFetcher.isInWhiteList(MISSING_FINDER_NAME, SERVICE_NAME, OPERATION_NAME, TAG_NAME));
         assertFalse(spanS3ConfigFetcher.isInWhiteList(FINDER_NAME, MISSING_SERVICE_NAME, OPERATION_NAME, TAG_NAME));
         assertFalse(spanS3ConfigFetcher.isInWhiteList(FINDER_NAME, SERVICE_NAME, "MissingOperationName", TAG_NAME));
         assertFalse(spanS3ConfigFetcher.isInWhiteList(FINDER_NAME, SERVICE_NAME, OPERATION_NAME, "MissingTagName"));
-        assertEquals(MORE_THAN_ONE_HOUR, spanS3ConfigFetcher.getLastUpdateTimeForTest());
-        assertFalse(spanS3ConfigFetcher.isUpdateInProgressForTest());
-
-        verifiesForGetWhiteListItems(4, 6);
+        assertTrue(spanS3ConfigFetcher.isInWhiteList(
+                new String[]{FINDER_NAME, SERVICE_NAME, OPERATION_NAME, TAG_NAME}));
+        final SpanWhiteList.View whiteListView = spanS3ConfigFetcher.getWhiteListView(SERVICE_NAME, OPERATION_NAME);
+        assertTrue(whiteListView.contains(FINDER_NAME, TAG_NAME));
+        assertTrue(whiteListView.contains(SECOND_FINDER_NAME, TAG_NAME));
+        assertFalse(whiteListView.contains(MISSING_FINDER_NAME, TAG_NAME));
+        assertFalse(spanS3ConfigFetcher.getWhiteListView(MISSING_SERVICE_NAME, OPERATION_NAME)
+                .contains(FINDER_NAME, TAG_NAME));
+
+        assertGetObjectRequests(Collections.emptyList());
+        verifiesForRefresh(4);
+        verify(mockS3Object).getObjectMetadata();
         verify(mockFactory).createWhiteListItem(FINDER_NAME, SERVICE_NAME, OPERATION_NAME, TAG_NAME, COMMENT);
         verify(mockFactory).createWhiteListItem(SECOND_FINDER_NAME, SERVICE_NAME, OPERATION_NAME, TAG_NAME, COMMENT);
+        verifiesForStart();
+        verify(mockS3ConfigFetcherLogger).info(SUCCESSFUL_WHITELIST_UPDATE_MSG);
+    }
+
+    @Test
+    public void testRefreshUnchanged() throws IOException {
+        wantedNumberOfInvocationsCreateWhiteList = 1;
+        whensForRefresh();
+        when(mockAmazonS3.getObject(any(GetObjectRequest.class))).thenReturn(mockS3Object, (S3Object) null);
+        when(mockBufferedReader.readLine()).thenReturn(ONE_LINE_OF_GOOD_DATA_SPAN, (String) null);
+        when(mockFactory.createWhiteListItem(Matchers.<String>anyVararg())).thenReturn(SPAN_WHITE_LIST_ITEM);
+
+        spanS3ConfigFetcher.start();
+        spanS3ConfigFetcher.refresh();
+
+        // The second request carries the ETag of the first response, and S3 answers that nothing has changed
+        assertTrue(spanS3ConfigFetcher.isInWhiteList(FINDER_NAME, SERVICE_NAME, OPERATION_NAME, TAG_NAME));
+        assertGetObjectRequests(Collections.emptyList(), Collections.singletonList(ETAG));
+        verifiesForRefresh(2);
+        verify(mockS3Object).getObjectMetadata();
+        verify(mockFactory).createWhiteListItem(Matchers.<String>anyVararg());
+        verifiesForStart();
         verify(mockS3ConfigFetcherLogger).info(SUCCESSFUL_WHITELIST_UPDATE_MSG);
+        verify(mockS3ConfigFetcherLogger).debug(UNCHANGED_WHITELIST_MSG);
     }
 
     @Test
-    public void testGetWhiteListItemsUpdateInProgress() throws IOException {
-        spanS3ConfigFetcher.setUpdateInProgressForTest(true);
-        whensForGetWhiteListItems();
-        when(mockBufferedReader.readLine()).thenReturn(ONE_LINE_OF_GOOD_DATA_SPAN).thenReturn(null);
+    public void testScheduledRefresh() {
+        wantedNumberOfInvocationsCreateWhiteList = 1;
+        final SdkClientException sdkClientException = new SdkClientException("Test");
+        when(mockAmazonS3.getObject(any(GetObjectRequest.class))).thenThrow(sdkClientException);
+        spanS3ConfigFetcher.start();
+        final ArgumentCaptor<Runnable> runnableCaptor = ArgumentCaptor.forClass(Runnable.class);
+        verify(mockScheduledExecutorService).scheduleWithFixedDelay(
+                runnableCaptor.capture(), anyLong(), anyLong(), any(TimeUnit.class));
+
+        runnableCaptor.getValue().run();
+
+        assertGetObjectRequests(Collections.emptyList(), Collections.emptyList());
+        verifiesForStart();
+        verify(mockS3ConfigFetcherLogger, times(2)).error(ERROR_MESSAGE, sdkClientException);
+    }
 
-        final Object whiteList = spanS3ConfigFetcher.getWhiteListItems();
-        assertsForEmptyWhiteList(whiteList, true, 0L);
+    @Test
+    public void testClose() {
+        wantedNumberOfInvocationsCreateWhiteList = 1;
+        final SdkClientException sdkClientException = new SdkClientException("Test");
+        when(mockAmazonS3.getObject(any(GetObjectRequest.class))).thenThrow(sdkClientException);
+        spanS3ConfigFetcher.start();
+
+        spanS3ConfigFetcher.close();
+
+        assertGetObjectRequests(Collections.emptyList());
+        verifiesForStart();
+        verify(mockS3ConfigFetcherLogger).error(ERROR_MESSAGE, sdkClientException);
+        verify(mockScheduledFuture).cancel(false);
+    }
 
-        verify(mockFactory).createCurrentTimeMillis();
+    @Test
+    public void testClosingDetectorsLeavesSharedFetcherRefreshing() {
+        wantedNumberOfInvocationsCreateWhiteList = 1;
+        final SdkClientException sdkClientException = new SdkClientException("Test");
+        when(mockAmazonS3.getObject(any(GetObjectRequest.class))).thenThrow(sdkClientException);
+        final HaystackFinderEngine mockHaystackFinderEngine = mock(HaystackFinderEngine.class);
+        final SpanDetector spanDetector = new SpanDetector(mock(Logger.class), mockHaystackFinderEngine,
+                new SpanDetector.Factory(), spanS3ConfigFetcher, APPLICATION);
+        final SpanSecretMasker spanSecretMasker = new SpanSecretMasker(mockHaystackFinderEngine,
+                new SpanSecretMasker.Factory(), spanS3ConfigFetcher, mock(SpanNameAndCountRecorder.class), APPLICATION);
+        spanS3ConfigFetcher.start();
+
+        spanDetector.close();
+        spanSecretMasker.close();
+
+        assertGetObjectRequests(Collections.emptyList());
+        verifiesForStart();
+        verify(mockS3ConfigFetcherLogger).error(ERROR_MESSAGE, sdkClientException);
+        verify(mockScheduledFuture, never()).cancel(anyBoolean());
+        verifyNoMoreInteractions(mockHaystackFinderEngine);
     }
 
     @Test
-    public void testGetWhiteListItemsExceptionReadingFromS3() throws IOException {
+    public void testRefreshExceptionReadingFromS3() throws IOException {
         wantedNumberOfInvocationsCreateWhiteList = 2;
         final IOException ioException = new IOException("Test");
-        whensForGetWhiteListItems();
+        whensForRefresh();
         when(mockBufferedReader.readLine()).thenThrow(ioException);
 
-        final Object whiteList = spanS3ConfigFetcher.getWhiteListItems();
-        assertsForEmptyWhiteList(whiteList, false, MORE_THAN_ONE_HOUR);
+        spanS3ConfigFetcher.start();
 
-        verifiesForGetWhiteListItems(1, 1);
+        assertEquals(0, ((SpanWhiteList) spanS3ConfigFetcher.getWhiteListItems()).size());
+        assertGetObjectRequests(Collections.emptyList());
+        verifiesForStart();
+        verifiesForRefresh(1);
         verify(mockS3ConfigFetcherLogger).error(ERROR_MESSAGE, ioException);
     }
 
     @Test
-    public void testGetWhiteListItemsBadData() throws IOException {
+    public void testRefreshBadData() throws IOException {
         wantedNumberOfInvocationsCreateWhiteList = 2;
-        whensForGetWhiteListItems();
+        whensForRefresh();
         when(mockBufferedReader.readLine()).thenReturn(ONE_LINE_OF_BAD_DATA, (String) null);
 
-        final Object whiteList = spanS3ConfigFetcher.getWhiteListItems();
-        assertsForEmptyWhiteList(whiteList, false, MORE_THAN_ONE_HOUR);
+        spanS3ConfigFetcher.start();
 
-        verifiesForGetWhiteListItems(1, 1);
+        assertEquals(0, ((SpanWhiteList) spanS3ConfigFetcher.getWhiteListItems()).size());
+        assertGetObjectRequests(Collections.emptyList());
+        verifiesForStart();
+        verifiesForRefresh(1);
         verify(mockS3ConfigFetcherLogger).error(eq(String.format(INVALID_DATA_MSG, ONE_LINE_OF_BAD_DATA, 4)),
                 any(S3ConfigFetcherBase.InvalidWhitelistItemInputException.class));
     }
 
-    private void assertsForEmptyWhiteList(Object whiteList,
-                                          boolean isUpdateInProgress,
-                                          long lastUpdateTime) {
-        assertNull(whiteList);
-        assertEquals(lastUpdateTime, spanS3ConfigFetcher.getLastUpdateTimeForTest());
-        assertEquals(isUpdateInProgress, spanS3ConfigFetcher.isUpdateInProgressForTest());
-    }
-
-    private void whensForGetWhiteListItems() {
-        when(mockFactory.createCurrentTimeMillis()).thenReturn(MORE_THAN_ONE_HOUR);
-        when(mockAmazonS3.getObject(anyString(), anyString())).thenReturn(mockS3Object);
+    private void whensForRefresh() {
+        final ObjectMetadata objectMetadata = new ObjectMetadata();
+        objectMetadata.setHeader(Headers.ETAG, ETAG);
+        when(mockAmazonS3.getObject(any(GetObjectRequest.class))).thenReturn(mockS3Object);
         when(mockS3Object.getObjectContent()).thenReturn(mockS3ObjectInputStream);
+        when(mockS3Object.getObjectMetadata()).thenReturn(objectMetadata);
         when(mockFactory.createInputStreamReader(any())).thenReturn(mockInputStreamReader);
         when(mockFactory.createBufferedReader(any())).thenReturn(mockBufferedReader);
-        when(mockFactory.createWhiteList())
-                .thenReturn(new ConcurrentHashMap<String, Map<String, Map<String, Set<String>>>>());
+    }
+
+    @SafeVarargs
+    private final void assertGetObjectRequests(List<String>... nonmatchingETagConstraints) {
+        final ArgumentCaptor<GetObjectRequest> getObjectRequestCaptor = ArgumentCaptor.forClass(GetObjectRequest.class);
+        verify(mockAmazonS3, times(nonmatchingETagConstraints.length)).getObject(getObjectRequestCaptor.capture());
+        for (int index = 0; index < nonmatchingETagConstraints.length; index++) {
+            final GetObjectRequest getObjectRequest = getObjectRequestCaptor.getAllValues().get(index);
+            assertEquals(BUCKET, getObjectRequest.getBucketName());
+            assertEquals(KEY, getObjectRequest.getKey());
+            assertEquals(nonmatchingETagConstraints[index], getObjectRequest.getNonmatchingETagConstraints());
+        }
+    }
+
+    private void verifiesForStart() {
+        verify(mockFactory).createScheduledExecutorService();
+        verify(mockScheduledExecutorService).scheduleWithFixedDelay(
+                any(Runnable.class), eq(ONE_HOUR), eq(ONE_HOUR), eq(MILLISECONDS));
     }
 
     @SuppressWarnings({"resource", "Duplicates"})
-    private void verifiesForGetWhiteListItems(int wantedNumberOfInvocationsReadLine,
-                                              int wantedNumberOfInvocationsCreateCurrentTimeMillis) throws IOException {
-        verify(mockFactory, times(wantedNumberOfInvocationsCreateCurrentTimeMillis)).createCurrentTimeMillis();
-        verify(mockAmazonS3).getObject(BUCKET, KEY);
+    private void verifiesForRefresh(int wantedNumberOfInvocationsReadLine) throws IOException {
         verify(mockS3Object).getObjectContent();
         verify(mockS3Object).close();
         verify(mockFactory).createInputStreamReader(mockS3ObjectInputStream);
@@ -241,10 +373,11 @@ public class SpanS3ConfigFetcherTest {
     }
 
     @Test
-    public void testFactoryCreateCurrentTimeMillis() {
-        final long currentTimeMillis = System.currentTimeMillis();
+    public void testFactoryCreateScheduledExecutorService() {
+        final ScheduledExecutorService scheduledExecutorService = factory.createScheduledExecutorService();
 
-        assertTrue(factory.createCurrentTimeMillis() >= currentTimeMillis);
+        assertSame(scheduledExecutorService, factory.createScheduledExecutorService());
+        assertFalse(scheduledExecutorService.isShutdown());
     }
 
     @Test
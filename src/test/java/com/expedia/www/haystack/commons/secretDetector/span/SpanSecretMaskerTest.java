@@ -20,6 +20,7 @@ import com.expedia.open.tracing.Log;
 import com.expedia.open.tracing.Span;
 import com.expedia.open.tracing.Tag;
 import com.expedia.www.haystack.commons.secretDetector.DetectorTestBase;
+import com.expedia.www.haystack.commons.secretDetector.FinderEngineRegistry;
 import com.expedia.www.haystack.commons.secretDetector.FinderNameAndServiceName;
 import com.expedia.www.haystack.commons.secretDetector.HaystackFinderEngine;
 import com.expedia.www.haystack.commons.secretDetector.NonLocalIpV4AddressFinder;
@@ -29,12 +30,13 @@ import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
-import org.mockito.Matchers;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
 import org.slf4j.Logger;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 
 import static com.expedia.www.haystack.commons.secretDetector.TestConstantsAndCommonCode.BYTES_FIELD_KEY;
 import static com.expedia.www.haystack.commons.secretDetector.TestConstantsAndCommonCode.BYTES_TAG_KEY;
@@ -59,6 +61,7 @@ import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertSame;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
@@ -68,6 +71,9 @@ import static org.mockito.Mockito.when;
 @RunWith(MockitoJUnitRunner.class)
 public class SpanSecretMaskerTest extends DetectorTestBase {
     private static final String BUCKET = RANDOM.nextLong() + "BUCKET";
+    private static final int THREAD_COUNT = 4;
+    private static final int SERVICE_COUNT = 50;
+    private static final int BATCH_SIZE = SERVICE_COUNT * 20;
     private static final String EMAIL_FINDER_NAME_IN_FINDERS_DEFAULT_DOT_XML = "Email";
     private static final FinderNameAndServiceName EMAIL_FINDER_NAME_AND_SERVICE_NAME =
             new FinderNameAndServiceName(EMAIL_FINDER_NAME_IN_FINDERS_DEFAULT_DOT_XML, SERVICE_NAME);
@@ -83,6 +89,12 @@ public class SpanSecretMaskerTest extends DetectorTestBase {
     @Mock
     private SpanS3ConfigFetcher mockSpanS3ConfigFetcher;
 
+    @Mock
+    private FinderEngineRegistry mockFinderEngineRegistry;
+
+    @Mock
+    private HaystackFinderEngine mockHaystackFinderEngine;
+
     @Mock
     private Counter mockCounter;
 
@@ -94,6 +106,7 @@ public class SpanSecretMaskerTest extends DetectorTestBase {
 
     @Before
     public void setUp() {
+        when(mockSpanS3ConfigFetcher.getWhiteListView(anyString(), anyString())).thenReturn(SpanWhiteList.View.EMPTY);
         final HaystackFinderEngine haystackFinderEngine =
                 new HaystackFinderEngine(mockMetricObjects, SUBSYSTEM, APPLICATION);
         spanSecretMasker = new SpanSecretMasker(
@@ -107,6 +120,7 @@ public class SpanSecretMaskerTest extends DetectorTestBase {
         verifyNoMoreInteractions(mockLogger);
         verifyNoMoreInteractions(mockFactory);
         verifyNoMoreInteractions(mockSpanS3ConfigFetcher);
+        verifyNoMoreInteractions(mockFinderEngineRegistry, mockHaystackFinderEngine);
         verifyNoMoreInteractions(mockCounter);
         verifyNoMoreInteractions(mockSpanNameAndCountRecorder);
     }
@@ -116,6 +130,26 @@ public class SpanSecretMaskerTest extends DetectorTestBase {
         new SpanSecretMasker(BUCKET, SUBSYSTEM, APPLICATION);
     }
 
+    @Test
+    public void testCloseLeavesFetcherOfCallerOpen() {
+        spanSecretMasker.close();
+
+        verify(mockSpanS3ConfigFetcher, never()).close();
+    }
+
+    @Test
+    public void testCloseReleasesAcquiredEngine() {
+        when(mockFinderEngineRegistry.acquire(SUBSYSTEM, APPLICATION)).thenReturn(mockHaystackFinderEngine);
+        final SpanSecretMasker spanSecretMaskerThatAcquired =
+                new SpanSecretMasker(mockFinderEngineRegistry, BUCKET, SUBSYSTEM, APPLICATION);
+
+        spanSecretMaskerThatAcquired.close();
+        spanSecretMaskerThatAcquired.close();
+
+        verify(mockFinderEngineRegistry).acquire(SUBSYSTEM, APPLICATION);
+        verify(mockFinderEngineRegistry).release(mockHaystackFinderEngine);
+    }
+
     @Test
     public void testApplyNoSecret() {
         whensForFindSecrets();
@@ -123,7 +157,8 @@ public class SpanSecretMaskerTest extends DetectorTestBase {
         final Span span = spanSecretMasker.apply(FULLY_POPULATED_SPAN);
 
         assertEquals(FULLY_POPULATED_SPAN, span);
-        verifiesForFindSecrets(52, 1);
+        verify(mockSpanS3ConfigFetcher).getWhiteListView(SERVICE_NAME, OPERATION_NAME);
+        verifiesForFindSecrets(16, 1, 0, 0, 0);
     }
 
     @Test
@@ -135,27 +170,28 @@ public class SpanSecretMaskerTest extends DetectorTestBase {
 
         assertNotEquals(EMAIL_ADDRESS_SPAN, span);
         assertEquals(MASKED_BY_HAYSTACK, findTag(span, STRING_TAG_KEY).getVStr());
-        verify(mockSpanS3ConfigFetcher).isInWhiteList(
-                EMAIL_FINDER_NAME_IN_FINDERS_DEFAULT_DOT_XML, SERVICE_NAME, OPERATION_NAME, STRING_TAG_KEY);
+        verify(mockSpanS3ConfigFetcher).getWhiteListView(SERVICE_NAME, OPERATION_NAME);
         verify(mockFactory).createCounter(EMAIL_FINDER_NAME_AND_SERVICE_NAME, APPLICATION);
         verify(mockCounter).increment();
         verify(mockSpanNameAndCountRecorder).add(
                 EMAIL_FINDER_NAME_IN_FINDERS_DEFAULT_DOT_XML, SERVICE_NAME, OPERATION_NAME, STRING_TAG_KEY);
-        verifiesForFindSecrets(40, 1);
+        verifiesForFindSecrets(13, 1, 0, 0, 0);
     }
 
     @Test
     public void testFindSecretsHaystackEmailAddressInTagStringTagWhitelisted() {
         whensForFindSecrets();
-        when(mockSpanS3ConfigFetcher.isInWhiteList(Matchers.<String>anyVararg())).thenReturn(true);
+        when(mockSpanS3ConfigFetcher.getWhiteListView(anyString(), anyString())).thenReturn(new SpanWhiteList.Builder()
+                .add(EMAIL_FINDER_NAME_IN_FINDERS_DEFAULT_DOT_XML, SERVICE_NAME, OPERATION_NAME, STRING_TAG_KEY)
+                .build()
+                .getView(SERVICE_NAME, OPERATION_NAME));
         when(mockFactory.createCounter(any(), anyString())).thenReturn(mockCounter);
 
         final Span span = spanSecretMasker.apply(EMAIL_ADDRESS_SPAN);
 
         assertEquals(EMAIL_ADDRESS_SPAN, span);
-        verify(mockSpanS3ConfigFetcher).isInWhiteList(
-                EMAIL_FINDER_NAME_IN_FINDERS_DEFAULT_DOT_XML, SERVICE_NAME, OPERATION_NAME, STRING_TAG_KEY);
-        verifiesForFindSecrets(40, 1);
+        verify(mockSpanS3ConfigFetcher).getWhiteListView(SERVICE_NAME, OPERATION_NAME);
+        verifiesForFindSecrets(15, 1, 0, 0, 0);
     }
 
     @Test
@@ -169,12 +205,7 @@ public class SpanSecretMaskerTest extends DetectorTestBase {
         assertEquals(MASKED_BY_HAYSTACK, findTag(span, STRING_TAG_KEY).getVStr());
         assertArrayEquals(MASKED_BY_HAYSTACK_BYTES, findTag(span, BYTES_TAG_KEY).getVBytes().toByteArray());
         assertArrayEquals(MASKED_BY_HAYSTACK_BYTES, findLogFieldTag(span, BYTES_FIELD_KEY).getVBytes().toByteArray());
-        verify(mockSpanS3ConfigFetcher).isInWhiteList(
-                EMAIL_FINDER_NAME_IN_FINDERS_DEFAULT_DOT_XML, SERVICE_NAME, OPERATION_NAME, BYTES_TAG_KEY);
-        verify(mockSpanS3ConfigFetcher).isInWhiteList(
-                EMAIL_FINDER_NAME_IN_FINDERS_DEFAULT_DOT_XML, SERVICE_NAME, OPERATION_NAME, BYTES_FIELD_KEY);
-        verify(mockSpanS3ConfigFetcher).isInWhiteList(
-                NonLocalIpV4AddressFinder.FINDER_NAME, SERVICE_NAME, OPERATION_NAME, STRING_TAG_KEY);
+        verify(mockSpanS3ConfigFetcher).getWhiteListView(SERVICE_NAME, OPERATION_NAME);
         verify(mockFactory).createCounter(EMAIL_FINDER_NAME_AND_SERVICE_NAME, APPLICATION);
         verify(mockFactory).createCounter(IPV4_FINDER_NAME_AND_SERVICE_NAME, APPLICATION);
         verify(mockCounter, times(3)).increment();
@@ -184,7 +215,7 @@ public class SpanSecretMaskerTest extends DetectorTestBase {
                 EMAIL_FINDER_NAME_IN_FINDERS_DEFAULT_DOT_XML, SERVICE_NAME, OPERATION_NAME, BYTES_FIELD_KEY);
         verify(mockSpanNameAndCountRecorder).add(
                 NonLocalIpV4AddressFinder.FINDER_NAME, SERVICE_NAME, OPERATION_NAME, STRING_TAG_KEY);
-        verifiesForFindSecrets(18, 1);
+        verifiesForFindSecrets(8, 1, 0, 1, 0);
     }
 
     @SuppressWarnings("MethodWithMultipleLoops")
@@ -198,17 +229,14 @@ public class SpanSecretMaskerTest extends DetectorTestBase {
         assertNotEquals(EMAIL_ADDRESS_IN_TAG_BYTES_AND_LOG_BYTES_SPAN, span);
         assertArrayEquals(MASKED_BY_HAYSTACK_BYTES, findTag(span, BYTES_TAG_KEY).getVBytes().toByteArray());
         assertArrayEquals(MASKED_BY_HAYSTACK_BYTES, findLogFieldTag(span, BYTES_FIELD_KEY).getVBytes().toByteArray());
-        verify(mockSpanS3ConfigFetcher).isInWhiteList(
-                EMAIL_FINDER_NAME_IN_FINDERS_DEFAULT_DOT_XML, SERVICE_NAME, OPERATION_NAME, BYTES_TAG_KEY);
-        verify(mockSpanS3ConfigFetcher).isInWhiteList(
-                EMAIL_FINDER_NAME_IN_FINDERS_DEFAULT_DOT_XML, SERVICE_NAME, OPERATION_NAME, BYTES_FIELD_KEY);
+        verify(mockSpanS3ConfigFetcher).getWhiteListView(SERVICE_NAME, OPERATION_NAME);
         verify(mockFactory).createCounter(EMAIL_FINDER_NAME_AND_SERVICE_NAME, APPLICATION);
         verify(mockCounter, times(2)).increment();
         verify(mockSpanNameAndCountRecorder).add(
                 EMAIL_FINDER_NAME_IN_FINDERS_DEFAULT_DOT_XML, SERVICE_NAME, OPERATION_NAME, BYTES_TAG_KEY);
         verify(mockSpanNameAndCountRecorder).add(
                 EMAIL_FINDER_NAME_IN_FINDERS_DEFAULT_DOT_XML, SERVICE_NAME, OPERATION_NAME, BYTES_FIELD_KEY);
-        verifiesForFindSecrets(28, 1);
+        verifiesForFindSecrets(10, 1, 0, 0, 0);
     }
 
     @SuppressWarnings("MethodWithMultipleLoops")
@@ -221,12 +249,7 @@ public class SpanSecretMaskerTest extends DetectorTestBase {
 
         assertNotEquals(EMAIL_ADDRESS_LOG_SPAN, span);
         assertEquals(MASKED_BY_HAYSTACK, findLogFieldTag(span, STRING_FIELD_KEY).getVStr());
-        verify(mockSpanS3ConfigFetcher).isInWhiteList(
-                EMAIL_FINDER_NAME_IN_FINDERS_DEFAULT_DOT_XML, SERVICE_NAME, OPERATION_NAME, BYTES_TAG_KEY);
-        verify(mockSpanS3ConfigFetcher).isInWhiteList(
-                EMAIL_FINDER_NAME_IN_FINDERS_DEFAULT_DOT_XML, SERVICE_NAME, OPERATION_NAME, STRING_FIELD_KEY);
-        verify(mockSpanS3ConfigFetcher).isInWhiteList(
-                EMAIL_FINDER_NAME_IN_FINDERS_DEFAULT_DOT_XML, SERVICE_NAME, OPERATION_NAME, BYTES_FIELD_KEY);
+        verify(mockSpanS3ConfigFetcher).getWhiteListView(SERVICE_NAME, OPERATION_NAME);
         verify(mockFactory).createCounter(EMAIL_FINDER_NAME_AND_SERVICE_NAME, APPLICATION);
         verify(mockCounter, times(3)).increment();
         verify(mockSpanNameAndCountRecorder).add(
@@ -235,7 +258,59 @@ public class SpanSecretMaskerTest extends DetectorTestBase {
                 EMAIL_FINDER_NAME_IN_FINDERS_DEFAULT_DOT_XML, SERVICE_NAME, OPERATION_NAME, STRING_FIELD_KEY);
         verify(mockSpanNameAndCountRecorder).add(
                 EMAIL_FINDER_NAME_IN_FINDERS_DEFAULT_DOT_XML, SERVICE_NAME, OPERATION_NAME, BYTES_FIELD_KEY);
-        verifiesForFindSecrets(16, 1);
+        verifiesForFindSecrets(7, 1, 0, 0, 0);
+    }
+
+    @Test
+    public void testFindSecretsHaystackEmailAddressOnlyInLogString() {
+        whensForFindSecrets();
+        when(mockFactory.createCounter(any(), anyString())).thenReturn(mockCounter);
+
+        final Span span = spanSecretMasker.apply(EMAIL_ADDRESS_LOG_SPAN);
+
+        assertNotEquals(EMAIL_ADDRESS_LOG_SPAN, span);
+        assertEquals(MASKED_BY_HAYSTACK, findLogFieldTag(span, STRING_FIELD_KEY).getVStr());
+        assertEquals(EMAIL_ADDRESS_LOG_SPAN.getTagsList(), span.getTagsList());
+        verify(mockSpanS3ConfigFetcher).getWhiteListView(SERVICE_NAME, OPERATION_NAME);
+        verify(mockFactory).createCounter(EMAIL_FINDER_NAME_AND_SERVICE_NAME, APPLICATION);
+        verify(mockCounter).increment();
+        verify(mockSpanNameAndCountRecorder).add(
+                EMAIL_FINDER_NAME_IN_FINDERS_DEFAULT_DOT_XML, SERVICE_NAME, OPERATION_NAME, STRING_FIELD_KEY);
+        verifiesForFindSecrets(13, 1, 0, 0, 0);
+    }
+
+    @Test
+    public void testApplyBatchOnSeveralThreads() {
+        whensForFindSecrets();
+        when(mockFactory.createCounter(any(), anyString())).thenReturn(mockCounter);
+        final List<Span> spans = new ArrayList<>(BATCH_SIZE);
+        for (int index = 0; index < BATCH_SIZE; index++) {
+            spans.add(EMAIL_ADDRESS_SPAN.toBuilder().setServiceName(SERVICE_NAME + (index % SERVICE_COUNT)).build());
+        }
+        final ForkJoinPool forkJoinPool = new ForkJoinPool(THREAD_COUNT);
+
+        final List<Span> maskedSpans;
+        try {
+            maskedSpans = new BatchValueMapper<>(spanSecretMasker, forkJoinPool).apply(spans);
+        } finally {
+            forkJoinPool.shutdown();
+        }
+
+        for (int index = 0; index < BATCH_SIZE; index++) {
+            assertEquals(spans.get(index).getServiceName(), maskedSpans.get(index).getServiceName());
+            assertEquals(MASKED_BY_HAYSTACK, findTag(maskedSpans.get(index), STRING_TAG_KEY).getVStr());
+        }
+        for (int service = 0; service < SERVICE_COUNT; service++) {
+            final String serviceName = SERVICE_NAME + service;
+            verify(mockSpanS3ConfigFetcher, times(BATCH_SIZE / SERVICE_COUNT))
+                    .getWhiteListView(serviceName, OPERATION_NAME);
+            verify(mockFactory).createCounter(
+                    new FinderNameAndServiceName(EMAIL_FINDER_NAME_IN_FINDERS_DEFAULT_DOT_XML, serviceName), APPLICATION);
+            verify(mockSpanNameAndCountRecorder, times(BATCH_SIZE / SERVICE_COUNT)).add(
+                    EMAIL_FINDER_NAME_IN_FINDERS_DEFAULT_DOT_XML, serviceName, OPERATION_NAME, STRING_TAG_KEY);
+        }
+        verify(mockCounter, times(BATCH_SIZE)).increment();
+        verifiesForFindSecretsOnSeveralThreads();
     }
 
     private static Tag findTag(Span span, String key) {
@@ -0,0 +1,263 @@
+/*
+ * Copyright 2018 Expedia, Inc.
+ *
+ *       Licensed under the Apache License, Version 2.0 (the "License");
+ *       you may not use this file except in compliance with the License.
+ *       You may obtain a copy of the License at
+ *
+ *           http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *       Unless required by applicable law or agreed to in writing, software
+ *       distributed under the License is distributed on an "AS IS" BASIS,
+ *       WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *       See the License for the specific language governing permissions and
+ *       limitations under the License.
+ *
+ */
+package com.expedia.www.haystack.commons.secretDetector.span;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+
+import static com.expedia.www.haystack.commons.secretDetector.TestConstantsAndCommonCode.RANDOM;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class SpanWhiteListTest {
+    private static final String FINDER_NAME = "Email";
+    private static final String SERVICE_NAME = "ServiceName";
+    private static final String OPERATION_NAME = "OperationName";
+    private static final String TAG_NAME = "TagName";
+    // "Aa" and "BB" have the same hash code, as do all the strings made of the same number of them
+    private static final String COLLIDING_NAME = "Aa";
+    private static final String OTHER_COLLIDING_NAME = "BB";
+
+    @Test
+    public void testEmpty() {
+        assertEquals(0, SpanWhiteList.EMPTY.size());
+        assertFalse(SpanWhiteList.EMPTY.contains(FINDER_NAME, SERVICE_NAME, OPERATION_NAME, TAG_NAME));
+        assertFalse(SpanWhiteList.EMPTY.getView(SERVICE_NAME, OPERATION_NAME).contains(FINDER_NAME, TAG_NAME));
+        assertTrue(SpanWhiteList.View.EMPTY.isEmpty());
+        assertEquals(Collections.emptySet(), SpanWhiteList.View.EMPTY.getFinderNames(TAG_NAME));
+    }
+
+    @Test
+    public void testContains() {
+        final SpanWhiteList spanWhiteList = new SpanWhiteList.Builder()
+                .add(FINDER_NAME, SERVICE_NAME, OPERATION_NAME, TAG_NAME)
+                .build();
+
+        assertTrue(spanWhiteList.contains(FINDER_NAME, SERVICE_NAME, OPERATION_NAME, TAG_NAME));
+        assertFalse(spanWhiteList.contains("Credit_Card", SERVICE_NAME, OPERATION_NAME, TAG_NAME));
+        assertFalse(spanWhiteList.contains(FINDER_NAME, "OtherService", OPERATION_NAME, TAG_NAME));
+        assertFalse(spanWhiteList.contains(FINDER_NAME, SERVICE_NAME, "OtherOperation", TAG_NAME));
+        assertFalse(spanWhiteList.contains(FINDER_NAME, SERVICE_NAME, OPERATION_NAME, "OtherTag"));
+        // The names are not concatenated, so moving characters from one name to the next makes a different entry
+        assertFalse(spanWhiteList.contains(FINDER_NAME, SERVICE_NAME + 'O', "perationName", TAG_NAME));
+    }
+
+    @Test
+    public void testDuplicatesAreStoredOnce() {
+        final SpanWhiteList spanWhiteList = new SpanWhiteList.Builder()
+                .add(FINDER_NAME, SERVICE_NAME, OPERATION_NAME, TAG_NAME)
+                .add(FINDER_NAME, SERVICE_NAME, OPERATION_NAME, TAG_NAME)
+                .add(FINDER_NAME, SERVICE_NAME, OPERATION_NAME, TAG_NAME + 2)
+                .build();
+
+        assertEquals(2, spanWhiteList.size());
+        assertTrue(spanWhiteList.contains(FINDER_NAME, SERVICE_NAME, OPERATION_NAME, TAG_NAME));
+        assertTrue(spanWhiteList.contains(FINDER_NAME, SERVICE_NAME, OPERATION_NAME, TAG_NAME + 2));
+    }
+
+    @Test
+    public void testHashCollisionsAreVerified() {
+        final String a = COLLIDING_NAME;
+        final String b = OTHER_COLLIDING_NAME;
+        final SpanWhiteList spanWhiteList = new SpanWhiteList.Builder().add(a, a, a, a).add(b, b, b, b).build();
+
+        assertEquals(2, spanWhiteList.size());
+        assertTrue(spanWhiteList.contains(a, a, a, a));
+        assertTrue(spanWhiteList.contains(b, b, b, b));
+        // The names of each of these have the same hash codes as those of the entries, and differ from the names of
+        // the first entry in a single name
+        for (final String[] names : new String[][]{{b, a, a, a}, {a, b, a, a}, {a, a, b, a}, {a, a, a, b}}) {
+            assertFalse(spanWhiteList.contains(names[0], names[1], names[2], names[3]));
+        }
+    }
+
+    @Test
+    public void testGetView() {
+        final SpanWhiteList spanWhiteList = new SpanWhiteList.Builder()
+                .add(FINDER_NAME, SERVICE_NAME, OPERATION_NAME, TAG_NAME)
+                .add("Credit_Card", SERVICE_NAME, OPERATION_NAME, TAG_NAME + 2)
+                .add(FINDER_NAME, SERVICE_NAME, "OtherOperation", TAG_NAME + 3)
+                .build();
+
+        final SpanWhiteList.View view = spanWhiteList.getView(SERVICE_NAME, OPERATION_NAME);
+        assertTrue(view.contains(FINDER_NAME, TAG_NAME));
+        assertTrue(view.contains("Credit_Card", TAG_NAME + 2));
+        assertFalse(view.contains(FINDER_NAME, TAG_NAME + 2));
+        assertFalse(view.contains(FINDER_NAME, TAG_NAME + 3));
+        assertTrue(spanWhiteList.getView(SERVICE_NAME, "OtherOperation").contains(FINDER_NAME, TAG_NAME + 3));
+        assertSame(SpanWhiteList.View.EMPTY, spanWhiteList.getView("OtherService", OPERATION_NAME));
+    }
+
+    @Test
+    public void testGetViewFinderNames() {
+        final SpanWhiteList spanWhiteList = new SpanWhiteList.Builder()
+                .add(FINDER_NAME, SERVICE_NAME, OPERATION_NAME, TAG_NAME)
+                .add("Credit_Card", SERVICE_NAME, OPERATION_NAME, TAG_NAME)
+                .add(FINDER_NAME, SERVICE_NAME, OPERATION_NAME, TAG_NAME)
+                .add(FINDER_NAME, SERVICE_NAME, OPERATION_NAME, TAG_NAME + 2)
+                .add("Credit_Card", SERVICE_NAME, "OtherOperation", TAG_NAME)
+                .build();
+
+        final SpanWhiteList.View view = spanWhiteList.getView(SERVICE_NAME, OPERATION_NAME);
+        assertFalse(view.isEmpty());
+        assertEquals(new HashSet<>(Arrays.asList(FINDER_NAME, "Credit_Card")), view.getFinderNames(TAG_NAME));
+        assertEquals(Collections.singleton(FINDER_NAME), view.getFinderNames(TAG_NAME + 2));
+        assertEquals(Collections.emptySet(), view.getFinderNames(TAG_NAME + 3));
+        assertEquals(Collections.singleton("Credit_Card"),
+                spanWhiteList.getView(SERVICE_NAME, "OtherOperation").getFinderNames(TAG_NAME));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testGetViewFinderNamesIsUnmodifiable() {
+        new SpanWhiteList.Builder().add(FINDER_NAME, SERVICE_NAME, OPERATION_NAME, TAG_NAME).build()
+                .getView(SERVICE_NAME, OPERATION_NAME).getFinderNames(TAG_NAME).add("Credit_Card");
+    }
+
+    @Test
+    public void testGetViewHashCollisions() {
+        final String a = COLLIDING_NAME;
+        final String b = OTHER_COLLIDING_NAME;
+        final SpanWhiteList spanWhiteList = new SpanWhiteList.Builder().add(a, a, a, a).add(b, b, b, b).build();
+
+        assertTrue(spanWhiteList.getView(a, a).contains(a, a));
+        assertTrue(spanWhiteList.getView(b, b).contains(b, b));
+        assertFalse(spanWhiteList.getView(a, a).contains(b, b));
+        // Each of these pairs has the same hash as the pairs of the entries, and differs from them in a single name
+        assertSame(SpanWhiteList.View.EMPTY, spanWhiteList.getView(a, b));
+        assertSame(SpanWhiteList.View.EMPTY, spanWhiteList.getView(b, a));
+    }
+
+    @Test
+    public void testPatterns() {
+        final SpanWhiteList spanWhiteList = new SpanWhiteList.Builder()
+                .add(FINDER_NAME, SERVICE_NAME, "GET /users/*", TAG_NAME)
+                .add(FINDER_NAME, SERVICE_NAME, "GET /users/*", TAG_NAME)
+                .add("Credit_Card", "*", "*", "card*")
+                .add(FINDER_NAME, "Other*", OPERATION_NAME, TAG_NAME)
+                .build();
+
+        assertEquals(3, spanWhiteList.size());
+        assertTrue(spanWhiteList.contains(FINDER_NAME, SERVICE_NAME, "GET /users/42", TAG_NAME));
+        assertTrue(spanWhiteList.contains(FINDER_NAME, SERVICE_NAME, "GET /users/", TAG_NAME));
+        assertFalse(spanWhiteList.contains(FINDER_NAME, SERVICE_NAME, "GET /users", TAG_NAME));
+        assertFalse(spanWhiteList.contains(FINDER_NAME, SERVICE_NAME, "GET /users/42", TAG_NAME + 2));
+        assertFalse(spanWhiteList.contains("Credit_Card", SERVICE_NAME, "GET /users/42", TAG_NAME));
+        assertTrue(spanWhiteList.contains("Credit_Card", SERVICE_NAME, OPERATION_NAME, "cardNumber"));
+        assertTrue(spanWhiteList.contains("Credit_Card", "", "", "card"));
+        assertTrue(spanWhiteList.contains(FINDER_NAME, "OtherService", OPERATION_NAME, TAG_NAME));
+        assertFalse(spanWhiteList.contains(FINDER_NAME, "OtherService", OPERATION_NAME + 2, TAG_NAME));
+        assertFalse(spanWhiteList.contains(FINDER_NAME, SERVICE_NAME, OPERATION_NAME, TAG_NAME));
+    }
+
+    @Test
+    public void testFinderNamesAreNotPatterns() {
+        final SpanWhiteList spanWhiteList = new SpanWhiteList.Builder()
+                .add("*", SERVICE_NAME, OPERATION_NAME, TAG_NAME)
+                .add("*", SERVICE_NAME, OPERATION_NAME + '*', TAG_NAME)
+                .build();
+
+        assertFalse(spanWhiteList.contains(FINDER_NAME, SERVICE_NAME, OPERATION_NAME, TAG_NAME));
+        assertTrue(spanWhiteList.contains("*", SERVICE_NAME, OPERATION_NAME, TAG_NAME));
+        assertFalse(spanWhiteList.contains(FINDER_NAME, SERVICE_NAME, OPERATION_NAME + 2, TAG_NAME));
+        assertTrue(spanWhiteList.contains("*", SERVICE_NAME, OPERATION_NAME + 2, TAG_NAME));
+    }
+
+    @Test
+    public void testGetViewPatterns() {
+        final SpanWhiteList spanWhiteList = new SpanWhiteList.Builder()
+                .add(FINDER_NAME, SERVICE_NAME, OPERATION_NAME, TAG_NAME)
+                .add("Credit_Card", SERVICE_NAME, "Operation*", TAG_NAME)
+                .add("Phone_Number", SERVICE_NAME, "*Name", "*Tag*")
+                .add("Credit_Card", SERVICE_NAME, OPERATION_NAME, "Other*")
+                .build();
+
+        final SpanWhiteList.View view = spanWhiteList.getView(SERVICE_NAME, OPERATION_NAME);
+        assertFalse(view.isEmpty());
+        assertTrue(view.contains(FINDER_NAME, TAG_NAME));
+        assertTrue(view.contains("Credit_Card", TAG_NAME));
+        assertTrue(view.contains("Phone_Number", TAG_NAME + 2));
+        assertFalse(view.contains("Credit_Card", TAG_NAME + 2));
+        assertFalse(view.contains(FINDER_NAME, "OtherTag"));
+        assertTrue(view.contains("Credit_Card", "OtherField"));
+        assertEquals(new HashSet<>(Arrays.asList(FINDER_NAME, "Credit_Card", "Phone_Number")),
+                view.getFinderNames(TAG_NAME));
+        assertEquals(Collections.singleton("Phone_Number"), view.getFinderNames(TAG_NAME + 2));
+        assertEquals(Collections.emptySet(), view.getFinderNames("Unknown"));
+        assertEquals(Collections.singleton("Credit_Card"), view.getFinderNames("OtherField"));
+
+        // Only patterns apply to this span
+        final SpanWhiteList.View patternView = spanWhiteList.getView(SERVICE_NAME, "Operation");
+        assertFalse(patternView.isEmpty());
+        assertTrue(patternView.contains("Credit_Card", TAG_NAME));
+        assertFalse(patternView.contains(FINDER_NAME, TAG_NAME));
+        assertEquals(Collections.singleton("Credit_Card"), patternView.getFinderNames(TAG_NAME));
+
+        assertSame(SpanWhiteList.View.EMPTY, spanWhiteList.getView(SERVICE_NAME, "Other"));
+        assertSame(SpanWhiteList.View.EMPTY, spanWhiteList.getView("OtherService", OPERATION_NAME));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testGetViewPatternFinderNamesIsUnmodifiable() {
+        new SpanWhiteList.Builder().add(FINDER_NAME, SERVICE_NAME, "*", TAG_NAME).build()
+                .getView(SERVICE_NAME, OPERATION_NAME).getFinderNames(TAG_NAME).add("Credit_Card");
+    }
+
+    @Test
+    public void testFinderNameSetsAreShared() {
+        final SpanWhiteList spanWhiteList = new SpanWhiteList.Builder()
+                .add(FINDER_NAME, SERVICE_NAME, OPERATION_NAME, TAG_NAME)
+                .add("Credit_Card", SERVICE_NAME, OPERATION_NAME, TAG_NAME)
+                .add("Credit_Card", SERVICE_NAME, OPERATION_NAME + 2, TAG_NAME)
+                .add(FINDER_NAME, SERVICE_NAME, OPERATION_NAME + 2, TAG_NAME)
+                .add(FINDER_NAME, SERVICE_NAME + 2, OPERATION_NAME, TAG_NAME + 2)
+                .build();
+
+        assertEquals(5, spanWhiteList.size());
+        assertEquals(2, spanWhiteList.getFinderNameSetCount());
+        assertSame(spanWhiteList.getView(SERVICE_NAME, OPERATION_NAME).getFinderNames(TAG_NAME),
+                spanWhiteList.getView(SERVICE_NAME, OPERATION_NAME + 2).getFinderNames(TAG_NAME));
+        assertEquals(Collections.emptySet(), spanWhiteList.getView(SERVICE_NAME, OPERATION_NAME)
+                .getFinderNames(TAG_NAME + 2));
+        assertEquals(Collections.emptySet(), spanWhiteList.getView(SERVICE_NAME, OPERATION_NAME)
+                .getFinderNames("UnknownTag"));
+    }
+
+    @Test
+    public void testManyEntries() {
+        final int count = 10000 + RANDOM.nextInt(1000);
+        final SpanWhiteList.Builder builder = new SpanWhiteList.Builder();
+        for (int index = 0; index < count; index++) {
+            builder.add(FINDER_NAME, SERVICE_NAME + index % 7, OPERATION_NAME + index % 13, TAG_NAME + index);
+        }
+        final SpanWhiteList spanWhiteList = builder.build();
+
+        assertEquals(count, spanWhiteList.size());
+        assertTrue(spanWhiteList.capacity() >= 2 * count);
+        assertTrue(spanWhiteList.capacity() <= 4 * count);
+        for (int index = 0; index < count; index++) {
+            assertTrue(spanWhiteList.contains(
+                    FINDER_NAME, SERVICE_NAME + index % 7, OPERATION_NAME + index % 13, TAG_NAME + index));
+            assertFalse(spanWhiteList.contains(
+                    FINDER_NAME, SERVICE_NAME + index % 7, OPERATION_NAME + (index + 1) % 13, TAG_NAME + index));
+        }
+    }
+}
@@ -0,0 +1,259 @@
+/*
+ * Copyright 2018 Expedia, Inc.
+ *
+ *       Licensed under the Apache License, Version 2.0 (the "License");
+ *       you may not use this file except in compliance with the License.
+ *       You may obtain a copy of the License at
+ *
+ *           http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *       Unless required by applicable law or agreed to in writing, software
+ *       distributed under the License is distributed on an "AS IS" BASIS,
+ *       WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *       See the License for the specific language governing permissions and
+ *       limitations under the License.
+ *
+ */
+package com.expedia.www.haystack.commons.secretDetector.span;
+
+import com.expedia.www.haystack.commons.secretDetector.NamePairSet;
+
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Measures the memory retained by a large white list and the time its lookups take; not a unit test, so surefire does
+ * not run it. Run it with the test classpath and the arguments
+ * <pre>
+ * type [entryCount [queryCount [lookupCount [roundCount]]]]
+ * </pre>
+ * where type is "span" for a SpanWhiteList, "spanMap" for the nested maps and sets (finder name, service name,
+ * operation name, tag names) that held the span white list before SpanWhiteList, "namePairSet" for the NamePairSet of
+ * the XML and JSON white lists, or "map" for the nested maps and sets that the XML and JSON white lists used before
+ * NamePairSet. The span white lists are timed with lookupCount lookups of queryCount (a power of two) distinct
+ * queries, roundCount times; the defaults are {@value #DEFAULT_ENTRY_COUNT}, {@value #DEFAULT_QUERY_COUNT},
+ * {@value #DEFAULT_LOOKUP_COUNT} and {@value #DEFAULT_ROUND_COUNT}. Give the JVM a fixed heap (-Xms and -Xmx) so that
+ * the retained memory is comparable between runs.
+ */
+public class WhiteListBenchmark {
+    static final int DEFAULT_ENTRY_COUNT = 1_000_000;
+    static final int DEFAULT_QUERY_COUNT = 1 << 16;
+    static final int DEFAULT_LOOKUP_COUNT = 10_000_000;
+    static final int DEFAULT_ROUND_COUNT = 3;
+    private static final int FINDER_COUNT = 5;
+    private static final int GC_COUNT = 5;
+    private static final double BYTES_PER_MB = 1e6;
+
+    private final int entryCount;
+    private final int queryCount;
+    private final int lookupCount;
+    private final int roundCount;
+
+    private WhiteListBenchmark(int entryCount, int queryCount, int lookupCount, int roundCount) {
+        if (Integer.bitCount(queryCount) != 1) {
+            throw new IllegalArgumentException("The query count " + queryCount + " is not a power of two");
+        }
+        this.entryCount = entryCount;
+        this.queryCount = queryCount;
+        this.lookupCount = lookupCount;
+        this.roundCount = roundCount;
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        final WhiteListBenchmark whiteListBenchmark = new WhiteListBenchmark(
+                getArgument(args, 1, DEFAULT_ENTRY_COUNT),
+                getArgument(args, 2, DEFAULT_QUERY_COUNT),
+                getArgument(args, 3, DEFAULT_LOOKUP_COUNT),
+                getArgument(args, 4, DEFAULT_ROUND_COUNT));
+        // Keeps the white list reachable until its memory has been measured
+        System.out.println(whiteListBenchmark.run(args[0]).hashCode() != 0);
+    }
+
+    private static int getArgument(String[] args, int index, int defaultValue) {
+        return (args.length > index) ? Integer.parseInt(args[index]) : defaultValue;
+    }
+
+    private Object run(String type) throws InterruptedException {
+        final long usedBefore = getUsedMemory();
+        switch (type) {
+            case "span":
+                return benchmarkSpanWhiteList(usedBefore);
+            case "spanMap":
+                return benchmarkSpanMap(usedBefore);
+            case "namePairSet":
+                final NamePairSet namePairSet = buildNamePairSet();
+                System.out.printf("NamePairSet retained MB=%.1f%n", (getUsedMemory() - usedBefore) / BYTES_PER_MB);
+                return namePairSet;
+            case "map":
+                final Map<String, Set<String>> map = new ConcurrentHashMap<>();
+                for (int i = 0; i < entryCount; i++) {
+                    map.computeIfAbsent(createFinderName(i), finderName -> ConcurrentHashMap.newKeySet())
+                            .add(createPath(i));
+                }
+                System.out.printf("Map retained MB=%.1f%n", (getUsedMemory() - usedBefore) / BYTES_PER_MB);
+                return map;
+            default:
+                throw new IllegalArgumentException("Unknown white list type " + type);
+        }
+    }
+
+    /**
+     * Builds the NamePairSet in a method of its own, so that the builder is garbage once it returns
+     */
+    private NamePairSet buildNamePairSet() {
+        final NamePairSet.Builder builder = new NamePairSet.Builder();
+        for (int i = 0; i < entryCount; i++) {
+            builder.add(createFinderName(i), createPath(i));
+        }
+        return builder.build();
+    }
+
+    private SpanWhiteList benchmarkSpanWhiteList(long usedBefore) throws InterruptedException {
+        final SpanWhiteList spanWhiteList = buildSpanWhiteList();
+        System.out.printf("SpanWhiteList entries=%d retained MB=%.1f%n",
+                spanWhiteList.size(), (getUsedMemory() - usedBefore) / BYTES_PER_MB);
+        timeLookups(new SpanLookups() {
+            @Override
+            public boolean contains(String[] query) {
+                return spanWhiteList.contains(query[0], query[1], query[2], query[3]);
+            }
+
+            @Override
+            public int countFinderNames(String[] query) {
+                return spanWhiteList.getView(query[1], query[2]).getFinderNames(query[3]).size();
+            }
+        });
+        return spanWhiteList;
+    }
+
+    /**
+     * Builds the SpanWhiteList in a method of its own, so that the builder and its entries are garbage once it returns
+     */
+    private SpanWhiteList buildSpanWhiteList() {
+        final SpanWhiteList.Builder builder = new SpanWhiteList.Builder();
+        for (int i = 0; i < entryCount; i++) {
+            final String[] entry = createSpanEntry(i);
+            builder.add(entry[0], entry[1], entry[2], entry[3]);
+        }
+        return builder.build();
+    }
+
+    /**
+     * Builds the span white list the way SpanS3ConfigFetcher did before SpanWhiteList, and looks it up the way its
+     * isInWhiteList method did; the finders of a tag are counted by looking up each finder name
+     */
+    private Map<String, Map<String, Map<String, Set<String>>>> benchmarkSpanMap(long usedBefore)
+            throws InterruptedException {
+        final Map<String, Map<String, Map<String, Set<String>>>> spanMap = new ConcurrentHashMap<>();
+        for (int i = 0; i < entryCount; i++) {
+            final String[] entry = createSpanEntry(i);
+            spanMap.computeIfAbsent(entry[0], finderName -> new ConcurrentHashMap<>())
+                    .computeIfAbsent(entry[1], serviceName -> new ConcurrentHashMap<>())
+                    .computeIfAbsent(entry[2], operationName -> ConcurrentHashMap.newKeySet())
+                    .add(entry[3]);
+        }
+        System.out.printf("Span map retained MB=%.1f%n", (getUsedMemory() - usedBefore) / BYTES_PER_MB);
+        final String[] finderNames = new String[FINDER_COUNT];
+        for (int i = 0; i < finderNames.length; i++) {
+            finderNames[i] = createFinderName(i);
+        }
+        timeLookups(new SpanLookups() {
+            @Override
+            public boolean contains(String[] query) {
+                return contains(query[0], query);
+            }
+
+            @Override
+            public int countFinderNames(String[] query) {
+                int count = 0;
+                for (final String finderName : finderNames) {
+                    if (contains(finderName, query)) {
+                        count++;
+                    }
+                }
+                return count;
+            }
+
+            private boolean contains(String finderName, String[] query) {
+                final Map<String, Map<String, Set<String>>> serviceNameMap = spanMap.get(finderName);
+                if (serviceNameMap != null) {
+                    final Map<String, Set<String>> operationNameMap = serviceNameMap.get(query[1]);
+                    if (operationNameMap != null) {
+                        final Set<String> tagNameSet = operationNameMap.get(query[2]);
+                        if (tagNameSet != null) {
+                            return tagNameSet.contains(query[3]);
+                        }
+                    }
+                }
+                return false;
+            }
+        });
+        return spanMap;
+    }
+
+    private void timeLookups(SpanLookups spanLookups) {
+        // Half of the queries are in the white list, and half differ from an entry only in their tag name
+        final String[][] queries = new String[queryCount][];
+        final Random random = new Random(1);
+        for (int i = 0; i < queries.length; i++) {
+            final int entryIndex = random.nextInt(2 * entryCount);
+            queries[i] = createSpanEntry(entryIndex % entryCount);
+            if (entryIndex >= entryCount) {
+                queries[i][3] += "x";
+            }
+        }
+        final double nanosPerLookupDivisor = lookupCount;
+        long hits = 0;
+        for (int round = 0; round < roundCount; round++) {
+            final long containsStartNanos = System.nanoTime();
+            for (int i = 0; i < lookupCount; i++) {
+                if (spanLookups.contains(queries[i & (queryCount - 1)])) {
+                    hits++;
+                }
+            }
+            final long finderNamesStartNanos = System.nanoTime();
+            for (int i = 0; i < lookupCount; i++) {
+                hits += spanLookups.countFinderNames(queries[i & (queryCount - 1)]);
+            }
+            final long endNanos = System.nanoTime();
+            System.out.printf("contains ns/op=%.1f finder names of a tag ns/op=%.1f%n",
+                    (finderNamesStartNanos - containsStartNanos) / nanosPerLookupDivisor,
+                    (endNanos - finderNamesStartNanos) / nanosPerLookupDivisor);
+        }
+        System.out.println("hits=" + hits);
+    }
+
+    private static String createFinderName(int i) {
+        return "Finder_" + (i % FINDER_COUNT);
+    }
+
+    private static String createPath(int i) {
+        return "/root/path/" + i;
+    }
+
+    private static String[] createSpanEntry(int i) {
+        return new String[]{createFinderName(i * 7), "service-" + (i % 100), "GET /api/v1/resource/" + (i / 100 % 1000),
+                "tag." + (i / 100_000)};
+    }
+
+    private static long getUsedMemory() throws InterruptedException {
+        for (int i = 0; i < GC_COUNT; i++) {
+            System.gc();
+            Thread.sleep(100);
+        }
+        final Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /**
+     * The lookups that are timed: a single (finder, service, operation, tag) entry, and the finders white listed for
+     * the tag of a span, which is getView() and getFinderNames() for a SpanWhiteList
+     */
+    private interface SpanLookups {
+        boolean contains(String[] query);
+
+        int countFinderNames(String[] query);
+    }
+}
@@ -17,6 +17,7 @@
 package com.expedia.www.haystack.commons.secretDetector.xml;
 
 import com.expedia.www.haystack.commons.secretDetector.DetectorTestBase;
+import com.expedia.www.haystack.commons.secretDetector.FinderEngineRegistry;
 import com.expedia.www.haystack.commons.secretDetector.HaystackFinderEngine;
 import com.expedia.www.haystack.commons.secretDetector.S3ConfigFetcher;
 import com.netflix.servo.monitor.Counter;
@@ -39,7 +40,10 @@ import static com.expedia.www.haystack.commons.secretDetector.TestConstantsAndCo
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
+import static org.mockito.Mockito.when;
 
 @SuppressWarnings("MultipleExceptionsDeclaredOnTestMethod")
 @RunWith(MockitoJUnitRunner.class)
@@ -73,6 +77,12 @@ public class XmlDetectorTest extends DetectorTestBase {
     @Mock
     private S3ConfigFetcher mockS3ConfigFetcher;
 
+    @Mock
+    private FinderEngineRegistry mockFinderEngineRegistry;
+
+    @Mock
+    private HaystackFinderEngine mockHaystackFinderEngine;
+
     private XmlDetector xmlDetector;
 
     @Before
@@ -87,6 +97,7 @@ public class XmlDetectorTest extends DetectorTestBase {
         verifyNoMoreInteractions(mockLogger);
         verifyNoMoreInteractions(mockCounter);
         verifyNoMoreInteractions(mockS3ConfigFetcher);
+        verifyNoMoreInteractions(mockFinderEngineRegistry, mockHaystackFinderEngine);
     }
 
     @Test
@@ -94,6 +105,26 @@ public class XmlDetectorTest extends DetectorTestBase {
         new XmlDetector(BUCKET, SUBSYSTEM, APPLICATION);
     }
 
+    @Test
+    public void testCloseLeavesFetcherOfCallerOpen() {
+        xmlDetector.close();
+
+        verify(mockS3ConfigFetcher, never()).close();
+    }
+
+    @Test
+    public void testCloseReleasesAcquiredEngine() {
+        when(mockFinderEngineRegistry.acquire(SUBSYSTEM, APPLICATION)).thenReturn(mockHaystackFinderEngine);
+        final XmlDetector xmlDetectorThatAcquired =
+                new XmlDetector(mockFinderEngineRegistry, BUCKET, SUBSYSTEM, APPLICATION);
+
+        xmlDetectorThatAcquired.close();
+        xmlDetectorThatAcquired.close();
+
+        verify(mockFinderEngineRegistry).acquire(SUBSYSTEM, APPLICATION);
+        verify(mockFinderEngineRegistry).release(mockHaystackFinderEngine);
+    }
+
     @Test
     public void testFindSecretsNoSecrets() {
         whensForFindSecrets();
@@ -101,27 +132,27 @@ public class XmlDetectorTest extends DetectorTestBase {
         final Map<String, List<String>> secrets = xmlDetector.findSecrets(DOCUMENT_NO_SECRETS);
 
         assertTrue(secrets.isEmpty());
-        verifiesForFindSecrets(78, 1);
+        verifiesForFindSecrets(24, 1, 0, 0, 0);
     }
 
     @Test
     public void testFindSecretsEmailAddressInRootElementAttribute() {
-        testFindSecretsContainsSecret(DOCUMENT_EMAIL_IN_ROOT_ATTRIBUTE, DOCUMENT_EMAIL_IN_ROOT_ATTRIBUTE_ID, 54);
+        testFindSecretsContainsSecret(DOCUMENT_EMAIL_IN_ROOT_ATTRIBUTE, DOCUMENT_EMAIL_IN_ROOT_ATTRIBUTE_ID, 18);
     }
 
     @Test
     public void testFindSecretsEmailAddressInRootElementText() {
-        testFindSecretsContainsSecret(DOCUMENT_EMAIL_IN_ROOT_TEXT, DOCUMENT_EMAIL_IN_ROOT_TEXT_ID, 66);
+        testFindSecretsContainsSecret(DOCUMENT_EMAIL_IN_ROOT_TEXT, DOCUMENT_EMAIL_IN_ROOT_TEXT_ID, 21);
     }
 
     @Test
     public void testFindSecretsEmailAddressInChildElementAttribute() {
-        testFindSecretsContainsSecret(DOCUMENT_EMAIL_IN_CHILD_ATTRIBUTE, DOCUMENT_EMAIL_IN_CHILD_ATTRIBUTE_ID, 54);
+        testFindSecretsContainsSecret(DOCUMENT_EMAIL_IN_CHILD_ATTRIBUTE, DOCUMENT_EMAIL_IN_CHILD_ATTRIBUTE_ID, 18);
     }
 
     @Test
     public void testFindSecretsEmailAddressInChildElementText() {
-        testFindSecretsContainsSecret(DOCUMENT_EMAIL_IN_CHILD_TEXT, DOCUMENT_EMAIL_IN_CHILD_TEXT_ID, 66);
+        testFindSecretsContainsSecret(DOCUMENT_EMAIL_IN_CHILD_TEXT, DOCUMENT_EMAIL_IN_CHILD_TEXT_ID, 21);
     }
 /*
     @Test
@@ -184,7 +215,7 @@ public class XmlDetectorTest extends DetectorTestBase {
         verify(mockS3ConfigFetcher).isInWhiteList("Email", id);
     }
 */
-    private void testFindSecretsContainsSecret(Document document, String expected, int wantedNumberOfInvocationsStartAndStop) {
+    private void testFindSecretsContainsSecret(Document document, String expected, int wantedNumberOfInvocationsRecord) {
         whensForFindSecrets();
         final Map<String, List<String>> secrets = xmlDetector.findSecrets(document);
         assertEquals(1, secrets.size());
@@ -194,7 +225,7 @@ public class XmlDetectorTest extends DetectorTestBase {
             assertEquals(1, value.size());
             assertEquals(expected, value.get(0));
         }
-        verifiesForFindSecrets(wantedNumberOfInvocationsStartAndStop, 1);
+        verifiesForFindSecrets(wantedNumberOfInvocationsRecord, 1, 0, 0, 0);
     }
 
     private static Document createDocument(String rootAttributeValue,